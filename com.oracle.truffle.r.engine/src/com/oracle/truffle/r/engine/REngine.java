@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -129,6 +129,10 @@ final class REngine implements Engine, Engine.Timings {
      * The system time when this engine was started.
      */
     @CompilationFinal private long startTime;
+    /**
+     * The time it took to {@link #activate} this engine.
+     */
+    @CompilationFinal private long startupTime;
     /**
      * The accumulated time spent by child processes on behalf of this engine.
      */
@@ -171,6 +175,7 @@ final class REngine implements Engine, Engine.Timings {
         context.stateRNG.initializeDotRandomSeed(context);
 
         initReplPrintSyntaxCallNode();
+        startupTime = System.nanoTime() - startTime;
     }
 
     private void initializeNonShared() {
@@ -263,6 +268,11 @@ final class REngine implements Engine, Engine.Timings {
         return ThreadTimings.userSysTimeInNanos();
     }
 
+    @Override
+    public long startupTimeInNanos() {
+        return startupTime;
+    }
+
     @Override
     public Object parseAndEval(Source source, MaterializedFrame frame, boolean printResult) throws ParseException {
         List<RSyntaxNode> list = parseSource(source);
@@ -1762,7 +1762,7 @@ public abstract class JavaUpCallsRFFIImpl implements UpCallsRFFI {
     public REnvironment R_NewHashedEnv(Object parent, Object initialSize) {
         // We know this is an RIntVector from use site in gramRd.c
         REnvironment env = RDataFactory.createNewEnv(REnvironment.UNNAMED, true, ((RIntVector) initialSize).getDataAt(0));
-        RArguments.initializeEnclosingFrame(env.getFrame(), guaranteeInstanceOf(parent, REnvironment.class).getFrame());
+        env.initializeParent(guaranteeInstanceOf(parent, REnvironment.class));
         return env;
     }
 
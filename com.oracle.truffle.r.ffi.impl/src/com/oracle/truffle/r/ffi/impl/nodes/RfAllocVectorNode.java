@@ -41,6 +41,14 @@ import com.oracle.truffle.r.runtime.gnur.SEXPTYPE;
 public abstract class RfAllocVectorNode extends FFIUpCallNode.Arg2 {
     protected static final int SEXPTYPE_COUNT = SEXPTYPE.values().length + 1;
 
+    /**
+     * Numeric and logical vectors allocated by native code are almost always filled and read via
+     * their data pointer, so their contents are allocated in native memory right away instead of
+     * being copied there on the first {@code INTEGER}, {@code LOGICAL} or {@code REAL} call. Short
+     * vectors stay in Java memory, copying them is cheaper than the native allocation.
+     */
+    private static final int NATIVE_FIRST_MIN_LENGTH = 16;
+
     public abstract Object execute(int mode, long n);
 
     public static RfAllocVectorNode create() {
@@ -72,10 +80,19 @@ public abstract class RfAllocVectorNode extends FFIUpCallNode.Arg2 {
     private static Object allocate(@Cached(value = "getType(mode)", allowUncached = true) SEXPTYPE type, int ni) {
         switch (type) {
             case INTSXP:
+                if (ni >= NATIVE_FIRST_MIN_LENGTH) {
+                    return RDataFactory.createIntVectorNativeFirst(ni);
+                }
                 return RDataFactory.createIntVector(new int[ni], RDataFactory.COMPLETE_VECTOR);
             case REALSXP:
+                if (ni >= NATIVE_FIRST_MIN_LENGTH) {
+                    return RDataFactory.createDoubleVectorNativeFirst(ni);
+                }
                 return RDataFactory.createDoubleVector(new double[ni], RDataFactory.COMPLETE_VECTOR);
             case LGLSXP:
+                if (ni >= NATIVE_FIRST_MIN_LENGTH) {
+                    return RDataFactory.createLogicalVectorNativeFirst(ni);
+                }
                 return RDataFactory.createLogicalVector(new byte[ni], RDataFactory.COMPLETE_VECTOR);
             case STRSXP:
                 // fill list with empty strings
@@ -38,6 +38,8 @@ public abstract class SetStringEltNode extends FFIUpCallNode.Arg3 {
     @Specialization(limit = "getTypedVectorDataLibraryCacheSize()")
     Object doIt(RStringVector vector, long index, CharSXPWrapper element,
                     @CachedLibrary("vector.getData()") VectorDataLibrary dataLibrary) {
+        // native code updates the vector in place, unlike numeric vectors it has no native mirror
+        vector.invalidateElementHash();
         dataLibrary.setStringAt(vector.getData(), (int) index, element.getContents());
         return null;
     }
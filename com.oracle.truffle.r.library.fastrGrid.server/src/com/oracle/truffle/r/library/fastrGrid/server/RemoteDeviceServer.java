@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2018, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -29,6 +29,7 @@ import java.net.InetSocketAddress;
 import java.time.LocalTime;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -68,6 +69,8 @@ public class RemoteDeviceServer {
 
     private static long totalRequestsServiced;
 
+    private static final AtomicLong totalCommandsExecuted = new AtomicLong();
+
     private static long totalBytesRead;
 
     private static long totalBytesWritten;
@@ -143,193 +146,32 @@ public class RemoteDeviceServer {
             resultEncoder.writeByte(RemoteDevice.STATUS_OK);
             boolean checkServerClose = false;
             RuntimeException rExc = null;
+            int batchIndex = -1;
+            byte batchCommandId = commandId;
             try {
-                if (commandId == RemoteDevice.CREATE_IMAGE) {
-                    DeviceType type = DeviceType.values()[paramsDecoder.readInt()];
-                    String filename = paramsDecoder.readString();
-                    String fileType = paramsDecoder.readString();
-                    int width = paramsDecoder.readInt();
-                    int height = paramsDecoder.readInt();
-                    int deviceId;
-                    synchronized (RemoteDeviceServer.class) {
-                        deviceId = ++lastDeviceId;
-                    }
-                    GridDevice device;
-                    switch (type) {
-                        case BUFFERED_IMAGE:
-                            try {
-                                // TODO: is passing null RContext OK?
-                                device = GridContext.openLocalOrRemoteDevice(null, filename, fileType, width, height);
-                            } catch (NotSupportedImageFormatException ex) {
-                                deviceId = -1;
-                                device = null;
-                            }
-                            break;
-                        case WINDOW:
-                            device = WindowDevice.createWindowDevice(true, width, height);
-                            break;
-                        default:
-                            throw new AssertionError();
-                    }
-                    if (deviceId != -1) {
-                        id2Device.put(deviceId, device);
-                    }
-                    resultEncoder.writeInt(deviceId);
-                } else if (commandId == RemoteDevice.CREATE_DRAWING_CONTEXT) {
-                    ServerDrawingContext ctx = new ServerDrawingContext(paramsDecoder);
-                    Integer ctxId = drawingContext2id.get(ctx);
-                    if (ctxId == null) {
-                        synchronized (RemoteDeviceServer.class) {
-                            ctxId = ++lastDrawingContextId;
-                            id2DrawingContext.put(ctxId, ctx);
-                            drawingContext2id.put(ctx, ctxId);
-                        }
-                    } else {
-                        synchronized (RemoteDeviceServer.class) {
-                            ctx = getDrawingContextImpl(ctxId);
-                            ctx.incRefCount();
-                        }
-                    }
-                    resultEncoder.writeInt(ctxId);
-                } else if (commandId == RemoteDevice.RELEASE_DRAWING_CONTEXT) {
-                    int ctxId = paramsDecoder.readInt();
-                    synchronized (RemoteDeviceServer.class) {
-                        releaseDrawingContextImpl(ctxId);
+                if (commandId == RemoteDevice.BATCH) {
+                    while (!paramsDecoder.isReadFinished()) {
+                        batchIndex++;
+                        batchCommandId = paramsDecoder.readByte();
+                        checkServerClose |= execute(batchCommandId, paramsDecoder);
                     }
                 } else {
-                    Integer deviceId = paramsDecoder.readInt();
-                    GridDevice device = id2Device.get(deviceId);
-                    if (device == null) {
-                        throw new IllegalStateException("Grid device for id=" + deviceId + " does not exist on server.");
-                    }
-                    switch (commandId) {
-                        case RemoteDevice.OPEN_NEW_PAGE: {
-                            device.openNewPage();
-                            break;
-                        }
-                        case RemoteDevice.HOLD: {
-                            device.hold();
-                            break;
-                        }
-                        case RemoteDevice.FLUSH: {
-                            device.flush();
-                            break;
-                        }
-                        case RemoteDevice.CLOSE: {
-                            int[] releaseDrawingContextIds = paramsDecoder.readIntArray();
-                            synchronized (RemoteDeviceServer.class) {
-                                for (int i = 0; i < releaseDrawingContextIds.length; i++) {
-                                    int ctxId = releaseDrawingContextIds[i];
-                                    if (ctxId != 0) {
-                                        releaseDrawingContextImpl(ctxId);
-                                    }
-                                }
-                            }
-                            id2Device.remove(deviceId);
-                            checkServerClose = true;
-                            String exMsg = null;
-                            try {
-                                device.close();
-                            } catch (DeviceCloseException ex) {
-                                exMsg = ex.getMessage();
-                            }
-                            resultEncoder.writeString(exMsg);
-                            break;
-                        }
-                        case RemoteDevice.DRAW_RECT: {
-                            DrawingContext ctx = getDrawingContext(paramsDecoder.readInt());
-                            double leftX = paramsDecoder.readDouble();
-                            double bottomY = paramsDecoder.readDouble();
-                            double width = paramsDecoder.readDouble();
-                            double height = paramsDecoder.readDouble();
-                            double rotationAnticlockWise = paramsDecoder.readDouble();
-                            device.drawRect(ctx, leftX, bottomY, width, height, rotationAnticlockWise);
-                            break;
-                        }
-                        case RemoteDevice.DRAW_POLY_LINES: {
-                            DrawingContext ctx = getDrawingContext(paramsDecoder.readInt());
-                            double[] x = paramsDecoder.readDoubleArray();
-                            double[] y = paramsDecoder.readDoubleArray();
-                            int startIndex = paramsDecoder.readInt();
-                            int length = paramsDecoder.readInt();
-                            device.drawPolyLines(ctx, x, y, startIndex, length);
-                            break;
-                        }
-                        case RemoteDevice.DRAW_POLYGON: {
-                            DrawingContext ctx = getDrawingContext(paramsDecoder.readInt());
-                            double[] x = paramsDecoder.readDoubleArray();
-                            double[] y = paramsDecoder.readDoubleArray();
-                            int startIndex = paramsDecoder.readInt();
-                            int length = paramsDecoder.readInt();
-                            device.drawPolygon(ctx, x, y, startIndex, length);
-                            break;
-                        }
-                        case RemoteDevice.DRAW_CIRCLE: {
-                            DrawingContext ctx = getDrawingContext(paramsDecoder.readInt());
-                            double centerX = paramsDecoder.readDouble();
-                            double centerY = paramsDecoder.readDouble();
-                            double radius = paramsDecoder.readDouble();
-                            device.drawCircle(ctx, centerX, centerY, radius);
-                            break;
-                        }
-                        case RemoteDevice.DRAW_RASTER: {
-                            double leftX = paramsDecoder.readDouble();
-                            double bottomY = paramsDecoder.readDouble();
-                            double width = paramsDecoder.readDouble();
-                            double height = paramsDecoder.readDouble();
-                            int[] pixels = paramsDecoder.readIntArray();
-                            int pixelsColumnsCount = paramsDecoder.readInt();
-                            ImageInterpolation interpolation = ImageInterpolation.values()[paramsDecoder.readInt()];
-                            device.drawRaster(leftX, bottomY, width, height, pixels, pixelsColumnsCount, interpolation);
-                            break;
-                        }
-                        case RemoteDevice.DRAW_STRING: {
-                            DrawingContext ctx = getDrawingContext(paramsDecoder.readInt());
-                            double leftX = paramsDecoder.readDouble();
-                            double bottomY = paramsDecoder.readDouble();
-                            double rotationAnticlockWise = paramsDecoder.readDouble();
-                            String text = paramsDecoder.readString();
-                            device.drawString(ctx, leftX, bottomY, rotationAnticlockWise, text);
-                            break;
-                        }
-                        case RemoteDevice.GET_WIDTH: {
-                            resultEncoder.writeDouble(device.getWidth());
-                            break;
-                        }
-                        case RemoteDevice.GET_HEIGHT: {
-                            resultEncoder.writeDouble(device.getHeight());
-                            break;
-                        }
-                        case RemoteDevice.GET_NATIVE_WIDTH: {
-                            resultEncoder.writeDouble(device.getNativeWidth());
-                            break;
-                        }
-                        case RemoteDevice.GET_NATIVE_HEIGHT: {
-                            resultEncoder.writeDouble(device.getNativeHeight());
-                            break;
-                        }
-                        case RemoteDevice.GET_STRING_WIDTH: {
-                            DrawingContext ctx = getDrawingContext(paramsDecoder.readInt());
-                            String text = paramsDecoder.readString();
-                            resultEncoder.writeDouble(device.getStringWidth(ctx, text));
-                            break;
-                        }
-                        case RemoteDevice.GET_STRING_HEIGHT: {
-                            DrawingContext ctx = getDrawingContext(paramsDecoder.readInt());
-                            String text = paramsDecoder.readString();
-                            resultEncoder.writeDouble(device.getStringHeight(ctx, text));
-                            break;
-                        }
-                        default:
-                            throw new IllegalStateException("Invalid requestId=" + commandId);
-                    }
+                    checkServerClose = execute(commandId, paramsDecoder);
                 }
             } catch (RuntimeException ex) {
-                rExc = ex;
+                String message;
+                if (batchIndex >= 0) {
+                    message = String.format("Command %d (opcode %d) of a batch failed, the rest of the batch was not executed: %s", batchIndex, batchCommandId, ex);
+                } else {
+                    message = String.format("Command (opcode %d) failed: %s", commandId, ex);
+                }
+                log.severe(message);
+                rExc = new IllegalStateException(message, ex);
             }
             byte[] osBuf = resultEncoder.resetWrite();
             if (rExc != null) {
                 resultEncoder.writeByte(RemoteDevice.STATUS_SERVER_ERROR);
+                resultEncoder.writeString(rExc.getMessage());
                 osBuf = resultEncoder.resetWrite();
             }
             if (log.isLoggable(Level.FINER)) {
@@ -351,6 +193,194 @@ public class RemoteDeviceServer {
             }
         }
 
+        /**
+         * Executes a single command, possibly one of a {@link RemoteDevice#BATCH}, and writes its
+         * result, if any, to the result encoder.
+         *
+         * @return {@code true} if the command closed a device.
+         */
+        private boolean execute(byte commandId, RemoteDeviceDataExchange paramsDecoder) {
+            totalCommandsExecuted.incrementAndGet();
+            boolean checkServerClose = false;
+            if (commandId == RemoteDevice.CREATE_IMAGE) {
+                DeviceType type = DeviceType.values()[paramsDecoder.readInt()];
+                String filename = paramsDecoder.readString();
+                String fileType = paramsDecoder.readString();
+                int width = paramsDecoder.readInt();
+                int height = paramsDecoder.readInt();
+                int deviceId;
+                synchronized (RemoteDeviceServer.class) {
+                    deviceId = ++lastDeviceId;
+                }
+                GridDevice device;
+                switch (type) {
+                    case BUFFERED_IMAGE:
+                        try {
+                            // TODO: is passing null RContext OK?
+                            device = GridContext.openLocalOrRemoteDevice(null, filename, fileType, width, height);
+                        } catch (NotSupportedImageFormatException ex) {
+                            deviceId = -1;
+                            device = null;
+                        }
+                        break;
+                    case WINDOW:
+                        device = WindowDevice.createWindowDevice(true, width, height);
+                        break;
+                    default:
+                        throw new AssertionError();
+                }
+                if (deviceId != -1) {
+                    id2Device.put(deviceId, device);
+                }
+                resultEncoder.writeInt(deviceId);
+            } else if (commandId == RemoteDevice.CREATE_DRAWING_CONTEXT) {
+                ServerDrawingContext ctx = new ServerDrawingContext(paramsDecoder);
+                Integer ctxId = drawingContext2id.get(ctx);
+                if (ctxId == null) {
+                    synchronized (RemoteDeviceServer.class) {
+                        ctxId = ++lastDrawingContextId;
+                        id2DrawingContext.put(ctxId, ctx);
+                        drawingContext2id.put(ctx, ctxId);
+                    }
+                } else {
+                    synchronized (RemoteDeviceServer.class) {
+                        ctx = getDrawingContextImpl(ctxId);
+                        ctx.incRefCount();
+                    }
+                }
+                resultEncoder.writeInt(ctxId);
+            } else if (commandId == RemoteDevice.RELEASE_DRAWING_CONTEXT) {
+                int ctxId = paramsDecoder.readVarInt();
+                synchronized (RemoteDeviceServer.class) {
+                    releaseDrawingContextImpl(ctxId);
+                }
+            } else {
+                Integer deviceId = paramsDecoder.readVarInt();
+                GridDevice device = id2Device.get(deviceId);
+                if (device == null) {
+                    throw new IllegalStateException("Grid device for id=" + deviceId + " does not exist on server.");
+                }
+                switch (commandId) {
+                    case RemoteDevice.OPEN_NEW_PAGE: {
+                        device.openNewPage();
+                        break;
+                    }
+                    case RemoteDevice.HOLD: {
+                        device.hold();
+                        break;
+                    }
+                    case RemoteDevice.FLUSH: {
+                        device.flush();
+                        break;
+                    }
+                    case RemoteDevice.CLOSE: {
+                        int[] releaseDrawingContextIds = paramsDecoder.readIntArray();
+                        synchronized (RemoteDeviceServer.class) {
+                            for (int i = 0; i < releaseDrawingContextIds.length; i++) {
+                                int ctxId = releaseDrawingContextIds[i];
+                                if (ctxId != 0) {
+                                    releaseDrawingContextImpl(ctxId);
+                                }
+                            }
+                        }
+                        id2Device.remove(deviceId);
+                        checkServerClose = true;
+                        String exMsg = null;
+                        try {
+                            device.close();
+                        } catch (DeviceCloseException ex) {
+                            exMsg = ex.getMessage();
+                        }
+                        resultEncoder.writeString(exMsg);
+                        break;
+                    }
+                    case RemoteDevice.DRAW_RECT: {
+                        DrawingContext ctx = getDrawingContext(paramsDecoder.readVarInt());
+                        double leftX = paramsDecoder.readDouble();
+                        double bottomY = paramsDecoder.readDouble();
+                        double width = paramsDecoder.readDouble();
+                        double height = paramsDecoder.readDouble();
+                        double rotationAnticlockWise = paramsDecoder.readDouble();
+                        device.drawRect(ctx, leftX, bottomY, width, height, rotationAnticlockWise);
+                        break;
+                    }
+                    case RemoteDevice.DRAW_POLY_LINES: {
+                        DrawingContext ctx = getDrawingContext(paramsDecoder.readVarInt());
+                        double[] x = paramsDecoder.readDoubleArray();
+                        double[] y = paramsDecoder.readDoubleArray();
+                        device.drawPolyLines(ctx, x, y, 0, x.length);
+                        break;
+                    }
+                    case RemoteDevice.DRAW_POLYGON: {
+                        DrawingContext ctx = getDrawingContext(paramsDecoder.readVarInt());
+                        double[] x = paramsDecoder.readDoubleArray();
+                        double[] y = paramsDecoder.readDoubleArray();
+                        device.drawPolygon(ctx, x, y, 0, x.length);
+                        break;
+                    }
+                    case RemoteDevice.DRAW_CIRCLE: {
+                        DrawingContext ctx = getDrawingContext(paramsDecoder.readVarInt());
+                        double centerX = paramsDecoder.readDouble();
+                        double centerY = paramsDecoder.readDouble();
+                        double radius = paramsDecoder.readDouble();
+                        device.drawCircle(ctx, centerX, centerY, radius);
+                        break;
+                    }
+                    case RemoteDevice.DRAW_RASTER: {
+                        double leftX = paramsDecoder.readDouble();
+                        double bottomY = paramsDecoder.readDouble();
+                        double width = paramsDecoder.readDouble();
+                        double height = paramsDecoder.readDouble();
+                        int[] pixels = paramsDecoder.readIntArray();
+                        int pixelsColumnsCount = paramsDecoder.readInt();
+                        ImageInterpolation interpolation = ImageInterpolation.values()[paramsDecoder.readInt()];
+                        device.drawRaster(leftX, bottomY, width, height, pixels, pixelsColumnsCount, interpolation);
+                        break;
+                    }
+                    case RemoteDevice.DRAW_STRING: {
+                        DrawingContext ctx = getDrawingContext(paramsDecoder.readVarInt());
+                        double leftX = paramsDecoder.readDouble();
+                        double bottomY = paramsDecoder.readDouble();
+                        double rotationAnticlockWise = paramsDecoder.readDouble();
+                        String text = paramsDecoder.readString();
+                        device.drawString(ctx, leftX, bottomY, rotationAnticlockWise, text);
+                        break;
+                    }
+                    case RemoteDevice.GET_WIDTH: {
+                        resultEncoder.writeDouble(device.getWidth());
+                        break;
+                    }
+                    case RemoteDevice.GET_HEIGHT: {
+                        resultEncoder.writeDouble(device.getHeight());
+                        break;
+                    }
+                    case RemoteDevice.GET_NATIVE_WIDTH: {
+                        resultEncoder.writeInt(device.getNativeWidth());
+                        break;
+                    }
+                    case RemoteDevice.GET_NATIVE_HEIGHT: {
+                        resultEncoder.writeInt(device.getNativeHeight());
+                        break;
+                    }
+                    case RemoteDevice.GET_STRING_WIDTH: {
+                        DrawingContext ctx = getDrawingContext(paramsDecoder.readVarInt());
+                        String text = paramsDecoder.readString();
+                        resultEncoder.writeDouble(device.getStringWidth(ctx, text));
+                        break;
+                    }
+                    case RemoteDevice.GET_STRING_HEIGHT: {
+                        DrawingContext ctx = getDrawingContext(paramsDecoder.readVarInt());
+                        String text = paramsDecoder.readString();
+                        resultEncoder.writeDouble(device.getStringHeight(ctx, text));
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException("Invalid requestId=" + commandId);
+                }
+            }
+            return checkServerClose;
+        }
+
     }
 
     private static final class ServerDrawingContext implements DrawingContext {
@@ -524,7 +554,7 @@ public class RemoteDeviceServer {
                 String response = (handleQuit ? LocalTime.now().toString() + ": Grid server stopped. Exit.\n" : "") +
                                 "Total devices created: " + lastDeviceId + ", active: " + id2Device.size() +
                                 "\nTotal DrawingContexts created: " + lastDrawingContextId + ", active: " + id2DrawingContext.size() +
-                                "\nTotal requests serviced: " + totalRequestsServiced +
+                                "\nTotal requests serviced: " + totalRequestsServiced + ", commands executed: " + totalCommandsExecuted.get() +
                                 "\nTotal bytes read: " + totalBytesRead + ", written: " + totalBytesWritten;
                 byte[] responseBytes = response.getBytes();
                 exchange.sendResponseHeaders(200, responseBytes.length);
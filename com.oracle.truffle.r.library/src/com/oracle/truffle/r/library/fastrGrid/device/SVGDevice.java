@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2017, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2017, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -27,9 +27,10 @@ import static com.oracle.truffle.r.library.fastrGrid.device.DrawingContext.INCH_
 import static java.lang.Math.round;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.Base64;
 
 import com.oracle.truffle.api.TruffleFile;
@@ -37,49 +38,98 @@ import com.oracle.truffle.r.library.fastrGrid.GridColorUtils;
 import com.oracle.truffle.r.library.fastrGrid.device.DrawingContext.GridFontStyle;
 import com.oracle.truffle.r.library.fastrGrid.device.DrawingContext.GridLineEnd;
 import com.oracle.truffle.r.library.fastrGrid.device.DrawingContext.GridLineJoin;
+import com.oracle.truffle.r.runtime.RError;
+import com.oracle.truffle.r.runtime.RError.Message;
 import com.oracle.truffle.r.runtime.RInternalError;
-import com.oracle.truffle.r.runtime.Utils;
+import com.oracle.truffle.r.runtime.context.FastROptions;
 import com.oracle.truffle.r.runtime.context.RContext;
 
+/**
+ * Device producing SVG code. By default, the code of the current page is kept in memory and saved
+ * when the page is finished. In the streaming mode, see {@link FastROptions#SVGStreaming}, the code
+ * is written through to the file as the primitives are drawn, so that the memory used does not
+ * depend on the size of the plot. In that mode {@link #getContents()} reads the code back from the
+ * file.
+ */
 public class SVGDevice implements GridDevice, FileGridDevice {
-    private static final DecimalFormat DECIMAL_FORMAT = new DecimalFormat("0.000");
     private static final double COORD_FACTOR = INCH_TO_POINTS_FACTOR;
 
-    private final StringBuilder data = new StringBuilder(1024);
+    /**
+     * The number of characters buffered before they are written to the file in the streaming
+     * mode, longer strings are written directly.
+     */
+    public static final int STREAM_BUFFER_SIZE = 8192;
+
+    private final SVGBuffer data;
+    private final boolean streaming;
     private String filename;
     private final double width;
     private final double height;
 
     private DrawingContext cachedCtx;
+    private boolean pageOpened;
 
     public SVGDevice(String filename, double width, double height) {
+        this(filename, width, height, RContext.getInstance().getOption(FastROptions.SVGStreaming));
+    }
+
+    public SVGDevice(String filename, double width, double height, boolean streaming) {
         this.filename = filename;
         this.width = width;
         this.height = height;
+        this.streaming = streaming;
+        this.data = new SVGBuffer(streaming);
     }
 
     public String closeAndGetContents() {
-        closeSVGDocument(data);
+        closeSVGDocument();
+        if (streaming) {
+            IOException error = data.close();
+            if (error != null) {
+                throw RError.error(RError.NO_CALLER, Message.GENERIC, "Cannot write SVG file " + filename + ": " + error.getMessage());
+            }
+            return readBack("");
+        }
         return data.toString();
     }
 
     public String getContents() {
-        StringBuilder result = new StringBuilder(data);
-        closeSVGDocument(result);
-        return result.toString();
+        if (streaming) {
+            data.flush();
+            return readBack(closingTags());
+        }
+        return data.toString() + closingTags();
+    }
+
+    private String readBack(String suffix) {
+        TruffleFile file = RContext.getInstance().getSafeTruffleFile(filename);
+        if (!pageOpened || FileGridDevice.isDevNull(file)) {
+            return "";
+        }
+        try {
+            return new String(file.readAllBytes(), StandardCharsets.UTF_8) + suffix;
+        } catch (IOException e) {
+            throw RError.error(RError.NO_CALLER, Message.GENERIC, "Cannot read SVG file " + filename + ": " + e.getMessage());
+        }
     }
 
     @Override
     public void openNewPage() {
         // We stay compatible with GnuR: opening new page wipes out what has been drawn without
         // saving it anywhere.
-        data.setLength(0);
+        if (streaming) {
+            // truncates the file
+            TruffleFile file = RContext.getInstance().getSafeTruffleFile(filename);
+            data.open(FileGridDevice.isDevNull(file) ? null : file);
+        } else {
+            data.reset();
+        }
         cachedCtx = null;
+        pageOpened = true;
         data.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
         data.append("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">\n");
-        append("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' version='1.1' viewBox='0 0 %d %d' style='fill:transparent'>\n",
-                        trRound(width),
-                        trRound(height));
+        data.append("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' version='1.1' viewBox='0 0 ");
+        data.append(trRound(width)).append(' ').append(trRound(height)).append("' style='fill:transparent'>\n");
     }
 
     @Override
@@ -215,29 +265,37 @@ public class SVGDevice implements GridDevice, FileGridDevice {
     }
 
     private void saveFile() throws DeviceCloseException {
-        closeSVGDocument(data);
+        closeSVGDocument();
+        if (streaming && pageOpened) {
+            IOException error = data.close();
+            if (error != null) {
+                throw new DeviceCloseException(error);
+            }
+            return;
+        }
         try {
             TruffleFile file = RContext.getInstance().getSafeTruffleFile(filename);
             if (FileGridDevice.isDevNull(file)) {
                 return;
             }
-            try (OutputStream stream = file.newOutputStream()) {
-                stream.write(data.toString().getBytes(StandardCharsets.UTF_8));
+            try (Writer out = new OutputStreamWriter(file.newOutputStream(), StandardCharsets.UTF_8)) {
+                data.writeTo(out);
             }
         } catch (IOException e) {
             throw new DeviceCloseException(e);
         }
     }
 
-    private void closeSVGDocument(StringBuilder sb) {
-        if (sb.length() == 0) {
-            return;
-        }
-        if (cachedCtx != null) {
-            // see #appendStyle
-            sb.append("</g>");
+    private void closeSVGDocument() {
+        data.append(closingTags());
+    }
+
+    private String closingTags() {
+        if (!pageOpened) {
+            return "";
         }
-        sb.append("</svg>");
+        // see #appendStyle
+        return cachedCtx != null ? "</g></svg>" : "</svg>";
     }
 
     // closes opened <g> tag if necessary
@@ -354,14 +412,10 @@ public class SVGDevice implements GridDevice, FileGridDevice {
             data.append(GridColorUtils.getHexDigit(color.getBlue()));
         } else {
             data.append("rgb(").append(color.getRed()).append(',').append(color.getGreen()).append(',').append(color.getBlue()).append(')').append(';');
-            data.append(prefix).append("-opacity:").append(DECIMAL_FORMAT.format(color.getAlpha() / 255d));
+            data.append(prefix).append("-opacity:").appendFixed3(color.getAlpha() / 255d);
         }
     }
 
-    private void append(String fmt, Object... args) {
-        data.append(Utils.stringFormat(fmt, args));
-    }
-
     private void appendTransform(int a, int b, int c) {
         data.append(" transform='rotate(").append(a).append(',').append(b).append(',').append(c).append(")'");
     }
@@ -387,7 +441,7 @@ public class SVGDevice implements GridDevice, FileGridDevice {
                         ctx1.getLineMitre() == ctx2.getLineMitre());
     }
 
-    private static void xmlEncodeAppend(StringBuilder result, String text) {
+    private static void xmlEncodeAppend(SVGBuffer result, String text) {
         for (int i = 0; i < text.length(); i++) {
             switch (text.charAt(i)) {
                 case '>':
@@ -411,6 +465,202 @@ public class SVGDevice implements GridDevice, FileGridDevice {
         }
     }
 
+    /**
+     * Character buffer that formats numbers without intermediate strings. In the streaming mode it
+     * is written through to the file whenever it fills up, otherwise it grows to hold the whole
+     * page.
+     */
+    private static final class SVGBuffer {
+        private final boolean streaming;
+        private char[] buf;
+        private int length;
+
+        /**
+         * File of the current page in the streaming mode. If {@code null}, the output is discarded,
+         * e.g. for {@code /dev/null} or after a write error.
+         */
+        private Writer writer;
+        private IOException error;
+
+        SVGBuffer(boolean streaming) {
+            this.streaming = streaming;
+            this.buf = new char[streaming ? STREAM_BUFFER_SIZE : 1024];
+        }
+
+        void reset() {
+            length = 0;
+        }
+
+        /**
+         * Starts writing to the given file, the output written to the previous file so far is left
+         * as it is.
+         */
+        void open(TruffleFile file) {
+            closeWriter();
+            length = 0;
+            error = null;
+            if (file != null) {
+                try {
+                    writer = new OutputStreamWriter(file.newOutputStream(), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+
+        void flush() {
+            writeBuffer();
+            if (writer != null) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        /**
+         * Writes the rest of the buffer and closes the file.
+         *
+         * @return the first error that occurred while writing the file or {@code null}.
+         */
+        IOException close() {
+            writeBuffer();
+            closeWriter();
+            IOException result = error;
+            error = null;
+            return result;
+        }
+
+        private void closeWriter() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+                writer = null;
+            }
+        }
+
+        private void fail(IOException e) {
+            if (error == null) {
+                error = e;
+            }
+            closeWriter();
+        }
+
+        private void writeBuffer() {
+            if (writer != null && length > 0) {
+                try {
+                    writer.write(buf, 0, length);
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+            length = 0;
+        }
+
+        private void ensureCapacity(int n) {
+            if (length + n > buf.length) {
+                if (streaming) {
+                    writeBuffer();
+                }
+                if (length + n > buf.length) {
+                    buf = Arrays.copyOf(buf, Math.max(length + n, buf.length << 1));
+                }
+            }
+        }
+
+        SVGBuffer append(char c) {
+            ensureCapacity(1);
+            buf[length++] = c;
+            return this;
+        }
+
+        SVGBuffer append(String str) {
+            int len = str.length();
+            if (streaming && len > buf.length) {
+                // e.g. encoded raster images are not copied into the buffer
+                writeBuffer();
+                if (writer != null) {
+                    try {
+                        writer.write(str);
+                    } catch (IOException e) {
+                        fail(e);
+                    }
+                }
+                return this;
+            }
+            ensureCapacity(len);
+            str.getChars(0, len, buf, length);
+            length += len;
+            return this;
+        }
+
+        SVGBuffer append(int value) {
+            return append((long) value);
+        }
+
+        SVGBuffer append(long value) {
+            if (value == Long.MIN_VALUE) {
+                return append(Long.toString(value));
+            }
+            ensureCapacity(20);
+            long v = value;
+            if (v < 0) {
+                buf[length++] = '-';
+                v = -v;
+            }
+            int start = length;
+            do {
+                buf[length++] = (char) ('0' + v % 10);
+                v /= 10;
+            } while (v != 0);
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                char c = buf[i];
+                buf[i] = buf[j];
+                buf[j] = c;
+            }
+            return this;
+        }
+
+        /**
+         * Appends the value like {@link Double#toString(double)}. Only used for line and font style
+         * attributes, the coordinates are rounded to integers.
+         */
+        SVGBuffer append(double value) {
+            return append(Double.toString(value));
+        }
+
+        /**
+         * Appends non-negative value with exactly three decimal digits, like the {@code "0.000"}
+         * decimal format.
+         */
+        SVGBuffer appendFixed3(double value) {
+            assert value >= 0 : value;
+            long scaled = Math.round(value * 1000);
+            append(scaled / 1000).append('.');
+            int fraction = (int) (scaled % 1000);
+            ensureCapacity(3);
+            buf[length++] = (char) ('0' + fraction / 100);
+            buf[length++] = (char) ('0' + fraction / 10 % 10);
+            buf[length++] = (char) ('0' + fraction % 10);
+            return this;
+        }
+
+        void writeTo(Writer out) throws IOException {
+            out.write(buf, 0, length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, 0, length);
+        }
+    }
+
     private static final class Bitmap {
         private static final int FILE_HEADER_SIZE = 14;
         private static final int IMAGE_HEADER_SIZE = 40;
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2017, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2017, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -27,10 +27,14 @@ import static java.awt.image.BufferedImage.TYPE_INT_RGB;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 import com.oracle.truffle.api.TruffleFile;
 import com.oracle.truffle.r.library.fastrGrid.device.FileGridDevice;
@@ -87,7 +91,11 @@ public final class BufferedImageDevice extends Graphics2DDevice implements FileG
                 // following Image.write are not atomic.
                 throw new DeviceCloseException(new FileNotFoundException("Path " + filename + " does not exist"));
             }
-            ImageIO.write(image, fileType, file.newOutputStream());
+            // The stream must be closed, otherwise rendering many plots runs out of file handles.
+            // The memory cache avoids a temporary file per image that ImageIO would create.
+            try (OutputStream out = new BufferedOutputStream(file.newOutputStream()); ImageOutputStream imageOut = new MemoryCacheImageOutputStream(out)) {
+                ImageIO.write(image, fileType, imageOut);
+            }
         } catch (IOException e) {
             throw new DeviceCloseException(e);
         } catch (NullPointerException npe) {
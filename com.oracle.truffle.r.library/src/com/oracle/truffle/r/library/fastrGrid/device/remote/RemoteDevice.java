@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2018, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -32,6 +32,7 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URL;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.Map;
@@ -78,6 +79,11 @@ public final class RemoteDevice implements GridDevice {
     public static final byte GET_STRING_HEIGHT = RESULT_MASK | 17;
     public static final byte CREATE_DRAWING_CONTEXT = RESULT_MASK | 18;
     public static final byte RELEASE_DRAWING_CONTEXT = 19;
+    /**
+     * Sequence of commands executed by the server in the given order until the end of the request.
+     * Only the last command of a batch may return a result and it becomes the result of the batch.
+     */
+    public static final byte BATCH = 20;
 
     /** Status is sent back from server as first byte of the response stream. */
     public static final byte STATUS_OK = 0;
@@ -94,8 +100,29 @@ public final class RemoteDevice implements GridDevice {
 
     private static final String SERVER_JAR_NAME = "grid-device-remote-server.jar";
 
+    /**
+     * Pending commands are sent once the batch grows over this size even without a flush point.
+     */
+    private static final int BATCH_FLUSH_SIZE = 1 << 16;
+
+    /**
+     * Pending commands are sent by the queue worker when no flush point comes within this delay,
+     * e.g. when the plot is complete and R waits for the user input.
+     */
+    private static final int BATCH_FLUSH_DELAY = 20; // in ms
+
     private static LinkedBlockingDeque<RemoteRequest> queue = new LinkedBlockingDeque<>();
 
+    /**
+     * Commands not sent to the server yet. Drawing commands are collected here and sent as a single
+     * {@link #BATCH} request at flush points, i.e. when a new page is opened, the device is flushed
+     * or a command needs a result from the server.
+     */
+    private static final RemoteDeviceDataExchange batchEncoder = new RemoteDeviceDataExchange();
+
+    /** Wakes up the queue worker when the batch becomes non-empty. */
+    private static final RemoteRequest BATCH_PENDING = new RemoteRequest(new byte[0]);
+
     private static Thread queueWorker;
 
     private static ReferenceQueue<DrawingContext> drawingContextRefQueue = new ReferenceQueue<>();
@@ -143,20 +170,33 @@ public final class RemoteDevice implements GridDevice {
     private static void checkQueueInited(RContext context) {
         if (queueWorker == null) {
             Runnable queueWorkerRun = new Runnable() {
+                private final URL commandURL = commandURL();
+
                 @Override
                 public void run() {
                     while (true) {
                         RemoteRequest request;
                         try {
                             request = queue.take();
+                            if (request == BATCH_PENDING) {
+                                // Give the evaluation a chance to reach a flush point
+                                request = queue.poll(BATCH_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+                                if (request == null) {
+                                    request = takeBatch();
+                                }
+                                if (request == null) {
+                                    continue;
+                                }
+                            }
                         } catch (InterruptedException ex) {
                             break;
                         }
 
                         do {
                             try {
-                                String url = "http://localhost:" + SERVER_PORT + COMMAND_HANDLER;
-                                HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+                                // Connections to the server are kept alive and reused by
+                                // HttpURLConnection as long as the response is read completely
+                                HttpURLConnection conn = (HttpURLConnection) commandURL.openConnection();
                                 sendRequest(request, conn);
                             } catch (IOException ex) {
                                 if (!checkServerConnectable(context)) {
@@ -181,10 +221,13 @@ public final class RemoteDevice implements GridDevice {
                     while (true) {
                         try {
                             DrawingContextWeakRef ref = (DrawingContextWeakRef) drawingContextRefQueue.remove();
+                            if (ref.getContextId() == -1) { // Already released by device close
+                                continue;
+                            }
                             assert (paramsEncoder.isEmpty());
                             paramsEncoder.writeByte(RELEASE_DRAWING_CONTEXT);
-                            paramsEncoder.writeInt(ref.getContextId());
-                            addRequestImpl(paramsEncoder.resetWrite());
+                            paramsEncoder.writeVarInt(ref.getContextId());
+                            addRequestImpl(paramsEncoder, false);
                             if (log.isLoggable(Level.FINE)) {
                                 log.fine("Drawing context with contextRefIHC=" + System.identityHashCode(ref) + " and id=" + ref.getContextId() + " released.");
                             }
@@ -199,6 +242,14 @@ public final class RemoteDevice implements GridDevice {
         }
     }
 
+    private static URL commandURL() {
+        try {
+            return new URL("http://localhost:" + SERVER_PORT + COMMAND_HANDLER);
+        } catch (IOException ex) {
+            throw new RInternalError(ex, "Invalid remote grid server URL.");
+        }
+    }
+
     @SuppressFBWarnings(value = "LI_LAZY_INIT_STATIC", justification = "one-time initialization")
     private static boolean checkServerConnectable(RContext context) {
         for (int i = SERVER_CONNECT_RETRIES - 1; i >= 0; i--) {
@@ -267,6 +318,19 @@ public final class RemoteDevice implements GridDevice {
         return new RInternalError("Grid Server communication error.");
     }
 
+    private static RInternalError serverError(RemoteDeviceDataExchange resultDecoder) {
+        String message = readServerError(resultDecoder);
+        return message == null ? serverError() : new RInternalError("Grid Server communication error: " + message);
+    }
+
+    /**
+     * Reads the message that follows {@link #STATUS_SERVER_ERROR} in a response, it describes which
+     * command of a {@link #BATCH} failed. Returns {@code null} if the server did not send any.
+     */
+    public static String readServerError(RemoteDeviceDataExchange resultDecoder) {
+        return resultDecoder.isReadFinished() ? null : resultDecoder.readString();
+    }
+
     private RemoteDevice(RContext context, DeviceType type, String filename, String fileType, int width, int height) throws NotSupportedImageFormatException {
         checkQueueInited(context);
         paramsEncoder.writeByte(CREATE_IMAGE);
@@ -292,7 +356,7 @@ public final class RemoteDevice implements GridDevice {
         assert (paramsEncoder.isEmpty());
         paramsEncoder.writeByte(opId);
         assert (remoteDeviceId != 0) : "Remote device not obtained yet.";
-        paramsEncoder.writeInt(remoteDeviceId);
+        paramsEncoder.writeVarInt(remoteDeviceId);
     }
 
     private boolean encodeOpAndDrawingContext(byte opId, DrawingContext ctx) {
@@ -329,21 +393,21 @@ public final class RemoteDevice implements GridDevice {
             }
         }
         encodeOp(opId);
-        paramsEncoder.writeInt(ctxRef.getContextId());
+        paramsEncoder.writeVarInt(ctxRef.getContextId());
         return true;
     }
 
     @TruffleBoundary
     RemoteDeviceDataExchange addResultRequest(boolean decodeReturnStatus) {
-        RemoteRequest request = addRequestImpl(paramsEncoder.resetWrite());
-        assert (request.params[0] & RESULT_MASK) == RESULT_MASK : "Unexpected no-result command-id " + request.params[0];
+        // The result command is the last one of the batch so its result is the batch result
+        RemoteRequest request = addRequestImpl(paramsEncoder, true);
         while (true) {
             synchronized (request) {
                 if (request.isFinished()) {
                     RemoteDeviceDataExchange resultDecoder = request.resultDecoder();
                     if (decodeReturnStatus) {
                         if (resultDecoder.readByte() != STATUS_OK) {
-                            throw serverError();
+                            throw serverError(resultDecoder);
                         }
                     }
                     return resultDecoder;
@@ -361,22 +425,53 @@ public final class RemoteDevice implements GridDevice {
     }
 
     @TruffleBoundary
-    void addNoResultRequest() {
-        RemoteRequest request = addRequestImpl(paramsEncoder.resetWrite());
-        assert (request.params[0] & RESULT_MASK) == 0 : "Unexpected result command-id " + request.params[0];
+    void addNoResultRequest(boolean flush) {
+        addRequestImpl(paramsEncoder, flush);
     }
 
-    private static RemoteRequest addRequestImpl(byte[] params) {
-        RemoteRequest request = new RemoteRequest(params);
-        queue.add(request);
-        return request;
+    /**
+     * Moves the command written to {@code params} into the batch of pending commands. The batch is
+     * queued for sending if {@code flush} is {@code true} or if it grew too large.
+     *
+     * @return the queued batch request or {@code null} if the command is still pending.
+     */
+    private static RemoteRequest addRequestImpl(RemoteDeviceDataExchange params, boolean flush) {
+        synchronized (batchEncoder) {
+            if (batchEncoder.isEmpty()) {
+                batchEncoder.writeByte(BATCH);
+                if (!flush) {
+                    queue.add(BATCH_PENDING);
+                }
+            }
+            params.transferTo(batchEncoder);
+            if (flush || batchEncoder.size() >= BATCH_FLUSH_SIZE) {
+                RemoteRequest request = new RemoteRequest(batchEncoder.resetWrite());
+                queue.add(request);
+                return request;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Called by the queue worker to send the pending commands after {@link #BATCH_FLUSH_DELAY}.
+     * Batches queued in the meantime must be sent first, so nothing is taken in such case.
+     */
+    private static RemoteRequest takeBatch() {
+        synchronized (batchEncoder) {
+            if (batchEncoder.isEmpty() || !queue.isEmpty()) {
+                return null;
+            }
+            return new RemoteRequest(batchEncoder.resetWrite());
+        }
     }
 
     private static void sendRequest(RemoteRequest request, HttpURLConnection conn) throws IOException {
-        conn.setRequestMethod("GET");
+        byte[] osBuf = request.params;
+        conn.setRequestMethod("POST");
         conn.setRequestProperty("User-Agent", "R-Grid-Remote-Client");
         conn.setDoOutput(true);
-        byte[] osBuf = request.params;
+        conn.setFixedLengthStreamingMode(osBuf.length);
         if (log.isLoggable(Level.FINER)) {
             log.finer(RemoteDeviceDataExchange.bytesToString("Data to server:", osBuf, osBuf.length));
         }
@@ -409,6 +504,12 @@ public final class RemoteDevice implements GridDevice {
             } else {
                 result = isBuf;
             }
+            if (off > 0 && result[0] == STATUS_SERVER_ERROR) {
+                // also reported for batches without a result command, nobody else decodes those
+                RemoteDeviceDataExchange resultDecoder = new RemoteDeviceDataExchange(result, off);
+                resultDecoder.readByte();
+                log.warning("Grid server error: " + readServerError(resultDecoder));
+            }
             request.finish(result, null);
         }
     }
@@ -417,7 +518,21 @@ public final class RemoteDevice implements GridDevice {
     @TruffleBoundary
     public void openNewPage() {
         encodeOp(OPEN_NEW_PAGE);
-        addNoResultRequest();
+        addNoResultRequest(true);
+    }
+
+    @Override
+    @TruffleBoundary
+    public void hold() {
+        encodeOp(HOLD);
+        addNoResultRequest(false);
+    }
+
+    @Override
+    @TruffleBoundary
+    public void flush() {
+        encodeOp(FLUSH);
+        addNoResultRequest(true);
     }
 
     @Override
@@ -458,7 +573,7 @@ public final class RemoteDevice implements GridDevice {
             paramsEncoder.writeDouble(width);
             paramsEncoder.writeDouble(height);
             paramsEncoder.writeDouble(rotationAnticlockWise);
-            addNoResultRequest();
+            addNoResultRequest(false);
         } else {
             throw serverError();
         }
@@ -468,11 +583,10 @@ public final class RemoteDevice implements GridDevice {
     @TruffleBoundary
     public void drawPolyLines(DrawingContext ctx, double[] x, double[] y, int startIndex, int length) {
         if (encodeOpAndDrawingContext(DRAW_POLY_LINES, ctx)) {
-            paramsEncoder.writeDoubleArray(x);
-            paramsEncoder.writeDoubleArray(y);
-            paramsEncoder.writeInt(startIndex);
-            paramsEncoder.writeInt(length);
-            addNoResultRequest();
+            // Only the drawn part of the coordinates is sent
+            paramsEncoder.writeDoubleArray(x, startIndex, length);
+            paramsEncoder.writeDoubleArray(y, startIndex, length);
+            addNoResultRequest(false);
         } else {
             throw serverError();
         }
@@ -482,11 +596,10 @@ public final class RemoteDevice implements GridDevice {
     @TruffleBoundary
     public void drawPolygon(DrawingContext ctx, double[] x, double[] y, int startIndex, int length) {
         if (encodeOpAndDrawingContext(DRAW_POLYGON, ctx)) {
-            paramsEncoder.writeDoubleArray(x);
-            paramsEncoder.writeDoubleArray(y);
-            paramsEncoder.writeInt(startIndex);
-            paramsEncoder.writeInt(length);
-            addNoResultRequest();
+            // Only the drawn part of the coordinates is sent
+            paramsEncoder.writeDoubleArray(x, startIndex, length);
+            paramsEncoder.writeDoubleArray(y, startIndex, length);
+            addNoResultRequest(false);
         } else {
             throw serverError();
         }
@@ -499,7 +612,7 @@ public final class RemoteDevice implements GridDevice {
             paramsEncoder.writeDouble(centerX);
             paramsEncoder.writeDouble(centerY);
             paramsEncoder.writeDouble(radius);
-            addNoResultRequest();
+            addNoResultRequest(false);
         } else {
             throw serverError();
         }
@@ -516,7 +629,7 @@ public final class RemoteDevice implements GridDevice {
         paramsEncoder.writeIntArray(pixels);
         paramsEncoder.writeInt(pixelsColumnsCount);
         paramsEncoder.writeInt(interpolation.ordinal());
-        addNoResultRequest();
+        addNoResultRequest(false);
     }
 
     @Override
@@ -527,7 +640,7 @@ public final class RemoteDevice implements GridDevice {
             paramsEncoder.writeDouble(bottomY);
             paramsEncoder.writeDouble(rotationAnticlockWise);
             paramsEncoder.writeString(text);
-            addNoResultRequest();
+            addNoResultRequest(false);
         } else {
             throw serverError();
         }
@@ -610,9 +723,7 @@ public final class RemoteDevice implements GridDevice {
         void finish(byte[] resultArg, Exception errorCauseArg) {
             assert (this.result == null) : "Result already assigned";
             byte[] resultArg2 = resultArg;
-            if (resultArg2 != null) {
-                assert (params[0] & RESULT_MASK) != 0 : "Attempt to assign result to non-result request";
-            } else {
+            if (resultArg2 == null) {
                 resultArg2 = EMPTY_RESULT;
             }
             synchronized (this) {
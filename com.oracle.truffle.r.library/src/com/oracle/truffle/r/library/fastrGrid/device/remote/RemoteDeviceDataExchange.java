@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2018, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -84,6 +84,34 @@ public class RemoteDeviceDataExchange {
         }
     }
 
+    /**
+     * Writes a non-negative value seven bits per byte, so that small values such as device and
+     * drawing context ids take a single byte.
+     */
+    public void writeVarInt(int value) {
+        assert value >= 0 : "Negative value " + value;
+        ensureCapacity(5);
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            buf[index++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[index++] = (byte) v;
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            ensureData(1);
+            b = buf[index++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
     public int[] readIntArray() {
         int len = readInt();
         if (len == -1) {
@@ -145,6 +173,7 @@ public class RemoteDeviceDataExchange {
     }
 
     public double readDouble() {
+        ensureData(8);
         long bits = ((long) (buf[index++] & 0xff) << 56 | (long) (buf[index++] & 0xff) << 48 | (long) (buf[index++] & 0xff) << 40 | (long) (buf[index++] & 0xff) << 32 |
                         (long) (buf[index++] & 0xff) << 24 | (long) (buf[index++] & 0xff) << 16 | (long) (buf[index++] & 0xff) << 8 | buf[index++] & 0xff);
         return Double.longBitsToDouble(bits);
@@ -152,17 +181,24 @@ public class RemoteDeviceDataExchange {
 
     public void writeDoubleArray(double[] value) {
         if (value != null) {
-            int len = value.length;
-            ensureCapacity(4 + (len << 3));
-            writeInt(len);
-            for (int i = 0; i < len; i++) {
-                writeDouble(value[i]);
-            }
+            writeDoubleArray(value, 0, value.length);
         } else {
             writeInt(-1);
         }
     }
 
+    /**
+     * Writes {@code len} elements starting at {@code from} so that they are read back by
+     * {@link #readDoubleArray()} as an array of length {@code len}.
+     */
+    public void writeDoubleArray(double[] value, int from, int len) {
+        ensureCapacity(4 + (len << 3));
+        writeInt(len);
+        for (int i = from; i < from + len; i++) {
+            writeDouble(value[i]);
+        }
+    }
+
     public double[] readDoubleArray() {
         int len = readInt();
         if (len == -1) {
@@ -192,7 +228,7 @@ public class RemoteDeviceDataExchange {
                     buf[index++] = (byte) value.charAt(i);
                 }
             } else {
-                byte[] bytes = value.getBytes();
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
                 int bytesLen = bytes.length;
                 ensureCapacity(bytesLen + 4);
                 writeInt(bytesLen);
@@ -209,6 +245,7 @@ public class RemoteDeviceDataExchange {
         if (strLen == -1) {
             return null;
         }
+        ensureData(strLen);
         boolean simple = true;
         for (int i = 0; i < strLen; i++) {
             byte b = buf[index + i];
@@ -242,12 +279,27 @@ public class RemoteDeviceDataExchange {
         return result;
     }
 
+    /**
+     * Append all bytes written so far to {@code dst} and then reset write index to zero for fresh
+     * writing.
+     */
+    public void transferTo(RemoteDeviceDataExchange dst) {
+        dst.ensureCapacity(index);
+        System.arraycopy(buf, 0, dst.buf, dst.index, index);
+        dst.index += index;
+        index = 0;
+    }
+
+    public int size() {
+        return index;
+    }
+
     public boolean isEmpty() {
         return (index == 0);
     }
 
     public boolean isReadFinished() {
-        return (index == buf.length);
+        return (index == limit);
     }
 
     private void ensureCapacity(int nBytes) {
@@ -261,7 +313,7 @@ public class RemoteDeviceDataExchange {
 
     private void ensureData(int nBytes) {
         if (index + nBytes > limit) {
-            throw RInternalError.unimplemented("Unexpected EOF: " + (nBytes - limit) + " more bytes expected.");
+            throw RInternalError.unimplemented("Unexpected EOF: " + (index + nBytes - limit) + " more bytes expected.");
         }
     }
 
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2016, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -22,10 +22,17 @@
  */
 package com.oracle.truffle.r.library.parallel;
 
+import static com.oracle.truffle.r.nodes.builtin.CastBuilder.Predef.integerValue;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.r.nodes.builtin.RExternalBuiltinNode;
+import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.context.RContext;
+import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RIntVector;
+import com.oracle.truffle.r.runtime.rng.lecuyer.LecuyerCMRG;
 
 /**
  * The .Call support for the parallel package.
@@ -37,4 +44,33 @@ public class ParallelFunctions {
             return RRuntime.asLogical(RContext.getInstance().getParent() != null);
         }
     }
+
+    /**
+     * Implements {@code nextStream} and {@code nextSubStream} used by {@code nextRNGStream} and
+     * {@code nextRNGSubStream} in Java, see {@link LecuyerCMRG}.
+     */
+    public abstract static class NextStream extends RExternalBuiltinNode.Arg1 {
+
+        private final boolean subStream;
+
+        protected NextStream(boolean subStream) {
+            this.subStream = subStream;
+        }
+
+        static {
+            Casts casts = new Casts(NextStream.class);
+            casts.arg(0).mustBe(integerValue(), RError.Message.INVALID_VALUE, "seed");
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected RIntVector nextStream(RIntVector seed) {
+            if (seed.getLength() < LecuyerCMRG.SEED_LENGTH) {
+                throw error(RError.Message.INVALID_VALUE, "seed");
+            }
+            int[] seeds = seed.getReadonlyData();
+            int[] next = subStream ? LecuyerCMRG.nextSubStream(seeds) : LecuyerCMRG.nextStream(seeds);
+            return RDataFactory.createIntVector(next, RDataFactory.COMPLETE_VECTOR);
+        }
+    }
 }
@@ -34,15 +34,17 @@ import com.oracle.truffle.r.runtime.data.nodes.attributes.SpecialAttributesFunct
 import com.oracle.truffle.r.runtime.data.nodes.attributes.SpecialAttributesFunctionsFactory.SetDimNamesAttributeNodeGen;
 import com.oracle.truffle.r.nodes.builtin.RExternalBuiltinNode;
 import com.oracle.truffle.r.nodes.unary.IsFactorNode;
+import com.oracle.truffle.r.runtime.DSLConfig;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RError.Message;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RDoubleArrayVectorData;
 import com.oracle.truffle.r.runtime.data.RDoubleVector;
 import com.oracle.truffle.r.runtime.data.RList;
 import com.oracle.truffle.r.runtime.data.RNull;
 import com.oracle.truffle.r.runtime.data.RSharingAttributeStorage;
-import com.oracle.truffle.r.runtime.data.nodes.GetReadonlyData;
+import com.oracle.truffle.r.runtime.data.VectorDataLibrary;
 import com.oracle.truffle.r.runtime.nmath.RMath;
 
 /*
@@ -777,7 +779,7 @@ public abstract class Covcor extends RExternalBuiltinNode.Arg4 {
             error("'x' is empty");
         }
 
-        double[] xData = getReadonlyDataNode.execute(x);
+        double[] xData = getReadonlyData(x);
         double[] ans = new double[ncx * ncy];
         boolean[] sd_0 = new boolean[1];
 
@@ -845,7 +847,7 @@ public abstract class Covcor extends RExternalBuiltinNode.Arg4 {
 
     private void evaluateWithY(RDoubleVector y, boolean kendall, boolean cor, int n, int ncx, int ncy, boolean na_fail, boolean everything, boolean empty_err, boolean pair, double[] xData,
                     double[] ans, boolean[] sd_0) {
-        double[] yData = getReadonlyDataNode.execute(y);
+        double[] yData = getReadonlyData(y);
         if (everything) {
             evaluateWithYEverything(kendall, cor, n, ncx, ncy, xData, ans, sd_0, yData);
         } else if (!pair) { /* all | complete */
@@ -942,19 +944,36 @@ public abstract class Covcor extends RExternalBuiltinNode.Arg4 {
 
     @Specialization
     public Object call(RDoubleVector x, @SuppressWarnings("unused") RNull y, int method, boolean iskendall) {
-        return corcov(x.materialize(), null, methodValueProfile.profile(method), iskendall);
+        return corcov(x, null, methodValueProfile.profile(method), iskendall);
     }
 
     @Specialization
     public Object call(RDoubleVector x, RDoubleVector y, int method, boolean iskendall) {
-        return corcov(x.materialize(), y.materialize(), methodValueProfile.profile(method), iskendall);
+        return corcov(x, y, methodValueProfile.profile(method), iskendall);
+    }
+
+    /**
+     * Returns the data of the vector as an array, which is shared with the vector if it is backed
+     * by a Java array. Other representations, e.g. sequences, native memory or ALTREP, are copied
+     * in one region without materializing the vector itself.
+     */
+    private double[] getReadonlyData(RDoubleVector vector) {
+        Object data = vector.getData();
+        if (arrayDataProfile.profile(data instanceof RDoubleArrayVectorData)) {
+            return ((RDoubleArrayVectorData) data).getReadonlyDoubleData();
+        }
+        double[] result = new double[dataLib.getLength(data)];
+        dataLib.readDoubleRegion(data, 0, result.length, result);
+        return result;
     }
 
     private final BranchProfile naInRes = BranchProfile.create();
     private final ConditionProfile matrixProfile = ConditionProfile.createBinaryProfile();
     private final PrimitiveValueProfile methodValueProfile = PrimitiveValueProfile.createEqualityProfile();
 
-    @Child private GetReadonlyData.Double getReadonlyDataNode = GetReadonlyData.Double.create();
+    private final ConditionProfile arrayDataProfile = ConditionProfile.createBinaryProfile();
+
+    @Child private VectorDataLibrary dataLib = VectorDataLibrary.getFactory().createDispatched(DSLConfig.getTypedVectorDataLibraryCacheSize());
     @Child private GetDimAttributeNode getDimsXNode = GetDimAttributeNode.create();
     @Child private GetDimAttributeNode getDimsYNode = GetDimAttributeNode.create();
     @Child private GetDimNamesAttributeNode getDimsNamesXNode = GetDimNamesAttributeNode.create();
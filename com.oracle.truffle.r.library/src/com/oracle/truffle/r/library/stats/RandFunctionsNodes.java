@@ -39,6 +39,7 @@ import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.library.CachedLibrary;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.profiles.BranchProfile;
+import com.oracle.truffle.api.profiles.ConditionProfile;
 import com.oracle.truffle.api.profiles.LoopConditionProfile;
 import com.oracle.truffle.r.library.stats.RandFunctionsNodesFactory.ConvertToLengthNodeGen;
 import com.oracle.truffle.r.library.stats.RandFunctionsNodesFactory.RandFunction1NodeGen;
@@ -66,6 +67,7 @@ import com.oracle.truffle.r.runtime.data.nodes.VectorAccess.SequentialIterator;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandFunction1_Double;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandFunction2_Double;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandFunction3_DoubleBase;
+import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandFunctionWithBlocks;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandomNumberProvider;
 import com.oracle.truffle.r.runtime.nodes.RBaseNode;
 import com.oracle.truffle.r.runtime.nodes.RBaseNodeWithWarnings;
@@ -251,6 +253,8 @@ public final class RandFunctionsNodes {
 
     protected abstract static class RandFunctionDoubleExecutorNode extends RandFunctionIterator {
 
+        private final ConditionProfile blocksProfile = ConditionProfile.createBinaryProfile();
+
         protected RandFunctionDoubleExecutorNode(Supplier<? extends RandFunction3_DoubleBase> functionFactory) {
             super(functionFactory);
         }
@@ -272,6 +276,19 @@ public final class RandFunctionsNodes {
                 return RDataFactory.createDoubleVector(nansResult, false);
             }
 
+            RandomNumberProvider rand = randProvider;
+            int minUniforms = 0;
+            if (function instanceof RandFunctionWithBlocks && aAccess.getLength(aIter) == 1 && bAccess.getLength(bIter) == 1 && cAccess.getLength(cIter) == 1) {
+                // with scalar parameters the iterators stay on the first element
+                aAccess.nextWithWrap(aIter);
+                bAccess.nextWithWrap(bIter);
+                cAccess.nextWithWrap(cIter);
+                minUniforms = ((RandFunctionWithBlocks) function).minUniformsPerValue(aAccess.getDouble(aIter), bAccess.getDouble(bIter), cAccess.getDouble(cIter), randProvider);
+                if (blocksProfile.profile(minUniforms > 0)) {
+                    rand = randProvider.withBlock((long) length * minUniforms);
+                }
+            }
+
             boolean nans = false;
             double[] result = new double[length];
             loopConditionProfile.profileCounted(length);
@@ -279,7 +296,10 @@ public final class RandFunctionsNodes {
                 aAccess.nextWithWrap(aIter);
                 bAccess.nextWithWrap(bIter);
                 cAccess.nextWithWrap(cIter);
-                double value = function.execute(aAccess.getDouble(aIter), bAccess.getDouble(bIter), cAccess.getDouble(cIter), randProvider);
+                if (minUniforms > 0) {
+                    rand.atLeast((long) (length - i) * minUniforms);
+                }
+                double value = function.execute(aAccess.getDouble(aIter), bAccess.getDouble(bIter), cAccess.getDouble(cIter), rand);
                 if (Double.isNaN(value) || RRuntime.isNA(value)) {
                     nan.enter();
                     nans = true;
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2016, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2016, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -27,35 +27,38 @@ import static com.oracle.truffle.r.nodes.builtin.CastBuilder.Predef.singleElemen
 import static com.oracle.truffle.r.nodes.builtin.CastBuilder.Predef.stringValue;
 import static com.oracle.truffle.r.nodes.builtin.CastBuilder.Predef.toBoolean;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.function.Function;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.ThreadLocalAction;
+import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.TruffleLanguage;
 import com.oracle.truffle.api.dsl.CachedContext;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.frame.Frame;
+import com.oracle.truffle.api.frame.FrameInstance;
 import com.oracle.truffle.api.frame.FrameInstance.FrameAccess;
-import com.oracle.truffle.api.frame.VirtualFrame;
-import com.oracle.truffle.api.instrumentation.EventContext;
-import com.oracle.truffle.api.instrumentation.ExecutionEventListener;
-import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
-import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.frame.FrameInstanceVisitor;
+import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.RootNode;
 import com.oracle.truffle.api.source.Source;
 import com.oracle.truffle.r.nodes.builtin.RExternalBuiltinNode;
 import com.oracle.truffle.r.nodes.function.FunctionDefinitionNode;
-import com.oracle.truffle.r.nodes.instrumentation.RInstrumentation;
 import com.oracle.truffle.r.runtime.RArguments;
 import com.oracle.truffle.r.runtime.RCaller;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RSource;
 import com.oracle.truffle.r.runtime.SuppressFBWarnings;
-import com.oracle.truffle.r.runtime.Utils;
+import com.oracle.truffle.r.runtime.context.EvalThread;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.context.TruffleRLanguage;
 import com.oracle.truffle.r.runtime.data.MemoryCopyTracer;
@@ -65,6 +68,7 @@ import com.oracle.truffle.r.runtime.data.RNull;
 import com.oracle.truffle.r.runtime.data.RObjectSize;
 import com.oracle.truffle.r.runtime.data.model.RAbstractVector;
 import com.oracle.truffle.r.runtime.instrument.InstrumentationState;
+import com.oracle.truffle.r.runtime.nodes.RBaseNode;
 import com.oracle.truffle.r.runtime.nodes.RSyntaxElement;
 import com.oracle.truffle.r.runtime.nodes.RSyntaxNode;
 import java.nio.file.StandardOpenOption;
@@ -84,6 +88,11 @@ import java.nio.file.StandardOpenOption;
  * and then the {@code N} is used in line number references of the form {@code N#L},which precede
  * the function name.
  *
+ * The stacks are sampled by a {@link ProfileThread}, which at each interval submits a
+ * {@link ThreadLocalAction} to the profiled thread and to the {@link EvalThread threads} of its
+ * child contexts. The action collects the stack when the thread reaches its next safepoint, so the
+ * profiled code is not instrumented at all. The samples are written by the profile thread as they
+ * arrive, a new file is listed just before the first sample that refers to it.
  */
 public abstract class Rprof extends RExternalBuiltinNode.Arg8 implements MemoryCopyTracer.Listener {
 
@@ -117,8 +126,9 @@ public abstract class Rprof extends RExternalBuiltinNode.Arg8 implements MemoryC
                 endProfiling();
             }
             try {
-                PrintStream out = new PrintStream(
-                                ctxRef.get().getSafeTruffleFile(filename).newOutputStream(append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING));
+                RContext context = ctxRef.get();
+                PrintStream out = new PrintStream(new BufferedOutputStream(
+                                context.getSafeTruffleFile(filename).newOutputStream(append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)));
                 if (gcProfiling) {
                     warning(RError.Message.GENERIC, "Rprof: gc profiling not supported");
                 }
@@ -129,10 +139,10 @@ public abstract class Rprof extends RExternalBuiltinNode.Arg8 implements MemoryC
                 }
                 // interval is in seconds, we convert to millis
                 long intervalInMillis = (long) (1E3 * intervalD);
-                StatementListener statementListener = new StatementListener();
-                ProfileThread profileThread = new ProfileThread(intervalInMillis, statementListener);
+                profState.initialize(out, intervalInMillis, lineProfiling, memProfiling);
+                ProfileThread profileThread = new ProfileThread(profState, context, Thread.currentThread());
                 profileThread.setDaemon(true);
-                profState.initialize(out, profileThread, statementListener, intervalInMillis, lineProfiling, memProfiling);
+                profState.profileThread = profileThread;
                 profileThread.start();
             } catch (IOException ex) {
                 throw error(RError.Message.GENERIC, String.format("Rprof: cannot open profile file '%s'", filename));
@@ -181,77 +191,236 @@ public abstract class Rprof extends RExternalBuiltinNode.Arg8 implements MemoryC
         return RSource.getPath(source);
     }
 
+    /**
+     * A stack collected by a {@link ProfileThread.SampleAction}, the first entry is the currently
+     * executed node, the others are the call sites. The memory quad is only recorded in the
+     * profiled thread, samples of child contexts have none.
+     */
+    private static final class Sample {
+        private final ArrayList<RSyntaxElement> stack;
+        private final RprofState.MemoryQuad memory;
+
+        private Sample(ArrayList<RSyntaxElement> stack, RprofState.MemoryQuad memory) {
+            this.stack = stack;
+            this.memory = memory;
+        }
+    }
+
+    /**
+     * Triggers the sampling and writes the collected samples to the output.
+     */
     private static final class ProfileThread extends Thread {
-        private final long interval;
-        private final StatementListener statementListener;
+        private final RprofState state;
+        private final RContext context;
+        private final Thread profiledThread;
+        private final HashMap<Thread, Target> targets = new HashMap<>();
+        private final ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+        private final HashMap<String, Integer> fileMap = new HashMap<>();
         private volatile boolean running = true;
+        private int tick;
 
-        private ProfileThread(long interval, StatementListener statementListener) {
-            this.interval = interval;
-            this.statementListener = statementListener;
+        private ProfileThread(RprofState state, RContext context, Thread profiledThread) {
+            super("Rprof");
+            this.state = state;
+            this.context = context;
+            this.profiledThread = profiledThread;
         }
 
         @Override
         public void run() {
             while (running) {
                 try {
-                    Thread.sleep(interval);
-                    statementListener.intervalElapsed();
+                    waitInterval();
                 } catch (InterruptedException ex) {
+                    continue;
+                }
+                if (running) {
+                    submitActions();
+                    writeSamples();
+                }
+            }
+        }
+
+        /*
+         * The output stream may be interruptible, so the thread is woken up rather than interrupted
+         * when profiling ends.
+         */
+        private synchronized void waitInterval() throws InterruptedException {
+            if (running) {
+                wait(Math.max(1, state.intervalInMillis));
+            }
+        }
+
+        private synchronized void shutdown() {
+            running = false;
+            notifyAll();
+        }
 
+        private void submitActions() {
+            tick++;
+            submit(context, profiledThread, state.memoryQuad);
+            submitChildren(context);
+            // forget the threads that have finished since the last interval
+            Iterator<Target> iterator = targets.values().iterator();
+            while (iterator.hasNext()) {
+                Target target = iterator.next();
+                if (target.tick != tick) {
+                    target.cancel();
+                    iterator.remove();
                 }
             }
         }
-    }
 
-    /**
-     * Emulates a sampling timer by checking when the sample interval rolls over and at that point
-     * collects the stack of functions.
-     */
-    private final class StatementListener implements ExecutionEventListener {
-        private final ArrayList<ArrayList<RSyntaxElement>> intervalStacks = new ArrayList<>();
-        private final ArrayList<RprofState.MemoryQuad> intervalMemory = new ArrayList<>();
-        private volatile boolean newInterval;
-
-        private StatementListener() {
-            SourceSectionFilter.Builder builder = SourceSectionFilter.newBuilder();
-            builder.tagIs(StandardTags.StatementTag.class);
-            SourceSectionFilter filter = builder.build();
-            RInstrumentation.getInstrumenter().attachExecutionEventListener(filter, this);
+        private void submitChildren(RContext parent) {
+            for (Thread thread : parent.threads.values()) {
+                if (thread instanceof EvalThread) {
+                    RContext child = ((EvalThread) thread).getContextInfo().getContext();
+                    if (child != null) {
+                        submit(child, thread, null);
+                        submitChildren(child);
+                    }
+                }
+            }
         }
 
-        private void intervalElapsed() {
-            newInterval = true;
+        private void submit(RContext ctx, Thread thread, RprofState.MemoryQuad memoryQuad) {
+            Target target = targets.get(thread);
+            if (target == null || target.context != ctx) {
+                if (target != null) {
+                    target.cancel();
+                }
+                target = new Target(ctx, memoryQuad);
+                targets.put(thread, target);
+            }
+            target.tick = tick;
+            if (target.pending) {
+                // the thread has not reached a safepoint since the last interval, e.g. it is blocked
+                return;
+            }
+            target.pending = true;
+            try {
+                target.future = ctx.getEnv().submitThreadLocal(new Thread[]{thread}, new SampleAction(target));
+            } catch (IllegalStateException | IllegalArgumentException ex) {
+                // the context is being closed
+                target.pending = false;
+            }
         }
 
-        @Override
-        public void onEnter(EventContext context, VirtualFrame frame) {
-            if (newInterval) {
-                onEnter(context);
-                newInterval = false;
+        private void writeSamples() {
+            PrintStream out = state.out();
+            Sample sample;
+            while ((sample = samples.poll()) != null) {
+                if (state.lineProfiling) {
+                    for (RSyntaxElement node : sample.stack) {
+                        String path = getPath(node);
+                        if (path != null && fileMap.get(path) == null) {
+                            int fileIndex = fileMap.size() + 1;
+                            fileMap.put(path, fileIndex);
+                            out.printf("#File %d: %s\n", fileIndex, path);
+                        }
+                    }
+                }
+                if (state.memoryProfiling) {
+                    RprofState.MemoryQuad mq = sample.memory;
+                    if (mq == null) {
+                        out.print(":0:0:0:0:");
+                    } else {
+                        out.printf(":%d:%d:%d:%d:", mq.largeV, mq.smallV, mq.nodes, mq.copied);
+                    }
+                }
+                for (RSyntaxElement node : sample.stack) {
+                    RootNode rootNode = ((RSyntaxNode) node).asRNode().getRootNode();
+                    if (rootNode instanceof FunctionDefinitionNode) {
+                        String name = rootNode.getName();
+                        if (state.lineProfiling) {
+                            Integer fileIndex = fileMap.get(getPath(node));
+                            if (fileIndex != null) {
+                                out.printf("%d#%d ", fileIndex, node.getSourceSection().getStartLine());
+                            }
+                        }
+                        out.printf("\"%s\" ", name);
+                    }
+                }
+                out.println();
             }
+            out.flush();
         }
 
-        @TruffleBoundary
-        private void onEnter(EventContext context) {
-            /* context tells here we are now, frame provides callers. */
-            ArrayList<RSyntaxElement> stack = new ArrayList<>();
-            stack.add((RSyntaxElement) context.getInstrumentedNode());
-            collectStack(stack);
-            intervalStacks.add(stack);
-            RprofState profState = RprofState.get();
-            if (profState.memoryProfiling) {
-                intervalMemory.add(profState.memoryQuad.copyAndClear());
+        /**
+         * A sampled thread. At most one action is pending per thread, so that a thread which does
+         * not reach a safepoint does not accumulate actions.
+         */
+        private static final class Target {
+            private final RContext context;
+            private final RprofState.MemoryQuad memoryQuad;
+            private volatile boolean pending;
+            private Future<Void> future;
+            private int tick;
+
+            private Target(RContext context, RprofState.MemoryQuad memoryQuad) {
+                this.context = context;
+                this.memoryQuad = memoryQuad;
+            }
+
+            private void cancel() {
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+        }
+
+        private final class SampleAction extends ThreadLocalAction {
+            private final Target target;
+
+            private SampleAction(Target target) {
+                super(false, false);
+                this.target = target;
+            }
+
+            @Override
+            protected void perform(Access access) {
+                target.pending = false;
+                if (running) {
+                    ArrayList<RSyntaxElement> stack = new ArrayList<>();
+                    RSyntaxElement current = getSyntaxNode(access.getLocation());
+                    if (current != null) {
+                        stack.add(current);
+                    }
+                    collectStack(stack);
+                    samples.add(new Sample(stack, target.memoryQuad == null ? null : target.memoryQuad.copyAndClear()));
+                }
             }
         }
 
+        private static RSyntaxElement getSyntaxNode(Node location) {
+            for (Node node = location; node != null && !(node instanceof RootNode); node = node.getParent()) {
+                if (RBaseNode.isRSyntaxNode(node) && ((RSyntaxNode) node).getSourceSection() != null) {
+                    return (RSyntaxElement) node;
+                }
+            }
+            return null;
+        }
+
         @TruffleBoundary
-        private void collectStack(final ArrayList<RSyntaxElement> stack) {
-            Utils.iterateRFrames(FrameAccess.READ_ONLY, new Function<Frame, Object>() {
+        private static void collectStack(final ArrayList<RSyntaxElement> stack) {
+            Truffle.getRuntime().iterateFrames(new FrameInstanceVisitor<Object>() {
+                boolean first = true;
 
                 @Override
-                public Object apply(Frame fIn) {
-                    Frame f = RArguments.unwrap(fIn);
+                public Object visitFrame(FrameInstance frameInstance) {
+                    Frame f = RArguments.unwrap(frameInstance.getFrame(FrameAccess.READ_ONLY));
+                    if (!RArguments.isRFrame(f)) {
+                        return null;
+                    }
+                    if (first && stack.isEmpty()) {
+                        // no statement at the safepoint location, attribute the sample to the
+                        // function itself
+                        RootNode rootNode = ((RootCallTarget) frameInstance.getCallTarget()).getRootNode();
+                        if (rootNode instanceof FunctionDefinitionNode) {
+                            stack.add((FunctionDefinitionNode) rootNode);
+                        }
+                    }
+                    first = false;
                     RCaller call = RCaller.unwrapPromiseCaller(RArguments.getCall(f));
                     if (RCaller.isValidCaller(call)) {
                         stack.add(call.getSyntaxNode());
@@ -260,14 +429,6 @@ public abstract class Rprof extends RExternalBuiltinNode.Arg8 implements MemoryC
                 }
             });
         }
-
-        @Override
-        public void onReturnValue(EventContext context, VirtualFrame frame, Object result) {
-        }
-
-        @Override
-        public void onReturnExceptional(EventContext context, VirtualFrame frame, Throwable exception) {
-        }
     }
 
     /**
@@ -276,7 +437,6 @@ public abstract class Rprof extends RExternalBuiltinNode.Arg8 implements MemoryC
      */
     private static final class RprofState extends InstrumentationState.RprofState {
         private ProfileThread profileThread;
-        private StatementListener statementListener;
         private long intervalInMillis;
         private boolean lineProfiling;
         private boolean memoryProfiling;
@@ -311,67 +471,37 @@ public abstract class Rprof extends RExternalBuiltinNode.Arg8 implements MemoryC
             return state;
         }
 
-        public void initialize(PrintStream outA, ProfileThread profileThreadA, StatementListener statementListenerA, long intervalInMillisA,
-                        boolean lineProfilingA, boolean memoryProfilingA) {
+        public void initialize(PrintStream outA, long intervalInMillisA, boolean lineProfilingA, boolean memoryProfilingA) {
             setOut(outA);
-            this.profileThread = profileThreadA;
-            this.statementListener = statementListenerA;
             this.intervalInMillis = intervalInMillisA;
             this.lineProfiling = lineProfilingA;
             this.memoryProfiling = memoryProfilingA;
             this.memoryQuad = memoryProfilingA ? new MemoryQuad() : null;
+            if (memoryProfilingA) {
+                outA.print("memory profiling: ");
+            }
+            if (lineProfilingA) {
+                outA.print("line profiling: ");
+            }
+            outA.printf("sample.interval=%d\n", intervalInMillisA * 1000);
         }
 
         @Override
         public void cleanup(int status) {
-            profileThread.running = false;
-            HashMap<String, Integer> fileMap = null;
-            PrintStream out = this.out();
-            if (this.memoryProfiling) {
-                out.print("memory profiling: ");
-            }
-            if (this.lineProfiling) {
-                out.print("line profiling: ");
-            }
-            out.printf("sample.interval=%d\n", this.intervalInMillis * 1000);
-            if (this.lineProfiling) {
-                // scan stacks to find files
-                fileMap = new HashMap<>();
-                int fileIndex = 0;
-                for (ArrayList<RSyntaxElement> intervalStack : statementListener.intervalStacks) {
-                    for (RSyntaxElement node : intervalStack) {
-                        String path = getPath(node);
-                        if (path != null && fileMap.get(path) == null) {
-                            fileMap.put(path, ++fileIndex);
-                            out.printf("#File %d: %s\n", fileIndex, path);
-                        }
-                    }
-                }
-            }
-            int index = 0;
-            for (ArrayList<RSyntaxElement> intervalStack : statementListener.intervalStacks) {
-                if (this.memoryProfiling) {
-                    RprofState.MemoryQuad mq = statementListener.intervalMemory.get(index);
-                    out.printf(":%d:%d:%d:%d:", mq.largeV, mq.smallV, mq.nodes, mq.copied);
+            if (profileThread != null) {
+                profileThread.shutdown();
+                try {
+                    profileThread.join();
+                } catch (InterruptedException ex) {
+                    // the remaining samples are written below anyway
                 }
-                for (RSyntaxElement node : intervalStack) {
-                    RootNode rootNode = ((RSyntaxNode) node).asRNode().getRootNode();
-                    if (rootNode instanceof FunctionDefinitionNode) {
-                        String name = rootNode.getName();
-                        if (this.lineProfiling) {
-                            Integer fileIndex = fileMap.get(getPath(node));
-                            if (fileIndex != null) {
-                                out.printf("%d#%d ", fileIndex, node.getSourceSection().getStartLine());
-                            }
-                        }
-                        out.printf("\"%s\" ", name);
-                    }
+                for (ProfileThread.Target target : profileThread.targets.values()) {
+                    target.cancel();
                 }
-                out.println();
-                index++;
+                profileThread.writeSamples();
+                profileThread = null;
             }
-            out.close();
-            this.setOut(null);
+            closeAndResetOut();
             if (this.memoryProfiling) {
                 RDataFactory.removeListener(LISTENER);
                 MemoryCopyTracer.setTracingState(false);
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -156,13 +156,22 @@ public abstract class Assign extends RBuiltinNode.Arg4 {
             return frameProfile.profile(env.getFrame(frameAccessProfile)).getFrameDescriptor();
         }
 
-        @Specialization(guards = {"getFrameDescriptor(env) == envDesc", "write.getName().equals(name)"})
+        @Specialization(guards = {"!env.hasHashedStorage()", "getFrameDescriptor(env) == envDesc", "write.getName().equals(name)"})
         protected void assignCached(VirtualFrame frame, REnvironment env, @SuppressWarnings("unused") String name, Object value,
                         @Cached("env.getFrame().getFrameDescriptor()") @SuppressWarnings("unused") FrameDescriptor envDesc,
                         @Cached("createWrite(name, envDesc)") ResolvedWriteSuperFrameVariableNode write) {
             write.execute(frame, value, frameProfile.profile(env.getFrame(frameAccessProfile)));
         }
 
+        /**
+         * Hashed environments keep their own storage, a call site that sees one must not give up the
+         * cached frame writes for the other environments.
+         */
+        @Specialization(guards = "env.hasHashedStorage()")
+        protected void assignHashed(REnvironment env, String name, Object value) {
+            assign(env, name, value);
+        }
+
         @Specialization(replaces = "assignCached")
         @TruffleBoundary
         protected void assign(REnvironment env, String name, Object value) {
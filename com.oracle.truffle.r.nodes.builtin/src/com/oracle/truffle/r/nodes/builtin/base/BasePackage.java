@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -101,6 +101,8 @@ import com.oracle.truffle.r.nodes.builtin.base.infix.WhileBuiltin;
 import com.oracle.truffle.r.nodes.builtin.base.infix.WhileBuiltinNodeGen;
 import com.oracle.truffle.r.nodes.builtin.base.system.SystemFunction;
 import com.oracle.truffle.r.nodes.builtin.base.system.SystemFunctionNodeGen;
+import com.oracle.truffle.r.nodes.builtin.fastr.FastRClosureCacheStats;
+import com.oracle.truffle.r.nodes.builtin.fastr.FastRClosureCacheStatsNodeGen;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRContext;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRContextFactory;
 import com.oracle.truffle.r.nodes.builtin.fastr.FastRDebug;
@@ -478,9 +480,11 @@ public class BasePackage extends RBuiltinPackage {
         add(FastRContext.ChannelReceive.class, FastRContextFactory.ChannelReceiveNodeGen::create);
         add(FastRContext.ChannelSelect.class, FastRContextFactory.ChannelSelectNodeGen::create);
         add(FastRContext.ChannelSend.class, FastRContextFactory.ChannelSendNodeGen::create);
+        add(FastRContext.ChannelSendBatch.class, FastRContextFactory.ChannelSendBatchNodeGen::create);
         add(FastRContext.Spawn.class, FastRContextFactory.SpawnNodeGen::create);
         add(FastRContext.Interrupt.class, FastRContextFactory.InterruptNodeGen::create);
         add(FastRContext.Join.class, FastRContextFactory.JoinNodeGen::create);
+        add(FastRContext.PoolLapply.class, FastRContextFactory.PoolLapplyNodeGen::create);
         add(FastRRegisterFunctions.class, FastRRegisterFunctionsNodeGen::create);
         add(FastrDqrls.class, FastrDqrlsNodeGen::create);
         add(FastRDebug.class, FastRDebugNodeGen::create);
@@ -519,6 +523,7 @@ public class BasePackage extends RBuiltinPackage {
         add(FastRInterop.ToLong.class, FastRInteropFactory.ToLongNodeGen::create);
         add(FastRInterop.ToShort.class, FastRInteropFactory.ToShortNodeGen::create);
         add(FastRRefCountInfo.class, FastRRefCountInfoNodeGen::create);
+        add(FastRClosureCacheStats.class, FastRClosureCacheStatsNodeGen::create);
         add(FastRPkgSource.class, FastRPkgSourceNodeGen::create);
         add(FastRPrintError.class, FastRPrintErrorNodeGen::create);
         add(FastRSourceInfo.class, FastRSourceInfoNodeGen::create);
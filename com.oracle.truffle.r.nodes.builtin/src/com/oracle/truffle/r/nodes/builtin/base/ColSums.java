@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -33,7 +33,6 @@ import com.oracle.truffle.r.runtime.builtins.RBuiltin;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RDoubleVector;
 import com.oracle.truffle.r.runtime.data.VectorDataLibrary;
-import com.oracle.truffle.r.runtime.data.VectorDataLibrary.RandomAccessIterator;
 import com.oracle.truffle.r.runtime.data.RIntVector;
 import com.oracle.truffle.r.runtime.data.RLogicalVector;
 import com.oracle.truffle.r.runtime.ops.BinaryArithmetic;
@@ -59,31 +58,31 @@ public abstract class ColSums extends ColSumsBase {
         boolean isComplete = true;
         final boolean rna = removeNA.profile(rnaParam);
 
-        int pos = 0;
         Object xData = x.getData();
-        RandomAccessIterator xIt = xDataLib.randomAccessIterator(xData);
         NACheck naCheck = xDataLib.getNACheck(xData);
+        double[] buffer = new double[Math.min(rowNum, VectorDataLibrary.REGION_SIZE)];
         nextCol: for (int c = 0; c < colNum; c++) {
             double sum = 0;
-            for (int i = 0; i < rowNum; i++) {
-                final double el = xDataLib.getDouble(xData, xIt, pos++);
-                if (rna) {
-                    if (!naCheck.check(el) && !Double.isNaN(el)) {
+            for (int row = 0; row < rowNum; row += buffer.length) {
+                int count = xDataLib.readDoubleRegion(xData, c * rowNum + row, Math.min(buffer.length, rowNum - row), buffer);
+                for (int i = 0; i < count; i++) {
+                    final double el = buffer[i];
+                    if (rna) {
+                        if (!naCheck.check(el) && !Double.isNaN(el)) {
+                            sum = add.op(sum, el);
+                        }
+                    } else {
+                        if (naCheck.check(el)) {
+                            result[c] = RRuntime.DOUBLE_NA;
+                            isComplete = false;
+                            continue nextCol;
+                        }
+                        if (Double.isNaN(el)) {
+                            result[c] = Double.NaN;
+                            continue nextCol;
+                        }
                         sum = add.op(sum, el);
                     }
-                } else {
-                    if (naCheck.check(el)) {
-                        result[c] = RRuntime.DOUBLE_NA;
-                        isComplete = false;
-                        pos += rowNum - i - 1;
-                        continue nextCol;
-                    }
-                    if (Double.isNaN(el)) {
-                        result[c] = Double.NaN;
-                        pos += rowNum - i - 1;
-                        continue nextCol;
-                    }
-                    sum = add.op(sum, el);
                 }
             }
             result[c] = sum;
@@ -99,26 +98,27 @@ public abstract class ColSums extends ColSumsBase {
         final boolean rna = removeNA.profile(rnaParam);
         double[] result = new double[colNum];
         boolean isComplete = true;
-        int pos = 0;
         Object xData = x.getData();
-        RandomAccessIterator xIt = xDataLib.randomAccessIterator(xData);
         NACheck naCheck = xDataLib.getNACheck(xData);
+        byte[] buffer = new byte[Math.min(rowNum, VectorDataLibrary.REGION_SIZE)];
         nextCol: for (int c = 0; c < colNum; c++) {
             double sum = 0;
-            for (int i = 0; i < rowNum; i++) {
-                final byte el = xDataLib.getLogical(xData, xIt, pos++);
-                if (rna) {
-                    if (!naCheck.check(el)) {
+            for (int row = 0; row < rowNum; row += buffer.length) {
+                int count = xDataLib.readLogicalRegion(xData, c * rowNum + row, Math.min(buffer.length, rowNum - row), buffer);
+                for (int i = 0; i < count; i++) {
+                    final byte el = buffer[i];
+                    if (rna) {
+                        if (!naCheck.check(el)) {
+                            sum = add.op(sum, el);
+                        }
+                    } else {
+                        if (naCheck.check(el)) {
+                            result[c] = RRuntime.DOUBLE_NA;
+                            isComplete = false;
+                            continue nextCol;
+                        }
                         sum = add.op(sum, el);
                     }
-                } else {
-                    if (naCheck.check(el)) {
-                        result[c] = RRuntime.DOUBLE_NA;
-                        pos += rowNum - i - 1;
-                        isComplete = false;
-                        continue nextCol;
-                    }
-                    sum = add.op(sum, el);
                 }
             }
             result[c] = sum;
@@ -134,26 +134,27 @@ public abstract class ColSums extends ColSumsBase {
         final boolean rna = removeNA.profile(rnaParam);
         double[] result = new double[colNum];
         boolean isComplete = true;
-        int pos = 0;
         Object xData = x.getData();
-        RandomAccessIterator xIt = xDataLib.randomAccessIterator(xData);
         NACheck naCheck = xDataLib.getNACheck(xData);
+        int[] buffer = new int[Math.min(rowNum, VectorDataLibrary.REGION_SIZE)];
         nextCol: for (int c = 0; c < colNum; c++) {
             double sum = 0;
-            for (int i = 0; i < rowNum; i++) {
-                final int el = xDataLib.getInt(xData, xIt, pos++);
-                if (rna) {
-                    if (!naCheck.check(el)) {
+            for (int row = 0; row < rowNum; row += buffer.length) {
+                int count = xDataLib.readIntRegion(xData, c * rowNum + row, Math.min(buffer.length, rowNum - row), buffer);
+                for (int i = 0; i < count; i++) {
+                    final int el = buffer[i];
+                    if (rna) {
+                        if (!naCheck.check(el)) {
+                            sum = add.op(sum, el);
+                        }
+                    } else {
+                        if (naCheck.check(el)) {
+                            result[c] = RRuntime.DOUBLE_NA;
+                            isComplete = false;
+                            continue nextCol;
+                        }
                         sum = add.op(sum, el);
                     }
-                } else {
-                    if (naCheck.check(el)) {
-                        result[c] = RRuntime.DOUBLE_NA;
-                        pos += rowNum - i - 1;
-                        isComplete = false;
-                        continue nextCol;
-                    }
-                    sum = add.op(sum, el);
                 }
             }
             result[c] = sum;
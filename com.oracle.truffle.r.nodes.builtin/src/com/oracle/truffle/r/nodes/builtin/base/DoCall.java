@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -47,6 +47,7 @@ import com.oracle.truffle.api.profiles.ValueProfile;
 import com.oracle.truffle.r.runtime.data.nodes.attributes.SpecialAttributesFunctions.GetNamesAttributeNode;
 import com.oracle.truffle.r.nodes.builtin.RBuiltinNode;
 import com.oracle.truffle.r.nodes.builtin.base.DoCallNodeGen.DoCallInternalNodeGen;
+import com.oracle.truffle.r.nodes.builtin.base.DoCallNodeGen.SymbolClosureNodeGen;
 import com.oracle.truffle.r.nodes.builtin.base.GetFunctions.Get;
 import com.oracle.truffle.r.nodes.builtin.base.GetFunctionsFactory.GetNodeGen;
 import com.oracle.truffle.r.nodes.function.RCallerHelper;
@@ -69,6 +70,7 @@ import com.oracle.truffle.r.runtime.builtins.RBuiltinKind;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.context.TruffleRLanguage;
 import com.oracle.truffle.r.runtime.data.Closure;
+import com.oracle.truffle.r.runtime.data.ClosureCache;
 import com.oracle.truffle.r.runtime.data.ClosureCache.RNodeClosureCache;
 import com.oracle.truffle.r.runtime.data.ClosureCache.SymbolClosureCache;
 import com.oracle.truffle.r.runtime.data.RArgsValuesAndNames;
@@ -168,11 +170,11 @@ public abstract class DoCall extends RBuiltinNode.Arg4 implements InternalRSynta
                         @Cached("create()") RExplicitCallNode explicitCallNode,
                         @Cached("create()") GetVisibilityNode getVisibilityNode,
                         @Cached("createBinaryProfile()") ConditionProfile quoteProfile,
-                        @Cached("new()") SymbolClosureCache symbolsClosureCache,
+                        @Cached("create()") SymbolClosureNode symbolClosureNode,
                         @Cached("new()") RNodeClosureCache languagesClosureCache,
                         @Cached("create()") BranchProfile containsRSymbolProfile) {
             MaterializedFrame promiseFrame = frameProfile.profile(env.getFrame(frameAccessProfile)).materialize();
-            RArgsValuesAndNames args = getArguments(languagesClosureCache, symbolsClosureCache, promiseFrame, quote, quoteProfile, containsRSymbolProfile, argsAsList);
+            RArgsValuesAndNames args = getArguments(languagesClosureCache, symbolClosureNode, promiseFrame, quote, quoteProfile, containsRSymbolProfile, argsAsList);
             RCaller caller = RCallerHelper.getExplicitCaller(ctx, virtualFrame, promiseFrame, env, funcName, func, args, null);
             MaterializedFrame materializedFrame = virtualFrame.materialize();
             MaterializedFrame evalFrame = getEvalFrame(materializedFrame, promiseFrame);
@@ -217,7 +219,7 @@ public abstract class DoCall extends RBuiltinNode.Arg4 implements InternalRSynta
             return VirtualEvalFrame.create(envFrame, RArguments.getFunction(currentFrame), currentFrame, RArguments.getCall(currentFrame));
         }
 
-        private RArgsValuesAndNames getArguments(RNodeClosureCache nodeCache, SymbolClosureCache closureCache, MaterializedFrame promiseFrame, boolean quote, ConditionProfile quoteProfile,
+        private RArgsValuesAndNames getArguments(RNodeClosureCache nodeCache, SymbolClosureNode symbolClosureNode, MaterializedFrame promiseFrame, boolean quote, ConditionProfile quoteProfile,
                         BranchProfile containsRSymbolProfile, RList argsAsList) {
             Object[] argValues = argsAsList.getDataCopy();
             if (quoteProfile.profile(!quote)) {
@@ -229,7 +231,7 @@ public abstract class DoCall extends RBuiltinNode.Arg4 implements InternalRSynta
                         if (symbol.getName().isEmpty()) {
                             argValues[i] = REmpty.instance;
                         } else {
-                            argValues[i] = closureCache == null ? createLookupPromise(promiseFrame, symbol.getName()) : createCachedLookupPromise(closureCache, promiseFrame, symbol.getName());
+                            argValues[i] = symbolClosureNode == null ? createLookupPromise(promiseFrame, symbol.getName()) : createPromise(symbolClosureNode.execute(symbol.getName()), promiseFrame);
                         }
                     } else if ((arg instanceof RPairList && ((RPairList) arg).isLanguage())) {
                         argValues[i] = createLanguagePromise(nodeCache, promiseFrame, (RPairList) arg);
@@ -246,8 +248,7 @@ public abstract class DoCall extends RBuiltinNode.Arg4 implements InternalRSynta
         }
 
         @TruffleBoundary
-        private static RPromise createCachedLookupPromise(SymbolClosureCache cache, MaterializedFrame callerFrame, String name) {
-            Closure closure = cache.getOrCreatePromiseClosure(name);
+        private static RPromise createPromise(Closure closure, MaterializedFrame callerFrame) {
             return RDataFactory.createPromise(PromiseState.Supplied, closure, callerFrame);
         }
 
@@ -287,4 +288,34 @@ public abstract class DoCall extends RBuiltinNode.Arg4 implements InternalRSynta
             return false;
         }
     }
+
+    /**
+     * Inline cache of the promise closures for the symbols passed to {@code do.call} at one call
+     * site, the symbols that do not fit are looked up in the {@link SymbolClosureCache} of the call
+     * site. Symbol names are interned, so they are compared by identity.
+     */
+    @ImportStatic(DSLConfig.class)
+    protected abstract static class SymbolClosureNode extends Node {
+
+        protected final SymbolClosureCache cache = new SymbolClosureCache();
+
+        public static SymbolClosureNode create() {
+            return SymbolClosureNodeGen.create();
+        }
+
+        public abstract Closure execute(String name);
+
+        @Specialization(guards = "name == cachedName", limit = "getCacheSize(4)")
+        protected Closure doCached(@SuppressWarnings("unused") String name,
+                        @Cached("name") @SuppressWarnings("unused") String cachedName,
+                        @Cached("cache.getOrCreatePromiseClosure(name)") Closure closure) {
+            ClosureCache.recordInlineHit();
+            return closure;
+        }
+
+        @Specialization(replaces = "doCached")
+        protected Closure doGeneric(String name) {
+            return cache.getOrCreatePromiseClosure(name);
+        }
+    }
 }
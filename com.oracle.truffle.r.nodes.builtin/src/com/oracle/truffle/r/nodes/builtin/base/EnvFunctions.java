@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -507,7 +507,7 @@ public class EnvFunctions {
         @TruffleBoundary
         protected REnvironment newEnv(boolean hash, REnvironment parent, int size) {
             REnvironment env = RDataFactory.createNewEnv(null, hash, size);
-            RArguments.initializeEnclosingFrame(env.getFrame(), parent.getFrame());
+            env.initializeParent(parent);
             return env;
         }
     }
@@ -1,7 +1,7 @@
 /*
  * Copyright (c) 1995-2012, The R Core Team
  * Copyright (c) 2003, The R Foundation
- * Copyright (c) 2014, 2020, Oracle and/or its affiliates
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -31,6 +31,7 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
@@ -53,6 +54,7 @@ import com.oracle.truffle.r.nodes.function.call.CallRFunctionCachedNode;
 import com.oracle.truffle.r.nodes.function.call.CallRFunctionCachedNodeGen;
 import com.oracle.truffle.r.runtime.data.nodes.ShareObjectNode;
 import com.oracle.truffle.r.runtime.ArgumentsSignature;
+import com.oracle.truffle.r.runtime.LazyDBCache;
 import com.oracle.truffle.r.runtime.RCaller;
 import com.oracle.truffle.r.runtime.RCompression;
 import com.oracle.truffle.r.runtime.RError;
@@ -243,46 +245,25 @@ public class HiddenInternalFunctions {
                         CallRFunctionCachedNode callCache) {
             String dbPath = datafile.getDataAt(0);
             String packageName = context.getSafeTruffleFile(dbPath).getName();
-            byte[] dbData = RContext.getInstance().stateLazyDBCache.getData(context, dbPath);
+            LazyDBCache.Database db = context.stateLazyDBCache.getDatabase(context, dbPath);
             int dotIndex;
             if ((dotIndex = packageName.lastIndexOf('.')) > 0) {
                 packageName = packageName.substring(0, dotIndex);
             }
             int offset = key.getDataAt(0);
             int length = key.getDataAt(1);
-            int outlen = getOutlen(dbData, offset); // length of uncompressed data
-            byte[] udata = null;
-            boolean rc = true;
-            /*
-             * compression may have value 0, 1, 2 or 3. Value 1 is gzip and the data starts at
-             * "offset + 4". Values 2 and 3 have a "type" field at "offset + 4
-             * " and the data starts at "offset + 5". The type field is 'Z' for lzma, '2' for bzip,
-             * '1' for zip and '0' for no compression. From GnuR code, the only difference between
-             * compression=2 and compression=3 is that type='Z' is only possible for the latter.
-             */
-            if (compression == 0) {
-                udata = new byte[length];
-                System.arraycopy(dbData, offset, udata, 0, length);
-            } else {
-                udata = new byte[outlen];
-                if (compression == 2 || compression == 3) {
-                    RCompression.Type type = RCompression.Type.fromTypeChar(dbData[4]);
-                    if (type == null) {
-                        warning(RError.Message.GENERIC, "unknown compression type");
-                        return RNull.instance;
-                    }
-                    byte[] data = new byte[length - 5];
-                    System.arraycopy(dbData, offset + 5, data, 0, data.length);
-                    rc = RCompression.uncompress(type, udata, data);
-                } else {
-                    // GnuR treats any other value as 1
-                    byte[] data = new byte[length - 4];
-                    System.arraycopy(dbData, offset + 4, data, 0, data.length);
-                    rc = RCompression.uncompress(RCompression.Type.GZIP, udata, data);
-                }
+            byte[] udata = db.getEntry(offset);
+            if (udata == null) {
+                // the file is read, make sure that it was not rewritten since it was mapped
+                db = context.stateLazyDBCache.revalidate(context, dbPath);
+                udata = db.getEntry(offset);
             }
-            if (!rc) {
-                throw error(RError.Message.LAZY_LOAD_DB_CORRUPT, dbPath);
+            if (udata == null) {
+                udata = readEntry(db, dbPath, offset, length, compression);
+                if (udata == null) {
+                    return RNull.instance;
+                }
+                db.putEntry(offset, udata);
             }
             try {
                 RSerialize.CallHook callHook = new RSerialize.CallHook() {
@@ -310,11 +291,42 @@ public class HiddenInternalFunctions {
             }
         }
 
-        private static int getOutlen(byte[] dbData, int offset) {
-            ByteBuffer dataLengthBuf = ByteBuffer.allocate(4);
-            dataLengthBuf.put(dbData, offset, 4);
-            dataLengthBuf.position(0);
-            return dataLengthBuf.getInt();
+        /**
+         * Reads and decompresses the entry at {@code offset}, returns {@code null} if the
+         * compression type is unknown.
+         */
+        private byte[] readEntry(LazyDBCache.Database db, String dbPath, int offset, int length, int compression) {
+            byte[] entry = db.read(offset, length);
+            byte[] udata;
+            boolean rc = true;
+            /*
+             * compression may have value 0, 1, 2 or 3. Value 1 is gzip and the data starts at
+             * "offset + 4". Values 2 and 3 have a "type" field at "offset + 4
+             * " and the data starts at "offset + 5". The type field is 'Z' for lzma, '2' for bzip,
+             * '1' for zip and '0' for no compression. From GnuR code, the only difference between
+             * compression=2 and compression=3 is that type='Z' is only possible for the latter.
+             */
+            if (compression == 0) {
+                udata = entry;
+            } else {
+                int outlen = ByteBuffer.wrap(entry, 0, 4).getInt(); // length of uncompressed data
+                udata = new byte[outlen];
+                if (compression == 2 || compression == 3) {
+                    RCompression.Type type = RCompression.Type.fromTypeChar(entry[4]);
+                    if (type == null) {
+                        warning(RError.Message.GENERIC, "unknown compression type");
+                        return null;
+                    }
+                    rc = RCompression.uncompress(type, udata, Arrays.copyOfRange(entry, 5, length));
+                } else {
+                    // GnuR treats any other value as 1
+                    rc = RCompression.uncompress(RCompression.Type.GZIP, udata, Arrays.copyOfRange(entry, 4, length));
+                }
+            }
+            if (!rc) {
+                throw error(RError.Message.LAZY_LOAD_DB_CORRUPT, dbPath);
+            }
+            return udata;
         }
 
         private static final class EvaluateAndSharePromiseNode extends Node {
@@ -439,7 +451,7 @@ public class HiddenInternalFunctions {
 
         @TruffleBoundary
         private RIntVector lazyLoadDBinsertValueInternal(RContext context, MaterializedFrame frame, Object value, RStringVector file, int type, int compression, RFunction hook) {
-            if (!(compression == 1 || compression == 3)) {
+            if (!(compression == 1 || compression == 2 || compression == 3)) {
                 throw error(Message.GENERIC, "unsupported compression");
             }
 
@@ -472,18 +484,28 @@ public class HiddenInternalFunctions {
                         throw error(Message.GENERIC, "zlib compress error");
                     }
                 } else {
-                    assert compression == 3;
-                    ctype = RCompression.Type.XZ;
+                    // like GnuR, store the data uncompressed if compression does not make it
+                    // smaller
                     offset = 5;
-                    outLen = data.length;
-                    cdata = new byte[outLen];
-                    boolean rc = RCompression.compress(ctype, data, cdata);
-                    if (!rc) {
-                        throw error(Message.GENERIC, "lzma compress error");
+                    byte[] compressed;
+                    if (compression == 2) {
+                        ctype = RCompression.Type.BZIP2;
+                        compressed = RCompression.bzipCompress(data);
+                    } else {
+                        assert compression == 3;
+                        ctype = RCompression.Type.XZ;
+                        compressed = RCompression.lzmaCompress(data);
+                    }
+                    if (compressed.length < data.length) {
+                        cdata = compressed;
+                    } else {
+                        ctype = RCompression.Type.NONE;
+                        cdata = data;
                     }
+                    outLen = cdata.length;
                 }
                 int[] intData = new int[2];
-                intData[1] = outLen + offset; // include length + type (compression == 3)
+                intData[1] = outLen + offset; // include length + type (compression == 2 or 3)
                 intData[0] = appendFile(context, file.getDataAt(0), cdata, data.length, ctype);
                 return RDataFactory.createIntVector(intData, RDataFactory.COMPLETE_VECTOR);
             } catch (Throwable ex) {
@@ -518,8 +540,8 @@ public class HiddenInternalFunctions {
                 byte[] ulenData = new byte[4];
                 dataLengthBuf.get(ulenData);
                 out.write(ulenData);
-                if (type == RCompression.Type.XZ) {
-                    out.write(RCompression.Type.XZ.typeByte);
+                if (type != RCompression.Type.GZIP) {
+                    out.write(type.typeByte);
                 }
                 out.write(cdata);
                 return result;
@@ -539,7 +561,8 @@ public class HiddenInternalFunctions {
         @Specialization
         @TruffleBoundary
         protected RNull doLazyLoadDBFlush(RStringVector dbPath) {
-            RContext.getInstance().stateLazyDBCache.remove(dbPath.getDataAt(0));
+            RContext context = RContext.getInstance();
+            context.stateLazyDBCache.remove(context, dbPath.getDataAt(0));
             return RNull.instance;
         }
     }
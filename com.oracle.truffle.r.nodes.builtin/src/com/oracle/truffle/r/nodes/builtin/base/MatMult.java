@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -43,10 +43,13 @@ import com.oracle.truffle.r.runtime.data.nodes.attributes.SpecialAttributesFunct
 import com.oracle.truffle.r.nodes.binary.BinaryMapArithmeticFunctionNode;
 import com.oracle.truffle.r.nodes.builtin.RBuiltinNode;
 import com.oracle.truffle.r.nodes.control.RLengthNode;
+import com.oracle.truffle.r.runtime.ParallelKernels;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RType;
 import com.oracle.truffle.r.runtime.builtins.RBuiltin;
+import com.oracle.truffle.r.runtime.context.FastROptions;
+import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.data.RComplex;
 import com.oracle.truffle.r.runtime.data.RComplexVector;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
@@ -58,6 +61,7 @@ import com.oracle.truffle.r.runtime.ops.BinaryArithmetic;
 import com.oracle.truffle.r.runtime.ops.na.NACheck;
 
 import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
 
 import static com.oracle.truffle.r.runtime.data.nodes.attributes.SpecialAttributesFunctions.GetDimAttributeNode.isMatrix;
 import static com.oracle.truffle.r.runtime.RDispatch.OPS_GROUP_GENERIC;
@@ -626,9 +630,21 @@ public abstract class MatMult extends RBuiltinNode.Arg2 {
 
         private static final int BLOCK_SIZE = 64;
 
+        /**
+         * Lower bound for {@link FastROptions#MatMultParallelThreshold} checked before the option
+         * is read, so that small multiplications do not pay for the option lookup.
+         */
+        private static final long PARALLEL_MIN_OPERATIONS = BLOCK_SIZE * BLOCK_SIZE * BLOCK_SIZE;
+        /**
+         * How many tiles are created per worker thread, more tiles give better load balancing,
+         * especially for the triangular {@code crossprod(x)}.
+         */
+        private static final int TASKS_PER_THREAD = 4;
+
         private final boolean promoteDimNames;
 
         private final ConditionProfile bigProfile = ConditionProfile.createBinaryProfile();
+        private final ConditionProfile parallelProfile = ConditionProfile.createBinaryProfile();
         private final BranchProfile incompleteProfile = BranchProfile.create();
         @CompilationFinal private boolean seenLargeMatrix;
 
@@ -798,7 +814,9 @@ public abstract class MatMult extends RBuiltinNode.Arg2 {
                 CompilerDirectives.transferToInterpreterAndInvalidate();
                 seenLargeMatrix = true;
             }
-            if (seenLargeMatrix) {
+            if (seenLargeMatrix && parallelProfile.profile(isParallelCandidate(aRows, aCols, bCols))) {
+                multiplyParallel(dataA, dataB, aRows, aCols, bCols, aRowStride, aColStride, bRowStride, bColStride, mirrored, result);
+            } else if (seenLargeMatrix) {
                 for (int row = 0; row < aRows; row += BLOCK_SIZE) {
                     for (int col = mirrored ? row : 0; col < bCols; col += BLOCK_SIZE) {
                         for (int k = 0; k < aCols; k += BLOCK_SIZE) {
@@ -861,6 +879,173 @@ public abstract class MatMult extends RBuiltinNode.Arg2 {
             return resultVec;
         }
 
+        private static boolean isParallelCandidate(int aRows, int aCols, int bCols) {
+            if ((long) aRows * aCols * bCols < PARALLEL_MIN_OPERATIONS || (aRows <= BLOCK_SIZE && bCols <= BLOCK_SIZE)) {
+                return false;
+            }
+            return (long) aRows * aCols * bCols >= getParallelThreshold() && ParallelKernels.getParallelism() > 1;
+        }
+
+        @TruffleBoundary
+        private static int getParallelThreshold() {
+            return RContext.getInstance().getNonNegativeIntOption(FastROptions.MatMultParallelThreshold);
+        }
+
+        /**
+         * Computes the same blocked multiplication as the sequential kernel, but splits the result
+         * into tiles of whole blocks, primarily column panels, which are computed on the
+         * {@link ParallelKernels#getPool() fork-join pool}. Each result element is accumulated by
+         * exactly one task in the same order as in the sequential kernel, so the results are
+         * bit-identical.
+         */
+        @TruffleBoundary
+        private static void multiplyParallel(double[] dataA, double[] dataB, int aRows, int aCols, int bCols, int aRowStride, int aColStride, int bRowStride, int bColStride, boolean mirrored,
+                        double[] result) {
+            int targetTasks = ParallelKernels.getParallelism() * TASKS_PER_THREAD;
+            int rowBlocks = (aRows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            int colBlocks = (bCols + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            int panelBlocks = Math.max(1, colBlocks / targetTasks);
+            int panels = (colBlocks + panelBlocks - 1) / panelBlocks;
+            int bandBlocks = rowBlocks;
+            if (panels < targetTasks) {
+                // not enough column panels, split the rows into bands too
+                int bands = Math.min(rowBlocks, (targetTasks + panels - 1) / panels);
+                bandBlocks = (rowBlocks + bands - 1) / bands;
+            }
+            int bands = (rowBlocks + bandBlocks - 1) / bandBlocks;
+            MultiplyTilesTask task = new MultiplyTilesTask(dataA, dataB, result, aRows, aCols, bCols, aRowStride, aColStride, bRowStride, bColStride, mirrored, bands, bandBlocks * BLOCK_SIZE,
+                            panelBlocks * BLOCK_SIZE, 0, bands * panels);
+            ParallelKernels.getPool().invoke(task);
+        }
+
+        /**
+         * Computes the tiles {@code [from, to)} of the result. Tile {@code t} covers the row band
+         * {@code t % bands} and the column panel {@code t / bands}.
+         */
+        @SuppressWarnings("serial")
+        private static final class MultiplyTilesTask extends RecursiveAction {
+            private final double[] a;
+            private final double[] b;
+            private final double[] result;
+            private final int aRows;
+            private final int aCols;
+            private final int bCols;
+            private final int aRowStride;
+            private final int aColStride;
+            private final int bRowStride;
+            private final int bColStride;
+            private final boolean mirrored;
+            private final int bands;
+            private final int bandHeight;
+            private final int panelWidth;
+            private final int from;
+            private final int to;
+
+            MultiplyTilesTask(double[] a, double[] b, double[] result, int aRows, int aCols, int bCols, int aRowStride, int aColStride, int bRowStride, int bColStride, boolean mirrored, int bands,
+                            int bandHeight, int panelWidth, int from, int to) {
+                this.a = a;
+                this.b = b;
+                this.result = result;
+                this.aRows = aRows;
+                this.aCols = aCols;
+                this.bCols = bCols;
+                this.aRowStride = aRowStride;
+                this.aColStride = aColStride;
+                this.bRowStride = bRowStride;
+                this.bColStride = bColStride;
+                this.mirrored = mirrored;
+                this.bands = bands;
+                this.bandHeight = bandHeight;
+                this.panelWidth = panelWidth;
+                this.from = from;
+                this.to = to;
+            }
+
+            private MultiplyTilesTask subTask(int subFrom, int subTo) {
+                return new MultiplyTilesTask(a, b, result, aRows, aCols, bCols, aRowStride, aColStride, bRowStride, bColStride, mirrored, bands, bandHeight, panelWidth, subFrom, subTo);
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > 1) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(subTask(from, mid), subTask(mid, to));
+                } else {
+                    computeTile(from);
+                }
+            }
+
+            private void computeTile(int tile) {
+                int rowStart = (tile % bands) * bandHeight;
+                int rowEnd = Math.min(aRows, rowStart + bandHeight);
+                int colStart = (tile / bands) * panelWidth;
+                int colEnd = Math.min(bCols, colStart + panelWidth);
+                // a column-wise (axpy) formulation over contiguous rows of "a" can be vectorized
+                double[] acc = aRowStride == 1 ? new double[BLOCK_SIZE] : null;
+                for (int row = rowStart; row < rowEnd; row += BLOCK_SIZE) {
+                    for (int col = mirrored ? Math.max(row, colStart) : colStart; col < colEnd; col += BLOCK_SIZE) {
+                        for (int k = 0; k < aCols; k += BLOCK_SIZE) {
+                            int remainingCols = Math.min(BLOCK_SIZE, bCols - col);
+                            int remainingRows = Math.min(BLOCK_SIZE, aRows - row);
+                            int remainingK = Math.min(BLOCK_SIZE, aCols - k);
+                            if (acc != null) {
+                                multiplyBlockColumnwise(a, b, aRows, result, row, col, k, aColStride, bRowStride, bColStride, remainingCols, remainingRows, remainingK, acc);
+                            } else {
+                                multiplyBlockUnprofiled(a, b, aRows, result, row, col, k, aRowStride, aColStride, bRowStride, bColStride, remainingCols, remainingRows, remainingK);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Same as {@code MatMult.multiplyBlock} without profiling, for use on the worker threads.
+         */
+        private static void multiplyBlockUnprofiled(double[] a, double[] b, int aRows, double[] result, int row, int col, int k, int aRowStride, int aColStride, int bRowStride, int bColStride,
+                        int remainingCols, int remainingRows, int remainingK) {
+            for (int innerCol = 0; innerCol < remainingCols; innerCol++) {
+                for (int innerRow = 0; innerRow < remainingRows; innerRow++) {
+                    int bIndex = (col + innerCol) * bColStride + k * bRowStride;
+                    int aIndex = k * aColStride + (row + innerRow) * aRowStride;
+                    double x = 0.0;
+                    for (int innerK = 0; innerK < remainingK; innerK++) {
+                        x += a[aIndex] * b[bIndex];
+                        aIndex += aColStride;
+                        bIndex += bRowStride;
+                    }
+                    result[(col + innerCol) * aRows + row + innerRow] += x;
+                }
+            }
+        }
+
+        /**
+         * Variant of {@link #multiplyBlockUnprofiled} for row stride {@code 1} of "a". The partial
+         * sums of a whole column of the block are accumulated in {@code acc} in the same order of
+         * {@code innerK} as in {@link #multiplyBlockUnprofiled}, but the innermost loop goes over
+         * the contiguous rows, which allows the compiler to vectorize it.
+         */
+        private static void multiplyBlockColumnwise(double[] a, double[] b, int aRows, double[] result, int row, int col, int k, int aColStride, int bRowStride, int bColStride,
+                        int remainingCols, int remainingRows, int remainingK, double[] acc) {
+            for (int innerCol = 0; innerCol < remainingCols; innerCol++) {
+                Arrays.fill(acc, 0, remainingRows, 0.0);
+                int bIndex = (col + innerCol) * bColStride + k * bRowStride;
+                int aIndex = k * aColStride + row;
+                for (int innerK = 0; innerK < remainingK; innerK++) {
+                    double bValue = b[bIndex];
+                    for (int innerRow = 0; innerRow < remainingRows; innerRow++) {
+                        acc[innerRow] += a[aIndex + innerRow] * bValue;
+                    }
+                    aIndex += aColStride;
+                    bIndex += bRowStride;
+                }
+                int resultIndex = (col + innerCol) * aRows + row;
+                for (int innerRow = 0; innerRow < remainingRows; innerRow++) {
+                    result[resultIndex + innerRow] += acc[innerRow];
+                }
+            }
+        }
+
         private static void fixNARows(double[] dataA, int aRows, int aCols, int bCols, int aRowStride, int aColStride, double[] result) {
             // NA's in a cause the whole row to be NA in the result
             outer: for (int row = 0; row < aRows; row++) {
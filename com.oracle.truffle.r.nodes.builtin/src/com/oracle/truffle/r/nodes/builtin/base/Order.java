@@ -28,7 +28,6 @@ import static com.oracle.truffle.r.runtime.builtins.RBuiltinKind.INTERNAL;
 
 import java.text.CollationKey;
 import java.text.Collator;
-import java.util.Locale;
 
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
@@ -45,10 +44,12 @@ import com.oracle.truffle.r.nodes.builtin.base.OrderNodeGen.CmpNodeGen;
 import com.oracle.truffle.r.nodes.builtin.base.OrderNodeGen.IsAtomicNANodeGen;
 import com.oracle.truffle.r.nodes.builtin.base.OrderNodeGen.OrderVector1NodeGen;
 import com.oracle.truffle.r.nodes.builtin.base.SortFunctions.RadixSort;
+import com.oracle.truffle.r.runtime.CollationRanks;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RLocale;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RType;
+import com.oracle.truffle.r.runtime.StableSort;
 import com.oracle.truffle.r.runtime.builtins.RBuiltin;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.data.RArgsValuesAndNames;
@@ -277,7 +278,9 @@ public abstract class Order extends RPrecedenceBuiltinNode {
         for (int i = 0; i < indx.length; i++) {
             indx[i] = i;
         }
-        orderVector(indx, args.getArguments(), RRuntime.fromLogical(naLast), decreasing);
+        if (n < StableSort.RADIX_THRESHOLD || !radixOrderVector(indx, args.getArguments(), RRuntime.fromLogical(naLast), decreasing)) {
+            orderVector(indx, args.getArguments(), RRuntime.fromLogical(naLast), decreasing);
+        }
         for (int i = 0; i < indx.length; i++) {
             indx[i] = indx[i] + 1;
         }
@@ -303,6 +306,53 @@ public abstract class Order extends RPrecedenceBuiltinNode {
         return (c == 0 && i < j) ? false : true;
     }
 
+    /**
+     * Orders by several integer, double or logical vectors using {@link StableSort}: the indexes are
+     * stably sorted by each of the vectors in turn starting with the last one. The keys encode the
+     * same ordering as {@link #greaterSub}, i.e., {@code NA} and {@code NaN} values are equal and
+     * the whole ordering including the position of {@code NA}s is reversed for decreasing order.
+     * Returns {@code false} if any of the vectors has other type.
+     */
+    @TruffleBoundary
+    private static boolean radixOrderVector(int[] indx, Object[] vectors, boolean naLast, boolean dec) {
+        for (Object v : vectors) {
+            if (!(v instanceof RIntVector || v instanceof RDoubleVector || v instanceof RLogicalVector)) {
+                return false;
+            }
+        }
+        int n = indx.length;
+        long[] keys = new long[n];
+        // valid values never have the smallest or the largest unsigned key
+        long naKey = naLast ? -1L : 0L;
+        for (int k = vectors.length - 1; k >= 0; k--) {
+            Object v = vectors[k];
+            if (v instanceof RIntVector) {
+                RIntVector vec = (RIntVector) v;
+                for (int i = 0; i < n; i++) {
+                    int value = vec.getDataAt(indx[i]);
+                    long key = RRuntime.isNA(value) ? naKey : (long) value - Integer.MIN_VALUE + 1;
+                    keys[i] = dec ? ~key : key;
+                }
+            } else if (v instanceof RDoubleVector) {
+                RDoubleVector vec = (RDoubleVector) v;
+                for (int i = 0; i < n; i++) {
+                    double value = vec.getDataAt(indx[i]);
+                    long key = RRuntime.isNAorNaN(value) ? naKey : StableSort.doubleKey(value, false);
+                    keys[i] = dec ? ~key : key;
+                }
+            } else {
+                RLogicalVector vec = (RLogicalVector) v;
+                for (int i = 0; i < n; i++) {
+                    byte value = vec.getDataAt(indx[i]);
+                    long key = RRuntime.isNA(value) ? naKey : value + 1;
+                    keys[i] = dec ? ~key : key;
+                }
+            }
+            StableSort.sort(indx, 0, keys, n);
+        }
+        return true;
+    }
+
     private void orderVector(int[] indx, Object[] vectors, boolean naLast, boolean dec) {
         if (indx.length > 1) {
 
@@ -330,6 +380,7 @@ public abstract class Order extends RPrecedenceBuiltinNode {
 
     abstract static class OrderVector1Node extends RBaseNode {
         private final ConditionProfile decProfile = ConditionProfile.createBinaryProfile();
+        private final ConditionProfile radixProfile = ConditionProfile.createBinaryProfile();
 
         public abstract Object execute(int[] v, Object dv, byte naLast, boolean dec, boolean sortNA);
 
@@ -494,6 +545,9 @@ public abstract class Order extends RPrecedenceBuiltinNode {
         }
 
         private void sort(int[] indx, RDoubleVector dv, int lo, int hi, boolean dec) {
+            if (radixProfile.profile(hi - lo + 1 >= StableSort.RADIX_THRESHOLD) && radixSort(indx, dv, lo, hi, dec)) {
+                return;
+            }
             int t = 0;
             for (; SINCS[t] > hi - lo + 1; t++) {
             }
@@ -522,6 +576,10 @@ public abstract class Order extends RPrecedenceBuiltinNode {
         }
 
         private void sort(int[] indx, RIntVector dv, int lo, int hi, boolean dec) {
+            if (radixProfile.profile(hi - lo + 1 >= StableSort.RADIX_THRESHOLD)) {
+                radixSort(indx, dv, lo, hi, dec);
+                return;
+            }
             int t = 0;
             for (; SINCS[t] > hi - lo + 1; t++) {
             }
@@ -551,12 +609,17 @@ public abstract class Order extends RPrecedenceBuiltinNode {
 
         @TruffleBoundary
         private void sort(int[] indx, RStringVector dv, int lo, int hi, boolean dec) {
+            RLocale.ContextStateImpl localeState = RContext.getInstance().stateRLocale;
+            if (hi - lo + 1 >= StableSort.RADIX_THRESHOLD) {
+                radixSort(indx, dv, lo, hi, dec, localeState);
+                return;
+            }
             int t = 0;
             for (; SINCS[t] > hi - lo + 1; t++) {
             }
 
-            Locale locale = RContext.getInstance().stateRLocale.getLocale(RLocale.COLLATE);
-            if (locale == Locale.ROOT) {
+            Collator collator = localeState.getOrderCollator();
+            if (collator == null) {
                 // simple comparison based on numeric value of characters
                 for (int h = SINCS[t]; t < 16; h = SINCS[++t]) {
                     for (int i = lo + h; i <= hi; i++) {
@@ -583,7 +646,6 @@ public abstract class Order extends RPrecedenceBuiltinNode {
                 }
             } else {
                 int length = dv.getLength();
-                Collator collator = RLocale.getOrderCollator(locale);
                 CollationKey[] entries = new CollationKey[length];
                 for (int i = 0; i < length; i++) {
                     entries[i] = collator.getCollationKey(dv.getDataAt(i));
@@ -615,6 +677,57 @@ public abstract class Order extends RPrecedenceBuiltinNode {
             }
         }
 
+        /**
+         * Stable radix sort of the range, which gives the same result as the Shell sort, because
+         * the indexes in the range are always in increasing order before sorting.
+         */
+        @TruffleBoundary
+        private static void radixSort(int[] indx, RIntVector dv, int lo, int hi, boolean dec) {
+            int length = hi - lo + 1;
+            int[] keys = new int[length];
+            for (int i = 0; i < length; i++) {
+                keys[i] = StableSort.intKey(dv.getDataAt(indx[lo + i]), dec);
+            }
+            StableSort.sort(indx, lo, keys, length);
+        }
+
+        /**
+         * Same as {@link #radixSort(int[], RIntVector, int, int, boolean)}, but gives up and
+         * returns {@code false} if the range contains {@code NaN}, because the Shell sort does not
+         * order such values consistently.
+         */
+        @TruffleBoundary
+        private static boolean radixSort(int[] indx, RDoubleVector dv, int lo, int hi, boolean dec) {
+            int length = hi - lo + 1;
+            long[] keys = new long[length];
+            for (int i = 0; i < length; i++) {
+                double value = dv.getDataAt(indx[lo + i]);
+                if (Double.isNaN(value)) {
+                    return false;
+                }
+                keys[i] = StableSort.doubleKey(value, dec);
+            }
+            StableSort.sort(indx, lo, keys, length);
+            return true;
+        }
+
+        /**
+         * Sorts the range by the ranks of the strings among the distinct strings in the range, see
+         * {@link CollationRanks}.
+         */
+        private static void radixSort(int[] indx, RStringVector dv, int lo, int hi, boolean dec, RLocale.ContextStateImpl localeState) {
+            int length = hi - lo + 1;
+            String[] values = new String[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = dv.getDataAt(indx[lo + i]);
+            }
+            int[] keys = CollationRanks.computeRanks(values, localeState);
+            for (int i = 0; i < length; i++) {
+                keys[i] = StableSort.intKey(keys[i], dec);
+            }
+            StableSort.sort(indx, lo, keys, length);
+        }
+
         private static boolean lt(RComplex a, RComplex b) {
             if (a.getRealPart() == b.getRealPart()) {
                 return a.getImaginaryPart() < b.getImaginaryPart();
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -154,13 +154,19 @@ public class RNGFunctions {
             RContext.getInstance().stateRNG.setCurrentSeeds(data);
         }
 
+        @TruffleBoundary
+        private static Object getObservableSeeds() {
+            return RContext.getInstance().stateRNG.getObservableSeeds();
+        }
+
         @Specialization
         protected Object getSeed(VirtualFrame frame, @SuppressWarnings("unused") RMissing data) {
-            Object seeds = RContext.getInstance().stateRNG.getCurrentSeeds();
+            Object seeds = getObservableSeeds();
             assert seeds != RMissing.instance;
             if (seeds instanceof int[]) {
+                // the generator keeps on using the array, R code gets a snapshot
                 int[] seedsArr = (int[]) seeds;
-                return RDataFactory.createIntVector(seedsArr, RDataFactory.INCOMPLETE_VECTOR);
+                return RDataFactory.createIntVector(seedsArr.clone(), RDataFactory.INCOMPLETE_VECTOR);
             }
             visibility.execute(frame, true);
             if (seeds == null) {
@@ -55,6 +55,7 @@ import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RDoubleVector;
 import com.oracle.truffle.r.runtime.data.RIntVector;
 import com.oracle.truffle.r.runtime.data.RNull;
+import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandomNumberProvider;
 import com.oracle.truffle.r.runtime.rng.RRNG;
 
 @RBuiltin(name = "sample", kind = INTERNAL, parameterNames = {"x", "size", "replace", "prob"}, behavior = MODIFIES_STATE)
@@ -123,7 +124,10 @@ public abstract class Sample extends RBuiltinNode.Arg4 {
             // TODO implement walker
             throw new UnsupportedOperationException("walker_ProbSampleReplace is not yet implemented");
         } else {
-            return RDataFactory.createIntVector(probSampleReplace(x, probArray, size), RDataFactory.COMPLETE_VECTOR);
+            RRNG.getRNGState();
+            int[] result = probSampleReplace(x, probArray, size, RandomNumberProvider.fromCurrentRNG().withBlock(size));
+            RRNG.putRNGState();
+            return RDataFactory.createIntVector(result, RDataFactory.COMPLETE_VECTOR);
         }
     }
 
@@ -132,7 +136,10 @@ public abstract class Sample extends RBuiltinNode.Arg4 {
     protected RIntVector doSampleNoReplacement(final int x, final int size, final boolean isRepeatable, final RDoubleVector prob) {
         double[] probArray = prob.materialize().getDataCopy();
         fixupProbability(probArray, x, size, isRepeatable);
-        return RDataFactory.createIntVector(probSampleWithoutReplace(x, probArray, size), RDataFactory.COMPLETE_VECTOR);
+        RRNG.getRNGState();
+        int[] result = probSampleWithoutReplace(x, probArray, size, RandomNumberProvider.fromCurrentRNG().withBlock(size));
+        RRNG.putRNGState();
+        return RDataFactory.createIntVector(result, RDataFactory.COMPLETE_VECTOR);
     }
 
     @Specialization(guards = {"!largerPopulation(x, size, isRepeatable)"})
@@ -142,10 +149,19 @@ public abstract class Sample extends RBuiltinNode.Arg4 {
         // The following code is transcribed from GNU R src/main/random.c lines 533-545 in
         // function do_sample.
         int[] result = new int[size];
+        RRNG.getRNGState();
+        // every index consumes at least one uniform random number unless the population is empty
+        RandomNumberProvider rand = RandomNumberProvider.fromCurrentRNG();
+        if (x > 0) {
+            rand = rand.withBlock(size);
+        }
         /* avoid allocation for a single sample */
         if (sampleSizeProfile.profile(isRepeatable || size < 2)) {
             for (int i = 0; i < size; i++) {
-                result[i] = (int) (RRNG.unifIndex(x) + 1);
+                if (x > 0) {
+                    rand.atLeast(size - i);
+                }
+                result[i] = (int) (RRNG.unifIndex(rand, x) + 1);
             }
         } else {
             int n = x;
@@ -154,11 +170,13 @@ public abstract class Sample extends RBuiltinNode.Arg4 {
                 ix[i] = i;
             }
             for (int i = 0; i < size; i++) {
-                int j = (int) RRNG.unifIndex(n);
+                rand.atLeast(size - i);
+                int j = (int) RRNG.unifIndex(rand, n);
                 result[i] = ix[j] + 1;
                 ix[j] = ix[--n];
             }
         }
+        RRNG.putRNGState();
         return RDataFactory.createIntVector(result, true);
     }
 
@@ -188,7 +206,7 @@ public abstract class Sample extends RBuiltinNode.Arg4 {
     }
 
     @TruffleBoundary
-    private static int[] probSampleReplace(int n, double[] probArray, int resultSize) {
+    private static int[] probSampleReplace(int n, double[] probArray, int resultSize, RandomNumberProvider rand) {
         // The following code is transcribed from GNU R src/main/random.c lines 309-335
         int[] result = new int[resultSize];
         int[] perm = new int[n];
@@ -202,7 +220,7 @@ public abstract class Sample extends RBuiltinNode.Arg4 {
         }
         for (int i = 0; i < resultSize; i++) {
             int j = 0;
-            double rU = RRNG.unifRand();
+            double rU = rand.unifRand();
             for (j = 0; j < n - 1; j++) {
                 if (rU <= probArray[j]) {
                     break;
@@ -214,7 +232,7 @@ public abstract class Sample extends RBuiltinNode.Arg4 {
     }
 
     @TruffleBoundary
-    private static int[] probSampleWithoutReplace(int n, double[] probArray, int resultSize) {
+    private static int[] probSampleWithoutReplace(int n, double[] probArray, int resultSize, RandomNumberProvider rand) {
         // The following code is transcribed from GNU R src/main/random.c lines 396-428
         int[] ans = new int[resultSize];
         int[] perm = new int[n];
@@ -224,7 +242,7 @@ public abstract class Sample extends RBuiltinNode.Arg4 {
         heapSort(perm, probArray);
         double totalMass = 1;
         for (int i = 0, n1 = n - 1; i < resultSize; i++, n1--) {
-            double rT = totalMass * RRNG.unifRand();
+            double rT = totalMass * rand.unifRand();
             double mass = 0;
             int j = 0;
             for (j = 0; j < n1; j++) {
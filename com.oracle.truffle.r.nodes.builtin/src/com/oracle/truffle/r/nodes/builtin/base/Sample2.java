@@ -1,7 +1,7 @@
 /*
  * Copyright (c) 1995, 1996  Robert Gentleman and Ross Ihaka
  * Copyright (c) 1997-2015,  The R Core Team
- * Copyright (c) 2016, 2019, Oracle and/or its affiliates
+ * Copyright (c) 2016, 2021, Oracle and/or its affiliates
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -39,6 +39,7 @@ import com.oracle.truffle.r.runtime.builtins.RBuiltin;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RDoubleVector;
 import com.oracle.truffle.r.runtime.data.RIntVector;
+import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandomNumberProvider;
 import com.oracle.truffle.r.runtime.rng.RRNG;
 
 /**
@@ -60,12 +61,15 @@ public abstract class Sample2 extends RBuiltinNode.Arg2 {
     protected RDoubleVector doLargeX(double x, int size) {
         validate(x, size);
         RRNG.getRNGState();
+        // x > size * 2, so every value consumes at least one uniform random number
+        RandomNumberProvider rand = RandomNumberProvider.fromCurrentRNG().withBlock(size);
 
         double[] result = new double[size];
         NonRecursiveHashSetDouble used = new NonRecursiveHashSetDouble((int) (size * 1.2));
         for (int i = 0; i < size; i++) {
+            rand.atLeast(size - i);
             for (int j = 0; j < 100; j++) {
-                double value = Math.floor(RRNG.unifIndex(x) + 1);
+                double value = Math.floor(RRNG.unifIndex(rand, x) + 1);
                 if (!used.add(value)) {
                     result[i] = value;
                     break;
@@ -81,12 +85,15 @@ public abstract class Sample2 extends RBuiltinNode.Arg2 {
     protected RIntVector doSmallX(double x, int size) {
         validate(x, size);
         RRNG.getRNGState();
+        // x > size * 2, so every value consumes at least one uniform random number
+        RandomNumberProvider rand = RandomNumberProvider.fromCurrentRNG().withBlock(size);
 
         int[] result = new int[size];
         NonRecursiveHashSetInt used = new NonRecursiveHashSetInt((int) (size * 1.2));
         for (int i = 0; i < size; i++) {
+            rand.atLeast(size - i);
             for (int j = 0; j < 100; j++) {
-                int value = (int) (RRNG.unifIndex(x) + 1);
+                int value = (int) (RRNG.unifIndex(rand, x) + 1);
                 if (!used.add(value)) {
                     result[i] = value;
                     break;
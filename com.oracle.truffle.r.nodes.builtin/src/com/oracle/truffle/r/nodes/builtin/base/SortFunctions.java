@@ -47,6 +47,7 @@ import com.oracle.truffle.r.nodes.builtin.RBuiltinNode;
 import com.oracle.truffle.r.runtime.DSLConfig;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RRuntime;
+import com.oracle.truffle.r.runtime.StableSort;
 import com.oracle.truffle.r.runtime.builtins.RBuiltin;
 import com.oracle.truffle.r.runtime.data.RArgsValuesAndNames;
 import com.oracle.truffle.r.runtime.data.RComplexVector;
@@ -60,8 +61,9 @@ import com.oracle.truffle.r.runtime.data.VectorDataLibrary;
 import com.oracle.truffle.r.runtime.data.model.RAbstractListVector;
 
 /**
- * The internal functions mandated by {@code base/sort.R}. N.B. We use the standard JDK sorting
- * algorithms and not the specific algorithms specified in the R manual entry.
+ * The internal functions mandated by {@code base/sort.R}. N.B. We use the radix sort from
+ * {@link StableSort} for numeric values, the standard JDK sorting algorithms otherwise, and not the
+ * specific algorithms specified in the R manual entry.
  */
 public class SortFunctions {
 
@@ -76,6 +78,10 @@ public class SortFunctions {
 
     @TruffleBoundary
     private static double[] sort(double[] data, boolean decreasing) {
+        if (!containsNaN(data)) {
+            StableSort.sortValues(data, decreasing);
+            return data;
+        }
         // no reverse comparator for primitives
         Arrays.parallelSort(data);
         if (decreasing) {
@@ -89,17 +95,18 @@ public class SortFunctions {
         return data;
     }
 
-    @TruffleBoundary
-    private static int[] sort(int[] data, boolean decreasing) {
-        Arrays.parallelSort(data);
-        if (decreasing) {
-            int len = data.length;
-            for (int i = len / 2 - 1; i >= 0; i--) {
-                int temp = data[i];
-                data[i] = data[len - i - 1];
-                data[len - i - 1] = temp;
+    private static boolean containsNaN(double[] data) {
+        for (double value : data) {
+            if (Double.isNaN(value)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    @TruffleBoundary
+    private static int[] sort(int[] data, boolean decreasing) {
+        StableSort.sortValues(data, decreasing);
         return data;
     }
 
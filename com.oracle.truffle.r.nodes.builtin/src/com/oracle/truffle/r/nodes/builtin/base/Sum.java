@@ -121,6 +121,48 @@ public abstract class Sum extends RBuiltinNode.Arg2 {
         }
     }
 
+    /**
+     * Sums a double vector region by region, so that the inner loop runs over a plain array
+     * regardless of the representation of the vector data.
+     */
+    @Specialization(guards = {"!fullPrecision()", "args.getLength() == 1", "isRDoubleVector(args.getArgument(0))", "!hasSumMethodRegistered(args.getArgument(0))", "naRm == cachedNaRm"})
+    protected double sumLengthOneRDoubleVectorByRegion(RArgsValuesAndNames args, @SuppressWarnings("unused") boolean naRm,
+                    @Cached("naRm") boolean cachedNaRm,
+                    @Cached("create()") VectorLengthProfile lengthProfile,
+                    @Cached("createBinaryProfile()") ConditionProfile completeProfile,
+                    @CachedLibrary(limit = "getTypedVectorDataLibraryCacheSize()") VectorDataLibrary vecDataLib) {
+        Object data = ((RDoubleVector) args.getArgument(0)).getData();
+        int length = lengthProfile.profile(vecDataLib.getLength(data));
+        // a complete vector has no NA, but it may still contain NaN that na.rm must drop
+        boolean noCheck = completeProfile.profile(!cachedNaRm && vecDataLib.isComplete(data));
+        double[] buffer = new double[Math.min(length, VectorDataLibrary.REGION_SIZE)];
+        double sum = 0;
+        for (int start = 0; start < length; start += buffer.length) {
+            int count = vecDataLib.readDoubleRegion(data, start, buffer.length, buffer);
+            if (noCheck) {
+                for (int i = 0; i < count; i++) {
+                    sum += buffer[i];
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    double value = buffer[i];
+                    if (RRuntime.isNAorNaN(value)) {
+                        if (RRuntime.isNA(value)) {
+                            if (!cachedNaRm) {
+                                return RRuntime.DOUBLE_NA;
+                            }
+                            continue;
+                        } else if (cachedNaRm) {
+                            continue;
+                        }
+                    }
+                    sum += value;
+                }
+            }
+        }
+        return sum;
+    }
+
     /**
      * The behavior of this specialization for altrep instances is currently copied from GNU-R
      * (summary.c) and is as follows:
@@ -135,18 +177,18 @@ public abstract class Sum extends RBuiltinNode.Arg2 {
      * argument, sum dispatches to corresponding method, if there are more S4 instances, no
      * dispatching is done.
      */
-    @Specialization(replaces = "sumLengthOneRDoubleVector", guards = {"args.getLength() == 1", "isAltrep(args.getArgument(0))", "hasSumMethodRegistered(args.getArgument(0))"})
+    @Specialization(replaces = {"sumLengthOneRDoubleVector", "sumLengthOneRDoubleVectorByRegion"}, guards = {"args.getLength() == 1", "isAltrep(args.getArgument(0))", "hasSumMethodRegistered(args.getArgument(0))"})
     protected Object sumLengthOneAltrep(RArgsValuesAndNames args, boolean naRm,
                     @Cached AltrepRFFI.SumNode sumNode) {
         return sumNode.execute(args.getArgument(0), naRm);
     }
 
-    @Specialization(replaces = {"sumLengthOneRDoubleVector", "sumLengthOneAltrep"}, guards = "args.getLength() == 1")
+    @Specialization(replaces = {"sumLengthOneRDoubleVector", "sumLengthOneRDoubleVectorByRegion", "sumLengthOneAltrep"}, guards = "args.getLength() == 1")
     protected Object sumLengthOne(RArgsValuesAndNames args, boolean naRm) {
         return reduce.executeReduce(args.getArgument(0), naRm, false);
     }
 
-    @Specialization(replaces = {"sumLengthOneRDoubleVector", "sumLengthOneAltrep", "sumLengthOne"})
+    @Specialization(replaces = {"sumLengthOneRDoubleVector", "sumLengthOneRDoubleVectorByRegion", "sumLengthOneAltrep", "sumLengthOne"})
     protected Object sum(RArgsValuesAndNames args, boolean naRm,
                     @Cached("create()") Combine combine) {
         return reduce.executeReduce(combine.executeCombine(args, false), naRm, false);
@@ -33,19 +33,17 @@ import java.util.Arrays;
 
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
-import com.oracle.truffle.api.dsl.Cached;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.library.CachedLibrary;
-import com.oracle.truffle.api.profiles.ConditionProfile;
 import com.oracle.truffle.r.nodes.builtin.RBuiltinNode;
-import com.oracle.truffle.r.runtime.Collections.NonRecursiveHashSet;
-import com.oracle.truffle.r.runtime.Collections.NonRecursiveHashSetDouble;
+import com.oracle.truffle.r.runtime.Collections.ComplexElementHash;
+import com.oracle.truffle.r.runtime.Collections.DoubleElementHash;
+import com.oracle.truffle.r.runtime.Collections.IntElementHash;
+import com.oracle.truffle.r.runtime.Collections.StringElementHash;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RError.Message;
 import com.oracle.truffle.r.runtime.RRuntime;
-import com.oracle.truffle.r.runtime.Utils;
 import com.oracle.truffle.r.runtime.builtins.RBuiltin;
-import com.oracle.truffle.r.runtime.data.RComplex;
 import com.oracle.truffle.r.runtime.data.RComplexVector;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RDoubleVector;
@@ -56,18 +54,10 @@ import com.oracle.truffle.r.runtime.data.RNull;
 import com.oracle.truffle.r.runtime.data.RRawVector;
 import com.oracle.truffle.r.runtime.data.RStringVector;
 import com.oracle.truffle.r.runtime.data.VectorDataLibrary;
-import com.oracle.truffle.r.runtime.data.VectorDataLibrary.SeqIterator;
 
 @RBuiltin(name = "unique", kind = INTERNAL, parameterNames = {"x", "incomparables", "fromLast", "nmax"}, behavior = PURE)
-// TODO A more efficient implementation is in order; GNU R uses hash tables so perhaps we should
-// consider using one of the existing libraries that offer hash table implementations for primitive
-// types
 public abstract class Unique extends RBuiltinNode.Arg4 {
 
-    private static final long BIG_THRESHOLD = 100;
-
-    private final ConditionProfile bigProfile = ConditionProfile.createBinaryProfile();
-
     static {
         Casts casts = new Casts(Unique.class);
         // these are similar to those in DuplicatedFunctions.java
@@ -89,168 +79,78 @@ public abstract class Unique extends RBuiltinNode.Arg4 {
         return vec;
     }
 
-    @SuppressWarnings("unused")
-    @Specialization(limit = "getTypedVectorDataLibraryCacheSize()")
-    protected RStringVector doUniqueCachedString(RStringVector vec, byte incomparables, byte fromLast, int nmax,
-                    @CachedLibrary("vec.getData()") VectorDataLibrary vecLib) {
-        Object vecData = vec.getData();
-        int vecLength = vecLib.getLength(vecData);
-        reportWork(vecLength);
-        if (bigProfile.profile(vecLength * (long) vecLength > BIG_THRESHOLD)) {
-            NonRecursiveHashSet<String> set = new NonRecursiveHashSet<>(vecLength);
-            String[] data = new String[vecLength];
-            int ind = 0;
-            SeqIterator it = vecLib.iterator(vecData);
-            while (vecLib.nextLoopCondition(vecData, it)) {
-                String val = vecLib.getNextString(vecData, it);
-                if (!set.add(val)) {
-                    data[ind++] = val;
-                }
-            }
-            return RDataFactory.createStringVector(Arrays.copyOf(data, ind), vecLib.isComplete(vecData));
-        } else {
-            ArrayList<String> dataList = Utils.createArrayList(vecLength);
-            SeqIterator it = vecLib.iterator(vecData);
-            while (vecLib.nextLoopCondition(vecData, it)) {
-                String s = vecLib.getNextString(vecData, it);
-                if (!Utils.contains(dataList, s)) {
-                    Utils.add(dataList, s);
-                }
-            }
-            String[] data = new String[dataList.size()];
-            Utils.toArray(dataList, data);
-            return RDataFactory.createStringVector(data, vecLib.isComplete(vecData));
+    @TruffleBoundary
+    private static int[] select(int[] data, int[] indexes) {
+        int[] result = new int[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            result[i] = data[indexes[i]];
         }
+        return result;
     }
 
-    // these are intended to stay private as they will go away once we figure out which external
-    // library to use
-
-    private static class IntArray {
-        int[] backingArray;
-        int index;
-
-        IntArray(int len) {
-            this.backingArray = new int[len];
-            index = 0;
-        }
-
-        public boolean contains(int val) {
-            for (int i = 0; i < index; i++) {
-                if (backingArray[i] == val) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        public void add(int val) {
-            backingArray[index++] = val;
-        }
-
-        public int[] toArray() {
-            int[] newArray = new int[index];
-            System.arraycopy(backingArray, 0, newArray, 0, index);
-            return newArray;
+    @TruffleBoundary
+    private static double[] select(double[] data, int[] indexes) {
+        double[] result = new double[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            result[i] = data[indexes[i]];
         }
+        return result;
     }
 
-    private static class DoubleArray {
-        double[] backingArray;
-        int index;
-
-        DoubleArray(int len) {
-            this.backingArray = new double[len];
-            index = 0;
-        }
-
-        public boolean contains(double val) {
-            for (int i = 0; i < index; i++) {
-                if (areEqual(backingArray[i], val)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        public void add(double val) {
-            backingArray[index++] = val;
-        }
-
-        public double[] toArray() {
-            double[] newArray = new double[index];
-            System.arraycopy(backingArray, 0, newArray, 0, index);
-            return newArray;
-        }
-
-        private static boolean areEqual(double a, double b) {
-            return a == b || (RRuntime.isNA(a) && RRuntime.isNA(b));
+    @TruffleBoundary
+    private static String[] select(String[] data, int[] indexes) {
+        String[] result = new String[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            result[i] = data[indexes[i]];
         }
+        return result;
     }
 
-    private static class DoubleArrayForComplex {
-        double[] backingArray;
-        int index;
-
-        DoubleArrayForComplex(int len) {
-            this.backingArray = new double[len << 1];
-            index = 0;
-        }
-
-        public boolean contains(RComplex val) {
-            for (int i = 0; i < index; i++) {
-                if (areEqual(backingArray[i << 1], backingArray[(i << 1) + 1], val.getRealPart(), val.getImaginaryPart())) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        public void add(RComplex val) {
-            backingArray[index << 1] = val.getRealPart();
-            backingArray[(index << 1) + 1] = val.getImaginaryPart();
-            index++;
-        }
-
-        public double[] toArray() {
-            int size = index << 1;
-            double[] newArray = new double[size];
-            System.arraycopy(backingArray, 0, newArray, 0, size);
-            return newArray;
-        }
-
-        private static boolean areEqual(double ar, double ai, double br, double bi) {
-            return (ar == br && ai == bi) || (RRuntime.isNA(ar, ai) && RRuntime.isNA(br, bi));
+    @TruffleBoundary
+    private static double[] selectComplex(double[] data, int[] indexes) {
+        double[] result = new double[indexes.length << 1];
+        for (int i = 0; i < indexes.length; i++) {
+            result[i << 1] = data[indexes[i] << 1];
+            result[(i << 1) + 1] = data[(indexes[i] << 1) + 1];
         }
+        return result;
     }
 
-    private static class ByteArray {
-        byte[] backingArray;
-        int index;
-
-        ByteArray(int len) {
-            this.backingArray = new byte[len];
-            index = 0;
-        }
+    @SuppressWarnings("unused")
+    @Specialization(limit = "getTypedVectorDataLibraryCacheSize()")
+    protected RStringVector doUniqueCachedString(RStringVector vec, byte incomparables, byte fromLast, int nmax,
+                    @CachedLibrary("vec.getData()") VectorDataLibrary vecLib) {
+        Object vecData = vec.getData();
+        reportWork(vecLib.getLength(vecData));
+        String[] data = vecLib.getReadonlyStringData(vecData);
+        return RDataFactory.createStringVector(select(data, new StringElementHash(data).uniqueIndexes(RRuntime.fromLogical(fromLast))), vecLib.isComplete(vecData));
+    }
 
-        public boolean contains(byte val) {
-            for (int i = 0; i < index; i++) {
-                if (backingArray[i] == val) {
-                    return true;
-                }
+    /**
+     * Unique values of logical and raw vectors, which have at most 256 distinct values, so a bit
+     * set suffices. With {@code fromLast} the last occurrences are kept, in their original order.
+     */
+    @TruffleBoundary
+    private static byte[] uniqueBytes(byte[] data, boolean fromLast) {
+        boolean[] seen = new boolean[Byte.MAX_VALUE - Byte.MIN_VALUE + 1];
+        byte[] result = new byte[Math.min(data.length, seen.length)];
+        int count = 0;
+        for (int k = 0; k < data.length; k++) {
+            byte val = data[fromLast ? data.length - 1 - k : k];
+            int idx = val - Byte.MIN_VALUE;
+            if (!seen[idx]) {
+                seen[idx] = true;
+                result[count++] = val;
             }
-            return false;
-        }
-
-        public void add(byte val) {
-            backingArray[index++] = val;
         }
-
-        public byte[] toArray() {
-            byte[] newArray = new byte[index];
-            System.arraycopy(backingArray, 0, newArray, 0, index);
-            return newArray;
+        if (fromLast) {
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                byte tmp = result[i];
+                result[i] = result[j];
+                result[j] = tmp;
+            }
         }
+        return count == result.length ? result : Arrays.copyOf(result, count);
     }
 
     @SuppressWarnings("unused")
@@ -258,34 +158,9 @@ public abstract class Unique extends RBuiltinNode.Arg4 {
     protected RIntVector doUniqueCached(RIntVector vec, byte incomparables, byte fromLast, int nmax,
                     @CachedLibrary("vec.getData()") VectorDataLibrary vecLib) {
         Object vecData = vec.getData();
-        int vecLength = vecLib.getLength(vecData);
-        reportWork(vecLength);
-        if (bigProfile.profile(vecLength * (long) vecLength > BIG_THRESHOLD)) {
-            NonRecursiveHashSetInt set = new NonRecursiveHashSetInt();
-            int[] data = new int[16];
-            int ind = 0;
-            SeqIterator it = vecLib.iterator(vecData);
-            while (vecLib.nextLoopCondition(vecData, it)) {
-                int val = vecLib.getNextInt(vecData, it);
-                if (!set.add(val)) {
-                    if (ind == data.length) {
-                        data = Arrays.copyOf(data, data.length << 1);
-                    }
-                    data[ind++] = val;
-                }
-            }
-            return RDataFactory.createIntVector(Arrays.copyOf(data, ind), vecLib.isComplete(vecData));
-        } else {
-            IntArray dataList = new IntArray(vecLength);
-            SeqIterator it = vecLib.iterator(vecData);
-            while (vecLib.nextLoopCondition(vecData, it)) {
-                int val = vecLib.getNextInt(vecData, it);
-                if (!dataList.contains(val)) {
-                    dataList.add(val);
-                }
-            }
-            return RDataFactory.createIntVector(dataList.toArray(), vecLib.isComplete(vecData));
-        }
+        reportWork(vecLib.getLength(vecData));
+        int[] data = vecLib.getReadonlyIntData(vecData);
+        return RDataFactory.createIntVector(select(data, new IntElementHash(data).uniqueIndexes(RRuntime.fromLogical(fromLast))), vecLib.isComplete(vecData));
     }
 
     @SuppressWarnings("unused")
@@ -336,86 +211,14 @@ public abstract class Unique extends RBuiltinNode.Arg4 {
         return list.getLength() == 1;
     }
 
-    private static final class NonRecursiveHashSetInt {
-
-        private int[] keys;
-        private int size;
-        private boolean containsZero;
-
-        NonRecursiveHashSetInt() {
-            keys = new int[64];
-        }
-
-        public boolean add(int key) {
-            if (key == 0) {
-                if (containsZero) {
-                    return true;
-                } else {
-                    containsZero = true;
-                    return false;
-                }
-            }
-            int ind = Math.abs(Integer.hashCode(key)) & (keys.length - 1);
-            while (true) {
-                if (keys[ind] == 0) {
-                    keys[ind] = key;
-                    size++;
-                    if (size << 1 == keys.length) {
-                        int[] newKeys = new int[keys.length << 1];
-                        for (int rehashKey : keys) {
-                            if (rehashKey != 0) {
-                                int tmpInd = Math.abs(Integer.hashCode(rehashKey)) & (newKeys.length - 1);
-                                while (newKeys[tmpInd] != 0) {
-                                    assert newKeys[tmpInd] != rehashKey;
-                                    tmpInd = (tmpInd + 1) & (newKeys.length - 1);
-                                }
-                                newKeys[tmpInd] = rehashKey;
-                            }
-                        }
-
-                        keys = newKeys;
-                    }
-                    return false;
-                } else if (key == keys[ind]) {
-                    return true;
-                } else {
-                    ind = (ind + 1) & (keys.length - 1);
-                }
-            }
-        }
-    }
-
     @SuppressWarnings("unused")
     @Specialization(limit = "getTypedVectorDataLibraryCacheSize()")
     protected RDoubleVector doUnique(RDoubleVector vec, byte incomparables, byte fromLast, int nmax,
                     @CachedLibrary("vec.getData()") VectorDataLibrary vecDataLib) {
         Object vecData = vec.getData();
-        int vecLen = vecDataLib.getLength(vecData);
-        boolean isVecComplete = vecDataLib.isComplete(vecData);
-        reportWork(vecLen);
-        if (bigProfile.profile(vecLen * (long) vecLen > BIG_THRESHOLD)) {
-            NonRecursiveHashSetDouble set = new NonRecursiveHashSetDouble(vecLen);
-            double[] data = new double[vecLen];
-            int ind = 0;
-            SeqIterator vecIter = vecDataLib.iterator(vecData);
-            while (vecDataLib.nextLoopCondition(vecData, vecIter)) {
-                double val = vecDataLib.getNextDouble(vecData, vecIter);
-                if (!set.add(val)) {
-                    data[ind++] = val;
-                }
-            }
-            return RDataFactory.createDoubleVector(Arrays.copyOf(data, ind), isVecComplete);
-        } else {
-            DoubleArray dataList = new DoubleArray(vecLen);
-            SeqIterator vecIter = vecDataLib.iterator(vecData);
-            while (vecDataLib.nextLoopCondition(vecData, vecIter)) {
-                double val = vecDataLib.getNextDouble(vecData, vecIter);
-                if (!dataList.contains(val)) {
-                    dataList.add(val);
-                }
-            }
-            return RDataFactory.createDoubleVector(dataList.toArray(), isVecComplete);
-        }
+        reportWork(vecDataLib.getLength(vecData));
+        double[] data = vecDataLib.getReadonlyDoubleData(vecData);
+        return RDataFactory.createDoubleVector(select(data, new DoubleElementHash(data).uniqueIndexes(RRuntime.fromLogical(fromLast))), vecDataLib.isComplete(vecData));
     }
 
     @SuppressWarnings("unused")
@@ -423,18 +226,9 @@ public abstract class Unique extends RBuiltinNode.Arg4 {
     protected RLogicalVector doUnique(RLogicalVector vec, byte incomparables, byte fromLast, int nmax,
                     @CachedLibrary("vec.getData()") VectorDataLibrary vecDataLib) {
         Object vecData = vec.getData();
-        int vecLen = vecDataLib.getLength(vecData);
-        boolean isVecComplete = vecDataLib.isComplete(vecData);
-        reportWork(vecLen);
-        ByteArray dataList = new ByteArray(vecLen);
-        SeqIterator vecIter = vecDataLib.iterator(vecData);
-        while (vecDataLib.nextLoopCondition(vecData, vecIter)) {
-            byte val = vecDataLib.getNextLogical(vecData, vecIter);
-            if (!dataList.contains(val)) {
-                dataList.add(val);
-            }
-        }
-        return RDataFactory.createLogicalVector(dataList.toArray(), isVecComplete);
+        reportWork(vecDataLib.getLength(vecData));
+        byte[] data = vecDataLib.getReadonlyLogicalData(vecData);
+        return RDataFactory.createLogicalVector(uniqueBytes(data, RRuntime.fromLogical(fromLast)), vecDataLib.isComplete(vecData));
     }
 
     @SuppressWarnings("unused")
@@ -442,55 +236,18 @@ public abstract class Unique extends RBuiltinNode.Arg4 {
     protected RComplexVector doUnique(RComplexVector vec, byte incomparables, byte fromLast, int nmax,
                     @CachedLibrary("vec.getData()") VectorDataLibrary vecDataLib) {
         Object vecData = vec.getData();
-        int vecLength = vecDataLib.getLength(vecData);
-        boolean isVecComplete = vecDataLib.isComplete(vecData);
-        reportWork(vecLength);
-        if (bigProfile.profile(vecLength * (long) vecLength > BIG_THRESHOLD)) {
-            NonRecursiveHashSet<RComplex> set = new NonRecursiveHashSet<>(vecLength);
-            double[] data = new double[vecLength * 2];
-            SeqIterator vecIter = vecDataLib.iterator(vecData);
-            int ind = 0;
-            while (vecDataLib.nextLoopCondition(vecData, vecIter)) {
-                RComplex val = vecDataLib.getNextComplex(vecData, vecIter);
-                if (!set.add(val)) {
-                    data[ind++] = val.getRealPart();
-                    data[ind++] = val.getImaginaryPart();
-                }
-            }
-            return RDataFactory.createComplexVector(Arrays.copyOf(data, ind), isVecComplete);
-        } else {
-            DoubleArrayForComplex dataList = new DoubleArrayForComplex(vecLength);
-            SeqIterator vecIter = vecDataLib.iterator(vecData);
-            while (vecDataLib.nextLoopCondition(vecData, vecIter)) {
-                RComplex s = vecDataLib.getNextComplex(vecData, vecIter);
-                if (!dataList.contains(s)) {
-                    dataList.add(s);
-                }
-            }
-            return RDataFactory.createComplexVector(dataList.toArray(), isVecComplete);
-        }
+        reportWork(vecDataLib.getLength(vecData));
+        double[] data = vecDataLib.getReadonlyComplexData(vecData);
+        return RDataFactory.createComplexVector(selectComplex(data, new ComplexElementHash(data).uniqueIndexes(RRuntime.fromLogical(fromLast))), vecDataLib.isComplete(vecData));
     }
 
     @SuppressWarnings("unused")
     @Specialization(limit = "getTypedVectorDataLibraryCacheSize()")
     protected RRawVector doUnique(RRawVector vec, byte incomparables, byte fromLast, int nmax,
-                    @Cached("createBinaryProfile()") ConditionProfile needsCopyProfile,
                     @CachedLibrary("vec.getData()") VectorDataLibrary vecDataLib) {
         Object vecData = vec.getData();
-        int vecLength = vecDataLib.getLength(vecData);
-        reportWork(vecLength);
-        boolean[] bitset = new boolean[Byte.MAX_VALUE - Byte.MIN_VALUE + 1];
-        byte[] data = new byte[vecLength];
-        int ind = 0;
-        SeqIterator vecIter = vecDataLib.iterator(vecData);
-        while (vecDataLib.nextLoopCondition(vecData, vecIter)) {
-            byte val = vecDataLib.getNextRaw(vecData, vecIter);
-            int idx = val - Byte.MIN_VALUE;
-            if (!bitset[idx]) {
-                bitset[idx] = true;
-                data[ind++] = val;
-            }
-        }
-        return RDataFactory.createRawVector(needsCopyProfile.profile(ind == vecLength) ? data : Arrays.copyOf(data, ind));
+        reportWork(vecDataLib.getLength(vecData));
+        byte[] data = vecDataLib.getReadonlyRawData(vecData);
+        return RDataFactory.createRawVector(uniqueBytes(data, RRuntime.fromLogical(fromLast)));
     }
 }
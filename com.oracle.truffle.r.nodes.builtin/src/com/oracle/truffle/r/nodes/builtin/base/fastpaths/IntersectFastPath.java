@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2015, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2015, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -34,7 +34,9 @@ import com.oracle.truffle.api.library.CachedLibrary;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.NodeCost;
 import com.oracle.truffle.api.profiles.ConditionProfile;
+import com.oracle.truffle.r.runtime.Collections.IntElementHash;
 import com.oracle.truffle.r.runtime.DSLConfig;
+import com.oracle.truffle.r.runtime.data.ElementHashCache;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RIntVector;
 import com.oracle.truffle.r.runtime.data.VectorDataLibrary;
@@ -170,8 +172,6 @@ public abstract class IntersectFastPath extends RFastPathNode {
         Object yData = y.getData();
         int xLength = xLib.getLength(xData);
         int yLength = yLib.getLength(yData);
-        RandomAccessIterator xrit = xLib.randomAccessIterator(xData);
-        RandomAccessIterator yrit = yLib.randomAccessIterator(yData);
 
         RBaseNode.reportWork(this, xLength + yLength);
 
@@ -181,6 +181,7 @@ public abstract class IntersectFastPath extends RFastPathNode {
             if (isYSortedProfile.profile(isSorted(yLib, yData))) {
                 tempY = y;
             } else {
+                RandomAccessIterator yrit = yLib.randomAccessIterator(yData);
                 int[] temp = new int[yLength];
                 for (int i = 0; i < yLength; i++) {
                     temp[i] = yLib.getInt(yData, yrit, i);
@@ -190,28 +191,7 @@ public abstract class IntersectFastPath extends RFastPathNode {
             }
             result = intersectSortedNode.execute(x, tempY);
         } else {
-            result = EMPTY_INT_ARRAY;
-            int maxResultLength = Math.min(xLength, yLength);
-            int[] temp = new int[yLength];
-            boolean[] used = new boolean[yLength];
-            for (int i = 0; i < yLength; i++) {
-                temp[i] = yLib.getInt(yData, yrit, i);
-            }
-            sort(temp);
-
-            int count = 0;
-            for (int i = 0; i < xLength; i++) {
-                int value = xLib.getInt(xData, xrit, i);
-                int pos = Arrays.binarySearch(temp, value);
-                if (pos >= 0 && !used[pos]) {
-                    used[pos] = true;
-                    if (count >= result.length) {
-                        result = Arrays.copyOf(result, Math.min(maxResultLength, Math.max(result.length * 2, 8)));
-                    }
-                    result[count++] = value;
-                }
-            }
-            result = intersectSortedNode.resultLengthMatchProfile.profile(count == result.length) ? result : Arrays.copyOf(result, count);
+            result = intersectHashed(x, y);
         }
         return RDataFactory.createIntVector(result, xLib.isComplete(xData) | yLib.isComplete(yData));
     }
@@ -231,6 +211,28 @@ public abstract class IntersectFastPath extends RFastPathNode {
         return true;
     }
 
+    /**
+     * Looks up the elements of {@code x} in the (cached) hash index of {@code y}, which makes
+     * repeated intersections with the same {@code y} cheap.
+     */
+    @TruffleBoundary
+    private static int[] intersectHashed(RIntVector x, RIntVector y) {
+        int[] xValues = x.getReadonlyData();
+        IntElementHash yHash = ElementHashCache.getIntHash(y, xValues.length);
+        int[] positions = yHash.indexOf(new IntElementHash(xValues));
+        boolean[] used = new boolean[yHash.getLength()];
+        int[] result = new int[Math.min(xValues.length, used.length)];
+        int count = 0;
+        for (int i = 0; i < xValues.length; i++) {
+            int pos = positions[i];
+            if (pos != -1 && !used[pos]) {
+                used[pos] = true;
+                result[count++] = xValues[i];
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
     @TruffleBoundary
     private static void sort(int[] temp) {
         Arrays.sort(temp);
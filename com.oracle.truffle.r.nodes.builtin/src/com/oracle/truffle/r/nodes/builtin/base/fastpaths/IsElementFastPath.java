@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2015, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2015, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -22,6 +22,7 @@
  */
 package com.oracle.truffle.r.nodes.builtin.base.fastpaths;
 
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.Cached;
 import com.oracle.truffle.api.dsl.Fallback;
 import com.oracle.truffle.api.dsl.ImportStatic;
@@ -29,8 +30,11 @@ import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.library.CachedLibrary;
 import com.oracle.truffle.api.profiles.BranchProfile;
 import com.oracle.truffle.api.profiles.ConditionProfile;
+import com.oracle.truffle.r.runtime.Collections.DoubleElementHash;
+import com.oracle.truffle.r.runtime.Collections.StringElementHash;
 import com.oracle.truffle.r.runtime.DSLConfig;
 import com.oracle.truffle.r.runtime.RRuntime;
+import com.oracle.truffle.r.runtime.data.ElementHashCache;
 import com.oracle.truffle.r.runtime.data.RDoubleVector;
 import com.oracle.truffle.r.runtime.data.RIntSeqVectorData;
 import com.oracle.truffle.r.runtime.data.RIntVector;
@@ -45,14 +49,19 @@ public abstract class IsElementFastPath extends RFastPathNode {
     protected Byte iselementOneCachedString(RStringVector el, RStringVector set,
                     @CachedLibrary("el.getData()") VectorDataLibrary elLib,
                     @CachedLibrary("set.getData()") VectorDataLibrary setLib,
+                    @Cached("createBinaryProfile()") ConditionProfile hashedProfile,
                     @Cached("create()") BranchProfile trueProfile,
                     @Cached("create()") BranchProfile falseProfile) {
         Object elData = el.getData();
         Object setData = set.getData();
         String element = elLib.getStringAt(elData, 0);
+        StringElementHash hash = ElementHashCache.get(set, StringElementHash.class);
+        if (hashedProfile.profile(hash != null)) {
+            return RRuntime.asLogical(containsHashed(hash, element));
+        }
         VectorDataLibrary.SeqIterator it = setLib.iterator(setData);
         while (setLib.nextLoopCondition(setData, it)) {
-            if (element.equals(setLib.getNextString(setData, it))) {
+            if (StringElementHash.equalStrings(element, setLib.getNextString(setData, it))) {
                 trueProfile.enter();
                 return RRuntime.LOGICAL_TRUE;
             }
@@ -63,21 +72,26 @@ public abstract class IsElementFastPath extends RFastPathNode {
 
     @Specialization
     protected Byte isElementOne(double el, double set) {
-        return RRuntime.asLogical(el == set);
+        return RRuntime.asLogical(DoubleElementHash.equalDoubles(el, set));
     }
 
     @Specialization(guards = {"elLib.getLength(el.getData()) == 1"}, limit = "getTypedVectorDataLibraryCacheSize()")
     protected Byte iselementOne(RDoubleVector el, RDoubleVector set,
                     @CachedLibrary("el.getData()") VectorDataLibrary elLib,
                     @CachedLibrary("set.getData()") VectorDataLibrary setLib,
+                    @Cached("createBinaryProfile()") ConditionProfile hashedProfile,
                     @Cached("create()") BranchProfile trueProfile,
                     @Cached("create()") BranchProfile falseProfile) {
         Object elData = el.getData();
         Object setData = set.getData();
         double element = elLib.getDoubleAt(elData, 0);
+        DoubleElementHash hash = ElementHashCache.get(set, DoubleElementHash.class);
+        if (hashedProfile.profile(hash != null)) {
+            return RRuntime.asLogical(containsHashed(hash, element));
+        }
         VectorDataLibrary.SeqIterator it = setLib.iterator(setData);
         while (setLib.nextLoopCondition(setData, it)) {
-            if (element == setLib.getNextDouble(setData, it)) {
+            if (DoubleElementHash.equalDoubles(element, setLib.getNextDouble(setData, it))) {
                 trueProfile.enter();
                 return RRuntime.LOGICAL_TRUE;
             }
@@ -121,6 +135,21 @@ public abstract class IsElementFastPath extends RFastPathNode {
         return RRuntime.LOGICAL_FALSE;
     }
 
+    /**
+     * Sets whose hash index has already been cached by a vectorized lookup are looked up through
+     * it, a single element is not worth building the index. Both ways compare the elements like
+     * {@code match}, so the result does not depend on whether the index exists.
+     */
+    @TruffleBoundary
+    private static boolean containsHashed(StringElementHash set, String element) {
+        return set.indexOf(new StringElementHash(new String[]{element}), 0) != -1;
+    }
+
+    @TruffleBoundary
+    private static boolean containsHashed(DoubleElementHash set, double element) {
+        return set.indexOf(new DoubleElementHash(new double[]{element}), 0) != -1;
+    }
+
     @Fallback
     @SuppressWarnings("unused")
     protected Object fallback(Object el, Object set) {
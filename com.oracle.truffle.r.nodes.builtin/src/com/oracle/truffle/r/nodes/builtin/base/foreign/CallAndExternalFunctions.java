@@ -52,6 +52,7 @@ import com.oracle.truffle.r.library.methods.SlotFactory.R_hasSlotNodeGen;
 import com.oracle.truffle.r.library.methods.SlotFactory.R_setSlotNodeGen;
 import com.oracle.truffle.r.library.methods.SubstituteDirectNodeGen;
 import com.oracle.truffle.r.library.parallel.ParallelFunctionsFactory.MCIsChildNodeGen;
+import com.oracle.truffle.r.library.parallel.ParallelFunctionsFactory.NextStreamNodeGen;
 import com.oracle.truffle.r.library.stats.Approx;
 import com.oracle.truffle.r.library.stats.ApproxTest;
 import com.oracle.truffle.r.library.stats.BinDist;
@@ -821,6 +822,10 @@ public class CallAndExternalFunctions {
                 // parallel
                 case "mc_is_child":
                     return MCIsChildNodeGen.create();
+                case "nextStream":
+                    return NextStreamNodeGen.create(false);
+                case "nextSubStream":
+                    return NextStreamNodeGen.create(true);
                 default:
                     return null;
             }
@@ -59,6 +59,7 @@ public abstract class UpdateSubscriptSpecial extends IndexingSpecialCommon {
         if (!isValidIndexCached(dataLib, vector, index) || !dataLib.isWriteable(vector.getData())) {
             throw RSpecialFactory.throwFullCallNeeded(value);
         }
+        vector.invalidateElementHash();
         dataLib.setIntAt(vector.getData(), index - 1, value);
         return vector;
     }
@@ -70,6 +71,7 @@ public abstract class UpdateSubscriptSpecial extends IndexingSpecialCommon {
         if (!isValidIndexCached(dataLib, vector, index) || !dataLib.isWriteable(vector.getData())) {
             throw RSpecialFactory.throwFullCallNeeded(value);
         }
+        vector.invalidateElementHash();
         dataLib.setDoubleAt(vector.getData(), index - 1, value);
         return vector;
     }
@@ -77,6 +79,7 @@ public abstract class UpdateSubscriptSpecial extends IndexingSpecialCommon {
     @Specialization(guards = {"simpleVector(vector)", "!vector.isShared()", "isValidIndex(vector, index)", "vector.isMaterialized()"}, limit = "getTypedVectorDataLibraryCacheSize()")
     protected RStringVector setString(RStringVector vector, int index, String value,
                     @CachedLibrary("vector.getData()") VectorDataLibrary vectorDataLib) {
+        vector.invalidateElementHash();
         RandomAccessWriteIterator iter = vectorDataLib.randomAccessWriteIterator(vector.getData());
         boolean neverSeenNA = false;
         try {
@@ -105,6 +108,7 @@ public abstract class UpdateSubscriptSpecial extends IndexingSpecialCommon {
     protected RDoubleVector setDoubleIntIndexIntValue(RDoubleVector vector, int index, int value,
                     @Cached BranchProfile isNAProfile,
                     @CachedLibrary("vector.getData()") VectorDataLibrary dataLib) {
+        vector.invalidateElementHash();
         if (RRuntime.isNA(value)) {
             isNAProfile.enter();
             dataLib.setDoubleAt(vector.getData(), index - 1, RRuntime.DOUBLE_NA);
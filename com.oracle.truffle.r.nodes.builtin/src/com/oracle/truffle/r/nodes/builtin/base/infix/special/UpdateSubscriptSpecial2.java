@@ -51,6 +51,7 @@ public abstract class UpdateSubscriptSpecial2 extends IndexingSpecial2Common {
     @Specialization(guards = {"simpleVector(vector)", "!vector.isShared()", "isValidIndex(vector, index1, index2)", "dataLib.isWriteable(vector.getData())"}, limit = "getVectorAccessCacheSize()")
     protected RIntVector setInt(RIntVector vector, int index1, int index2, int value,
                     @CachedLibrary("vector.getData()") VectorDataLibrary dataLib) {
+        vector.invalidateElementHash();
         Object vectorData = vector.getData();
         VectorDataLibrary.RandomAccessWriteIterator it = dataLib.randomAccessWriteIterator(vectorData);
         try {
@@ -64,6 +65,7 @@ public abstract class UpdateSubscriptSpecial2 extends IndexingSpecial2Common {
     @Specialization(guards = {"simpleVector(vector)", "!vector.isShared()", "isValidIndex(vector, index1, index2)", "dataLib.isWriteable(vector.getData())"}, limit = "getVectorAccessCacheSize()")
     protected RDoubleVector setDouble(RDoubleVector vector, int index1, int index2, double value,
                     @CachedLibrary("vector.getData()") VectorDataLibrary dataLib) {
+        vector.invalidateElementHash();
         Object vectorData = vector.getData();
         VectorDataLibrary.RandomAccessWriteIterator it = dataLib.randomAccessWriteIterator(vectorData);
         try {
@@ -77,6 +79,7 @@ public abstract class UpdateSubscriptSpecial2 extends IndexingSpecial2Common {
     @Specialization(guards = {"simpleVector(vector)", "!vector.isShared()", "isValidIndex(vector, index1, index2)", "dataLib.isWriteable(vector.getData())"}, limit = "getVectorAccessCacheSize()")
     protected RStringVector setString(RStringVector vector, int index1, int index2, String value,
                     @CachedLibrary("vector.getData()") VectorDataLibrary dataLib) {
+        vector.invalidateElementHash();
         Object vectorData = vector.getData();
         VectorDataLibrary.RandomAccessWriteIterator it = dataLib.randomAccessWriteIterator(vectorData);
         try {
@@ -105,6 +108,7 @@ public abstract class UpdateSubscriptSpecial2 extends IndexingSpecial2Common {
     protected RDoubleVector setDoubleIntIndexIntValue(RDoubleVector vector, int index1, int index2, int value,
                     @Cached("createBinaryProfile()") ConditionProfile naProfile,
                     @CachedLibrary("vector.getData()") VectorDataLibrary dataLib) {
+        vector.invalidateElementHash();
         Object vectorData = vector.getData();
         VectorDataLibrary.RandomAccessWriteIterator it = dataLib.randomAccessWriteIterator(vectorData);
         if (naProfile.profile(RRuntime.isNA(value))) {
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2015, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2015, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -53,6 +53,8 @@ import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RSource;
 import com.oracle.truffle.r.runtime.builtins.RBuiltin;
 import com.oracle.truffle.r.runtime.context.ChildContextInfo;
+import com.oracle.truffle.r.runtime.context.ChildContextPool;
+import com.oracle.truffle.r.runtime.context.ContextWorkerPool;
 import com.oracle.truffle.r.runtime.context.EvalThread;
 import com.oracle.truffle.r.runtime.context.FastROptions;
 import com.oracle.truffle.r.runtime.context.RContext;
@@ -60,6 +62,7 @@ import com.oracle.truffle.r.runtime.context.RContext.ConsoleIO;
 import com.oracle.truffle.r.runtime.context.RContext.ContextKind;
 import com.oracle.truffle.r.runtime.context.TruffleRLanguage;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RFunction;
 import com.oracle.truffle.r.runtime.data.RList;
 import com.oracle.truffle.r.runtime.data.RMissing;
 import com.oracle.truffle.r.runtime.data.RNull;
@@ -213,7 +216,7 @@ public class FastRContext {
             // first, create context infos
             ChildContextInfo[] childContextInfos = new ChildContextInfo[length];
             for (int i = 0; i < length; i++) {
-                childContextInfos[i] = createContextInfo(contextKind);
+                childContextInfos[i] = acquireContextInfo(contextKind);
                 data[i] = childContextInfos[i].getId();
                 multiSlotIndices[i] = childContextInfos[i].getMultiSlotInd();
             }
@@ -339,15 +342,15 @@ public class FastRContext {
             int length = exprs.getLength();
             Object[] results = new Object[length];
             if (length == 1) {
-                ChildContextInfo info = createContextInfo(contextKind);
-                TruffleContext truffleContext = info.createTruffleContext();
+                ChildContextInfo info = acquireContextInfo(contextKind);
+                TruffleContext truffleContext = info.getOrCreateTruffleContext();
                 results[0] = EvalThread.run(truffleContext, info, RSource.fromTextInternalInvisible(exprs.getDataAt(0), RSource.Internal.CONTEXT_EVAL));
             } else {
                 // separate threads that run in parallel; invoking thread waits for completion
                 EvalThread[] threads = new EvalThread[length];
                 int[] multiSlotIndices = new int[length];
                 for (int i = 0; i < length; i++) {
-                    ChildContextInfo info = createContextInfo(contextKind);
+                    ChildContextInfo info = acquireContextInfo(contextKind);
                     threads[i] = new EvalThread(RContext.getInstance().threads, info, RSource.fromTextInternalInvisible(exprs.getDataAt(i % exprs.getLength()), RSource.Internal.CONTEXT_EVAL));
                     multiSlotIndices[i] = info.getMultiSlotInd();
                 }
@@ -373,6 +376,43 @@ public class FastRContext {
         }
     }
 
+    /**
+     * Applies {@code FUN} to the elements of {@code X} on the {@link ContextWorkerPool} of the
+     * current context using at most {@code cores} workers, the elements are dispatched in chunks of
+     * {@code chunkSize}. {@code args} is the list of additional arguments to {@code FUN}. The pool
+     * is grown to {@code cores} workers if needed, its workers stay alive until the current context
+     * is closed.
+     *
+     * Returns {@code NULL} if the pool cannot be used, which is the case with shared contexts.
+     */
+    @RBuiltin(name = ".fastr.context.pool.lapply", kind = PRIMITIVE, parameterNames = {"X", "FUN", "args", "chunkSize", "cores"}, behavior = COMPLEX)
+    public abstract static class PoolLapply extends RBuiltinNode.Arg5 {
+
+        static {
+            Casts casts = new Casts(PoolLapply.class);
+            casts.arg("X").mustBe(instanceOf(RList.class));
+            casts.arg("FUN").mustBe(instanceOf(RFunction.class));
+            casts.arg("args").mustBe(instanceOf(RList.class));
+            casts.arg("chunkSize").asIntegerVector().findFirst().mustNotBeNA().mustBe(gte(1));
+            casts.arg("cores").asIntegerVector().findFirst().mustNotBeNA().mustBe(gte(1));
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected Object lapply(RList x, RFunction fun, RList args, int chunkSize, int cores) {
+            RContext context = RContext.getInstance();
+            if (context.getOption(SharedContexts)) {
+                return RNull.instance;
+            }
+            if (x.getLength() == 0) {
+                return RDataFactory.createList();
+            }
+            ContextWorkerPool pool = context.getWorkerPool();
+            pool.ensureSize(cores, () -> createContextInfo(ContextKind.SHARE_NOTHING));
+            return pool.apply(fun, x, args, chunkSize, cores);
+        }
+    }
+
     @RBuiltin(name = ".fastr.context.r", kind = PRIMITIVE, visibility = OFF, parameterNames = {"args", "env", "intern", "timeout"}, behavior = COMPLEX)
     public abstract static class R extends RBuiltinNode.Arg4 {
         @Override
@@ -459,6 +499,19 @@ public class FastRContext {
         return ChildContextInfo.createNoRestore(Client.RSCRIPT, null, contextKind, context, console.getStdin(), console.getStdout(), console.getStderr());
     }
 
+    /**
+     * Takes a started context from the {@link ChildContextPool} if possible.
+     */
+    private static ChildContextInfo acquireContextInfo(RContext.ContextKind contextKind) {
+        if (contextKind == ContextKind.SHARE_NOTHING) {
+            ChildContextPool pool = RContext.getInstance().getChildContextPool();
+            if (pool != null) {
+                return pool.acquire(() -> createContextInfo(contextKind));
+            }
+        }
+        return createContextInfo(contextKind);
+    }
+
     @RBuiltin(name = ".fastr.channel.create", kind = PRIMITIVE, parameterNames = {"key"}, behavior = COMPLEX)
     public abstract static class CreateChannel extends RBuiltinNode.Arg1 {
 
@@ -537,6 +590,23 @@ public class FastRContext {
         }
     }
 
+    @RBuiltin(name = ".fastr.channel.sendBatch", visibility = OFF, kind = PRIMITIVE, parameterNames = {"id", "data"}, behavior = COMPLEX)
+    public abstract static class ChannelSendBatch extends RBuiltinNode.Arg2 {
+
+        static {
+            Casts casts = new Casts(ChannelSendBatch.class);
+            CastsHelper.id(casts);
+            casts.arg("data").mustBe(instanceOf(RList.class));
+        }
+
+        @Specialization
+        @TruffleBoundary
+        protected RNull sendBatch(int id, RList data) {
+            RChannel.sendBatch(id, data);
+            return RNull.instance;
+        }
+    }
+
     @RBuiltin(name = ".fastr.channel.receive", kind = PRIMITIVE, parameterNames = {"id"}, behavior = COMPLEX)
     public abstract static class ChannelReceive extends RBuiltinNode.Arg1 {
 
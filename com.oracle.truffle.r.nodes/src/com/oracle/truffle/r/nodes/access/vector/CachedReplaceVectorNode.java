@@ -261,6 +261,8 @@ final class CachedReplaceVectorNode extends CachedVectorNode {
         } else {
             vector = (RAbstractVector) containerLibrary.materialize(vector);
         }
+        // the elements are updated in place from here on
+        vector.invalidateElementHash();
 
         // Note: the refCount of elements inside lists can stay the same. If we are replacing in a
         // what was originally shared list, we made a shallow copy of it, but all its elements must
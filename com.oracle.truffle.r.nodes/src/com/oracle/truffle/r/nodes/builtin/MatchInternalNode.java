@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -32,10 +32,16 @@ import com.oracle.truffle.api.library.CachedLibrary;
 import com.oracle.truffle.api.profiles.BranchProfile;
 import com.oracle.truffle.api.profiles.ConditionProfile;
 import com.oracle.truffle.r.nodes.unary.CastStringNode;
+import com.oracle.truffle.r.runtime.Collections.ComplexElementHash;
+import com.oracle.truffle.r.runtime.Collections.DoubleElementHash;
+import com.oracle.truffle.r.runtime.Collections.ElementHash;
+import com.oracle.truffle.r.runtime.Collections.IntElementHash;
+import com.oracle.truffle.r.runtime.Collections.StringElementHash;
 import com.oracle.truffle.r.runtime.DSLConfig;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RType;
 import com.oracle.truffle.r.runtime.data.CharSXPWrapper;
+import com.oracle.truffle.r.runtime.data.ElementHashCache;
 import com.oracle.truffle.r.runtime.data.RComplex;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
 import com.oracle.truffle.r.runtime.data.RDoubleVector;
@@ -112,9 +118,13 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
                     @Cached("create()") NAProfile naProfile,
                     @Cached("create()") BranchProfile foundProfile,
                     @Cached("create()") BranchProfile notFoundProfile) {
+        int element = xDataLib.getIntAt(x.getData(), 0);
+        IntElementHash cached = ElementHashCache.get(table, IntElementHash.class);
+        if (cached != null) {
+            return matchCached(cached, new IntElementHash(new int[]{element}), nomatch);
+        }
         Object tableData = table.getData();
         SeqIterator it = tableDataLib.iterator(tableData);
-        int element = xDataLib.getIntAt(x.getData(), 0);
         if (naProfile.isNA(element)) {
             while (tableDataLib.nextLoopCondition(tableData, it)) {
                 if (tableDataLib.isNextNA(tableData, it)) {
@@ -248,6 +258,10 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
                     @Cached("create()") BranchProfile foundProfile,
                     @Cached("create()") BranchProfile notFoundProfile) {
         double element = xDataLib.getDoubleAt(x.getData(), 0);
+        DoubleElementHash cached = ElementHashCache.get(table, DoubleElementHash.class);
+        if (cached != null) {
+            return matchCached(cached, new DoubleElementHash(new double[]{element}), nomatch);
+        }
         Object tableData = table.getData();
         if (naProfile.isNA(element)) {
             SeqIterator it = tableDataLib.iterator(tableData);
@@ -260,7 +274,8 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
         } else {
             SeqIterator it = tableDataLib.iterator(tableData);
             while (tableDataLib.nextLoopCondition(tableData, it)) {
-                if (element == tableDataLib.getNextDouble(tableData, it)) {
+                // NaN only matches NaN, as in the hashed lookup
+                if (DoubleElementHash.equalDoubles(element, tableDataLib.getNextDouble(tableData, it))) {
                     foundProfile.enter();
                     return it.getIndex() + 1;
                 }
@@ -707,6 +722,10 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
                     @Cached("create()") BranchProfile foundProfile,
                     @Cached("create()") BranchProfile notFoundProfile) {
         String element = xDataLib.getStringAt(x.getData(), 0);
+        StringElementHash cached = ElementHashCache.get(table, StringElementHash.class);
+        if (cached != null) {
+            return matchCached(cached, new StringElementHash(new String[]{element}), nomatch);
+        }
         Object tableData = table.getData();
         SeqIterator it = tableDataLib.iterator(tableData);
         if (naProfile.isNA(element)) {
@@ -718,7 +737,7 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
             }
         } else {
             while (tableDataLib.nextLoopCondition(tableData, it)) {
-                if (element.equals(tableDataLib.getNextString(tableData, it))) {
+                if (StringElementHash.equalStrings(element, tableDataLib.getNextString(tableData, it))) {
                     foundProfile.enter();
                     return it.getIndex() + 1;
                 }
@@ -840,41 +859,12 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
             Object tableData = table.getData();
             int xLength = xDataLib.getLength(xData);
             int tableLength = tableDataLib.getLength(tableData);
-            int[] result = initResult(xLength, nomatch);
-            boolean matchAll = true;
-
-            RandomAccessIterator rit = tableDataLib.randomAccessIterator(tableData);
-            NonRecursiveHashMapInt hashTable;
-            if (bigTableProfile.profile(tableLength > (xLength * TABLE_SIZE_FACTOR))) {
-                hashTable = new NonRecursiveHashMapInt(xLength);
-                NonRecursiveHashSetInt hashSet = new NonRecursiveHashSetInt(xLength);
-                SeqIterator it = xDataLib.iterator(xData);
-                while (xDataLib.nextLoopCondition(xData, it)) {
-                    hashSet.add(xDataLib.getNextInt(xData, it));
-                }
-                for (int i = tableLength - 1; i >= 0; i--) {
-                    int val = tableDataLib.getInt(tableData, rit, i);
-                    if (hashSet.contains(val)) {
-                        hashTable.put(val, i);
-                    }
-                }
-            } else {
-                hashTable = new NonRecursiveHashMapInt(tableLength);
-                for (int i = tableLength - 1; i >= 0; i--) {
-                    hashTable.put(tableDataLib.getInt(tableData, rit, i), i);
-                }
+            IntElementHash xHash = new IntElementHash(readInts(xDataLib, xData));
+            IntElementHash tableHash = ElementHashCache.get(table, IntElementHash.class);
+            if (tableHash == null) {
+                tableHash = new IntElementHash(readInts(tableDataLib, tableData));
             }
-            SeqIterator it = xDataLib.iterator(xData);
-            while (xDataLib.nextLoopCondition(xData, it)) {
-                int xx = xDataLib.getNextInt(xData, it);
-                int index = hashTable.get(xx);
-                if (index != -1) {
-                    result[it.getIndex()] = index + 1;
-                } else {
-                    matchAll = false;
-                }
-            }
-            return RDataFactory.createIntVector(result, setCompleteState(matchAll, nomatch));
+            return matchHashed(xHash, tableHash, table, nomatch, bigTableProfile.profile(tableLength > (xLength * TABLE_SIZE_FACTOR)));
         }
     }
 
@@ -888,40 +878,12 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
             Object tableData = table.getData();
             int xLength = xDataLib.getLength(xData);
             int tableLength = tableDataLib.getLength(tableData);
-            int[] result = initResult(xLength, nomatch);
-            boolean matchAll = true;
-            RandomAccessIterator rit = tableDataLib.randomAccessIterator(tableData);
-            NonRecursiveHashMapDouble hashTable;
-            if (bigTableProfile.profile(tableLength > (xLength * TABLE_SIZE_FACTOR))) {
-                hashTable = new NonRecursiveHashMapDouble(xLength);
-                NonRecursiveHashSetDouble hashSet = new NonRecursiveHashSetDouble(xLength);
-                SeqIterator it = xDataLib.iterator(xData);
-                while (xDataLib.nextLoopCondition(xData, it)) {
-                    hashSet.add(xDataLib.getNextDouble(xData, it));
-                }
-                for (int i = tableLength - 1; i >= 0; i--) {
-                    double val = tableDataLib.getDouble(tableData, rit, i);
-                    if (hashSet.contains(val)) {
-                        hashTable.put(val, i);
-                    }
-                }
-            } else {
-                hashTable = new NonRecursiveHashMapDouble(tableLength);
-                for (int i = tableLength - 1; i >= 0; i--) {
-                    hashTable.put(tableDataLib.getDouble(tableData, rit, i), i);
-                }
-            }
-            SeqIterator it = xDataLib.iterator(xData);
-            while (xDataLib.nextLoopCondition(xData, it)) {
-                double xx = xDataLib.getNextDouble(xData, it);
-                int index = hashTable.get(xx);
-                if (index != -1) {
-                    result[it.getIndex()] = index + 1;
-                } else {
-                    matchAll = false;
-                }
+            DoubleElementHash xHash = new DoubleElementHash(readDoubles(xDataLib, xData));
+            DoubleElementHash tableHash = ElementHashCache.get(table, DoubleElementHash.class);
+            if (tableHash == null) {
+                tableHash = new DoubleElementHash(readDoubles(tableDataLib, tableData));
             }
-            return RDataFactory.createIntVector(result, setCompleteState(matchAll, nomatch));
+            return matchHashed(xHash, tableHash, table, nomatch, bigTableProfile.profile(tableLength > (xLength * TABLE_SIZE_FACTOR)));
         }
     }
 
@@ -935,41 +897,12 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
             Object tableData = table.getData();
             int xLength = xDataLib.getLength(xData);
             int tableLength = tableDataLib.getLength(tableData);
-
-            int[] result = initResult(xLength, nomatch);
-            boolean matchAll = true;
-            RandomAccessIterator rit = tableDataLib.randomAccessIterator(tableData);
-            NonRecursiveHashMapComplex hashTable;
-            if (bigTableProfile.profile(tableLength > (xLength * TABLE_SIZE_FACTOR))) {
-                hashTable = new NonRecursiveHashMapComplex(xLength);
-                NonRecursiveHashSetComplex hashSet = new NonRecursiveHashSetComplex(xLength);
-                SeqIterator it = xDataLib.iterator(xData);
-                while (xDataLib.nextLoopCondition(xData, it)) {
-                    hashSet.add(xDataLib.getNextComplex(xData, it));
-                }
-                for (int i = tableLength - 1; i >= 0; i--) {
-                    RComplex val = tableDataLib.getComplex(tableData, rit, i);
-                    if (hashSet.contains(val)) {
-                        hashTable.put(val, i);
-                    }
-                }
-            } else {
-                hashTable = new NonRecursiveHashMapComplex(tableLength);
-                for (int i = tableLength - 1; i >= 0; i--) {
-                    hashTable.put(tableDataLib.getComplex(tableData, rit, i), i);
-                }
+            ComplexElementHash xHash = new ComplexElementHash(readComplexes(xDataLib, xData));
+            ComplexElementHash tableHash = ElementHashCache.get(table, ComplexElementHash.class);
+            if (tableHash == null) {
+                tableHash = new ComplexElementHash(readComplexes(tableDataLib, tableData));
             }
-            SeqIterator it = xDataLib.iterator(xData);
-            while (xDataLib.nextLoopCondition(xData, it)) {
-                RComplex xx = xDataLib.getNextComplex(xData, it);
-                int index = hashTable.get(xx);
-                if (index != -1) {
-                    result[it.getIndex()] = index + 1;
-                } else {
-                    matchAll = false;
-                }
-            }
-            return RDataFactory.createIntVector(result, setCompleteState(matchAll, nomatch));
+            return matchHashed(xHash, tableHash, table, nomatch, bigTableProfile.profile(tableLength > (xLength * TABLE_SIZE_FACTOR)));
         }
     }
 
@@ -983,41 +916,102 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
             Object tableData = table.getData();
             int xLength = xDataLib.getLength(xData);
             int tableLength = tableDataLib.getLength(tableData);
-            int[] result = initResult(xLength, nomatch);
-            boolean matchAll = true;
-            NonRecursiveHashMapCharacter hashTable;
-            RandomAccessIterator rit = tableDataLib.randomAccessIterator(tableData);
-            if (bigTableProfile.profile(tableLength > (xLength * TABLE_SIZE_FACTOR))) {
-                hashTable = new NonRecursiveHashMapCharacter(xLength);
-                NonRecursiveHashSetCharacter hashSet = new NonRecursiveHashSetCharacter(xLength);
-                SeqIterator it = xDataLib.iterator(xData);
-                while (xDataLib.nextLoopCondition(xData, it)) {
-                    hashSet.add(xDataLib.getNextString(xData, it));
-                }
-                for (int i = tableLength - 1; i >= 0; i--) {
-                    String val = tableDataLib.getString(tableData, rit, i);
-                    if (hashSet.contains(val)) {
-                        hashTable.put(val, i);
-                    }
+            StringElementHash xHash = new StringElementHash(readStrings(xDataLib, xData));
+            StringElementHash tableHash = ElementHashCache.get(table, StringElementHash.class);
+            if (tableHash == null) {
+                tableHash = new StringElementHash(readStrings(tableDataLib, tableData));
+            }
+            return matchHashed(xHash, tableHash, table, nomatch, bigTableProfile.profile(tableLength > (xLength * TABLE_SIZE_FACTOR)));
+        }
+    }
+
+    /**
+     * Matches {@code x} against {@code table} using the element hashes. The index of the table is
+     * cached on the table vector if possible, see {@link ElementHashCache}. Otherwise, if the table
+     * is much longer than {@code x}, only {@code x} is indexed and the table is scanned for the
+     * first occurrence of each distinct element of {@code x}, so that no index of the whole table is
+     * built.
+     */
+    @CompilerDirectives.TruffleBoundary
+    private static RIntVector matchHashed(ElementHash x, ElementHash table, RAbstractAtomicVector tableVector, int nomatch, boolean bigTable) {
+        int xLength = x.getLength();
+        int[] result = initResult(xLength, nomatch);
+        boolean matchAll = true;
+        boolean indexTable = tableVector.getCachedElementHash() == table || (xLength >= ElementHashCache.MIN_KEYS_LENGTH && ElementHashCache.isCacheable(tableVector));
+        if (bigTable && !indexTable) {
+            int[] first = x.firstOccurrences(false);
+            int[] found = new int[xLength];
+            for (int i = 0; i < table.getLength(); i++) {
+                int index = x.indexOf(table, i);
+                if (index != -1 && found[index] == 0) {
+                    found[index] = i + 1;
                 }
-            } else {
-                hashTable = new NonRecursiveHashMapCharacter(tableLength);
-                for (int i = tableLength - 1; i >= 0; i--) {
-                    hashTable.put(tableDataLib.getString(tableData, rit, i), i);
+            }
+            for (int i = 0; i < xLength; i++) {
+                int index = found[first[i]];
+                if (index != 0) {
+                    result[i] = index;
+                } else {
+                    matchAll = false;
                 }
             }
-            SeqIterator it = xDataLib.iterator(xData);
-            while (xDataLib.nextLoopCondition(xData, it)) {
-                String xx = xDataLib.getNextString(xData, it);
-                int index = hashTable.get(xx);
-                if (index != -1) {
-                    result[it.getIndex()] = index + 1;
+        } else {
+            int[] indexes = table.indexOf(x);
+            if (xLength >= ElementHashCache.MIN_KEYS_LENGTH) {
+                ElementHashCache.put(tableVector, table);
+            }
+            for (int i = 0; i < xLength; i++) {
+                if (indexes[i] != -1) {
+                    result[i] = indexes[i] + 1;
                 } else {
                     matchAll = false;
                 }
             }
-            return RDataFactory.createIntVector(result, setCompleteState(matchAll, nomatch));
         }
+        return RDataFactory.createIntVector(result, setCompleteState(matchAll, nomatch));
+    }
+
+    private static int matchCached(ElementHash table, ElementHash x, int nomatch) {
+        int index = table.indexOf(x, 0);
+        return index == -1 ? nomatch : index + 1;
+    }
+
+    private static int[] readInts(VectorDataLibrary dataLib, Object data) {
+        int[] result = new int[dataLib.getLength(data)];
+        SeqIterator it = dataLib.iterator(data);
+        while (dataLib.nextLoopCondition(data, it)) {
+            result[it.getIndex()] = dataLib.getNextInt(data, it);
+        }
+        return result;
+    }
+
+    private static double[] readDoubles(VectorDataLibrary dataLib, Object data) {
+        double[] result = new double[dataLib.getLength(data)];
+        SeqIterator it = dataLib.iterator(data);
+        while (dataLib.nextLoopCondition(data, it)) {
+            result[it.getIndex()] = dataLib.getNextDouble(data, it);
+        }
+        return result;
+    }
+
+    private static double[] readComplexes(VectorDataLibrary dataLib, Object data) {
+        double[] result = new double[dataLib.getLength(data) << 1];
+        SeqIterator it = dataLib.iterator(data);
+        while (dataLib.nextLoopCondition(data, it)) {
+            RComplex value = dataLib.getNextComplex(data, it);
+            result[it.getIndex() << 1] = value.getRealPart();
+            result[(it.getIndex() << 1) + 1] = value.getImaginaryPart();
+        }
+        return result;
+    }
+
+    private static String[] readStrings(VectorDataLibrary dataLib, Object data) {
+        String[] result = new String[dataLib.getLength(data)];
+        SeqIterator it = dataLib.iterator(data);
+        while (dataLib.nextLoopCondition(data, it)) {
+            result[it.getIndex()] = dataLib.getNextString(data, it);
+        }
+        return result;
     }
 
     // simple implementations of non-recursive hash-maps to enable compilation
@@ -1097,83 +1091,6 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
         }
     }
 
-    private static final class NonRecursiveHashMapComplex extends NonRecursiveHashMap {
-
-        private final RComplex[] keys;
-        private final int m;
-        private final int k;
-
-        NonRecursiveHashMapComplex(int entryCount) {
-            super(entryCount);
-            keys = new RComplex[values.length];
-
-            int m1 = 2;
-            int k1 = 1;
-            int n = 2 * entryCount;
-            while (m1 < n) {
-                m1 *= 2;
-                k1++;
-            }
-            m = m1;
-            k = k1;
-        }
-
-        public boolean put(RComplex key, int value) {
-            assert value >= 0;
-            if (RRuntime.isNA(key)) {
-                boolean ret = naValue == 0;
-                naValue = value + 1;
-                return ret;
-            } else {
-                int ind = index(key.hashCode());
-                while (true) {
-                    if (values[ind] == 0) {
-                        keys[ind] = key;
-                        values[ind] = value + 1;
-                        return false;
-                    } else if (key.equals(keys[ind])) {
-                        values[ind] = value + 1;
-                        return true;
-                    } else {
-                        ind = (ind + 1) % m;
-                        if (ind == values.length) {
-                            ind = 0;
-                        }
-                    }
-                }
-            }
-        }
-
-        public int get(RComplex key) {
-            if (RRuntime.isNA(key)) {
-                return naValue - 1;
-            } else {
-                int ind = index(key.hashCode());
-                int firstInd = ind;
-                while (true) {
-                    if (key.equals(keys[ind])) {
-                        return values[ind] - 1;
-                    } else {
-                        ind = (ind + 1) % m;
-                        if (ind == values.length) {
-                            ind = 0;
-                        }
-                        if (ind == firstInd || values[ind] == 0) {
-                            return -1;
-                        }
-                    }
-                }
-            }
-        }
-
-        private static final int u = new Long(3141592653L).intValue();
-
-        @Override
-        protected int index(int key) {
-            return u * key >>> (32 - k);
-        }
-    }
-
     private static final class NonRecursiveHashMapDouble extends NonRecursiveHashMap {
 
         private final double[] keys;
@@ -1402,20 +1319,4 @@ public abstract class MatchInternalNode extends AbstractMatchNode {
             return map.get(value) == 1;
         }
     }
-
-    private static class NonRecursiveHashSetComplex {
-        private final NonRecursiveHashMapComplex map;
-
-        NonRecursiveHashSetComplex(int approxCapacity) {
-            map = new NonRecursiveHashMapComplex(approxCapacity);
-        }
-
-        public boolean add(RComplex value) {
-            return map.put(value, 1);
-        }
-
-        public boolean contains(RComplex value) {
-            return map.get(value) == 1;
-        }
-    }
 }
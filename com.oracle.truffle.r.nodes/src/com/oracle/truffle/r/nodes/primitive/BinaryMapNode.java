@@ -22,6 +22,8 @@
  */
 package com.oracle.truffle.r.nodes.primitive;
 
+import java.util.Arrays;
+
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.dsl.Cached;
 import com.oracle.truffle.api.dsl.Specialization;
@@ -166,6 +168,7 @@ final class BinaryMapVectorNode extends BinaryMapNode {
     private final ConditionProfile seenEmpty;
     private final ConditionProfile shareLeft;
     private final ConditionProfile shareRight;
+    private final ConditionProfile regionProfile;
     private final BranchProfile hasWarningsBranchProfile;
 
     // compile-time optimization flags
@@ -173,6 +176,7 @@ final class BinaryMapVectorNode extends BinaryMapNode {
     private final boolean mayFoldConstantTime;
     private final boolean mayShareLeft;
     private final boolean mayShareRight;
+    private final boolean mayUseRegions;
 
     BinaryMapVectorNode(BinaryMapFunctionNode function, RAbstractVector left, RAbstractVector right, RType argumentType, RType resultType, boolean copyAttributes, boolean isGeneric) {
         super(function, left, right, argumentType, resultType);
@@ -191,6 +195,8 @@ final class BinaryMapVectorNode extends BinaryMapNode {
         this.shareLeft = mayShareLeft ? ConditionProfile.createBinaryProfile() : null;
         this.shareRight = mayShareRight ? ConditionProfile.createBinaryProfile() : null;
         this.dimensionsProfile = mayContainMetadata ? ConditionProfile.createBinaryProfile() : null;
+        this.mayUseRegions = argumentType == RType.Double && resultType == RType.Double;
+        this.regionProfile = mayUseRegions ? ConditionProfile.createBinaryProfile() : null;
 
         this.hasWarningsBranchProfile = BranchProfile.create();
 
@@ -251,6 +257,15 @@ final class BinaryMapVectorNode extends BinaryMapNode {
 
             assert left.getLength() == leftLength;
             assert right.getLength() == rightLength;
+            if (mayUseRegions && regionProfile.profile(leftLength == rightLength || leftLength == 1 || rightLength == 1)) {
+                target = applyDoubleRegions(left, right, leftData, rightData, leftLength, rightLength, maxLength);
+                RBaseNode.reportWork(this, maxLength);
+                if (mayContainMetadata) {
+                    target = copyAttributes.execute(target, left, leftLength, right, rightLength);
+                }
+                assert RAbstractVector.verifyVector(target);
+                return target;
+            }
             SeqIterator leftIter = leftLibrary.iterator(leftData);
             SeqIterator rightIter = rightLibrary.iterator(rightData);
             if (mayShareLeft && left.getRType() == resultType && shareLeft.profile(leftLength == maxLength && ((RSharingAttributeStorage) left).isTemporary())) {
@@ -298,6 +313,57 @@ final class BinaryMapVectorNode extends BinaryMapNode {
         return target;
     }
 
+    /**
+     * Maps two double vectors, one of which may be a scalar, region by region. The operands are
+     * read into arrays by {@link VectorDataLibrary#readDoubleRegion}, so that the loop applying the
+     * function only works with arrays and can be vectorized by the compiler once the function is
+     * inlined.
+     */
+    private RAbstractVector applyDoubleRegions(RAbstractVector left, RAbstractVector right, Object leftData, Object rightData, int leftLength, int rightLength, int maxLength) {
+        RAbstractVector target;
+        Object targetData;
+        VectorDataLibrary targetLibrary;
+        if (mayShareLeft && shareLeft.profile(leftLength == maxLength && ((RSharingAttributeStorage) left).isTemporary())) {
+            target = left;
+            targetData = leftData;
+            targetLibrary = leftLibrary;
+        } else if (mayShareRight && shareRight.profile(rightLength == maxLength && ((RSharingAttributeStorage) right).isTemporary())) {
+            target = right;
+            targetData = rightData;
+            targetLibrary = rightLibrary;
+        } else {
+            target = resultType.create(maxLength, false);
+            targetData = target.getData();
+            targetLibrary = getResultLibrary();
+        }
+        int regionSize = Math.min(maxLength, VectorDataLibrary.REGION_SIZE);
+        double[] leftBuffer = new double[regionSize];
+        double[] rightBuffer = new double[regionSize];
+        double[] resultBuffer = new double[regionSize];
+        boolean leftScalar = leftLength == 1 && maxLength > 1;
+        boolean rightScalar = rightLength == 1 && maxLength > 1;
+        if (leftScalar) {
+            Arrays.fill(leftBuffer, leftLibrary.getDoubleAt(leftData, 0));
+        }
+        if (rightScalar) {
+            Arrays.fill(rightBuffer, rightLibrary.getDoubleAt(rightData, 0));
+        }
+        for (int start = 0; start < maxLength; start += regionSize) {
+            int count = Math.min(regionSize, maxLength - start);
+            if (!leftScalar) {
+                leftLibrary.readDoubleRegion(leftData, start, count, leftBuffer);
+            }
+            if (!rightScalar) {
+                rightLibrary.readDoubleRegion(rightData, start, count, rightBuffer);
+            }
+            for (int i = 0; i < count; i++) {
+                resultBuffer[i] = function.applyDouble(leftBuffer[i], rightBuffer[i]);
+            }
+            targetLibrary.writeDoubleRegion(targetData, start, count, resultBuffer, function.isComplete());
+        }
+        return target;
+    }
+
     private VectorDataLibrary getResultLibrary() {
         if (resultLibrary == null) {
             CompilerDirectives.transferToInterpreterAndInvalidate();
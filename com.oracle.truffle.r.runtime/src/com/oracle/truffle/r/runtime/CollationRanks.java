@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+/**
+ * Translates strings to integer ranks that can be sorted by {@link StableSort}. The strings are
+ * first de-duplicated, so that the (potentially expensive) collation keys are computed and
+ * compared only once per distinct string. Equal strings and strings with equal collation keys get
+ * the same rank.
+ *
+ * The collation keys are stored as byte arrays whose unsigned lexicographic ordering is the
+ * ordering of the {@link java.text.CollationKey}s. Unlike {@link java.text.CollationKey}, they do
+ * not reference the source string, so they can be cached in a map with weak keys, see
+ * {@link RLocale.ContextStateImpl#getCollationKeyCache()}.
+ */
+public final class CollationRanks {
+
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+    private static final int KEYS_CHUNK = 1 << 11;
+    private static final int MAX_CACHED_KEYS = 1 << 20;
+
+    private CollationRanks() {
+        // only static members
+    }
+
+    /**
+     * Returns an array with the rank of each of the given strings among the distinct strings. The
+     * strings are ordered using the collator from the locale state or by the numeric values of
+     * their characters if the collator is {@code null}.
+     */
+    @TruffleBoundary
+    public static int[] computeRanks(String[] values, RLocale.ContextStateImpl localeState) {
+        int n = values.length;
+        int[] ids = new int[n];
+        HashMap<String, Integer> idMap = new HashMap<>();
+        ArrayList<String> distinctList = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String value = values[i];
+            Integer id = idMap.get(value);
+            if (id == null) {
+                id = distinctList.size();
+                idMap.put(value, id);
+                distinctList.add(value);
+            }
+            ids[i] = id;
+        }
+        String[] distinct = distinctList.toArray(new String[distinctList.size()]);
+        int d = distinct.length;
+
+        Collator collator = localeState.getOrderCollator();
+        Comparator<Integer> comparator;
+        if (collator == null) {
+            comparator = (a, b) -> distinct[a].compareTo(distinct[b]);
+        } else {
+            byte[][] keys = getCollationKeys(distinct, collator, localeState.getCollationKeyCache());
+            comparator = (a, b) -> compareKeys(keys[a], keys[b]);
+        }
+
+        Integer[] sorted = new Integer[d];
+        for (int i = 0; i < d; i++) {
+            sorted[i] = i;
+        }
+        if (d >= PARALLEL_THRESHOLD && ParallelKernels.getParallelism() > 1) {
+            Arrays.parallelSort(sorted, comparator);
+        } else {
+            Arrays.sort(sorted, comparator);
+        }
+        int[] rankOfId = new int[d];
+        int rank = 0;
+        for (int i = 0; i < d; i++) {
+            if (i > 0 && comparator.compare(sorted[i - 1], sorted[i]) != 0) {
+                rank++;
+            }
+            rankOfId[sorted[i]] = rank;
+        }
+
+        int[] ranks = new int[n];
+        for (int i = 0; i < n; i++) {
+            ranks[i] = rankOfId[ids[i]];
+        }
+        return ranks;
+    }
+
+    private static byte[][] getCollationKeys(String[] distinct, Collator collator, Map<String, byte[]> cache) {
+        int d = distinct.length;
+        byte[][] keys = new byte[d][];
+        int[] missing = new int[d];
+        int missingCount = 0;
+        for (int i = 0; i < d; i++) {
+            keys[i] = cache.get(distinct[i]);
+            if (keys[i] == null) {
+                missing[missingCount++] = i;
+            }
+        }
+        if (missingCount >= PARALLEL_THRESHOLD && ParallelKernels.getParallelism() > 1) {
+            ParallelKernels.getPool().invoke(new CollationKeysTask(distinct, keys, collator, missing, 0, missingCount));
+        } else {
+            for (int i = 0; i < missingCount; i++) {
+                keys[missing[i]] = collator.getCollationKey(distinct[missing[i]]).toByteArray();
+            }
+        }
+        for (int i = 0; i < missingCount && cache.size() < MAX_CACHED_KEYS; i++) {
+            cache.put(distinct[missing[i]], keys[missing[i]]);
+        }
+        return keys;
+    }
+
+    private static int compareKeys(byte[] a, byte[] b) {
+        int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; i++) {
+            if (a[i] != b[i]) {
+                return (a[i] & 0xff) - (b[i] & 0xff);
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Computes the collation keys of {@code missing[from..to)}. {@link Collator} instances are not
+     * thread safe (and {@code getCollationKey} is synchronized), so each leaf task uses its own
+     * clone.
+     */
+    @SuppressWarnings("serial")
+    private static final class CollationKeysTask extends RecursiveAction {
+        private final String[] distinct;
+        private final byte[][] keys;
+        private final Collator collator;
+        private final int[] missing;
+        private final int from;
+        private final int to;
+
+        CollationKeysTask(String[] distinct, byte[][] keys, Collator collator, int[] missing, int from, int to) {
+            this.distinct = distinct;
+            this.keys = keys;
+            this.collator = collator;
+            this.missing = missing;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > KEYS_CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new CollationKeysTask(distinct, keys, collator, missing, from, mid), new CollationKeysTask(distinct, keys, collator, missing, mid, to));
+            } else {
+                Collator local = (Collator) collator.clone();
+                for (int i = from; i < to; i++) {
+                    keys[missing[i]] = local.getCollationKey(distinct[missing[i]]).toByteArray();
+                }
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@
 package com.oracle.truffle.r.runtime;
 
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.Cached;
 import com.oracle.truffle.api.library.ExportLibrary;
 import com.oracle.truffle.api.library.ExportMessage;
@@ -30,10 +31,11 @@ import com.oracle.truffle.api.library.GenerateLibrary;
 import com.oracle.truffle.api.library.Library;
 import com.oracle.truffle.api.library.LibraryFactory;
 import com.oracle.truffle.api.profiles.BranchProfile;
-import com.oracle.truffle.r.runtime.data.RComplex;
 import com.oracle.truffle.r.runtime.ffi.AfterDownCallProfiles;
 
 import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 public final class Collections {
 
@@ -44,57 +46,6 @@ public final class Collections {
     // simple implementations of non-recursive hash-maps to enable compilation
     // TODO: consider replacing with a more efficient library implementation
 
-    public static class NonRecursiveHashSet<KEY> {
-
-        private Object[] keys;
-
-        public NonRecursiveHashSet(int approxCapacity) {
-            keys = new Object[Math.max(approxCapacity, 1)];
-        }
-
-        public boolean add(KEY key) {
-            int hc = Utils.hashCode(key);
-            if (hc == Integer.MIN_VALUE) {
-                hc = 0;
-            }
-            int ind = Math.abs(hc) % keys.length;
-            int firstInd = ind;
-            while (true) {
-                if (keys[ind] == null) {
-                    keys[ind] = key;
-                    return false;
-                } else if (Utils.equals(key, keys[ind])) {
-                    return true;
-                } else {
-                    ind = (ind + 1) % keys.length;
-                    if (ind == firstInd) {
-                        // resize
-                        Object[] newKeys = new Object[keys.length + keys.length / 2];
-                        for (int i = 0; i < keys.length; i++) {
-                            if (keys[i] != null) {
-                                int tmpInd = Math.abs(Utils.hashCode(keys[i])) % newKeys.length;
-                                while (true) {
-                                    if (newKeys[tmpInd] == null) {
-                                        newKeys[tmpInd] = keys[i];
-                                        break;
-                                    } else {
-                                        assert !Utils.equals(keys[i], newKeys[tmpInd]);
-                                        tmpInd = (tmpInd + 1) % newKeys.length;
-                                    }
-                                }
-                            }
-                        }
-
-                        keys = newKeys;
-
-                        // start hashing from the beginning
-                        ind = Math.abs(hc) % keys.length;
-                    }
-                }
-            }
-        }
-    }
-
     public static class NonRecursiveHashSetDouble {
 
         private double[] keys;
@@ -279,64 +230,6 @@ public final class Collections {
         }
     }
 
-    public static final class NonRecursiveHashMapComplex extends NonRecursiveHashMap {
-
-        private final RComplex[] keys;
-
-        public NonRecursiveHashMapComplex(int approxCapacity) {
-            super(approxCapacity);
-            keys = new RComplex[values.length];
-        }
-
-        public boolean put(RComplex key, int value) {
-            assert value >= 0;
-            if (RRuntime.isNA(key)) {
-                boolean ret = naValue == 0;
-                naValue = value + 1;
-                return ret;
-            } else {
-                int ind = index(key.hashCode());
-                while (true) {
-                    if (values[ind] == 0) {
-                        keys[ind] = key;
-                        values[ind] = value + 1;
-                        return false;
-                    } else if (key.equals(keys[ind])) {
-                        values[ind] = value + 1;
-                        return true;
-                    } else {
-                        ind++;
-                        if (ind == values.length) {
-                            ind = 0;
-                        }
-                    }
-                }
-            }
-        }
-
-        public int get(RComplex key) {
-            if (RRuntime.isNA(key)) {
-                return naValue - 1;
-            } else {
-                int ind = index(key.hashCode());
-                int firstInd = ind;
-                while (true) {
-                    if (key.equals(keys[ind])) {
-                        return values[ind] - 1;
-                    } else {
-                        ind++;
-                        if (ind == values.length) {
-                            ind = 0;
-                        }
-                        if (ind == firstInd || values[ind] == 0) {
-                            return -1;
-                        }
-                    }
-                }
-            }
-        }
-    }
-
     public static final class NonRecursiveHashMapDouble extends NonRecursiveHashMap {
 
         private final double[] keys;
@@ -462,6 +355,573 @@ public final class Collections {
         }
     }
 
+    /**
+     * Open-addressing hash over the elements of an atomic vector, the common engine of
+     * {@code unique}, {@code duplicated}, {@code anyDuplicated} and {@code match}. Elements are
+     * identified by their index in the vector and the tables store {@code index + 1} in a
+     * power-of-two sized {@code int[]} with linear probing, so there is no boxing and no per-entry
+     * allocation.
+     *
+     * Equality follows GNU R: {@code NA} and {@code NaN} are distinct values equal to themselves,
+     * {@code 0} equals {@code -0} and {@code NA_character_} differs from the string {@code "NA"}.
+     *
+     * Vectors with at least {@link #PARALLEL_THRESHOLD} elements are partitioned by the top bits of
+     * the element hash, so that equal elements always end up in the same partition, and the
+     * partitions are hashed by the {@link ParallelKernels} pool. Within a partition the elements are
+     * visited in the same order as in the sequential algorithm, so the results are identical.
+     *
+     * A table that would need more than {@code 2^30} slots, i.e. for more than about 715M elements,
+     * is a {@link SegmentedIntTable} indexed by {@code long} instead of a single array, so that the
+     * load factor still holds and the probing terminates.
+     */
+    public abstract static class ElementHash {
+
+        private static final int PARALLEL_THRESHOLD = 1 << 18;
+        private static final int MAX_PARTITIONS = 256;
+        private static final int MAX_SEGMENT_BITS = 30;
+
+        protected final int length;
+
+        /**
+         * Tables with more than {@code 1 << segmentBits} slots are segmented.
+         */
+        private final int segmentBits;
+
+        /*
+         * Built on first lookup and published only when complete, the hash may be cached on a
+         * vector and used by several threads. Either an int[] or a SegmentedIntTable.
+         */
+        private volatile Object index;
+
+        protected ElementHash(int length) {
+            this(length, MAX_SEGMENT_BITS);
+        }
+
+        protected ElementHash(int length, int segmentBits) {
+            assert segmentBits > 0 && segmentBits <= MAX_SEGMENT_BITS;
+            this.length = length;
+            this.segmentBits = segmentBits;
+        }
+
+        public final int getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the hash code of element {@code i}. Equal elements must have equal hash codes.
+         */
+        protected abstract int elementHash(int i);
+
+        /**
+         * Returns whether element {@code i} of {@code other}, which is an instance of the same class,
+         * equals element {@code j} of this hash.
+         */
+        protected abstract boolean elementEquals(ElementHash other, int i, int j);
+
+        /**
+         * Returns, for each element, the index of the first element equal to it, or of the last one
+         * if {@code fromLast} is set. Element {@code i} is therefore a duplicate iff
+         * {@code result[i] != i}.
+         */
+        @TruffleBoundary
+        public final int[] firstOccurrences(boolean fromLast) {
+            int[] result = new int[length];
+            int parallelism = getParallelism(length);
+            if (parallelism > 1) {
+                firstOccurrencesParallel(result, fromLast, parallelism);
+            } else {
+                Object table = newTable(length);
+                if (fromLast) {
+                    for (int i = length - 1; i >= 0; i--) {
+                        result[i] = insert(table, i, mix(elementHash(i)));
+                    }
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        result[i] = insert(table, i, mix(elementHash(i)));
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the indexes of the distinct elements in ascending order. Of several equal elements
+         * the first one is taken, or the last one if {@code fromLast} is set.
+         */
+        @TruffleBoundary
+        public final int[] uniqueIndexes(boolean fromLast) {
+            int[] first = firstOccurrences(fromLast);
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                if (first[i] == i) {
+                    first[count++] = i;
+                }
+            }
+            return Arrays.copyOf(first, count);
+        }
+
+        /**
+         * Returns the index of the first element that is a duplicate of a preceding one (or of a
+         * following one and the last such element if {@code fromLast} is set), or {@code -1} if all
+         * elements are distinct.
+         */
+        @TruffleBoundary
+        public final int firstDuplicate(boolean fromLast) {
+            if (getParallelism(length) > 1) {
+                int[] first = firstOccurrences(fromLast);
+                if (fromLast) {
+                    for (int i = length - 1; i >= 0; i--) {
+                        if (first[i] != i) {
+                            return i;
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        if (first[i] != i) {
+                            return i;
+                        }
+                    }
+                }
+                return -1;
+            }
+            Object table = newTable(length);
+            if (fromLast) {
+                for (int i = length - 1; i >= 0; i--) {
+                    if (insert(table, i, mix(elementHash(i))) != i) {
+                        return i;
+                    }
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    if (insert(table, i, mix(elementHash(i))) != i) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the index of the first element of this hash that equals element {@code i} of
+         * {@code keys}, or {@code -1}. The lookup table is built on first use and kept afterwards.
+         */
+        @TruffleBoundary
+        public final int indexOf(ElementHash keys, int i) {
+            return lookup(getIndex(), keys, i, mix(keys.elementHash(i)));
+        }
+
+        /**
+         * Vectorized version of {@link #indexOf(ElementHash, int)} over all elements of
+         * {@code keys}.
+         */
+        @TruffleBoundary
+        public final int[] indexOf(ElementHash keys) {
+            Object table = getIndex();
+            int[] result = new int[keys.length];
+            int parallelism = getParallelism(keys.length);
+            if (parallelism > 1) {
+                int chunks = parallelism * 4;
+                int chunkSize = (keys.length + chunks - 1) / chunks;
+                forEach(chunks, c -> {
+                    int to = (int) Math.min(keys.length, (long) (c + 1) * chunkSize);
+                    for (int i = c * chunkSize; i < to; i++) {
+                        result[i] = lookup(table, keys, i, mix(keys.elementHash(i)));
+                    }
+                });
+            } else {
+                for (int i = 0; i < keys.length; i++) {
+                    result[i] = lookup(table, keys, i, mix(keys.elementHash(i)));
+                }
+            }
+            return result;
+        }
+
+        private Object getIndex() {
+            Object table = index;
+            if (table == null) {
+                // concurrent builders produce equal tables, so the race is benign
+                table = newTable(length);
+                for (int i = 0; i < length; i++) {
+                    insert(table, i, mix(elementHash(i)));
+                }
+                index = table;
+            }
+            return table;
+        }
+
+        /**
+         * Creates an empty table for {@code count} elements.
+         */
+        private Object newTable(int count) {
+            long size = tableSize(count);
+            return size <= (1L << segmentBits) ? new int[(int) size] : new SegmentedIntTable(size, segmentBits);
+        }
+
+        private int insert(Object table, int i, int hash) {
+            return table instanceof int[] ? insert((int[]) table, i, hash) : insert((SegmentedIntTable) table, i, hash);
+        }
+
+        private int lookup(Object table, ElementHash keys, int i, int hash) {
+            return table instanceof int[] ? lookup((int[]) table, keys, i, hash) : lookup((SegmentedIntTable) table, keys, i, hash);
+        }
+
+        /**
+         * Inserts element {@code i} unless there already is an equal element in the table, returns
+         * the index of the element that is in the table afterwards.
+         */
+        private int insert(int[] table, int i, int hash) {
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (true) {
+                int entry = table[slot];
+                if (entry == 0) {
+                    table[slot] = i + 1;
+                    return i;
+                } else if (elementEquals(this, i, entry - 1)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private int lookup(int[] table, ElementHash keys, int i, int hash) {
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (true) {
+                int entry = table[slot];
+                if (entry == 0) {
+                    return -1;
+                } else if (elementEquals(keys, i, entry - 1)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private int insert(SegmentedIntTable table, int i, int hash) {
+            long mask = table.size - 1;
+            long slot = (hash & 0xFFFFFFFFL) & mask;
+            while (true) {
+                int entry = table.get(slot);
+                if (entry == 0) {
+                    table.set(slot, i + 1);
+                    return i;
+                } else if (elementEquals(this, i, entry - 1)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private int lookup(SegmentedIntTable table, ElementHash keys, int i, int hash) {
+            long mask = table.size - 1;
+            long slot = (hash & 0xFFFFFFFFL) & mask;
+            while (true) {
+                int entry = table.get(slot);
+                if (entry == 0) {
+                    return -1;
+                } else if (elementEquals(keys, i, entry - 1)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        /**
+         * Computes the hashes and partition sizes per chunk of the input, scatters the element
+         * indexes into partition-major order (ascending within each partition) and then hashes
+         * each partition with its own table.
+         */
+        private void firstOccurrencesParallel(int[] result, boolean fromLast, int parallelism) {
+            int partitions = Math.min(MAX_PARTITIONS, Integer.highestOneBit(parallelism) << 3);
+            int shift = 32 - Integer.numberOfTrailingZeros(partitions);
+            int chunks = parallelism * 4;
+            int chunkSize = (length + chunks - 1) / chunks;
+            int[] hashes = new int[length];
+            int[][] offsets = new int[chunks][partitions];
+            forEach(chunks, c -> {
+                int[] counts = offsets[c];
+                int to = (int) Math.min(length, (long) (c + 1) * chunkSize);
+                for (int i = c * chunkSize; i < to; i++) {
+                    int hash = mix(elementHash(i));
+                    hashes[i] = hash;
+                    counts[hash >>> shift]++;
+                }
+            });
+            int[] partitionStart = new int[partitions + 1];
+            int offset = 0;
+            for (int p = 0; p < partitions; p++) {
+                partitionStart[p] = offset;
+                for (int c = 0; c < chunks; c++) {
+                    int count = offsets[c][p];
+                    offsets[c][p] = offset;
+                    offset += count;
+                }
+            }
+            partitionStart[partitions] = offset;
+            int[] order = new int[length];
+            forEach(chunks, c -> {
+                int[] next = offsets[c];
+                int to = (int) Math.min(length, (long) (c + 1) * chunkSize);
+                for (int i = c * chunkSize; i < to; i++) {
+                    order[next[hashes[i] >>> shift]++] = i;
+                }
+            });
+            forEach(partitions, p -> {
+                int from = partitionStart[p];
+                int to = partitionStart[p + 1];
+                Object table = newTable(to - from);
+                if (fromLast) {
+                    for (int k = to - 1; k >= from; k--) {
+                        int i = order[k];
+                        result[i] = insert(table, i, hashes[i]);
+                    }
+                } else {
+                    for (int k = from; k < to; k++) {
+                        int i = order[k];
+                        result[i] = insert(table, i, hashes[i]);
+                    }
+                }
+            });
+        }
+
+        private static int getParallelism(int n) {
+            return n >= PARALLEL_THRESHOLD ? ParallelKernels.getParallelism() : 1;
+        }
+
+        private static void forEach(int count, IntConsumer body) {
+            ParallelKernels.getPool().invoke(new ForEachTask(body, 0, count));
+        }
+
+        /**
+         * Power-of-two table size with load factor at most 2/3, at most {@code 2^32} slots.
+         */
+        public static long tableSize(int count) {
+            assert count >= 0;
+            long minSize = (long) count + (count >> 1) + 1;
+            return Long.highestOneBit(minSize) << 1;
+        }
+
+        /**
+         * The murmur3 finalizer, spreads the entropy of the element hash to all bits, so that both
+         * the top bits (partition) and the bottom bits (slot) are usable.
+         */
+        private static int mix(int hash) {
+            int h = hash;
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return h;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class ForEachTask extends RecursiveAction {
+        private final IntConsumer body;
+        private final int from;
+        private final int to;
+
+        ForEachTask(IntConsumer body, int from, int to) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                body.accept(from);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ForEachTask(body, from, mid), new ForEachTask(body, mid, to));
+            }
+        }
+    }
+
+    /**
+     * An {@code int} table indexed by {@code long} slots, stored in segments of
+     * {@code 1 << segmentBits} elements so that it can exceed the maximum array length.
+     */
+    public static final class SegmentedIntTable {
+        private final int[][] segments;
+        private final int segmentBits;
+        private final int segmentMask;
+        private final long size;
+
+        public SegmentedIntTable(long size, int segmentBits) {
+            int segmentSize = 1 << segmentBits;
+            long count = (size + segmentSize - 1) >>> segmentBits;
+            if (count > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("table too large: " + size);
+            }
+            this.segments = new int[(int) count][];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = new int[(int) Math.min(segmentSize, size - ((long) i << segmentBits))];
+            }
+            this.segmentBits = segmentBits;
+            this.segmentMask = segmentSize - 1;
+            this.size = size;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public int getSegmentCount() {
+            return segments.length;
+        }
+
+        public int get(long slot) {
+            return segments[(int) (slot >>> segmentBits)][(int) slot & segmentMask];
+        }
+
+        public void set(long slot, int value) {
+            segments[(int) (slot >>> segmentBits)][(int) slot & segmentMask] = value;
+        }
+    }
+
+    public static final class IntElementHash extends ElementHash {
+
+        private final int[] data;
+
+        public IntElementHash(int[] data) {
+            super(data.length);
+            this.data = data;
+        }
+
+        // Used for tests: tables with more than 1 << segmentBits slots are segmented
+        public IntElementHash(int[] data, int segmentBits) {
+            super(data.length, segmentBits);
+            this.data = data;
+        }
+
+        @Override
+        protected int elementHash(int i) {
+            return data[i];
+        }
+
+        @Override
+        protected boolean elementEquals(ElementHash other, int i, int j) {
+            return ((IntElementHash) other).data[i] == data[j];
+        }
+    }
+
+    public static final class DoubleElementHash extends ElementHash {
+
+        private final double[] data;
+
+        public DoubleElementHash(double[] data) {
+            super(data.length);
+            this.data = data;
+        }
+
+        @Override
+        protected int elementHash(int i) {
+            return hashDouble(data[i]);
+        }
+
+        @Override
+        protected boolean elementEquals(ElementHash other, int i, int j) {
+            return equalDoubles(((DoubleElementHash) other).data[i], data[j]);
+        }
+
+        static int hashDouble(double value) {
+            if (value == 0) {
+                // -0.0 == 0.0
+                return 0;
+            } else if (Double.isNaN(value)) {
+                return RRuntime.isNA(value) ? 1 : 2;
+            }
+            return Double.hashCode(value);
+        }
+
+        /**
+         * Equality of {@code match}: {@code NA} only equals {@code NA} and {@code NaN} only
+         * {@code NaN}.
+         */
+        public static boolean equalDoubles(double a, double b) {
+            return a == b || (Double.isNaN(a) && Double.isNaN(b) && RRuntime.isNA(a) == RRuntime.isNA(b));
+        }
+    }
+
+    /**
+     * Hash over complex numbers stored as interleaved real and imaginary parts. A number with an
+     * {@code NA} part equals every other such number, the same holds for {@code NaN} parts.
+     */
+    public static final class ComplexElementHash extends ElementHash {
+
+        private final double[] data;
+
+        public ComplexElementHash(double[] data) {
+            super(data.length >> 1);
+            this.data = data;
+        }
+
+        @Override
+        protected int elementHash(int i) {
+            double re = data[i << 1];
+            double im = data[(i << 1) + 1];
+            int kind = nanKind(re, im);
+            if (kind != 0) {
+                return kind;
+            }
+            return 31 * DoubleElementHash.hashDouble(re) + DoubleElementHash.hashDouble(im);
+        }
+
+        @Override
+        protected boolean elementEquals(ElementHash other, int i, int j) {
+            double[] otherData = ((ComplexElementHash) other).data;
+            double re1 = otherData[i << 1];
+            double im1 = otherData[(i << 1) + 1];
+            double re2 = data[j << 1];
+            double im2 = data[(j << 1) + 1];
+            int kind = nanKind(re1, im1);
+            if (kind != nanKind(re2, im2)) {
+                return false;
+            }
+            return kind != 0 || (re1 == re2 && im1 == im2);
+        }
+
+        private static int nanKind(double re, double im) {
+            if (RRuntime.isNA(re, im)) {
+                return 1;
+            } else if (Double.isNaN(re) || Double.isNaN(im)) {
+                return 2;
+            }
+            return 0;
+        }
+    }
+
+    public static final class StringElementHash extends ElementHash {
+
+        private final String[] data;
+
+        public StringElementHash(String[] data) {
+            super(data.length);
+            this.data = data;
+        }
+
+        @Override
+        protected int elementHash(int i) {
+            String value = data[i];
+            return RRuntime.isNA(value) ? 1 : value.hashCode();
+        }
+
+        @Override
+        protected boolean elementEquals(ElementHash other, int i, int j) {
+            return equalStrings(((StringElementHash) other).data[i], data[j]);
+        }
+
+        /**
+         * Equality of {@code match}: {@code NA_character_} differs from {@code "NA"}.
+         */
+        public static boolean equalStrings(String a, String b) {
+            return a == b || (!RRuntime.isNA(a) && !RRuntime.isNA(b) && a.equals(b));
+        }
+    }
+
     public static final class ArrayListInt {
         private int[] data;
         private int size;
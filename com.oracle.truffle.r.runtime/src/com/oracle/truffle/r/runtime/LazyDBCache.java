@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2015, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2015, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -23,33 +23,289 @@
 package com.oracle.truffle.r.runtime;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.oracle.truffle.api.TruffleFile;
 import com.oracle.truffle.r.runtime.context.RContext;
 
+/**
+ * Cache of the lazy-load databases ({@code .rdb} files) read by {@code lazyLoadDBfetch}. The cache
+ * is shared by all contexts of the VM: each database is memory mapped (or, for files that cannot be
+ * mapped, read) once, entries are copied out of the mapping by their offset and length, and the
+ * decompressed entries are kept in a bounded LRU cache so that contexts loading the same packages
+ * do not decompress them again.
+ *
+ * The shared databases are keyed by the path, size, modification time and inode of their file, so a
+ * rewritten file is never read through the mapping and index of its previous version. A context
+ * checks its database against the file the first time it uses it and again on every fetch that
+ * misses the entry cache, fetches of cached entries do not touch the file system. If a context
+ * finds the file changed and reloads it, the other contexts check their database again on their
+ * next fetch.
+ */
 public class LazyDBCache {
 
+    /**
+     * Upper bound of the summed sizes of the decompressed entries kept in the cache.
+     */
+    private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Entries larger than this are not cached, so that a few big datasets cannot evict the many
+     * small function entries.
+     */
+    private static final int MAX_CACHED_ENTRY_SIZE = (int) (MAX_CACHED_BYTES / 16);
+
+    private static final Map<FileStamp, Database> databases = new ConcurrentHashMap<>();
+
+    private static final EntryCache entries = new EntryCache();
+
+    /**
+     * Identifies a version of a database file. The inode is {@code null} if the file system does not
+     * provide it.
+     */
+    private static final class FileStamp {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final Object inode;
+
+        private FileStamp(String path, long size, long lastModified, Object inode) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.inode = inode;
+        }
+
+        static FileStamp of(TruffleFile file) throws IOException {
+            Object inode;
+            try {
+                inode = file.getAttribute(TruffleFile.UNIX_INODE);
+            } catch (UnsupportedOperationException e) {
+                inode = null;
+            }
+            return new FileStamp(file.getAbsoluteFile().getPath(), file.size(), file.getLastModifiedTime().toMillis(), inode);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + Long.hashCode(size ^ lastModified);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileStamp)) {
+                return false;
+            }
+            FileStamp other = (FileStamp) obj;
+            return path.equals(other.path) && size == other.size && lastModified == other.lastModified && Objects.equals(inode, other.inode);
+        }
+    }
+
+    public static final class Database {
+        private final FileStamp stamp;
+        private final ByteBuffer data;
+        private final long size;
+        private volatile boolean invalidated;
+
+        private Database(FileStamp stamp, ByteBuffer data, long size) {
+            this.stamp = stamp;
+            this.data = data;
+            this.size = size;
+        }
+
+        /**
+         * Returns a copy of the raw entry stored at {@code offset}.
+         */
+        public byte[] read(int offset, int length) {
+            if (offset < 0 || length < 0 || (long) offset + length > size) {
+                throw new IllegalArgumentException("entry out of bounds of " + stamp.path);
+            }
+            byte[] result = new byte[length];
+            // the buffer is shared, a duplicate has its own position
+            ByteBuffer buffer = data.duplicate();
+            buffer.position(offset);
+            try {
+                buffer.get(result);
+            } catch (InternalError e) {
+                // a fault in the mapped memory, the file was truncated since it was mapped
+                throw RError.error(RError.NO_CALLER, RError.Message.LAZY_LOAD_DB_CORRUPT, stamp.path);
+            }
+            return result;
+        }
+
+        /**
+         * Returns the decompressed entry stored at {@code offset} if it is in the cache. The result
+         * is shared and must not be modified.
+         */
+        public byte[] getEntry(int offset) {
+            return entries.get(new EntryKey(this, offset));
+        }
+
+        public void putEntry(int offset, byte[] udata) {
+            if (udata.length <= MAX_CACHED_ENTRY_SIZE) {
+                entries.put(new EntryKey(this, offset), udata);
+            }
+        }
+    }
+
+    private static final class EntryKey {
+        private final Database db;
+        private final int offset;
+
+        EntryKey(Database db, int offset) {
+            this.db = db;
+            this.offset = offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(db) * 31 + offset;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof EntryKey)) {
+                return false;
+            }
+            EntryKey other = (EntryKey) obj;
+            return db == other.db && offset == other.offset;
+        }
+    }
+
+    private static final class EntryCache {
+        private final LinkedHashMap<EntryKey, byte[]> map = new LinkedHashMap<>(16, 0.75f, true);
+        private long cachedBytes;
+
+        synchronized byte[] get(EntryKey key) {
+            return map.get(key);
+        }
+
+        synchronized void put(EntryKey key, byte[] value) {
+            byte[] old = map.put(key, value);
+            cachedBytes += value.length - (old == null ? 0 : old.length);
+            // the iteration order is least recently used first
+            Iterator<byte[]> iter = map.values().iterator();
+            while (cachedBytes > MAX_CACHED_BYTES && iter.hasNext()) {
+                cachedBytes -= iter.next().length;
+                iter.remove();
+            }
+        }
+
+        synchronized void removeAll(Database db) {
+            Iterator<Map.Entry<EntryKey, byte[]>> iter = map.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<EntryKey, byte[]> entry = iter.next();
+                if (entry.getKey().db == db) {
+                    cachedBytes -= entry.getValue().length;
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    private static Database load(TruffleFile file, FileStamp stamp) throws IOException {
+        long size = stamp.size;
+        ByteBuffer data = null;
+        if (size <= Integer.MAX_VALUE) {
+            // only files of a file system that provides a FileChannel can be mapped
+            try (SeekableByteChannel channel = file.newByteChannel(Collections.singleton(StandardOpenOption.READ))) {
+                if (channel instanceof FileChannel) {
+                    data = ((FileChannel) channel).map(MapMode.READ_ONLY, 0, size);
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                // fall back to reading the file
+            }
+        }
+        if (data == null) {
+            byte[] bytes = file.readAllBytes();
+            data = ByteBuffer.wrap(bytes);
+            size = bytes.length;
+        }
+        return new Database(stamp, data, size);
+    }
+
+    /**
+     * Drops the databases loaded from {@code path}.
+     */
+    private static void invalidate(String path) {
+        Iterator<Database> iter = databases.values().iterator();
+        while (iter.hasNext()) {
+            Database db = iter.next();
+            if (db.stamp.path.equals(path)) {
+                iter.remove();
+                // the mapping may still be in use by other contexts, it is released once collected
+                db.invalidated = true;
+                entries.removeAll(db);
+            }
+        }
+    }
+
     public static final class ContextStateImpl implements RContext.ContextState {
-        private final Map<String, byte[]> dbCache = new HashMap<>();
-
-        public byte[] getData(RContext context, String dbPath) {
-            byte[] dbData = dbCache.get(dbPath);
-            if (dbData == null) {
-                try {
-                    dbData = context.getSafeTruffleFile(dbPath).readAllBytes();
-                } catch (IOException ex) {
-                    // unexpected
-                    throw RInternalError.shouldNotReachHere(ex);
+
+        /**
+         * The databases validated by this context, by the path passed to {@code lazyLoadDBfetch}.
+         */
+        private final Map<String, Database> validated = new ConcurrentHashMap<>();
+
+        /**
+         * Returns the database at {@code dbPath}, loading it if it is not cached or if the file
+         * changed since it was loaded. The file is only checked on the first use by this context,
+         * a fetch that is going to read the file must use {@link #revalidate}.
+         */
+        public Database getDatabase(RContext context, String dbPath) {
+            Database db = validated.get(dbPath);
+            if (db == null || db.invalidated) {
+                db = revalidate(context, dbPath);
+            }
+            return db;
+        }
+
+        /**
+         * Like {@link #getDatabase}, but always checks the database against the file.
+         */
+        public Database revalidate(RContext context, String dbPath) {
+            Database db = validate(context, dbPath);
+            validated.put(dbPath, db);
+            return db;
+        }
+
+        private static Database validate(RContext context, String dbPath) {
+            TruffleFile file = context.getSafeTruffleFile(dbPath);
+            try {
+                FileStamp stamp = FileStamp.of(file);
+                Database db = databases.get(stamp);
+                if (db != null) {
+                    return db;
+                }
+                synchronized (databases) {
+                    db = databases.get(stamp);
+                    if (db == null) {
+                        invalidate(stamp.path);
+                        db = load(file, stamp);
+                        databases.put(stamp, db);
+                    }
+                    return db;
                 }
-                dbCache.put(dbPath, dbData);
+            } catch (IOException ex) {
+                // unexpected
+                throw RInternalError.shouldNotReachHere(ex);
             }
-            return dbData;
         }
 
-        public void remove(String dbPath) {
+        public void remove(RContext context, String dbPath) {
             // no an error if missing
-            dbCache.remove(dbPath);
+            validated.remove(dbPath);
+            invalidate(context.getSafeTruffleFile(dbPath).getAbsoluteFile().getPath());
         }
 
         public static ContextStateImpl newContextState() {
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime;
+
+import java.util.concurrent.ForkJoinPool;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.r.runtime.context.FastROptions;
+import com.oracle.truffle.r.runtime.context.RContext;
+
+/**
+ * Support for builtin kernels that split their work across several threads, e.g., matrix
+ * multiplication. The kernels operate only on plain Java arrays and never touch the R context from
+ * the worker threads, therefore the workers can be ordinary (non-polyglot) threads that are shared
+ * by all contexts in the VM.
+ *
+ * The number of threads is controlled by the {@link FastROptions#ParallelKernelThreads} option. The
+ * pool is created lazily with the value seen by the first context that needs it.
+ */
+public final class ParallelKernels {
+
+    private static volatile ForkJoinPool pool;
+
+    private ParallelKernels() {
+        // only static members
+    }
+
+    /**
+     * Returns the number of threads the parallel kernels may use in the current context. Value
+     * {@code 1} means that the kernels should fall back to their sequential versions.
+     */
+    @TruffleBoundary
+    public static int getParallelism() {
+        int threads = RContext.getInstance().getNonNegativeIntOption(FastROptions.ParallelKernelThreads);
+        return threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    @TruffleBoundary
+    public static ForkJoinPool getPool() {
+        ForkJoinPool result = pool;
+        if (result == null) {
+            synchronized (ParallelKernels.class) {
+                result = pool;
+                if (result == null) {
+                    result = new ForkJoinPool(Math.max(1, getParallelism()));
+                    pool = result;
+                }
+            }
+        }
+        return result;
+    }
+}
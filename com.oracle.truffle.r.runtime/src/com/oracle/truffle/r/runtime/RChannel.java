@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2015, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2015, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -22,10 +22,13 @@
  */
 package com.oracle.truffle.r.runtime;
 
+import static com.oracle.truffle.r.runtime.context.FastROptions.ChannelQueueCapacity;
 import static com.oracle.truffle.r.runtime.context.FastROptions.ChannelReceiveTimeout;
 import static com.oracle.truffle.r.runtime.env.frame.REnvTruffleFrameAccess.getStringIdentifiersAndValues;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -61,14 +64,26 @@ import com.oracle.truffle.r.runtime.nodes.RSyntaxElement;
 /**
  * Implementation of a channel abstraction used for communication between parallel contexts in
  * shared memory space.
+ *
+ * Values that can be shared between contexts (e.g. atomic vectors) are passed by reference, only
+ * objects bound to the sending context (connections, language objects and non-shareable
+ * environments) are serialized. The serialization buffers are pooled per channel and returned to
+ * the pool by the receiving side once the message has been unserialized.
  */
 public class RChannel {
 
-    // TODO: cheaper way of serializing data (re-usable buffer?)
-
     private static final int INITIAL_CHANNEL_NUM = 4;
     private static final int CHANNEL_NUM_GROW_FACTOR = 2;
-    private static final int QUEUE_CAPACITY = 1;
+
+    /**
+     * Upper bound on the number of idle serialization buffers kept by a channel.
+     */
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    /**
+     * Buffers that grew beyond this size while serializing a large object are not kept in the pool.
+     */
+    private static final int MAX_POOLED_BUFFER_SIZE = 1 << 20;
 
     private static int[] keys = new int[INITIAL_CHANNEL_NUM];
     private static RChannel[] channels = new RChannel[INITIAL_CHANNEL_NUM];
@@ -80,8 +95,60 @@ public class RChannel {
      */
     private static final Semaphore create = new Semaphore(1, true);
 
-    private final ArrayBlockingQueue<Object> masterToClient = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
-    private final ArrayBlockingQueue<Object> clientToMaster = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ArrayBlockingQueue<Object> masterToClient;
+    private final ArrayBlockingQueue<Object> clientToMaster;
+
+    private final ArrayDeque<MessageBuffer> freeBuffers = new ArrayDeque<>();
+
+    private RChannel(int capacity) {
+        this.masterToClient = new ArrayBlockingQueue<>(capacity);
+        this.clientToMaster = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * A growable serialization buffer whose backing array is handed directly to the unserializer
+     * without the copy done by {@link ByteArrayOutputStream#toByteArray()}.
+     */
+    private static final class MessageBuffer extends ByteArrayOutputStream {
+
+        MessageBuffer() {
+            super(1024);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        int getCapacity() {
+            return buf.length;
+        }
+    }
+
+    private MessageBuffer acquireBuffer() {
+        MessageBuffer buffer;
+        synchronized (freeBuffers) {
+            buffer = freeBuffers.poll();
+        }
+        if (buffer == null) {
+            return new MessageBuffer();
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    private void releaseBuffer(MessageBuffer buffer) {
+        if (buffer.getCapacity() <= MAX_POOLED_BUFFER_SIZE) {
+            synchronized (freeBuffers) {
+                if (freeBuffers.size() < MAX_POOLED_BUFFERS) {
+                    freeBuffers.push(buffer);
+                }
+            }
+        }
+    }
+
+    private static int getQueueCapacity() {
+        return Math.max(1, RContext.getInstance().getNonNegativeIntOption(ChannelQueueCapacity));
+    }
 
     public static int createChannel(int key) {
         if (key <= 0) {
@@ -136,7 +203,7 @@ public class RChannel {
             }
             if (freeSlot != -1) {
                 keys[freeSlot] = key;
-                channels[freeSlot] = new RChannel();
+                channels[freeSlot] = new RChannel(getQueueCapacity());
                 return new int[]{freeSlot, key};
             } else {
                 int[] keysTmp = new int[keys.length * CHANNEL_NUM_GROW_FACTOR];
@@ -212,9 +279,8 @@ public class RChannel {
     }
 
     public static void send(int id, Object data) {
-        Output out = new Output();
-        Object msg = out.processOutgoingMessage(data);
         RChannel channel = getChannelFromId(id);
+        Object msg = new Output(channel).processOutgoingMessage(data);
         try {
             (id > 0 ? channel.masterToClient : channel.clientToMaster).put(msg);
         } catch (InterruptedException x) {
@@ -222,6 +288,29 @@ public class RChannel {
         }
     }
 
+    /**
+     * Sends each element of {@code data} as a separate message, i.e. the receiving side gets them
+     * by the same number of {@link #receive(int)} calls. All the messages are prepared before the
+     * first one is enqueued so that the receiver is not left waiting on the conversion of the
+     * following ones.
+     */
+    public static void sendBatch(int id, RList data) {
+        RChannel channel = getChannelFromId(id);
+        Object[] msgs = new Object[data.getLength()];
+        for (int i = 0; i < msgs.length; i++) {
+            // every message is unserialized separately and thus needs its own reference table
+            msgs[i] = new Output(channel).processOutgoingMessage(data.getDataAt(i));
+        }
+        ArrayBlockingQueue<Object> queue = id > 0 ? channel.masterToClient : channel.clientToMaster;
+        try {
+            for (Object msg : msgs) {
+                queue.put(msg);
+            }
+        } catch (InterruptedException x) {
+            throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "error sending through the channel");
+        }
+    }
+
     public static Object receive(int id) {
         RChannel channel = getChannelFromId(id);
         try {
@@ -236,7 +325,7 @@ public class RChannel {
                 msg = queue.take();
             }
             if (msg != null) {
-                Input in = new Input();
+                Input in = new Input(channel);
                 return in.processedReceivedMessage(msg);
             }
             throw RError.error(RError.SHOW_CALLER2, RError.Message.GENERIC, "timeout while receiving from the channel");
@@ -245,11 +334,24 @@ public class RChannel {
         }
     }
 
+    /**
+     * Converts {@code value} in the same way as when it is sent through a channel so that it can
+     * be handed over to another context. The result must be passed to {@link #importValue(Object)}
+     * exactly once, in the receiving context.
+     */
+    public static Object exportValue(Object value) {
+        return new Output(null).processOutgoingMessage(value);
+    }
+
+    public static Object importValue(Object msg) {
+        return new Input(null).processedReceivedMessage(msg);
+    }
+
     public static Object poll(int id) {
         RChannel channel = getChannelFromId(id);
         Object msg = (id < 0 ? channel.masterToClient : channel.clientToMaster).poll();
         if (msg != null) {
-            Input in = new Input();
+            Input in = new Input(channel);
             return in.processedReceivedMessage(msg);
         }
         return null;
@@ -257,6 +359,16 @@ public class RChannel {
 
     private static class TransmitterCommon extends RSerialize.RefCounter {
 
+        /**
+         * The channel that the message is transmitted through or {@code null} for values passed
+         * via {@link RChannel#exportValue(Object)}.
+         */
+        protected final RChannel channel;
+
+        TransmitterCommon(RChannel channel) {
+            this.channel = channel;
+        }
+
         protected static class SerializedRef {
             private final int index;
 
@@ -404,9 +516,9 @@ public class RChannel {
         protected static class SerializedAttributable {
 
             private final DynamicObject attributes;
-            private final byte[] serializedAttributable;
+            private final MessageBuffer serializedAttributable;
 
-            public SerializedAttributable(DynamicObject attributes, byte[] serializedAttributable) {
+            SerializedAttributable(DynamicObject attributes, MessageBuffer serializedAttributable) {
                 this.attributes = attributes;
                 this.serializedAttributable = serializedAttributable;
             }
@@ -415,7 +527,7 @@ public class RChannel {
                 return attributes;
             }
 
-            public byte[] getSerializedAttributable() {
+            MessageBuffer getSerializedAttributable() {
                 return serializedAttributable;
             }
         }
@@ -423,6 +535,10 @@ public class RChannel {
 
     private static class Output extends TransmitterCommon {
 
+        Output(RChannel channel) {
+            super(channel);
+        }
+
         private static Object makeShared(Object o) {
             if (RSharingAttributeStorage.isShareable(o)) {
                 RSharingAttributeStorage shareable = (RSharingAttributeStorage) o;
@@ -525,7 +641,8 @@ public class RChannel {
                 // them - should we define a new method to be used here?
                 attributable.initAttributes(null);
             }
-            byte[] serializedAttributable = RSerialize.serialize(RContext.getInstance(), attributable, RSerialize.XDR, RSerialize.DEFAULT_VERSION, null);
+            MessageBuffer serializedAttributable = channel != null ? channel.acquireBuffer() : new MessageBuffer();
+            RSerialize.serialize(RContext.getInstance(), serializedAttributable, attributable, RSerialize.XDR, RSerialize.DEFAULT_VERSION, null);
             if (attributes != null) {
                 attributable.initAttributes(attributes);
                 attributes = createShareableSlow(attributes, true);
@@ -654,6 +771,10 @@ public class RChannel {
 
     private static class Input extends TransmitterCommon {
 
+        Input(RChannel channel) {
+            super(channel);
+        }
+
         private Object unserializeObject(Object el) throws IOException {
             Object ret = el;
             if (el instanceof SerializedRef) {
@@ -748,9 +869,14 @@ public class RChannel {
         }
 
         @TruffleBoundary
-        private static RAttributable unserializeAttributable(SerializedAttributable a) throws IOException {
+        private RAttributable unserializeAttributable(SerializedAttributable a) throws IOException {
             DynamicObject attributes = a.getAttributes();
-            RAttributable attributable = (RAttributable) RSerialize.unserialize(a.getSerializedAttributable(), null, null, null);
+            MessageBuffer buffer = a.getSerializedAttributable();
+            RAttributable attributable = (RAttributable) RSerialize.unserialize(buffer.getBuffer(), buffer.size());
+            if (channel != null) {
+                // each message is received exactly once, the buffer can be re-used
+                channel.releaseBuffer(buffer);
+            }
             if (attributes != null) {
                 assert attributable.getAttributes() == null;
                 // attributes unserialized in caller methods
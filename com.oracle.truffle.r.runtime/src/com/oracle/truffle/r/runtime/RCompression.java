@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -24,23 +24,29 @@ package com.oracle.truffle.r.runtime;
 
 import com.oracle.truffle.api.TruffleFile;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.ProcessBuilder.Redirect;
-import java.nio.file.OpenOption;
-import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
 
+import org.tukaani.xz.FinishableOutputStream;
+import org.tukaani.xz.FinishableWrapperOutputStream;
 import org.tukaani.xz.LZMA2InputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZ;
+import org.tukaani.xz.XZOutputStream;
 
+import com.oracle.truffle.r.runtime.compress.BZip2InputStream;
+import com.oracle.truffle.r.runtime.compress.BZip2OutputStream;
+import com.oracle.truffle.r.runtime.compress.ParallelLZMA2OutputStream;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.ffi.ZipRFFI;
 
 /**
- * Abstracts the implementation of the various forms of compression used in R. Since the C API for
- * LZMA is very complex (as used by GnuR), we use an 'xz' subprocess to do the work.
+ * Abstracts the implementation of the various forms of compression used in R. LZMA is implemented
+ * by the {@code org.tukaani.xz} library and bzip2 by {@link BZip2InputStream} and
+ * {@link BZip2OutputStream}.
  */
 public class RCompression {
     public enum Type {
@@ -111,7 +117,7 @@ public class RCompression {
             case GZIP:
                 return gzipUncompress(udata, cdata);
             case BZIP2:
-                throw RInternalError.unimplemented("BZIP2 compression");
+                return bzipUncompress(udata, cdata);
             case XZ:
                 return lzmaUncompress(udata, cdata);
             default:
@@ -137,7 +143,7 @@ public class RCompression {
             case GZIP:
                 return gzipCompress(udata, cdata);
             case BZIP2:
-                throw RInternalError.unimplemented("BZIP2 compression");
+                return bzipCompress(udata, cdata);
             case XZ:
                 return lzmaCompress(udata, cdata);
             default:
@@ -156,33 +162,51 @@ public class RCompression {
         return rc == 0;
     }
 
-    /**
-     * There is no obvious counterpart to {@link LZMA2InputStream} and according to the XZ forum it
-     * is not implemented for Java, so have to use sub-process.
-     */
     private static boolean lzmaCompress(byte[] udata, byte[] cdata) {
-        int rc;
-        ProcessBuilder pb = new ProcessBuilder("xz", "--compress", "--format=raw", "--lzma2", "--stdout");
-        pb.redirectError(Redirect.INHERIT);
         try {
-            Process p = pb.start();
-            OutputStream os = p.getOutputStream();
-            InputStream is = p.getInputStream();
-            ProcessOutputManager.OutputThread readThread = new ProcessOutputManager.OutputThreadFixed("xz", is, cdata);
-            readThread.start();
-            os.write(udata);
-            os.close();
-            rc = p.waitFor();
-            if (rc == 0) {
-                readThread.join();
-                return true;
+            byte[] compressed = lzmaCompress(udata);
+            if (compressed.length > cdata.length) {
+                return false;
             }
-        } catch (InterruptedException | IOException ex) {
+            System.arraycopy(compressed, 0, cdata, 0, compressed.length);
+            return true;
+        } catch (IOException ex) {
             return false;
         }
-        assert rc != 0;
-        return false;
+    }
 
+    /**
+     * Compresses {@code udata} into a raw LZMA2 stream with the default preset, as used by GnuR's
+     * {@code R_compress3}. Large data is compressed on several threads.
+     */
+    public static byte[] lzmaCompress(byte[] udata) throws IOException {
+        LZMA2Options options = new LZMA2Options();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(udata.length / 4 + 64);
+        int parallelism = ParallelKernels.getParallelism();
+        if (parallelism > 1 && udata.length >= 2L * ParallelLZMA2OutputStream.getChunkSize(options)) {
+            try (ParallelLZMA2OutputStream lzma = new ParallelLZMA2OutputStream(out, options, ParallelLZMA2OutputStream.Format.RAW, ParallelKernels.getPool(), parallelism)) {
+                lzma.write(udata);
+            }
+        } else {
+            FinishableOutputStream lzma = options.getOutputStream(new FinishableWrapperOutputStream(out));
+            lzma.write(udata);
+            lzma.finish();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a stream writing the .xz format to {@code out}. If the context allows
+     * {@link ParallelKernels}, the data is compressed on several threads in chunks that are written
+     * as concatenated .xz streams.
+     */
+    public static OutputStream xzOutputStream(OutputStream out) throws IOException {
+        LZMA2Options options = new LZMA2Options();
+        int parallelism = ParallelKernels.getParallelism();
+        if (parallelism > 1) {
+            return new ParallelLZMA2OutputStream(out, options, ParallelLZMA2OutputStream.Format.XZ, ParallelKernels.getPool(), parallelism);
+        }
+        return new XZOutputStream(out, options, XZ.CHECK_CRC32);
     }
 
     private static boolean lzmaUncompress(byte[] udata, byte[] data) {
@@ -199,55 +223,53 @@ public class RCompression {
         }
     }
 
-    public static byte[] bzipUncompressFromFile(TruffleFile path) throws IOException {
-        String[] command = new String[]{"bzip2", "-dc", path.getPath()};
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectError(Redirect.INHERIT);
-        Process p = pb.start();
-        InputStream is = p.getInputStream();
-        ProcessOutputManager.OutputThreadVariable readThread = new ProcessOutputManager.OutputThreadVariable(command[0], is);
-        readThread.start();
+    /**
+     * Returns a stream decompressing the bzip2 data from {@code in}. Blocks are decoded in parallel
+     * if the context allows {@link ParallelKernels}.
+     */
+    public static InputStream bzipInputStream(InputStream in) {
+        int parallelism = ParallelKernels.getParallelism();
+        if (parallelism > 1) {
+            return new BZip2InputStream(in, ParallelKernels.getPool(), parallelism);
+        }
+        return new BZip2InputStream(in);
+    }
+
+    /**
+     * Compresses {@code udata} into a complete bzip2 stream.
+     */
+    public static byte[] bzipCompress(byte[] udata) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(udata.length / 4 + 64);
+        try (BZip2OutputStream bzip = new BZip2OutputStream(out)) {
+            bzip.write(udata);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean bzipCompress(byte[] udata, byte[] cdata) {
         try {
-            int rc = p.waitFor();
-            if (rc == 0) {
-                readThread.join();
-                return Arrays.copyOf(readThread.getData(), readThread.getTotalRead());
-            } else {
-                throw new IOException("bzip2 error code: " + rc);
+            byte[] compressed = bzipCompress(udata);
+            if (compressed.length > cdata.length) {
+                return false;
             }
-        } catch (InterruptedException ex) {
-            // fall through
+            System.arraycopy(compressed, 0, cdata, 0, compressed.length);
+            return true;
+        } catch (IOException ex) {
+            return false;
         }
-        throw new IOException();
     }
 
-    public static void bzipCompressToFile(byte[] data, TruffleFile path, boolean append) throws IOException {
-        String[] command = new String[]{"bzip2", "-zc"};
-        int rc;
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectError(Redirect.INHERIT);
-        Process p = pb.start();
-        InputStream is = p.getInputStream();
-        OutputStream os = p.getOutputStream();
-        ProcessOutputManager.OutputThreadVariable readThread = new ProcessOutputManager.OutputThreadVariable(command[0], is);
-        readThread.start();
-        os.write(data);
-        os.close();
-        try {
-            rc = p.waitFor();
-            if (rc == 0) {
-                readThread.join();
-                byte[] cData = Arrays.copyOf(readThread.getData(), readThread.getTotalRead());
-                OpenOption[] openOptions = append ? new OpenOption[]{StandardOpenOption.APPEND} : new OpenOption[0];
-                path.newOutputStream(openOptions).write(cData);
-                return;
-            } else {
-                throw new IOException("bzip2 error code: " + rc);
+    private static boolean bzipUncompress(byte[] udata, byte[] cdata) {
+        try (InputStream bzip = bzipInputStream(new ByteArrayInputStream(cdata))) {
+            int totalRead = 0;
+            int n;
+            while (totalRead < udata.length && (n = bzip.read(udata, totalRead, udata.length - totalRead)) > 0) {
+                totalRead += n;
             }
-        } catch (InterruptedException ex) {
-            // fall through
+            return totalRead == udata.length;
+        } catch (IOException ex) {
+            return false;
         }
-        throw new IOException();
     }
 
     public static String getBz2Version() throws IOException {
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2018, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -31,6 +31,8 @@ import java.text.ParseException;
 import java.text.RuleBasedCollator;
 import java.util.EnumMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import com.oracle.truffle.r.runtime.RError.Message;
 import com.oracle.truffle.r.runtime.context.RContext;
@@ -82,6 +84,18 @@ public enum RLocale {
         private final EnumMap<RLocale, Locale> locales = new EnumMap<>(RLocale.class);
         private final EnumMap<RLocale, Charset> charsets = new EnumMap<>(RLocale.class);
 
+        /**
+         * Lazily created {@link RLocale#getOrderCollator(Locale) order collator} for the current
+         * {@link RLocale#COLLATE} locale.
+         */
+        private Collator orderCollator;
+        /**
+         * Collation keys (see {@link CollationRanks}) of strings for the current
+         * {@link #orderCollator}. The cache is keyed by the string contents and so it is shared by
+         * all vectors and {@code CHARSXP}s with the same (typically interned) string.
+         */
+        private final WeakHashMap<String, byte[]> collationKeys = new WeakHashMap<>();
+
         private ContextStateImpl() {
             // private constructor
         }
@@ -162,6 +176,30 @@ public enum RLocale {
             }
             charsets.put(locale, c == null ? StandardCharsets.UTF_8 : c);
             locales.put(locale, l == null ? Locale.ROOT : l);
+            if (locale == COLLATE) {
+                orderCollator = null;
+                collationKeys.clear();
+            }
+        }
+
+        /**
+         * Returns the cached collator that should be used to order strings in the current
+         * {@link RLocale#COLLATE} locale or {@code null} if the strings should be compared by the
+         * numeric values of their characters.
+         */
+        public Collator getOrderCollator() {
+            Locale locale = getLocale(COLLATE);
+            if (locale == Locale.ROOT || locale == null) {
+                return null;
+            }
+            if (orderCollator == null) {
+                orderCollator = RLocale.getOrderCollator(locale);
+            }
+            return orderCollator;
+        }
+
+        public Map<String, byte[]> getCollationKeyCache() {
+            return collationKeys;
         }
 
         public Charset getCharset(RLocale locale) {
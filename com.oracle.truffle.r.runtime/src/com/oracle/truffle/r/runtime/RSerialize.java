@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
@@ -67,10 +68,12 @@ import com.oracle.truffle.r.runtime.data.RAttributable;
 import com.oracle.truffle.r.runtime.data.RAttributesLayout;
 import com.oracle.truffle.r.runtime.data.RBaseObject;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RDoubleArrayVectorData;
 import com.oracle.truffle.r.runtime.data.RDoubleVector;
 import com.oracle.truffle.r.runtime.data.REmpty;
 import com.oracle.truffle.r.runtime.data.RExternalPtr;
 import com.oracle.truffle.r.runtime.data.RFunction;
+import com.oracle.truffle.r.runtime.data.RIntArrayVectorData;
 import com.oracle.truffle.r.runtime.data.RIntSeqVectorData;
 import com.oracle.truffle.r.runtime.data.RPairList;
 import com.oracle.truffle.r.runtime.data.RList;
@@ -247,10 +250,18 @@ public class RSerialize {
             super(buf);
         }
 
+        PByteArrayInputStream(byte[] buf, int length) {
+            super(buf, 0, length);
+        }
+
         byte[] getData() {
             return buf;
         }
 
+        int size() {
+            return count;
+        }
+
         int pos() {
             return pos;
         }
@@ -285,6 +296,25 @@ public class RSerialize {
             return dotDotFindNamespace;
         }
 
+        /**
+         * The output buffer of the last finished serialization, handed out again to the next one
+         * so that repeated {@code serialize} calls do not allocate a fresh buffer each. Nested
+         * serializations (e.g. from a refhook) get their own buffer.
+         */
+        private byte[] outputBuffer;
+
+        synchronized byte[] acquireOutputBuffer() {
+            byte[] result = outputBuffer;
+            outputBuffer = null;
+            return result != null ? result : new byte[XdrOutputFormat.WRITE_BUFFER_SIZE];
+        }
+
+        synchronized void releaseOutputBuffer(byte[] buffer) {
+            if (buffer != null) {
+                outputBuffer = buffer;
+            }
+        }
+
         public static ContextStateImpl newContextState() {
             return new ContextStateImpl();
         }
@@ -413,6 +443,17 @@ public class RSerialize {
         return result;
     }
 
+    /**
+     * Unserializes the first {@code length} bytes of {@code data}, which allows the caller to hand
+     * in a re-used buffer that is larger than the serialized contents.
+     */
+    @TruffleBoundary
+    public static Object unserialize(byte[] data, int length) throws IOException {
+        InputStream is = new PByteArrayInputStream(data, length);
+        Input instance = trace() ? new TracingInput(is, null, null, null) : new Input(is, null, null, null);
+        return instance.unserialize();
+    }
+
     private static class Input extends Common {
 
         protected final PInputStream stream;
@@ -853,13 +894,13 @@ public class RSerialize {
                 case INTSXP: {
                     int len = stream.readInt();
                     int[] data = new int[len];
+                    stream.readInts(data);
                     boolean complete = RDataFactory.COMPLETE_VECTOR;
                     for (int i = 0; i < len; i++) {
-                        int intVal = stream.readInt();
-                        if (intVal == RRuntime.INT_NA) {
+                        if (data[i] == RRuntime.INT_NA) {
                             complete = false;
+                            break;
                         }
-                        data[i] = intVal;
                     }
                     result = RDataFactory.createIntVector(data, complete);
                     break;
@@ -885,13 +926,13 @@ public class RSerialize {
                 case REALSXP: {
                     int len = stream.readInt();
                     double[] data = new double[len];
+                    stream.readDoubles(data);
                     boolean complete = RDataFactory.COMPLETE_VECTOR;
                     for (int i = 0; i < len; i++) {
-                        double doubleVal = stream.readDouble();
-                        if (RRuntime.isNA(doubleVal)) {
+                        if (RRuntime.isNA(data[i])) {
                             complete = false;
+                            break;
                         }
-                        data[i] = doubleVal;
                     }
                     result = RDataFactory.createDoubleVector(data, complete);
                     break;
@@ -900,23 +941,17 @@ public class RSerialize {
                 case CPLXSXP: {
                     int len = stream.readInt();
                     double[] data = new double[2 * len];
+                    stream.readDoubles(data);
                     boolean complete = RDataFactory.COMPLETE_VECTOR;
-                    for (int i = 0; i < len; i++) {
-                        int ix = 2 * i;
-                        double reVal = stream.readDouble();
-                        if (RRuntime.isNA(reVal)) {
+                    for (int ix = 0; ix < data.length; ix += 2) {
+                        double reVal = data[ix];
+                        double imVal = data[ix + 1];
+                        if (RRuntime.isNA(reVal) || RRuntime.isNA(imVal)) {
                             complete = false;
-                        }
-                        double imVal = stream.readDouble();
-                        if (RRuntime.isNA(imVal)) {
-                            complete = false;
-                        }
-                        if (RRuntime.isNA(reVal) && RRuntime.isNA(imVal)) {
-                            data[ix] = RRuntime.COMPLEX_NA_REAL_PART;
-                            data[ix + 1] = RRuntime.COMPLEX_NA_IMAGINARY_PART;
-                        } else {
-                            data[ix] = reVal;
-                            data[ix + 1] = imVal;
+                            if (RRuntime.isNA(reVal) && RRuntime.isNA(imVal)) {
+                                data[ix] = RRuntime.COMPLEX_NA_REAL_PART;
+                                data[ix + 1] = RRuntime.COMPLEX_NA_IMAGINARY_PART;
+                            }
                         }
                     }
                     result = RDataFactory.createComplexVector(data, complete);
@@ -1228,6 +1263,24 @@ public class RSerialize {
 
         abstract void readRaw(byte[] data) throws IOException;
 
+        /**
+         * Reads {@code data.length} consecutive ints. Formats that can decode whole blocks at once
+         * should override this.
+         */
+        void readInts(int[] data) throws IOException {
+            for (int i = 0; i < data.length; i++) {
+                data[i] = readInt();
+            }
+        }
+
+        /**
+         * Reads {@code data.length} consecutive doubles, see {@link #readInts(int[])}.
+         */
+        void readDoubles(double[] data) throws IOException {
+            for (int i = 0; i < data.length; i++) {
+                data[i] = readDouble();
+            }
+        }
     }
 
     @SuppressWarnings("unused")
@@ -1304,6 +1357,16 @@ public class RSerialize {
                 offset += data.length;
             }
 
+            void readInts(int[] data, int from, int count) {
+                ByteBuffer.wrap(buf, offset, count * Integer.BYTES).asIntBuffer().get(data, from, count);
+                offset += count * Integer.BYTES;
+            }
+
+            void readDoubles(double[] data, int from, int count) {
+                ByteBuffer.wrap(buf, offset, count * Double.BYTES).asDoubleBuffer().get(data, from, count);
+                offset += count * Double.BYTES;
+            }
+
             void readData(int n) throws IOException {
                 if (offset + n > size) {
                     if (offset != size) {
@@ -1339,7 +1402,7 @@ public class RSerialize {
                 // we already have the data and we have read the beginning
                 PByteArrayInputStream pbis = (PByteArrayInputStream) is;
                 defaultBuffer = new Buffer(pbis.getData());
-                defaultBuffer.size = pbis.getData().length;
+                defaultBuffer.size = pbis.size();
                 defaultBuffer.offset = pbis.pos();
             } else {
                 defaultBuffer = new Buffer(new byte[READ_BUFFER_SIZE]);
@@ -1368,6 +1431,29 @@ public class RSerialize {
             ensureData(data.length).readRaw(data);
         }
 
+        /**
+         * Decodes the big-endian ints in blocks that fit into the default buffer, so that large
+         * vectors neither go through {@link #readInt()} per element nor force an enlarged copy of
+         * the buffer.
+         */
+        @Override
+        void readInts(int[] data) throws IOException {
+            int chunk = Math.max(1, defaultBuffer.buf.length / Integer.BYTES);
+            for (int i = 0; i < data.length; i += chunk) {
+                int count = Math.min(chunk, data.length - i);
+                ensureData(count * Integer.BYTES).readInts(data, i, count);
+            }
+        }
+
+        @Override
+        void readDoubles(double[] data) throws IOException {
+            int chunk = Math.max(1, defaultBuffer.buf.length / Double.BYTES);
+            for (int i = 0; i < data.length; i += chunk) {
+                int count = Math.min(chunk, data.length - i);
+                ensureData(count * Double.BYTES).readDoubles(data, i, count);
+            }
+        }
+
         private Buffer ensureData(int n) throws IOException {
             Buffer usedBuffer;
             if (n > defaultBuffer.buf.length) {
@@ -1465,15 +1551,36 @@ public class RSerialize {
 
         abstract void flush() throws IOException;
 
+        /**
+         * Writes {@code count} ints starting at {@code from}. Formats that can encode whole blocks
+         * at once should override this.
+         */
+        void writeInts(int[] values, int from, int count) throws IOException {
+            for (int i = from; i < from + count; i++) {
+                writeInt(values[i]);
+            }
+        }
+
+        /**
+         * Writes {@code count} doubles starting at {@code from}, see
+         * {@link #writeInts(int[], int, int)}.
+         */
+        void writeDoubles(double[] values, int from, int count) throws IOException {
+            for (int i = from; i < from + count; i++) {
+                writeDouble(values[i]);
+            }
+        }
     }
 
     private static class XdrOutputFormat extends POutputStream {
+        private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
         private final byte[] buf;
         private int offset;
 
-        XdrOutputFormat(OutputStream os) {
+        XdrOutputFormat(OutputStream os, byte[] buf) {
             super(os);
-            buf = new byte[8192];
+            this.buf = buf;
             buf[offset++] = 'X';
             buf[offset++] = '\n';
         }
@@ -1541,6 +1648,43 @@ public class RSerialize {
             buf[offset++] = (byte) (valueBits & 0xff);
         }
 
+        /**
+         * Encodes the values directly into the buffer in big-endian blocks, flushing whenever the
+         * buffer is full.
+         */
+        @Override
+        void writeInts(int[] values, int from, int count) throws IOException {
+            int i = from;
+            int end = from + count;
+            while (i < end) {
+                int n = Math.min(end - i, (buf.length - offset) / Integer.BYTES);
+                if (n == 0) {
+                    flushBuffer();
+                    continue;
+                }
+                ByteBuffer.wrap(buf, offset, n * Integer.BYTES).asIntBuffer().put(values, i, n);
+                offset += n * Integer.BYTES;
+                i += n;
+            }
+        }
+
+        @Override
+        void writeDoubles(double[] values, int from, int count) throws IOException {
+            int i = from;
+            int end = from + count;
+            while (i < end) {
+                int n = Math.min(end - i, (buf.length - offset) / Double.BYTES);
+                if (n == 0) {
+                    flushBuffer();
+                    continue;
+                }
+                // like writeDouble, this keeps the NaN payload that distinguishes NA from NaN
+                ByteBuffer.wrap(buf, offset, n * Double.BYTES).asDoubleBuffer().put(values, i, n);
+                offset += n * Double.BYTES;
+                i += n;
+            }
+        }
+
         private void ensureSpace(int n) throws IOException {
             if (offset + n > buf.length) {
                 flushBuffer();
@@ -1572,6 +1716,7 @@ public class RSerialize {
         private final POutputStream stream;
         private final int version;
         private final RContext context;
+        private final byte[] streamBuffer;
 
         private Output(RContext context, int format, int version, CallHook hook, OutputStream os) throws IOException {
             super(hook);
@@ -1584,12 +1729,21 @@ public class RSerialize {
                 case BINARY:
                     throw formatError((byte) format, true);
                 default:
-                    stream = new XdrOutputFormat(os);
+                    streamBuffer = contextState.acquireOutputBuffer();
+                    stream = new XdrOutputFormat(os, streamBuffer);
                     break;
             }
         }
 
         private void serialize(Object obj) throws IOException {
+            try {
+                serializeItem(obj);
+            } finally {
+                contextState.releaseOutputBuffer(streamBuffer);
+            }
+        }
+
+        private void serializeItem(Object obj) throws IOException {
             stream.writeInt(version);
             stream.writeInt(RVersionNumber.R_VERSION);
             switch (version) {
@@ -1774,6 +1928,13 @@ public class RSerialize {
 
                             case INTSXP:
                             case LGLSXP: {
+                                if (obj instanceof RIntVector && ((RIntVector) obj).getData() instanceof RIntArrayVectorData) {
+                                    RIntVector vector = (RIntVector) obj;
+                                    int length = vector.getLength();
+                                    stream.writeInt(length);
+                                    stream.writeInts(((RIntArrayVectorData) vector.getData()).getReadonlyIntData(), 0, length);
+                                    break;
+                                }
                                 // logicals are written as ints
                                 RAbstractVector vector = (RAbstractVector) obj;
                                 VectorAccess access = vector.slowPathAccess();
@@ -1787,6 +1948,12 @@ public class RSerialize {
 
                             case REALSXP: {
                                 RDoubleVector vector = (RDoubleVector) obj;
+                                if (vector.getData() instanceof RDoubleArrayVectorData) {
+                                    int length = vector.getLength();
+                                    stream.writeInt(length);
+                                    stream.writeDoubles(((RDoubleArrayVectorData) vector.getData()).getReadonlyDoubleData(), 0, length);
+                                    break;
+                                }
                                 VectorAccess access = vector.slowPathAccess();
                                 SequentialIterator iter = access.access(vector);
                                 stream.writeInt(access.getLength(iter));
@@ -1798,6 +1965,13 @@ public class RSerialize {
 
                             case CPLXSXP: {
                                 RComplexVector vector = (RComplexVector) obj;
+                                if (vector.isComplete() && !vector.isAltRep() && !vector.hasNativeMemoryData()) {
+                                    // no NA parts that would need to be normalized
+                                    int length = vector.getLength();
+                                    stream.writeInt(length);
+                                    stream.writeDoubles(vector.getInternalManagedData(), 0, 2 * length);
+                                    break;
+                                }
                                 VectorAccess access = vector.slowPathAccess();
                                 SequentialIterator iter = access.access(vector);
                                 stream.writeInt(access.getLength(iter));
@@ -2452,7 +2626,15 @@ public class RSerialize {
 
     @TruffleBoundary
     public static void serialize(RContext context, RConnection conn, Object obj, int type, int version, Object refhook) throws IOException {
-        Output output = new Output(context, type, version, (CallHook) refhook, conn.getOutputStream());
+        serialize(context, conn.getOutputStream(), obj, type, version, refhook);
+    }
+
+    /**
+     * Serializes into a caller provided stream, e.g. a re-used buffer of a {@link RChannel}.
+     */
+    @TruffleBoundary
+    public static void serialize(RContext context, OutputStream out, Object obj, int type, int version, Object refhook) throws IOException {
+        Output output = new Output(context, type, version, (CallHook) refhook, out);
         output.serialize(obj);
     }
 
@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+/**
+ * Stable LSD radix sort of keys with an optional parallel array of indexes that is permuted along
+ * with the keys. The keys are compared as <b>unsigned</b> numbers, the helper functions
+ * {@link #intKey(int, boolean)} and {@link #doubleKey(double, boolean)} transform R values into keys
+ * with the desired ordering. Since the sort is stable, sorting indexes that are initially in
+ * increasing order gives the same result as ordering by the (value, index) pair, which is what
+ * {@code order} requires. Several keys can be combined by sorting by each of them in turn, starting
+ * from the least significant one.
+ *
+ * Large inputs are split into chunks that are sorted in parallel on the
+ * {@link ParallelKernels#getPool() pool} and merged afterwards.
+ */
+public final class StableSort {
+
+    /**
+     * Below this length the callers should rather use a comparison based sort.
+     */
+    public static final int RADIX_THRESHOLD = 256;
+
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int MIN_CHUNK = 1 << 14;
+
+    private static final int BITS = 8;
+    private static final int BUCKETS = 1 << BITS;
+    private static final int MASK = BUCKETS - 1;
+
+    private StableSort() {
+        // only static members
+    }
+
+    /**
+     * Key of an integer value (including {@code NA}, which is the smallest integer) for
+     * {@link #sort(int[], int, int[], int)}.
+     */
+    public static int intKey(int value, boolean decreasing) {
+        int key = value ^ Integer.MIN_VALUE;
+        return decreasing ? ~key : key;
+    }
+
+    /**
+     * Key of a double value for {@link #sort(int[], int, long[], int)}. The value must not be
+     * {@code NaN}, {@code -0.0} is considered equal to {@code 0.0}.
+     */
+    public static long doubleKey(double value, boolean decreasing) {
+        assert !Double.isNaN(value);
+        // adding 0.0 turns -0.0 into 0.0
+        long bits = Double.doubleToRawLongBits(value + 0.0);
+        long key = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+        return decreasing ? ~key : key;
+    }
+
+    /**
+     * Key of a double value in which {@code -0.0} is smaller than {@code 0.0}, for sorting values
+     * that are decoded back by {@link #fromDoubleKey(long)}.
+     */
+    private static long doubleValueKey(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+    }
+
+    private static double fromDoubleKey(long key) {
+        return Double.longBitsToDouble(key < 0 ? key ^ Long.MIN_VALUE : ~key);
+    }
+
+    /**
+     * Sorts {@code keys[0..length)} and permutes {@code indx[from..from+length)} accordingly. The
+     * {@code indx} array may be {@code null}.
+     */
+    @TruffleBoundary
+    public static void sort(int[] indx, int from, int[] keys, int length) {
+        int[] tmpIndx = indx == null ? null : new int[length];
+        int[] tmpKeys = new int[length];
+        if (length >= PARALLEL_THRESHOLD && ParallelKernels.getParallelism() > 1) {
+            ParallelKernels.getPool().invoke(new IntSortTask(indx, from, keys, tmpIndx, tmpKeys, 0, length, chunkSize(length)));
+        } else {
+            radixSort(indx, from, keys, tmpIndx, tmpKeys, 0, length);
+        }
+    }
+
+    /**
+     * Sorts {@code keys[0..length)} and permutes {@code indx[from..from+length)} accordingly. The
+     * {@code indx} array may be {@code null}.
+     */
+    @TruffleBoundary
+    public static void sort(int[] indx, int from, long[] keys, int length) {
+        int[] tmpIndx = indx == null ? null : new int[length];
+        long[] tmpKeys = new long[length];
+        if (length >= PARALLEL_THRESHOLD && ParallelKernels.getParallelism() > 1) {
+            ParallelKernels.getPool().invoke(new LongSortTask(indx, from, keys, tmpIndx, tmpKeys, 0, length, chunkSize(length)));
+        } else {
+            radixSort(indx, from, keys, tmpIndx, tmpKeys, 0, length);
+        }
+    }
+
+    /**
+     * Sorts integer values in place, {@code NA} being the smallest value.
+     */
+    @TruffleBoundary
+    public static void sortValues(int[] data, boolean decreasing) {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = intKey(data[i], decreasing);
+        }
+        sort(null, 0, data, data.length);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (decreasing ? ~data[i] : data[i]) ^ Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Sorts double values in place, {@code -0.0} is placed before {@code 0.0} and the values must
+     * not contain {@code NaN}.
+     */
+    @TruffleBoundary
+    public static void sortValues(double[] data, boolean decreasing) {
+        long[] keys = new long[data.length];
+        for (int i = 0; i < data.length; i++) {
+            long key = doubleValueKey(data[i]);
+            keys[i] = decreasing ? ~key : key;
+        }
+        sort(null, 0, keys, keys.length);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = fromDoubleKey(decreasing ? ~keys[i] : keys[i]);
+        }
+    }
+
+    private static int chunkSize(int length) {
+        int chunks = ParallelKernels.getParallelism() * 2;
+        return Math.max(MIN_CHUNK, (length + chunks - 1) / chunks);
+    }
+
+    // sorts keys[lo..hi), the result is stored in keys, tmp arrays have the same indexing
+    private static void radixSort(int[] indx, int from, int[] keys, int[] tmpIndx, int[] tmpKeys, int lo, int hi) {
+        if (hi - lo < 2) {
+            return;
+        }
+        int diff = 0;
+        int first = keys[lo];
+        for (int i = lo + 1; i < hi; i++) {
+            diff |= keys[i] ^ first;
+        }
+        int[] srcKeys = keys;
+        int[] dstKeys = tmpKeys;
+        int[] srcIndx = indx;
+        int[] dstIndx = tmpIndx;
+        // the index array is offset by "from" against the keys
+        int srcOffset = from;
+        int dstOffset = 0;
+        int[] count = new int[BUCKETS];
+        for (int shift = 0; shift < Integer.SIZE; shift += BITS) {
+            if (((diff >>> shift) & MASK) == 0) {
+                // all keys have the same digit, the pass would not change anything
+                continue;
+            }
+            Arrays.fill(count, 0);
+            for (int i = lo; i < hi; i++) {
+                count[(srcKeys[i] >>> shift) & MASK]++;
+            }
+            int pos = lo;
+            for (int b = 0; b < BUCKETS; b++) {
+                int c = count[b];
+                count[b] = pos;
+                pos += c;
+            }
+            for (int i = lo; i < hi; i++) {
+                int key = srcKeys[i];
+                int dst = count[(key >>> shift) & MASK]++;
+                dstKeys[dst] = key;
+                if (srcIndx != null) {
+                    dstIndx[dst + dstOffset] = srcIndx[i + srcOffset];
+                }
+            }
+            int[] t = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = t;
+            t = srcIndx;
+            srcIndx = dstIndx;
+            dstIndx = t;
+            int o = srcOffset;
+            srcOffset = dstOffset;
+            dstOffset = o;
+        }
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, lo, keys, lo, hi - lo);
+            if (indx != null) {
+                System.arraycopy(srcIndx, lo + srcOffset, indx, lo + from, hi - lo);
+            }
+        }
+    }
+
+    private static void radixSort(int[] indx, int from, long[] keys, int[] tmpIndx, long[] tmpKeys, int lo, int hi) {
+        if (hi - lo < 2) {
+            return;
+        }
+        long diff = 0;
+        long first = keys[lo];
+        for (int i = lo + 1; i < hi; i++) {
+            diff |= keys[i] ^ first;
+        }
+        long[] srcKeys = keys;
+        long[] dstKeys = tmpKeys;
+        int[] srcIndx = indx;
+        int[] dstIndx = tmpIndx;
+        int srcOffset = from;
+        int dstOffset = 0;
+        int[] count = new int[BUCKETS];
+        for (int shift = 0; shift < Long.SIZE; shift += BITS) {
+            if (((diff >>> shift) & MASK) == 0) {
+                continue;
+            }
+            Arrays.fill(count, 0);
+            for (int i = lo; i < hi; i++) {
+                count[(int) (srcKeys[i] >>> shift) & MASK]++;
+            }
+            int pos = lo;
+            for (int b = 0; b < BUCKETS; b++) {
+                int c = count[b];
+                count[b] = pos;
+                pos += c;
+            }
+            for (int i = lo; i < hi; i++) {
+                long key = srcKeys[i];
+                int dst = count[(int) (key >>> shift) & MASK]++;
+                dstKeys[dst] = key;
+                if (srcIndx != null) {
+                    dstIndx[dst + dstOffset] = srcIndx[i + srcOffset];
+                }
+            }
+            long[] t = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = t;
+            int[] ti = srcIndx;
+            srcIndx = dstIndx;
+            dstIndx = ti;
+            int o = srcOffset;
+            srcOffset = dstOffset;
+            dstOffset = o;
+        }
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, lo, keys, lo, hi - lo);
+            if (indx != null) {
+                System.arraycopy(srcIndx, lo + srcOffset, indx, lo + from, hi - lo);
+            }
+        }
+    }
+
+    /**
+     * Stable merge of the sorted ranges {@code [lo, mid)} and {@code [mid, hi)} of the keys through
+     * the tmp arrays. On equal keys the element from the left range goes first.
+     */
+    private static void merge(int[] indx, int from, int[] keys, int[] tmpIndx, int[] tmpKeys, int lo, int mid, int hi) {
+        if (Integer.compareUnsigned(keys[mid - 1], keys[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(keys, lo, tmpKeys, lo, hi - lo);
+        if (indx != null) {
+            System.arraycopy(indx, lo + from, tmpIndx, lo, hi - lo);
+        }
+        int i = lo;
+        int j = mid;
+        for (int k = lo; k < hi; k++) {
+            int src;
+            if (j >= hi || (i < mid && Integer.compareUnsigned(tmpKeys[i], tmpKeys[j]) <= 0)) {
+                src = i++;
+            } else {
+                src = j++;
+            }
+            keys[k] = tmpKeys[src];
+            if (indx != null) {
+                indx[k + from] = tmpIndx[src];
+            }
+        }
+    }
+
+    private static void merge(int[] indx, int from, long[] keys, int[] tmpIndx, long[] tmpKeys, int lo, int mid, int hi) {
+        if (Long.compareUnsigned(keys[mid - 1], keys[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(keys, lo, tmpKeys, lo, hi - lo);
+        if (indx != null) {
+            System.arraycopy(indx, lo + from, tmpIndx, lo, hi - lo);
+        }
+        int i = lo;
+        int j = mid;
+        for (int k = lo; k < hi; k++) {
+            int src;
+            if (j >= hi || (i < mid && Long.compareUnsigned(tmpKeys[i], tmpKeys[j]) <= 0)) {
+                src = i++;
+            } else {
+                src = j++;
+            }
+            keys[k] = tmpKeys[src];
+            if (indx != null) {
+                indx[k + from] = tmpIndx[src];
+            }
+        }
+    }
+
+    /**
+     * Recursively splits the range, radix sorts the chunks and merges the sorted halves. The
+     * recursion tree is balanced so that the merges of independent ranges also run in parallel.
+     */
+    @SuppressWarnings("serial")
+    private static final class IntSortTask extends RecursiveAction {
+        private final int[] indx;
+        private final int from;
+        private final int[] keys;
+        private final int[] tmpIndx;
+        private final int[] tmpKeys;
+        private final int lo;
+        private final int hi;
+        private final int chunk;
+
+        IntSortTask(int[] indx, int from, int[] keys, int[] tmpIndx, int[] tmpKeys, int lo, int hi, int chunk) {
+            this.indx = indx;
+            this.from = from;
+            this.keys = keys;
+            this.tmpIndx = tmpIndx;
+            this.tmpKeys = tmpKeys;
+            this.lo = lo;
+            this.hi = hi;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= chunk) {
+                radixSort(indx, from, keys, tmpIndx, tmpKeys, lo, hi);
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new IntSortTask(indx, from, keys, tmpIndx, tmpKeys, lo, mid, chunk), new IntSortTask(indx, from, keys, tmpIndx, tmpKeys, mid, hi, chunk));
+                merge(indx, from, keys, tmpIndx, tmpKeys, lo, mid, hi);
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class LongSortTask extends RecursiveAction {
+        private final int[] indx;
+        private final int from;
+        private final long[] keys;
+        private final int[] tmpIndx;
+        private final long[] tmpKeys;
+        private final int lo;
+        private final int hi;
+        private final int chunk;
+
+        LongSortTask(int[] indx, int from, long[] keys, int[] tmpIndx, long[] tmpKeys, int lo, int hi, int chunk) {
+            this.indx = indx;
+            this.from = from;
+            this.keys = keys;
+            this.tmpIndx = tmpIndx;
+            this.tmpKeys = tmpKeys;
+            this.lo = lo;
+            this.hi = hi;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= chunk) {
+                radixSort(indx, from, keys, tmpIndx, tmpKeys, lo, hi);
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new LongSortTask(indx, from, keys, tmpIndx, tmpKeys, lo, mid, chunk), new LongSortTask(indx, from, keys, tmpIndx, tmpKeys, mid, hi, chunk));
+                merge(indx, from, keys, tmpIndx, tmpKeys, lo, mid, hi);
+            }
+        }
+    }
+}
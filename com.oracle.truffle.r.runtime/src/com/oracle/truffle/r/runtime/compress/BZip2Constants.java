@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.compress;
+
+/**
+ * Constants and helpers shared by {@link BZip2InputStream} and {@link BZip2OutputStream}. The
+ * format is the one produced by {@code bzip2} 0.9.5 and later.
+ */
+final class BZip2Constants {
+
+    static final long BLOCK_MAGIC = 0x314159265359L;
+    static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+
+    /** Uncompressed block size in bytes per level, the level is the digit after "BZh". */
+    static final int BLOCK_SIZE_UNIT = 100000;
+
+    static final int RUNA = 0;
+    static final int RUNB = 1;
+
+    static final int MAX_ALPHA_SIZE = 258;
+    static final int MIN_GROUPS = 2;
+    static final int MAX_GROUPS = 6;
+    static final int GROUP_SIZE = 50;
+    static final int MAX_SELECTORS = 2 + (900000 / GROUP_SIZE);
+
+    /** Longest code length a decoder must accept. */
+    static final int MAX_CODE_LENGTH = 20;
+
+    /** Longest code length generated by the encoder. */
+    static final int MAX_GENERATED_CODE_LENGTH = 17;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c = i << 24;
+            for (int j = 0; j < 8; j++) {
+                c = (c & 0x80000000) != 0 ? (c << 1) ^ 0x04c11db7 : c << 1;
+            }
+            CRC_TABLE[i] = c;
+        }
+    }
+
+    private BZip2Constants() {
+        // only static members
+    }
+
+    /**
+     * Updates a (non-reflected) CRC32 as used by bzip2. The initial value is {@code -1} and the
+     * final value is the complement of the running value.
+     */
+    static int updateCRC(int crc, int b) {
+        return (crc << 8) ^ CRC_TABLE[(crc >>> 24) ^ (b & 0xFF)];
+    }
+
+    static int updateCRC(int crc, int b, int count) {
+        int result = crc;
+        for (int i = 0; i < count; i++) {
+            result = (result << 8) ^ CRC_TABLE[(result >>> 24) ^ (b & 0xFF)];
+        }
+        return result;
+    }
+
+    static int combineCRC(int combined, int blockCRC) {
+        return ((combined << 1) | (combined >>> 31)) ^ blockCRC;
+    }
+}
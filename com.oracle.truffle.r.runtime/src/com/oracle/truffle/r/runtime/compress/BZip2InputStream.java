@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.compress;
+
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.BLOCK_MAGIC;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.BLOCK_SIZE_UNIT;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.END_OF_STREAM_MAGIC;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.GROUP_SIZE;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.MAX_ALPHA_SIZE;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.MAX_CODE_LENGTH;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.MAX_GROUPS;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.MAX_SELECTORS;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.MIN_GROUPS;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.RUNA;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.RUNB;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming bzip2 decompressor. Concatenated streams, as produced by appending to a
+ * {@code bzfile}, are decoded one after another.
+ *
+ * Decoding a block has two phases: the Huffman and move-to-front decoding, which has to run in
+ * stream order because blocks are not byte aligned, and the inverse Burrows-Wheeler transform plus
+ * the final run-length decoding, which is independent for each block and takes most of the time.
+ * If an executor is given, the second phase runs on the executor for up to {@code parallelism}
+ * blocks while the reading thread decodes the next ones.
+ */
+public final class BZip2InputStream extends InputStream {
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    private long bitBuffer;
+    private int bitCount;
+
+    private int blockSize100k;
+    private int combinedCRC;
+    /** {@code true} between the end of a stream and the header of the next one. */
+    private boolean streamEnd = true;
+    private boolean eof;
+
+    private final ArrayDeque<Future<DecodedBlock>> pending = new ArrayDeque<>();
+    private DecodedBlock current;
+    private int currentPos;
+
+    private final byte[] single = new byte[1];
+
+    public BZip2InputStream(InputStream in) {
+        this(in, null, 1);
+    }
+
+    public BZip2InputStream(InputStream in, ExecutorService executor, int parallelism) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 64 * 1024);
+        this.executor = parallelism > 1 ? executor : null;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int n = read(single, 0, 1);
+        return n <= 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (current == null || currentPos == current.length) {
+            if (!nextDecodedBlock()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, current.length - currentPos);
+        System.arraycopy(current.data, currentPos, b, off, n);
+        currentPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - currentPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<DecodedBlock> f : pending) {
+            f.cancel(true);
+        }
+        pending.clear();
+        current = null;
+        eof = true;
+        in.close();
+    }
+
+    private boolean nextDecodedBlock() throws IOException {
+        current = null;
+        currentPos = 0;
+        if (executor == null) {
+            Block block = eof ? null : readBlock();
+            if (block == null) {
+                return false;
+            }
+            current = block.decode();
+            return true;
+        }
+        while (!eof && pending.size() < parallelism) {
+            Block block = readBlock();
+            if (block == null) {
+                break;
+            }
+            pending.add(executor.submit(block::decode));
+        }
+        Future<DecodedBlock> next = pending.poll();
+        if (next == null) {
+            return false;
+        }
+        try {
+            current = next.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        return true;
+    }
+
+    private int readBits(int n) throws IOException {
+        while (bitCount < n) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("unexpected end of bzip2 stream");
+            }
+            bitBuffer = (bitBuffer << 8) | b;
+            bitCount += 8;
+        }
+        bitCount -= n;
+        return (int) (bitBuffer >>> bitCount) & ((1 << n) - 1);
+    }
+
+    private int readBit() throws IOException {
+        return readBits(1);
+    }
+
+    /**
+     * Reads the header of the next stream. Returns {@code false} if there is no further stream.
+     */
+    private boolean readStreamHeader() throws IOException {
+        // streams are byte aligned
+        bitCount -= bitCount % 8;
+        int b = bitCount > 0 ? readBits(8) : in.read();
+        if (b < 0) {
+            return false;
+        }
+        if (b != 'B' || readBits(8) != 'Z' || readBits(8) != 'h') {
+            throw new IOException("bzip2 data error: invalid stream header");
+        }
+        int level = readBits(8) - '0';
+        if (level < 1 || level > 9) {
+            throw new IOException("bzip2 data error: invalid block size");
+        }
+        blockSize100k = level;
+        combinedCRC = 0;
+        return true;
+    }
+
+    /**
+     * Reads and entropy decodes the next block, or returns {@code null} at the end of the input.
+     */
+    private Block readBlock() throws IOException {
+        while (true) {
+            if (streamEnd) {
+                if (!readStreamHeader()) {
+                    eof = true;
+                    return null;
+                }
+                streamEnd = false;
+            }
+            long magic = ((long) readBits(24) << 24) | readBits(24);
+            if (magic == BLOCK_MAGIC) {
+                Block block = readBlockBody();
+                combinedCRC = BZip2Constants.combineCRC(combinedCRC, block.storedCRC);
+                return block;
+            } else if (magic == END_OF_STREAM_MAGIC) {
+                int storedCombinedCRC = readBits(16) << 16 | readBits(16);
+                if (storedCombinedCRC != combinedCRC) {
+                    throw new IOException("bzip2 data error: stream CRC mismatch");
+                }
+                streamEnd = true;
+            } else {
+                throw new IOException("bzip2 data error: invalid block header");
+            }
+        }
+    }
+
+    private Block readBlockBody() throws IOException {
+        int storedCRC = readBits(16) << 16 | readBits(16);
+        if (readBit() != 0) {
+            throw new IOException("randomised bzip2 blocks are not supported");
+        }
+        int origPtr = readBits(24);
+
+        // the bytes used in the block
+        byte[] seqToUnseq = new byte[256];
+        int nInUse = 0;
+        int inUse16 = readBits(16);
+        for (int i = 0; i < 16; i++) {
+            if ((inUse16 & (0x8000 >>> i)) != 0) {
+                int inUse = readBits(16);
+                for (int j = 0; j < 16; j++) {
+                    if ((inUse & (0x8000 >>> j)) != 0) {
+                        seqToUnseq[nInUse++] = (byte) (i * 16 + j);
+                    }
+                }
+            }
+        }
+        if (nInUse == 0) {
+            throw new IOException("bzip2 data error: empty symbol map");
+        }
+        int alphaSize = nInUse + 2;
+
+        // the Huffman table selectors
+        int nGroups = readBits(3);
+        int nSelectors = readBits(15);
+        if (nGroups < MIN_GROUPS || nGroups > MAX_GROUPS || nSelectors < 1) {
+            throw new IOException("bzip2 data error: invalid Huffman table count");
+        }
+        byte[] selectorMtf = new byte[Math.min(nSelectors, MAX_SELECTORS)];
+        for (int i = 0; i < nSelectors; i++) {
+            int j = 0;
+            while (readBit() != 0) {
+                j++;
+                if (j >= nGroups) {
+                    throw new IOException("bzip2 data error: invalid selector");
+                }
+            }
+            // like bzip2 1.0.8, ignore selectors that cannot be used
+            if (i < MAX_SELECTORS) {
+                selectorMtf[i] = (byte) j;
+            }
+        }
+        nSelectors = selectorMtf.length;
+        byte[] selectors = new byte[nSelectors];
+        byte[] pos = new byte[nGroups];
+        for (int i = 0; i < nGroups; i++) {
+            pos[i] = (byte) i;
+        }
+        for (int i = 0; i < nSelectors; i++) {
+            int v = selectorMtf[i];
+            byte tmp = pos[v];
+            System.arraycopy(pos, 0, pos, 1, v);
+            pos[0] = tmp;
+            selectors[i] = tmp;
+        }
+
+        // the Huffman tables
+        HuffmanTable[] tables = new HuffmanTable[nGroups];
+        byte[] lengths = new byte[alphaSize];
+        for (int t = 0; t < nGroups; t++) {
+            int curr = readBits(5);
+            for (int i = 0; i < alphaSize; i++) {
+                while (true) {
+                    if (curr < 1 || curr > MAX_CODE_LENGTH) {
+                        throw new IOException("bzip2 data error: invalid code length");
+                    }
+                    if (readBit() == 0) {
+                        break;
+                    }
+                    curr += readBit() == 0 ? 1 : -1;
+                }
+                lengths[i] = (byte) curr;
+            }
+            tables[t] = new HuffmanTable(lengths, alphaSize);
+        }
+
+        // the move-to-front values, expanded to the block's bytes
+        int maxBlockLength = blockSize100k * BLOCK_SIZE_UNIT;
+        int[] tt = new int[maxBlockLength];
+        int[] unzftab = new int[256];
+        byte[] yy = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            yy[i] = (byte) i;
+        }
+        int eob = nInUse + 1;
+        int nblock = 0;
+        int groupNo = -1;
+        int groupPos = 0;
+        HuffmanTable table = null;
+        int runLength = 0;
+        int runWeight = 1;
+        while (true) {
+            if (groupPos == 0) {
+                groupNo++;
+                if (groupNo >= nSelectors) {
+                    throw new IOException("bzip2 data error: too few selectors");
+                }
+                groupPos = GROUP_SIZE;
+                table = tables[selectors[groupNo]];
+            }
+            groupPos--;
+            int sym = table.decode(this);
+            if (sym == RUNA || sym == RUNB) {
+                runLength += (sym + 1) * runWeight;
+                runWeight <<= 1;
+                if (runWeight >= 2 * 1024 * 1024) {
+                    throw new IOException("bzip2 data error: run too long");
+                }
+                continue;
+            }
+            if (runLength > 0) {
+                if (runLength > maxBlockLength - nblock) {
+                    throw new IOException("bzip2 data error: block too long");
+                }
+                int uc = seqToUnseq[yy[0] & 0xFF] & 0xFF;
+                unzftab[uc] += runLength;
+                for (int i = 0; i < runLength; i++) {
+                    tt[nblock++] = uc;
+                }
+                runLength = 0;
+                runWeight = 1;
+            }
+            if (sym == eob) {
+                break;
+            }
+            if (nblock >= maxBlockLength) {
+                throw new IOException("bzip2 data error: block too long");
+            }
+            int nn = sym - 1;
+            byte tmp = yy[nn];
+            System.arraycopy(yy, 0, yy, 1, nn);
+            yy[0] = tmp;
+            int uc = seqToUnseq[tmp & 0xFF] & 0xFF;
+            unzftab[uc]++;
+            tt[nblock++] = uc;
+        }
+        if (origPtr >= nblock) {
+            throw new IOException("bzip2 data error: invalid block origin");
+        }
+        return new Block(tt, nblock, origPtr, unzftab, storedCRC);
+    }
+
+    /**
+     * Canonical Huffman decoding table as built by bzip2's {@code BZ2_hbCreateDecodeTables}.
+     */
+    private static final class HuffmanTable {
+        private final int[] limit = new int[MAX_CODE_LENGTH + 2];
+        private final int[] base = new int[MAX_CODE_LENGTH + 2];
+        private final int[] perm = new int[MAX_ALPHA_SIZE];
+        private final int minLength;
+        private final int alphaSize;
+
+        HuffmanTable(byte[] lengths, int alphaSize) {
+            this.alphaSize = alphaSize;
+            int min = MAX_CODE_LENGTH;
+            int max = 0;
+            for (int i = 0; i < alphaSize; i++) {
+                min = Math.min(min, lengths[i]);
+                max = Math.max(max, lengths[i]);
+            }
+            minLength = min;
+            int pp = 0;
+            for (int len = min; len <= max; len++) {
+                for (int j = 0; j < alphaSize; j++) {
+                    if (lengths[j] == len) {
+                        perm[pp++] = j;
+                    }
+                }
+            }
+            for (int i = 0; i < alphaSize; i++) {
+                base[lengths[i] + 1]++;
+            }
+            for (int i = 1; i < base.length; i++) {
+                base[i] += base[i - 1];
+            }
+            int vec = 0;
+            for (int len = min; len <= max; len++) {
+                vec += base[len + 1] - base[len];
+                limit[len] = vec - 1;
+                vec <<= 1;
+            }
+            for (int len = min + 1; len <= max; len++) {
+                base[len] = ((limit[len - 1] + 1) << 1) - base[len];
+            }
+            for (int len = max + 1; len < limit.length; len++) {
+                limit[len] = Integer.MAX_VALUE;
+            }
+        }
+
+        int decode(BZip2InputStream s) throws IOException {
+            int n = minLength;
+            int code = s.readBits(n);
+            while (code > limit[n]) {
+                n++;
+                if (n > MAX_CODE_LENGTH) {
+                    throw new IOException("bzip2 data error: invalid Huffman code");
+                }
+                code = (code << 1) | s.readBit();
+            }
+            int index = code - base[n];
+            if (index < 0 || index >= alphaSize) {
+                throw new IOException("bzip2 data error: invalid Huffman code");
+            }
+            return perm[index];
+        }
+    }
+
+    /**
+     * An entropy decoded block: the last column of the sorted rotations and its byte counts.
+     */
+    private static final class Block {
+        private final int[] tt;
+        private final int nblock;
+        private final int origPtr;
+        private final int[] unzftab;
+        private final int storedCRC;
+
+        Block(int[] tt, int nblock, int origPtr, int[] unzftab, int storedCRC) {
+            this.tt = tt;
+            this.nblock = nblock;
+            this.origPtr = origPtr;
+            this.unzftab = unzftab;
+            this.storedCRC = storedCRC;
+        }
+
+        /**
+         * Undoes the Burrows-Wheeler transform and the initial run-length encoding and checks the
+         * block's CRC.
+         */
+        DecodedBlock decode() throws IOException {
+            int[] cftab = new int[256];
+            for (int i = 1; i < 256; i++) {
+                cftab[i] = cftab[i - 1] + unzftab[i - 1];
+            }
+            for (int i = 0; i < nblock; i++) {
+                int uc = tt[i] & 0xFF;
+                tt[cftab[uc]++] |= i << 8;
+            }
+            byte[] out = new byte[nblock + (nblock >> 2) + 16];
+            int length = 0;
+            int crc = -1;
+            int last = -1;
+            int count = 0;
+            int tPos = tt[origPtr] >>> 8;
+            for (int k = 0; k < nblock; k++) {
+                tPos = tt[tPos];
+                int ch = tPos & 0xFF;
+                tPos >>>= 8;
+                int repeat;
+                if (count == 4) {
+                    // ch is the number of additional copies of the last byte
+                    repeat = ch;
+                    ch = last;
+                    count = 0;
+                } else {
+                    repeat = 1;
+                    if (ch == last) {
+                        count++;
+                    } else {
+                        last = ch;
+                        count = 1;
+                    }
+                }
+                if (length + repeat > out.length) {
+                    byte[] newOut = new byte[Math.max(length + repeat, out.length + (out.length >> 1))];
+                    System.arraycopy(out, 0, newOut, 0, length);
+                    out = newOut;
+                }
+                for (int r = 0; r < repeat; r++) {
+                    out[length++] = (byte) ch;
+                }
+                crc = BZip2Constants.updateCRC(crc, ch, repeat);
+            }
+            if (~crc != storedCRC) {
+                throw new IOException("bzip2 data error: block CRC mismatch");
+            }
+            return new DecodedBlock(out, length);
+        }
+    }
+
+    private static final class DecodedBlock {
+        private final byte[] data;
+        private final int length;
+
+        DecodedBlock(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.compress;
+
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.BLOCK_MAGIC;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.BLOCK_SIZE_UNIT;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.END_OF_STREAM_MAGIC;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.GROUP_SIZE;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.MAX_GENERATED_CODE_LENGTH;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.MAX_GROUPS;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.MAX_SELECTORS;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.RUNA;
+import static com.oracle.truffle.r.runtime.compress.BZip2Constants.RUNB;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming bzip2 compressor. Input is collected into blocks of {@code 100000 * level} bytes, each
+ * full block is compressed and written to the underlying stream, so the memory needed does not
+ * depend on the size of the data. The output can be read by {@code bzip2} and
+ * {@link BZip2InputStream}.
+ */
+public final class BZip2OutputStream extends OutputStream {
+
+    private static final int LESSER_ICOST = 0;
+    private static final int GREATER_ICOST = 15;
+    private static final int ITERATIONS = 4;
+
+    private final OutputStream out;
+
+    /** The run-length encoded bytes of the current block. */
+    private final byte[] block;
+    private final int maxBlockLength;
+    private int blockLength;
+    private int blockCRC = -1;
+    private int combinedCRC;
+
+    /** The pending run of the initial run-length encoding. */
+    private int runChar = -1;
+    private int runLength;
+
+    private byte[] buffer = new byte[64 * 1024];
+    private int bufferLength;
+    private long bitBuffer;
+    private int bitCount;
+
+    private boolean finished;
+
+    public BZip2OutputStream(OutputStream out) throws IOException {
+        this(out, 9);
+    }
+
+    public BZip2OutputStream(OutputStream out, int blockSize100k) throws IOException {
+        if (blockSize100k < 1 || blockSize100k > 9) {
+            throw new IllegalArgumentException("block size must be between 1 and 9");
+        }
+        this.out = out;
+        this.block = new byte[blockSize100k * BLOCK_SIZE_UNIT];
+        // leave room for the longest run
+        this.maxBlockLength = block.length - 19;
+        writeBits(8, 'B');
+        writeBits(8, 'Z');
+        writeBits(8, 'h');
+        writeBits(8, '0' + blockSize100k);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (finished) {
+            throw new IOException("write beyond end of bzip2 stream");
+        }
+        addByte(b & 0xFF);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("write beyond end of bzip2 stream");
+        }
+        for (int i = off; i < off + len; i++) {
+            addByte(b[i] & 0xFF);
+        }
+    }
+
+    private void addByte(int b) throws IOException {
+        if (b == runChar && runLength < 255) {
+            runLength++;
+            return;
+        }
+        if (runChar >= 0) {
+            addRun();
+            if (blockLength >= maxBlockLength) {
+                compressBlock();
+            }
+        }
+        runChar = b;
+        runLength = 1;
+    }
+
+    /**
+     * Adds the pending run to the block. Runs of four to 255 bytes are stored as four bytes
+     * followed by the number of remaining repetitions.
+     */
+    private void addRun() {
+        blockCRC = BZip2Constants.updateCRC(blockCRC, runChar, runLength);
+        byte ch = (byte) runChar;
+        if (runLength < 4) {
+            for (int i = 0; i < runLength; i++) {
+                block[blockLength++] = ch;
+            }
+        } else {
+            block[blockLength++] = ch;
+            block[blockLength++] = ch;
+            block[blockLength++] = ch;
+            block[blockLength++] = ch;
+            block[blockLength++] = (byte) (runLength - 4);
+        }
+    }
+
+    /**
+     * Compresses the remaining data and writes the end of stream marker. The underlying stream is
+     * flushed but not closed.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (runChar >= 0) {
+            addRun();
+            runChar = -1;
+            runLength = 0;
+        }
+        if (blockLength > 0) {
+            compressBlock();
+        }
+        writeBits(24, (int) (END_OF_STREAM_MAGIC >>> 24));
+        writeBits(24, (int) END_OF_STREAM_MAGIC & 0xFFFFFF);
+        writeBits(16, combinedCRC >>> 16);
+        writeBits(16, combinedCRC & 0xFFFF);
+        if (bitCount > 0) {
+            writeBits(8 - bitCount, 0);
+        }
+        flushBuffer();
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // a bzip2 stream cannot be flushed in the middle of a block
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBits(int n, int value) throws IOException {
+        bitBuffer = (bitBuffer << n) | (value & ((1L << n) - 1));
+        bitCount += n;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            if (bufferLength == buffer.length) {
+                flushBuffer();
+            }
+            buffer[bufferLength++] = (byte) (bitBuffer >>> bitCount);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (bufferLength > 0) {
+            out.write(buffer, 0, bufferLength);
+            bufferLength = 0;
+        }
+    }
+
+    private void compressBlock() throws IOException {
+        int crc = ~blockCRC;
+        combinedCRC = BZip2Constants.combineCRC(combinedCRC, crc);
+        int n = blockLength;
+
+        byte[] lastColumn = new byte[n];
+        int origPtr = BlockSort.sort(block, n, lastColumn);
+
+        writeBits(24, (int) (BLOCK_MAGIC >>> 24));
+        writeBits(24, (int) BLOCK_MAGIC & 0xFFFFFF);
+        writeBits(16, crc >>> 16);
+        writeBits(16, crc & 0xFFFF);
+        // not randomised
+        writeBits(1, 0);
+        writeBits(24, origPtr);
+
+        boolean[] inUse = new boolean[256];
+        for (int i = 0; i < n; i++) {
+            inUse[block[i] & 0xFF] = true;
+        }
+        writeSymbolMap(inUse);
+        int nInUse = 0;
+        byte[] unseqToSeq = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            if (inUse[i]) {
+                unseqToSeq[i] = (byte) nInUse++;
+            }
+        }
+        int alphaSize = nInUse + 2;
+        int[] mtfFreq = new int[alphaSize];
+        char[] mtfv = new char[n + 1];
+        int nMTF = generateMTFValues(lastColumn, n, unseqToSeq, nInUse, mtfv, mtfFreq);
+        writeMTFValues(mtfv, nMTF, mtfFreq, alphaSize);
+
+        blockLength = 0;
+        blockCRC = -1;
+        flushBuffer();
+    }
+
+    private void writeSymbolMap(boolean[] inUse) throws IOException {
+        int inUse16 = 0;
+        for (int i = 0; i < 16; i++) {
+            for (int j = 0; j < 16; j++) {
+                if (inUse[i * 16 + j]) {
+                    inUse16 |= 0x8000 >>> i;
+                    break;
+                }
+            }
+        }
+        writeBits(16, inUse16);
+        for (int i = 0; i < 16; i++) {
+            if ((inUse16 & (0x8000 >>> i)) != 0) {
+                int bits = 0;
+                for (int j = 0; j < 16; j++) {
+                    if (inUse[i * 16 + j]) {
+                        bits |= 0x8000 >>> j;
+                    }
+                }
+                writeBits(16, bits);
+            }
+        }
+    }
+
+    /**
+     * Move-to-front encodes the last column with runs of the front symbol written in bijective
+     * base 2 using {@link BZip2Constants#RUNA} and {@link BZip2Constants#RUNB}.
+     */
+    private static int generateMTFValues(byte[] lastColumn, int n, byte[] unseqToSeq, int nInUse, char[] mtfv, int[] mtfFreq) {
+        byte[] yy = new byte[nInUse];
+        for (int i = 0; i < nInUse; i++) {
+            yy[i] = (byte) i;
+        }
+        int wr = 0;
+        int zPend = 0;
+        for (int i = 0; i < n; i++) {
+            byte ll = unseqToSeq[lastColumn[i] & 0xFF];
+            if (yy[0] == ll) {
+                zPend++;
+                continue;
+            }
+            if (zPend > 0) {
+                wr = writeRun(zPend, mtfv, wr, mtfFreq);
+                zPend = 0;
+            }
+            int j = 1;
+            while (yy[j] != ll) {
+                j++;
+            }
+            System.arraycopy(yy, 0, yy, 1, j);
+            yy[0] = ll;
+            mtfv[wr++] = (char) (j + 1);
+            mtfFreq[j + 1]++;
+        }
+        if (zPend > 0) {
+            wr = writeRun(zPend, mtfv, wr, mtfFreq);
+        }
+        int eob = nInUse + 1;
+        mtfv[wr++] = (char) eob;
+        mtfFreq[eob]++;
+        return wr;
+    }
+
+    private static int writeRun(int length, char[] mtfv, int start, int[] mtfFreq) {
+        int wr = start;
+        int z = length - 1;
+        while (true) {
+            int sym = (z & 1) != 0 ? RUNB : RUNA;
+            mtfv[wr++] = (char) sym;
+            mtfFreq[sym]++;
+            if (z < 2) {
+                break;
+            }
+            z = (z - 2) / 2;
+        }
+        return wr;
+    }
+
+    private void writeMTFValues(char[] mtfv, int nMTF, int[] mtfFreq, int alphaSize) throws IOException {
+        int nGroups;
+        if (nMTF < 200) {
+            nGroups = 2;
+        } else if (nMTF < 600) {
+            nGroups = 3;
+        } else if (nMTF < 1200) {
+            nGroups = 4;
+        } else if (nMTF < 2400) {
+            nGroups = 5;
+        } else {
+            nGroups = MAX_GROUPS;
+        }
+        byte[][] len = new byte[nGroups][alphaSize];
+
+        // initial tables, each covering a range of symbols with similar total frequency
+        int nPart = nGroups;
+        int remF = nMTF;
+        int gs = 0;
+        while (nPart > 0) {
+            int tFreq = remF / nPart;
+            int ge = gs - 1;
+            int aFreq = 0;
+            while (aFreq < tFreq && ge < alphaSize - 1) {
+                ge++;
+                aFreq += mtfFreq[ge];
+            }
+            if (ge > gs && nPart != nGroups && nPart != 1 && ((nGroups - nPart) % 2 == 1)) {
+                aFreq -= mtfFreq[ge];
+                ge--;
+            }
+            for (int v = 0; v < alphaSize; v++) {
+                len[nPart - 1][v] = (byte) (v >= gs && v <= ge ? LESSER_ICOST : GREATER_ICOST);
+            }
+            nPart--;
+            gs = ge + 1;
+            remF -= aFreq;
+        }
+
+        // refine the tables by assigning each group of symbols to its cheapest table
+        int maxSelectors = (nMTF + GROUP_SIZE - 1) / GROUP_SIZE;
+        assert maxSelectors <= MAX_SELECTORS;
+        byte[] selectors = new byte[maxSelectors];
+        int nSelectors = 0;
+        int[][] rfreq = new int[nGroups][alphaSize];
+        int[] cost = new int[nGroups];
+        for (int iter = 0; iter < ITERATIONS; iter++) {
+            for (int t = 0; t < nGroups; t++) {
+                Arrays.fill(rfreq[t], 0);
+            }
+            nSelectors = 0;
+            for (gs = 0; gs < nMTF; gs += GROUP_SIZE) {
+                int ge = Math.min(gs + GROUP_SIZE, nMTF);
+                for (int t = 0; t < nGroups; t++) {
+                    byte[] lt = len[t];
+                    int c = 0;
+                    for (int i = gs; i < ge; i++) {
+                        c += lt[mtfv[i]];
+                    }
+                    cost[t] = c;
+                }
+                int bt = 0;
+                for (int t = 1; t < nGroups; t++) {
+                    if (cost[t] < cost[bt]) {
+                        bt = t;
+                    }
+                }
+                selectors[nSelectors++] = (byte) bt;
+                int[] rf = rfreq[bt];
+                for (int i = gs; i < ge; i++) {
+                    rf[mtfv[i]]++;
+                }
+            }
+            for (int t = 0; t < nGroups; t++) {
+                makeCodeLengths(len[t], rfreq[t], alphaSize, MAX_GENERATED_CODE_LENGTH);
+            }
+        }
+
+        int[][] code = new int[nGroups][alphaSize];
+        for (int t = 0; t < nGroups; t++) {
+            assignCodes(code[t], len[t], alphaSize);
+        }
+
+        writeBits(3, nGroups);
+        writeBits(15, nSelectors);
+        byte[] pos = new byte[nGroups];
+        for (int i = 0; i < nGroups; i++) {
+            pos[i] = (byte) i;
+        }
+        for (int i = 0; i < nSelectors; i++) {
+            byte sel = selectors[i];
+            int j = 0;
+            while (pos[j] != sel) {
+                j++;
+            }
+            System.arraycopy(pos, 0, pos, 1, j);
+            pos[0] = sel;
+            for (int k = 0; k < j; k++) {
+                writeBits(1, 1);
+            }
+            writeBits(1, 0);
+        }
+
+        // code lengths, delta encoded
+        for (int t = 0; t < nGroups; t++) {
+            int curr = len[t][0];
+            writeBits(5, curr);
+            for (int i = 0; i < alphaSize; i++) {
+                while (curr < len[t][i]) {
+                    writeBits(2, 2);
+                    curr++;
+                }
+                while (curr > len[t][i]) {
+                    writeBits(2, 3);
+                    curr--;
+                }
+                writeBits(1, 0);
+            }
+        }
+
+        int selCtr = 0;
+        for (gs = 0; gs < nMTF; gs += GROUP_SIZE) {
+            int ge = Math.min(gs + GROUP_SIZE, nMTF);
+            int t = selectors[selCtr++];
+            byte[] lt = len[t];
+            int[] ct = code[t];
+            for (int i = gs; i < ge; i++) {
+                writeBits(lt[mtfv[i]], ct[mtfv[i]]);
+            }
+        }
+    }
+
+    /**
+     * Computes Huffman code lengths no longer than {@code maxLength}. Like bzip2, frequencies are
+     * halved until the longest code fits, and symbols that do not occur still get a code.
+     */
+    static void makeCodeLengths(byte[] len, int[] freq, int alphaSize, int maxLength) {
+        int[] heap = new int[alphaSize + 2];
+        int[] weight = new int[alphaSize * 2];
+        int[] parent = new int[alphaSize * 2];
+        for (int i = 0; i < alphaSize; i++) {
+            weight[i + 1] = (freq[i] == 0 ? 1 : freq[i]) << 8;
+        }
+        while (true) {
+            int nNodes = alphaSize;
+            int nHeap = 0;
+            heap[0] = 0;
+            weight[0] = 0;
+            parent[0] = -2;
+            for (int i = 1; i <= alphaSize; i++) {
+                parent[i] = -1;
+                heap[++nHeap] = i;
+                upHeap(heap, weight, nHeap);
+            }
+            while (nHeap > 1) {
+                int n1 = heap[1];
+                heap[1] = heap[nHeap--];
+                downHeap(heap, weight, nHeap, 1);
+                int n2 = heap[1];
+                heap[1] = heap[nHeap--];
+                downHeap(heap, weight, nHeap, 1);
+                nNodes++;
+                parent[n1] = nNodes;
+                parent[n2] = nNodes;
+                int depth = 1 + Math.max(weight[n1] & 0xFF, weight[n2] & 0xFF);
+                weight[nNodes] = ((weight[n1] & 0xFFFFFF00) + (weight[n2] & 0xFFFFFF00)) | depth;
+                parent[nNodes] = -1;
+                heap[++nHeap] = nNodes;
+                upHeap(heap, weight, nHeap);
+            }
+            boolean tooLong = false;
+            for (int i = 1; i <= alphaSize; i++) {
+                int j = 0;
+                int k = i;
+                while (parent[k] >= 0) {
+                    k = parent[k];
+                    j++;
+                }
+                len[i - 1] = (byte) j;
+                if (j > maxLength) {
+                    tooLong = true;
+                }
+            }
+            if (!tooLong) {
+                break;
+            }
+            for (int i = 1; i <= alphaSize; i++) {
+                int j = weight[i] >> 8;
+                j = 1 + (j / 2);
+                weight[i] = j << 8;
+            }
+        }
+    }
+
+    private static void upHeap(int[] heap, int[] weight, int start) {
+        int z = start;
+        int tmp = heap[z];
+        while (weight[tmp] < weight[heap[z >> 1]]) {
+            heap[z] = heap[z >> 1];
+            z >>= 1;
+        }
+        heap[z] = tmp;
+    }
+
+    private static void downHeap(int[] heap, int[] weight, int nHeap, int start) {
+        int z = start;
+        int tmp = heap[z];
+        while (true) {
+            int yy = z << 1;
+            if (yy > nHeap) {
+                break;
+            }
+            if (yy < nHeap && weight[heap[yy + 1]] < weight[heap[yy]]) {
+                yy++;
+            }
+            if (weight[tmp] < weight[heap[yy]]) {
+                break;
+            }
+            heap[z] = heap[yy];
+            z = yy;
+        }
+        heap[z] = tmp;
+    }
+
+    /**
+     * Assigns canonical codes: shorter codes first, codes of the same length in symbol order.
+     */
+    private static void assignCodes(int[] code, byte[] len, int alphaSize) {
+        int minLen = 32;
+        int maxLen = 0;
+        for (int i = 0; i < alphaSize; i++) {
+            minLen = Math.min(minLen, len[i]);
+            maxLen = Math.max(maxLen, len[i]);
+        }
+        int vec = 0;
+        for (int n = minLen; n <= maxLen; n++) {
+            for (int i = 0; i < alphaSize; i++) {
+                if (len[i] == n) {
+                    code[i] = vec++;
+                }
+            }
+            vec <<= 1;
+        }
+    }
+}
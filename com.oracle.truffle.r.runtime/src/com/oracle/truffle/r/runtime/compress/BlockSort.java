@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.compress;
+
+import java.util.Arrays;
+
+/**
+ * Burrows-Wheeler transform for {@link BZip2OutputStream}. The rotations of the block are sorted by
+ * prefix doubling: after the pass for {@code h}, the rotations are ordered by their first
+ * {@code 2 * h} bytes, each pass being two counting sorts. Sorting stops as soon as all rotations
+ * have distinct ranks or {@code h} reaches the block length, in which case the remaining equal
+ * rotations are identical and their order does not change the output.
+ */
+final class BlockSort {
+
+    private BlockSort() {
+        // only static members
+    }
+
+    /**
+     * Stores the last column of the sorted rotations of {@code block[0..n)} in {@code lastColumn}
+     * and returns the position of the unrotated block in the sorted order.
+     */
+    static int sort(byte[] block, int n, byte[] lastColumn) {
+        int[] sa = new int[n];
+        int[] rank = new int[n];
+        int[] tmp = new int[n];
+        int[] count = new int[Math.max(257, n + 1)];
+
+        // order by the first byte
+        for (int i = 0; i < n; i++) {
+            count[(block[i] & 0xFF) + 1]++;
+        }
+        for (int i = 1; i <= 256; i++) {
+            count[i] += count[i - 1];
+        }
+        for (int i = 0; i < n; i++) {
+            sa[count[block[i] & 0xFF]++] = i;
+        }
+        int classes = 0;
+        for (int k = 0; k < n; k++) {
+            if (k > 0 && block[sa[k]] != block[sa[k - 1]]) {
+                classes++;
+            }
+            rank[sa[k]] = classes;
+        }
+        classes++;
+
+        for (int h = 1; h < n && classes < n; h <<= 1) {
+            // order by the rank of the second half, i.e. the rotation starting h bytes later
+            for (int k = 0; k < n; k++) {
+                int s = sa[k] - h;
+                tmp[k] = s < 0 ? s + n : s;
+            }
+            // stable counting sort by the rank of the first half
+            Arrays.fill(count, 0, classes + 1, 0);
+            for (int k = 0; k < n; k++) {
+                count[rank[tmp[k]] + 1]++;
+            }
+            for (int c = 1; c <= classes; c++) {
+                count[c] += count[c - 1];
+            }
+            for (int k = 0; k < n; k++) {
+                int s = tmp[k];
+                sa[count[rank[s]]++] = s;
+            }
+            // new ranks
+            int[] newRank = tmp;
+            classes = 0;
+            newRank[sa[0]] = 0;
+            for (int k = 1; k < n; k++) {
+                int cur = sa[k];
+                int prev = sa[k - 1];
+                if (rank[cur] != rank[prev] || rank[second(cur, h, n)] != rank[second(prev, h, n)]) {
+                    classes++;
+                }
+                newRank[cur] = classes;
+            }
+            classes++;
+            tmp = rank;
+            rank = newRank;
+        }
+
+        int origPtr = -1;
+        for (int k = 0; k < n; k++) {
+            int s = sa[k];
+            if (s == 0) {
+                origPtr = k;
+                lastColumn[k] = block[n - 1];
+            } else {
+                lastColumn[k] = block[s - 1];
+            }
+        }
+        return origPtr;
+    }
+
+    private static int second(int i, int h, int n) {
+        int s = i + h;
+        return s >= n ? s - n : s;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.tukaani.xz.FinishableOutputStream;
+import org.tukaani.xz.FinishableWrapperOutputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZ;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * LZMA2 compressor that splits its input into chunks and compresses them on several threads.
+ *
+ * Each chunk is compressed independently, so the first LZMA2 chunk of its output resets the
+ * dictionary. In the {@link Format#RAW} format the chunks are concatenated into a single raw LZMA2
+ * stream after dropping the end marker of all but the last one. In the {@link Format#XZ} format
+ * each chunk becomes a complete .xz stream, and xz decoders read concatenated streams. Either way,
+ * the output can be read by ordinary decoders, at the price of a slightly worse compression ratio
+ * than a single-threaded encoder because the dictionary does not span chunks.
+ */
+public final class ParallelLZMA2OutputStream extends OutputStream {
+
+    public enum Format {
+        RAW,
+        XZ
+    }
+
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    private final OutputStream out;
+    private final LZMA2Options options;
+    private final Format format;
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final int chunkSize;
+
+    private byte[] chunk = new byte[64 * 1024];
+    private int chunkLength;
+    private final ArrayDeque<Future<CompressedChunk>> pending = new ArrayDeque<>();
+    private boolean finished;
+
+    private final byte[] single = new byte[1];
+
+    public ParallelLZMA2OutputStream(OutputStream out, LZMA2Options options, Format format, ExecutorService executor, int parallelism) {
+        this.out = out;
+        this.options = options;
+        this.format = format;
+        this.executor = executor;
+        this.chunkSize = getChunkSize(options);
+        this.maxPending = Math.max(1, Math.min(parallelism, maxParallelChunks(options, chunkSize)));
+    }
+
+    /**
+     * Each chunk in flight needs an encoder and the chunk's input and output, so the number of
+     * chunks compressed at the same time is limited to what fits into a quarter of the heap.
+     */
+    private static int maxParallelChunks(LZMA2Options options, int chunkSize) {
+        long perChunk = options.getEncoderMemoryUsage() * 1024L + 2L * chunkSize;
+        return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4 / perChunk);
+    }
+
+    /**
+     * Returns the size of the chunks the input is split into, which is three times the dictionary
+     * size like for "xz -T". Inputs smaller than two chunks gain nothing from this stream.
+     */
+    public static int getChunkSize(LZMA2Options options) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(MIN_CHUNK_SIZE, 3L * options.getDictSize()));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("write beyond end of LZMA2 stream");
+        }
+        int pos = off;
+        int remaining = len;
+        while (remaining > 0) {
+            if (chunkLength == chunk.length) {
+                if (chunkLength == chunkSize) {
+                    submitChunk();
+                } else {
+                    byte[] newChunk = new byte[(int) Math.min(chunkSize, 2L * chunk.length)];
+                    System.arraycopy(chunk, 0, newChunk, 0, chunkLength);
+                    chunk = newChunk;
+                }
+            }
+            int n = Math.min(remaining, chunk.length - chunkLength);
+            System.arraycopy(b, pos, chunk, chunkLength, n);
+            chunkLength += n;
+            pos += n;
+            remaining -= n;
+        }
+    }
+
+    private void submitChunk() throws IOException {
+        final byte[] data = chunk;
+        final int length = chunkLength;
+        pending.add(executor.submit(() -> compress(data, length)));
+        chunk = new byte[chunkLength == chunkSize ? chunkSize : 64 * 1024];
+        chunkLength = 0;
+        if (pending.size() >= maxPending) {
+            writeChunk(await(pending.poll()), true);
+        }
+    }
+
+    private CompressedChunk compress(byte[] data, int length) throws IOException {
+        CompressedChunk result = new CompressedChunk(length / 4 + 64);
+        if (format == Format.RAW) {
+            FinishableOutputStream lzma = options.getOutputStream(new FinishableWrapperOutputStream(result));
+            lzma.write(data, 0, length);
+            lzma.finish();
+        } else {
+            XZOutputStream xz = new XZOutputStream(result, options, XZ.CHECK_CRC32);
+            xz.write(data, 0, length);
+            xz.finish();
+        }
+        return result;
+    }
+
+    private static CompressedChunk await(Future<CompressedChunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private void writeChunk(CompressedChunk compressed, boolean more) throws IOException {
+        compressed.writeTo(out, more && format == Format.RAW);
+    }
+
+    /**
+     * Compresses the remaining input and writes all chunks. The underlying stream is flushed but
+     * not closed.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        // the last chunk is compressed by this thread while the pool finishes the others
+        CompressedChunk last = compress(chunk, chunkLength);
+        chunk = null;
+        while (!pending.isEmpty()) {
+            writeChunk(await(pending.poll()), true);
+        }
+        writeChunk(last, false);
+        out.flush();
+    }
+
+    /**
+     * Compresses the input written so far, including the partial chunk, and writes it to the
+     * underlying stream. The partial chunk is compressed as a chunk of its own, so frequent flushes
+     * make the compression ratio worse.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (finished) {
+            out.flush();
+            return;
+        }
+        if (chunkLength > 0) {
+            submitChunk();
+        }
+        while (!pending.isEmpty()) {
+            writeChunk(await(pending.poll()), true);
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            for (Future<CompressedChunk> f : pending) {
+                f.cancel(true);
+            }
+            out.close();
+        }
+    }
+
+    private static final class CompressedChunk extends ByteArrayOutputStream {
+
+        CompressedChunk(int size) {
+            super(size);
+        }
+
+        void writeTo(OutputStream target, boolean dropEndMarker) throws IOException {
+            int length = count;
+            if (dropEndMarker) {
+                // the LZMA2 end marker is a single zero byte
+                assert count > 0 && buf[count - 1] == 0;
+                length--;
+            }
+            target.write(buf, 0, length);
+        }
+    }
+}
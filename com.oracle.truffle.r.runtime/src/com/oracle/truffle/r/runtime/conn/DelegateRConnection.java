@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -28,6 +28,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
@@ -36,6 +37,7 @@ import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.Objects;
@@ -64,6 +66,13 @@ abstract class DelegateRConnection extends RBaseObject implements RConnection, B
     private final ByteBuffer cache;
     private final boolean readCache;
 
+    /**
+     * Set if the last line read by {@link #readLinesCached} ended with a {@code '\r'} that was the
+     * last byte in the cache. Waiting for the next byte would block on a pipe or socket although the
+     * line is complete, so the {@code '\n'} of a CR-LF pair is dropped by the next read instead.
+     */
+    private boolean skipLF;
+
     DelegateRConnection(BaseRConnection base) {
         this(base, DEFAULT_CACHE_SIZE, true);
     }
@@ -140,6 +149,9 @@ abstract class DelegateRConnection extends RBaseObject implements RConnection, B
     @Override
     @TruffleBoundary
     public String[] readLines(int n, EnumSet<ReadLineWarning> warn, boolean skipNul) throws IOException {
+        if (readCache && cache != null) {
+            return readLinesCached(n, warn, skipNul);
+        }
         base.setIncomplete(false);
         ArrayList<String> lines = new ArrayList<>();
         int totalRead = 0;
@@ -216,6 +228,187 @@ abstract class DelegateRConnection extends RBaseObject implements RConnection, B
         return result;
     }
 
+    /**
+     * Same as the byte-wise loop in {@link #readLines(int, EnumSet, boolean)} but scans the read
+     * cache for line terminators and decodes each line in one go. Lines lying completely in the
+     * cache are decoded directly from the cache's array; only lines spanning a refill or containing
+     * skipped {@code nul} characters are copied.
+     */
+    private String[] readLinesCached(int n, EnumSet<ReadLineWarning> warn, boolean skipNul) throws IOException {
+        base.setIncomplete(false);
+        ArrayList<String> lines = new ArrayList<>();
+        LineDecoder decoder = new LineDecoder(base.getEncoding());
+        byte[] buffer = null;
+        int totalRead = 0;
+        int nBytesConsumed = 0;
+        boolean nullRead = false;
+        boolean ascii = true;
+        while (true) {
+            ensureDataAvailable(1);
+            if (skipLF) {
+                skipPendingLF();
+                ensureDataAvailable(1);
+            }
+            if (!cache.hasRemaining()) {
+                if (totalRead > 0) {
+                    /*
+                     * GnuR says if non-blocking and in text mode, silently push back incomplete
+                     * lines, otherwise keep data and output warning.
+                     */
+                    final String incompleteFinalLine = decoder.decode(buffer, 0, totalRead, ascii);
+                    nBytesConsumed += totalRead;
+                    if (!base.isBlocking() && base.isTextMode()) {
+                        base.pushBack(RDataFactory.createStringVector(incompleteFinalLine), false);
+                        base.setIncomplete(true);
+                    } else {
+                        lines.add(incompleteFinalLine);
+                        if (warn.contains(ReadLineWarning.INCOMPLETE_LAST_LINE)) {
+                            RError.warning(RError.SHOW_CALLER, RError.Message.INCOMPLETE_FINAL_LINE, base.getSummaryDescription());
+                        }
+                    }
+                }
+                break;
+            }
+            byte[] data = cache.array();
+            int start = cache.arrayOffset() + cache.position();
+            int limit = cache.arrayOffset() + cache.limit();
+            int pos = start;
+            int bits = 0;
+            byte b = 0;
+            while (pos < limit) {
+                b = data[pos];
+                if (b == '\n' || b == '\r' || b == 0) {
+                    break;
+                }
+                bits |= b;
+                pos++;
+            }
+            if (!nullRead) {
+                ascii &= bits >= 0;
+            }
+            if (pos == limit) {
+                // no terminator in the cache, keep the bytes and refill
+                if (!nullRead) {
+                    buffer = appendBytes(buffer, totalRead, data, start, pos - start);
+                    totalRead += pos - start;
+                }
+                cache.position(limit - cache.arrayOffset());
+                continue;
+            }
+            cache.position(pos + 1 - cache.arrayOffset());
+            if (b == 0) {
+                if (!nullRead) {
+                    buffer = appendBytes(buffer, totalRead, data, start, pos - start);
+                    totalRead += pos - start;
+                }
+                nullRead = !skipNul;
+                if (warn.contains(ReadLineWarning.EMBEDDED_NUL) && !skipNul) {
+                    RError.warning(RError.SHOW_CALLER, RError.Message.LINE_CONTAINS_EMBEDDED_NULLS, lines.size() + 1);
+                }
+                continue;
+            }
+            String line;
+            if (totalRead == 0 && !nullRead) {
+                line = decoder.decode(data, start, pos - start, ascii);
+                nBytesConsumed += pos - start;
+            } else {
+                if (!nullRead) {
+                    buffer = appendBytes(buffer, totalRead, data, start, pos - start);
+                    totalRead += pos - start;
+                }
+                line = decoder.decode(buffer, 0, totalRead, ascii);
+                nBytesConsumed += totalRead;
+            }
+            lines.add(line);
+            if (b == '\r') {
+                // swallow the trailing lf, if any, without blocking for more input
+                skipLF = true;
+                skipPendingLF();
+            }
+            if (n > 0 && lines.size() == n) {
+                break;
+            }
+            totalRead = 0;
+            nullRead = false;
+            ascii = true;
+        }
+        String[] result = new String[lines.size()];
+        lines.toArray(result);
+        updateReadOffset(nBytesConsumed);
+        return result;
+    }
+
+    /**
+     * Drops the {@code '\n'} following a {@code '\r'} line end if it is in the cache already, see
+     * {@link #skipLF}.
+     */
+    private void skipPendingLF() {
+        if (cache.hasRemaining()) {
+            skipLF = false;
+            if (cache.get(cache.position()) == '\n') {
+                cache.position(cache.position() + 1);
+            }
+        }
+    }
+
+    private static byte[] appendBytes(byte[] buffer, int length, byte[] src, int offset, int count) {
+        byte[] result = buffer;
+        if (result == null || length + count > result.length) {
+            result = new byte[Math.max(64, Math.max(length + count, length + length / 2))];
+            if (length > 0) {
+                System.arraycopy(buffer, 0, result, 0, length);
+            }
+        }
+        System.arraycopy(src, offset, result, length, count);
+        return result;
+    }
+
+    /**
+     * Decodes the lines read by {@link DelegateRConnection#readLinesCached} with a single
+     * {@link CharsetDecoder}. Lines consisting of ASCII characters only are copied as Latin-1 if the
+     * encoding maps ASCII bytes to themselves, which avoids the decoder altogether.
+     */
+    private static final class LineDecoder {
+        private final CharsetDecoder decoder;
+        private final boolean asciiCompatible;
+        private CharBuffer chars;
+
+        LineDecoder(Charset charset) {
+            this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.asciiCompatible = isAsciiCompatible(charset);
+        }
+
+        private static boolean isAsciiCompatible(Charset charset) {
+            if (charset == StandardCharsets.UTF_8 || charset == StandardCharsets.ISO_8859_1 || charset == StandardCharsets.US_ASCII) {
+                return true;
+            }
+            byte[] bytes = new byte[128];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) i;
+            }
+            return new String(bytes, charset).equals(new String(bytes, StandardCharsets.ISO_8859_1));
+        }
+
+        String decode(byte[] bytes, int offset, int length, boolean ascii) {
+            if (length == 0) {
+                return "";
+            }
+            if (ascii && asciiCompatible) {
+                return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+            }
+            int maxChars = (int) (length * (double) decoder.maxCharsPerByte()) + 1;
+            if (chars == null || chars.capacity() < maxChars) {
+                chars = CharBuffer.allocate(Math.max(maxChars, 256));
+            }
+            chars.clear();
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(bytes, offset, length), chars, true);
+            decoder.flush(chars);
+            chars.flip();
+            return chars.toString();
+        }
+    }
+
     /**
      * Updates the read cursor.<br>
      * <p>
@@ -460,7 +653,14 @@ abstract class DelegateRConnection extends RBaseObject implements RConnection, B
     @TruffleBoundary
     public int read(ByteBuffer dst) throws IOException {
         if (readCache && cache != null) {
+            if (skipLF) {
+                ensureDataAvailable(1);
+                skipPendingLF();
+            }
             final int bytesRequested = dst.remaining();
+            if (bytesRequested >= cache.capacity()) {
+                return readBypassingCache(dst);
+            }
             int totalBytesRead = 0;
             int bytesToRead = 0;
             boolean eof;
@@ -477,6 +677,24 @@ abstract class DelegateRConnection extends RBaseObject implements RConnection, B
         }
     }
 
+    /**
+     * Hands out the cached bytes and reads the rest directly from the channel. Used for requests
+     * at least as large as the cache, which would otherwise copy every byte twice.
+     */
+    private int readBypassingCache(ByteBuffer dst) throws IOException {
+        int totalBytesRead = transfer(cache, dst);
+        boolean eof = false;
+        while (dst.hasRemaining()) {
+            int bytesRead = getChannel().read(dst);
+            if (bytesRead <= 0) {
+                eof = bytesRead < 0;
+                break;
+            }
+            totalBytesRead += bytesRead;
+        }
+        return totalBytesRead == 0 && eof ? -1 : totalBytesRead;
+    }
+
     @Override
     @TruffleBoundary
     public int write(ByteBuffer src) throws IOException {
@@ -506,6 +724,10 @@ abstract class DelegateRConnection extends RBaseObject implements RConnection, B
     protected int readInternal() throws IOException {
         if (readCache && cache != null) {
             ensureDataAvailable(1);
+            if (skipLF) {
+                skipPendingLF();
+                ensureDataAvailable(1);
+            }
             if (!cache.hasRemaining()) {
                 return -1;
             }
@@ -546,6 +768,7 @@ abstract class DelegateRConnection extends RBaseObject implements RConnection, B
      * </p>
      */
     protected void invalidateCache() {
+        skipLF = false;
         if (cache != null) {
             cache.clear();
             cache.flip();
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -22,8 +22,6 @@
  */
 package com.oracle.truffle.r.runtime.conn;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
@@ -32,10 +30,7 @@ import java.nio.file.OpenOption;
 import java.nio.file.StandardOpenOption;
 import java.util.EnumSet;
 
-import org.tukaani.xz.LZMA2Options;
-import org.tukaani.xz.XZ;
 import org.tukaani.xz.XZInputStream;
-import org.tukaani.xz.XZOutputStream;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.TruffleFile;
@@ -43,6 +38,7 @@ import com.oracle.truffle.r.runtime.RCompression;
 import com.oracle.truffle.r.runtime.RCompression.Type;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RInternalError;
+import com.oracle.truffle.r.runtime.compress.BZip2OutputStream;
 import com.oracle.truffle.r.runtime.conn.ConnectionSupport.AbstractOpenMode;
 import static com.oracle.truffle.r.runtime.conn.ConnectionSupport.AbstractOpenMode.Lazy;
 import com.oracle.truffle.r.runtime.conn.ConnectionSupport.BasePathRConnection;
@@ -51,7 +47,6 @@ import com.oracle.truffle.r.runtime.conn.DelegateRConnection.CompressedInputRCon
 import com.oracle.truffle.r.runtime.conn.DelegateRConnection.CompressedOutputRConnection;
 import com.oracle.truffle.r.runtime.data.RStringVector;
 import java.nio.channels.SeekableByteChannel;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -217,11 +212,11 @@ public class FileConnections {
             case Append:
             case AppendBinary:
                 TruffleFile afile = base.path;
-                return new CompressedOutputRConnection(base, new XZOutputStream(afile.newOutputStream(StandardOpenOption.APPEND), new LZMA2Options(), XZ.CHECK_CRC32), false);
+                return new CompressedOutputRConnection(base, RCompression.xzOutputStream(afile.newOutputStream(StandardOpenOption.APPEND)), false);
             case Write:
             case WriteBinary:
                 TruffleFile wfile = base.path;
-                return new CompressedOutputRConnection(base, new XZOutputStream(wfile.newOutputStream(), new LZMA2Options(), XZ.CHECK_CRC32), false);
+                return new CompressedOutputRConnection(base, RCompression.xzOutputStream(wfile.newOutputStream()), false);
             default:
                 throw RError.nyi(RError.SHOW_CALLER2, "open mode: " + base.getOpenMode());
         }
@@ -232,14 +227,14 @@ public class FileConnections {
         switch (base.getOpenMode().abstractOpenMode) {
             case Read:
             case ReadBinary:
-                byte[] bzipUdata = RCompression.bzipUncompressFromFile(base.path);
-                return new ByteStreamCompressedInputRConnection(base, new ByteArrayInputStream(bzipUdata));
+                return new CompressedInputRConnection(base, RCompression.bzipInputStream(base.path.newInputStream()));
             case Append:
             case AppendBinary:
-                return new BZip2OutputRConnection(base, new ByteArrayOutputStream(), true);
+                // appending starts a new stream, readers decode concatenated streams
+                return new CompressedOutputRConnection(base, new BZip2OutputStream(base.path.newOutputStream(StandardOpenOption.APPEND)), false);
             case Write:
             case WriteBinary:
-                return new BZip2OutputRConnection(base, new ByteArrayOutputStream(), false);
+                return new CompressedOutputRConnection(base, new BZip2OutputStream(base.path.newOutputStream()), false);
             default:
                 throw RError.nyi(RError.SHOW_CALLER2, "open mode: " + base.getOpenMode());
         }
@@ -308,13 +303,17 @@ public class FileConnections {
         }
     }
 
+    /**
+     * Reads a plain file. Large local files are memory mapped (see {@link MappedFileChannel}), so
+     * {@code seek} only moves a pointer and bulk reads copy straight from the mapping.
+     */
     static class FileReadBinaryRConnection extends DelegateReadRConnection {
 
         private final SeekableByteChannel channel;
 
         FileReadBinaryRConnection(BasePathRConnection base) throws IOException {
             super(base);
-            channel = base.path.newByteChannel(Collections.singleton(StandardOpenOption.READ));
+            channel = MappedFileChannel.open(base.path);
         }
 
         @Override
@@ -755,29 +754,4 @@ public class FileConnections {
             writeOffset = raf.getFilePointer();
         }
     }
-
-    private static class ByteStreamCompressedInputRConnection extends CompressedInputRConnection {
-        ByteStreamCompressedInputRConnection(BasePathRConnection base, ByteArrayInputStream is) {
-            super(base, is);
-        }
-    }
-
-    private static class BZip2OutputRConnection extends CompressedOutputRConnection {
-        private final ByteArrayOutputStream bos;
-        private final boolean append;
-
-        BZip2OutputRConnection(BasePathRConnection base, ByteArrayOutputStream os, boolean append) {
-            super(base, os, false);
-            this.bos = os;
-            this.append = append;
-        }
-
-        @Override
-        public void close() throws IOException {
-            flush();
-            // Now actually do the compression using sub-process
-            byte[] data = bos.toByteArray();
-            RCompression.bzipCompressToFile(data, ((BasePathRConnection) base).path, append);
-        }
-    }
 }
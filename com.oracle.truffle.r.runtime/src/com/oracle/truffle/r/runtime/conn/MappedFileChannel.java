@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.conn;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import com.oracle.truffle.api.TruffleFile;
+import com.oracle.truffle.r.runtime.RError;
+import com.oracle.truffle.r.runtime.ffi.util.NativeMemory;
+
+/**
+ * A read-only channel that serves reads from memory mappings of a file. The file is mapped in
+ * windows of {@link #WINDOW_SIZE} bytes, so files larger than the 2GB limit of a single
+ * {@link MappedByteBuffer} can be read, and changing the position is just a pointer move.
+ *
+ * The file is opened through the {@link TruffleFile} and only mapped if its file system provides a
+ * {@link FileChannel}. Reading a part of the mapping that no longer exists because the file was
+ * truncated raises an R error rather than crashing, and the mapping is released when the channel
+ * is closed, so that the file can be deleted on Windows right away.
+ */
+final class MappedFileChannel implements SeekableByteChannel {
+
+    /**
+     * Files smaller than this are read through the plain channel, where mapping would cost more
+     * than it saves.
+     */
+    static final long MIN_MAPPED_SIZE = 1 << 20;
+
+    static final long WINDOW_SIZE = 1L << 28;
+
+    private final FileChannel channel;
+    private final String path;
+    private long size;
+    private long position;
+
+    /** The currently mapped window or {@code null}. */
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private MappedFileChannel(FileChannel channel, String path) throws IOException {
+        this.channel = channel;
+        this.path = path;
+        this.size = channel.size();
+    }
+
+    /**
+     * Opens {@code path} for reading. Regular files of at least {@link #MIN_MAPPED_SIZE} bytes are
+     * memory mapped if the file system provides a {@link FileChannel} for them, any other file gets
+     * the channel provided by the file system.
+     */
+    static SeekableByteChannel open(TruffleFile path) throws IOException {
+        SeekableByteChannel channel = path.newByteChannel(Collections.singleton(StandardOpenOption.READ));
+        if (!(channel instanceof FileChannel) || !path.isRegularFile() || channel.size() < MIN_MAPPED_SIZE) {
+            return channel;
+        }
+        FileChannel fileChannel = (FileChannel) channel;
+        MappedFileChannel mapped = new MappedFileChannel(fileChannel, path.getPath());
+        try {
+            mapped.map(0);
+        } catch (IOException e) {
+            // e.g. special files that report a size but cannot be mapped
+            fileChannel.position(0);
+            return fileChannel;
+        }
+        return mapped;
+    }
+
+    private void map(long start) throws IOException {
+        long length = Math.min(WINDOW_SIZE, size - start);
+        unmap();
+        window = channel.map(MapMode.READ_ONLY, start, length);
+        windowStart = start;
+    }
+
+    private void unmap() {
+        if (window != null) {
+            MappedByteBuffer old = window;
+            window = null;
+            NativeMemory.releaseDirectBuffer(old);
+        }
+    }
+
+    /**
+     * Returns the mapped window containing {@link #position}, mapping it if necessary, or
+     * {@code null} at the end of the file.
+     */
+    private MappedByteBuffer windowAtPosition() throws IOException {
+        if (position >= size) {
+            // the file may have grown since it was opened
+            size = channel.size();
+            if (position >= size) {
+                return null;
+            }
+        }
+        if (window == null || position < windowStart || position >= windowStart + window.capacity()) {
+            map(position - position % WINDOW_SIZE);
+        }
+        window.position((int) (position - windowStart));
+        return window;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        int total = 0;
+        try {
+            while (dst.hasRemaining()) {
+                MappedByteBuffer buf = windowAtPosition();
+                if (buf == null) {
+                    return total == 0 ? -1 : total;
+                }
+                int n = Math.min(dst.remaining(), buf.remaining());
+                if (n < buf.remaining()) {
+                    ByteBuffer slice = buf.slice();
+                    slice.limit(n);
+                    dst.put(slice);
+                } else {
+                    dst.put(buf);
+                }
+                position += n;
+                total += n;
+            }
+        } catch (InternalError e) {
+            // the JVM reports a fault in the mapped memory (SIGBUS), i.e. the file was truncated
+            throw RError.error(RError.SHOW_CALLER, RError.Message.ERROR_READING_CONNECTION, String.format("file '%s' was truncated while being read", path));
+        }
+        return total;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("newPosition must not be negative");
+        }
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        size = channel.size();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long newSize) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        unmap();
+        channel.close();
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -60,11 +60,21 @@ public final class ChildContextInfo {
     private final InputStream stdin;
     private final OutputStream stdout;
     private final OutputStream stderr;
-    private final int id;
+    private volatile int id;
     private final int multiSlotInd;
     private TruffleContext truffleContext;
     public ExecutorService executor;
 
+    /**
+     * The R context created for this info, set once the child context is initialized.
+     */
+    private volatile RContext context;
+
+    /**
+     * The pool that the context belongs to, if any, set by {@link ChildContextPool#acquire}.
+     */
+    ChildContextPool pool;
+
     private ChildContextInfo(RStartParams startParams, Map<String, String> env, ContextKind kind, RContext parent, InputStream stdin, OutputStream stdout, OutputStream stderr,
                     int id,
                     int multiSlotInd) {
@@ -96,6 +106,13 @@ public final class ChildContextInfo {
         return this.truffleContext;
     }
 
+    /**
+     * Returns the context of a pooled, already started instance or creates a new one.
+     */
+    public TruffleContext getOrCreateTruffleContext() {
+        return truffleContext != null ? truffleContext : createTruffleContext();
+    }
+
     public TruffleContext createVM(@SuppressWarnings("unused") ChildContextInfo childContextInfo) {
         this.truffleContext = RContext.getInstance().getEnv().newContextBuilder().config(CONFIG_KEY, this).build();
         return this.truffleContext;
@@ -157,10 +174,29 @@ public final class ChildContextInfo {
         return id;
     }
 
+    /**
+     * Gives a context taken from a {@link ChildContextPool} a new id, so that the ids returned for
+     * its previous uses do not refer to it anymore.
+     */
+    void renewId() {
+        id = contextInfoIds.incrementAndGet();
+    }
+
     public int getMultiSlotInd() {
         return multiSlotInd;
     }
 
+    /**
+     * Returns the R context of the child or {@code null} if it has not been initialized yet.
+     */
+    public RContext getContext() {
+        return context;
+    }
+
+    void setContext(RContext context) {
+        this.context = context;
+    }
+
     public TruffleContext getTruffleContext() {
         return truffleContext;
     }
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.context;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.TruffleContext;
+import com.oracle.truffle.api.TruffleLogger;
+import com.oracle.truffle.r.runtime.RInternalError;
+import com.oracle.truffle.r.runtime.RLogger;
+import com.oracle.truffle.r.runtime.RRuntime;
+import com.oracle.truffle.r.runtime.RSource;
+import com.oracle.truffle.r.runtime.context.Engine.ParseException;
+import com.oracle.truffle.r.runtime.data.RFunction;
+import com.oracle.truffle.r.runtime.data.RList;
+import com.oracle.truffle.r.runtime.data.RLogicalVector;
+import com.oracle.truffle.r.runtime.env.REnvironment;
+
+/**
+ * A pool of already initialized {@link ContextKind#SHARE_NOTHING} child contexts used by
+ * {@code .fastr.context.spawn} and {@code .fastr.context.eval}, so that only the first evaluation
+ * in a context pays for loading the base package and the profiles.
+ *
+ * When an evaluation finishes, the global environment of the context is emptied, the sinks and
+ * connections are closed, and the search path, the loaded namespaces, the working directory, the
+ * environment variables and the options are restored to the state right after the start-up. A
+ * context is closed rather than returned to the pool if the evaluation called {@code quit}, failed
+ * with an internal error, left DLLs loaded or S4 definitions behind (they also change the tables
+ * of the methods package), or if the reset itself failed.
+ *
+ * A context gets a new id every time it is taken from the pool, so the ids returned by
+ * {@code .fastr.context.spawn} for its previous uses cannot reach it.
+ *
+ * The pooled contexts do not share their loaded packages, each of them loads its own copy once.
+ * Only the lazy-load databases the packages are read from are shared, see {@code LazyDBCache}.
+ */
+public final class ChildContextPool {
+
+    private static final TruffleLogger LOGGER = RLogger.getLogger(ChildContextPool.class.getName());
+
+    private static final String SNAPSHOT_CODE = "list(search = search(), namespaces = loadedNamespaces(), dlls = names(getLoadedDLLs()), wd = getwd(), env = Sys.getenv(), options = options())";
+
+    private static final String RESET_CODE = "function(snapshot) {\n" +
+                    "    hasS4 <- function(env) {\n" +
+                    "        names <- ls(env, all.names = TRUE)\n" +
+                    "        any(startsWith(names, '.__')) || any(vapply(names, function(name) { value <- get(name, envir = env); is.function(value) && isS4(value) }, NA))\n" +
+                    "    }\n" +
+                    "    attached <- setdiff(search(), snapshot$search)\n" +
+                    "    if (hasS4(globalenv())) return(FALSE)\n" +
+                    "    for (name in attached) if (!startsWith(name, 'package:') && hasS4(as.environment(name))) return(FALSE)\n" +
+                    "    rm(list = ls(globalenv(), all.names = TRUE), envir = globalenv())\n" +
+                    "    while (sink.number() > 0L) sink()\n" +
+                    "    if (sink.number(type = 'message') != 2L) sink(type = 'message')\n" +
+                    "    closeAllConnections()\n" +
+                    "    for (name in attached) detach(name, character.only = TRUE)\n" +
+                    "    repeat {\n" +
+                    "        loaded <- setdiff(loadedNamespaces(), snapshot$namespaces)\n" +
+                    "        if (length(loaded) == 0L) break\n" +
+                    "        # a namespace cannot be unloaded while another one imports it\n" +
+                    "        unloaded <- vapply(loaded, function(ns) !inherits(try(unloadNamespace(ns), silent = TRUE), 'try-error'), NA)\n" +
+                    "        if (!any(unloaded)) return(FALSE)\n" +
+                    "    }\n" +
+                    "    if (length(setdiff(names(getLoadedDLLs()), snapshot$dlls)) > 0L) return(FALSE)\n" +
+                    "    setwd(snapshot$wd)\n" +
+                    "    Sys.unsetenv(setdiff(names(Sys.getenv()), names(snapshot$env)))\n" +
+                    "    if (length(snapshot$env) > 0L) do.call(Sys.setenv, as.list(snapshot$env))\n" +
+                    "    added <- setdiff(names(options()), names(snapshot$options))\n" +
+                    "    options(snapshot$options)\n" +
+                    "    if (length(added) > 0L) options(structure(vector('list', length(added)), names = added))\n" +
+                    "    TRUE\n" +
+                    "}";
+
+    private final int maxIdle;
+    private final ArrayDeque<ChildContextInfo> idle = new ArrayDeque<>();
+
+    /**
+     * The reset function and the state to reset to of each context, which are objects of the child
+     * context itself. The id of a context changes, so they are indexed by its info.
+     */
+    private final Map<ChildContextInfo, Object[]> snapshots = new ConcurrentHashMap<>();
+    private boolean shutdown;
+
+    private final AtomicLong startedContexts = new AtomicLong();
+    private final AtomicLong startupTime = new AtomicLong();
+    private final AtomicLong reusedContexts = new AtomicLong();
+
+    ChildContextPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns an idle context from the pool or a new one created by {@code factory}, either way
+     * the context is managed by this pool from now on.
+     */
+    public ChildContextInfo acquire(Supplier<ChildContextInfo> factory) {
+        ChildContextInfo info;
+        synchronized (this) {
+            info = idle.poll();
+        }
+        if (info == null) {
+            info = factory.get();
+            assert info.getKind() == ContextKind.SHARE_NOTHING;
+        } else {
+            info.renewId();
+            reusedContexts.incrementAndGet();
+        }
+        info.pool = this;
+        return info;
+    }
+
+    /**
+     * Called in the (entered) child context before the evaluation, takes the snapshot of a context
+     * that has just been started.
+     */
+    @TruffleBoundary
+    void beforeEval(ChildContextInfo info) {
+        if (!snapshots.containsKey(info)) {
+            Engine engine = RContext.getEngine();
+            long startup = engine.getTimings().startupTimeInNanos();
+            startedContexts.incrementAndGet();
+            startupTime.addAndGet(startup);
+            if (LOGGER.isLoggable(Level.CONFIG)) {
+                LOGGER.config(String.format("child context %d started in %d ms", info.getId(), TimeUnit.NANOSECONDS.toMillis(startup)));
+            }
+            try {
+                RList snapshot = (RList) engine.parseAndEval(RSource.fromTextInternalInvisible(SNAPSHOT_CODE, RSource.Internal.CONTEXT_EVAL), REnvironment.baseEnv().getFrame(), false);
+                RFunction reset = (RFunction) engine.parseAndEval(RSource.fromTextInternalInvisible(RESET_CODE, RSource.Internal.CONTEXT_EVAL), REnvironment.baseEnv().getFrame(), false);
+                snapshots.put(info, new Object[]{reset, snapshot});
+            } catch (ParseException e) {
+                throw new RInternalError(e, "error while parsing context snapshot code");
+            }
+        }
+    }
+
+    /**
+     * Called in the (entered) child context after the evaluation, returns {@code false} if the
+     * context cannot be re-used.
+     */
+    @TruffleBoundary
+    boolean reset(ChildContextInfo info) {
+        Object[] snapshot = snapshots.get(info);
+        if (snapshot == null) {
+            return false;
+        }
+        try {
+            Object result = RContext.getEngine().evalFunction((RFunction) snapshot[0], null, null, true, null, snapshot[1]);
+            if (!isTrue(result)) {
+                LOGGER.fine(() -> "child context " + info.getId() + " cannot be reset");
+                return false;
+            }
+            return true;
+        } catch (Throwable t) {
+            LOGGER.fine(() -> "could not reset child context " + info.getId() + ": " + t);
+            return false;
+        }
+    }
+
+    private static boolean isTrue(Object value) {
+        if (value instanceof Byte) {
+            return (byte) value == RRuntime.LOGICAL_TRUE;
+        }
+        return value instanceof RLogicalVector && ((RLogicalVector) value).getLength() == 1 && ((RLogicalVector) value).getDataAt(0) == RRuntime.LOGICAL_TRUE;
+    }
+
+    /**
+     * Called after the child context has been left, either puts it back to the pool or closes it.
+     */
+    void release(ChildContextInfo info, boolean reusable) {
+        if (reusable) {
+            synchronized (this) {
+                if (!shutdown && idle.size() < maxIdle) {
+                    idle.push(info);
+                    return;
+                }
+            }
+        }
+        snapshots.remove(info);
+        info.getTruffleContext().close();
+    }
+
+    /**
+     * The number of contexts started by this pool.
+     */
+    public long getStartedContexts() {
+        return startedContexts.get();
+    }
+
+    /**
+     * The summed start-up time of the contexts started by this pool.
+     */
+    public long getStartupTimeInNanos() {
+        return startupTime.get();
+    }
+
+    /**
+     * The number of times an idle context was taken from this pool instead of starting a new one.
+     */
+    public long getReusedContexts() {
+        return reusedContexts.get();
+    }
+
+    /**
+     * Closes the idle contexts, called when the owning context is finalized.
+     */
+    public void shutdown() {
+        if (LOGGER.isLoggable(Level.CONFIG)) {
+            LOGGER.config(String.format("child context pool started %d contexts in %d ms, re-used contexts %d times", startedContexts.get(),
+                            TimeUnit.NANOSECONDS.toMillis(startupTime.get()), reusedContexts.get()));
+        }
+        ChildContextInfo[] toClose;
+        synchronized (this) {
+            shutdown = true;
+            toClose = idle.toArray(new ChildContextInfo[idle.size()]);
+            idle.clear();
+        }
+        for (ChildContextInfo info : toClose) {
+            snapshots.remove(info);
+            TruffleContext truffleContext = info.getTruffleContext();
+            truffleContext.close();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.context;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.TruffleContext;
+import com.oracle.truffle.r.runtime.ArgumentsSignature;
+import com.oracle.truffle.r.runtime.RChannel;
+import com.oracle.truffle.r.runtime.RError;
+import com.oracle.truffle.r.runtime.RInternalError;
+import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RFunction;
+import com.oracle.truffle.r.runtime.data.RList;
+import com.oracle.truffle.r.runtime.data.RStringVector;
+
+/**
+ * A per-context pool of child contexts that are kept alive between parallel {@code lapply} calls
+ * (used by {@code mclapply}), so that only the first call pays for the context start-up.
+ *
+ * The elements of a job are split into chunks, which are dealt round robin to the deques of the
+ * workers taking part in the job. A worker takes chunks from the head of its own deque and, once
+ * it is empty, steals from the tail of the deques of the other workers. This way unevenly sized
+ * tasks do not leave workers idle while one of them is still working through its share.
+ *
+ * Values are moved between the contexts in the same way as through a {@link RChannel}.
+ *
+ * A worker that dies, e.g. because its context fails to initialize, is removed from the pool and
+ * the chunks still queued on it fail the jobs they belong to. The next {@link #ensureSize} call
+ * replaces it.
+ */
+public final class ContextWorkerPool {
+
+    /**
+     * Workers that are not allowed to take part in the currently running job re-check the deques
+     * with this period rather than spinning.
+     */
+    private static final long IDLE_RECHECK_MILLIS = 10;
+
+    private final Object idleLock = new Object();
+    private final AtomicInteger pendingChunks = new AtomicInteger();
+    private volatile Worker[] workers = new Worker[0];
+    private volatile boolean shutdown;
+    private int nextWorkerId;
+
+    private static final class Job {
+        /**
+         * For each participating worker its own copy of the function and the additional arguments,
+         * a converted value can only be received once.
+         */
+        private final Object[] exportedFunctions;
+        private final Object[] elements;
+        private final Object[] results;
+        private final Worker[] participants;
+        private final CountDownLatch remaining;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Job(Object[] exportedFunctions, Object[] elements, Worker[] participants, int chunks) {
+            this.exportedFunctions = exportedFunctions;
+            this.elements = elements;
+            this.results = new Object[elements.length];
+            this.participants = participants;
+            this.remaining = new CountDownLatch(chunks);
+        }
+
+        /**
+         * The index of {@code worker} among the participants of this job or -1.
+         */
+        int slotOf(Worker worker) {
+            for (int i = 0; i < participants.length; i++) {
+                if (participants[i] == worker) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void fail(Throwable t) {
+            failure.compareAndSet(null, t);
+            remaining.countDown();
+        }
+    }
+
+    private static final class Chunk {
+        private final Job job;
+        private final int from;
+        private final int to;
+
+        Chunk(Job job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private final class Worker extends Thread {
+
+        private final ChildContextInfo info;
+        private final TruffleContext truffleContext;
+        private final ConcurrentLinkedDeque<Chunk> deque = new ConcurrentLinkedDeque<>();
+
+        private Job currentJob;
+        private RFunction function;
+        private Object[] additionalArgs;
+        private ArgumentsSignature signature;
+
+        Worker(int id, ChildContextInfo info) {
+            this.info = info;
+            this.truffleContext = info.createTruffleContext();
+            setName("FastR context pool worker " + id);
+        }
+
+        @Override
+        public void run() {
+            Throwable death = null;
+            Object parent = null;
+            try {
+                parent = truffleContext.enter(null);
+                try {
+                    // initializes the child context before the first chunk arrives
+                    RContext.getEngine();
+                    Chunk chunk;
+                    while ((chunk = takeChunk(this)) != null) {
+                        runChunk(chunk);
+                    }
+                } finally {
+                    currentJob = null;
+                    function = null;
+                    additionalArgs = null;
+                    truffleContext.leave(null, parent);
+                }
+            } catch (Throwable t) {
+                RInternalError.reportErrorAndConsoleLog(t, info.getId());
+                death = t;
+            } finally {
+                try {
+                    truffleContext.close();
+                } catch (Throwable t) {
+                    if (death == null) {
+                        death = t;
+                    }
+                }
+                if (death != null) {
+                    workerDied(this, death);
+                }
+            }
+        }
+
+        private void runChunk(Chunk chunk) {
+            Job job = chunk.job;
+            try {
+                if (job.failure.get() == null) {
+                    if (job != currentJob) {
+                        receiveFunction(job);
+                    }
+                    Object[] args = new Object[additionalArgs.length + 1];
+                    System.arraycopy(additionalArgs, 0, args, 1, additionalArgs.length);
+                    for (int i = chunk.from; i < chunk.to; i++) {
+                        args[0] = RChannel.importValue(job.elements[i]);
+                        Object value = RContext.getEngine().evalFunction(function, null, null, true, signature, args);
+                        job.results[i] = RChannel.exportValue(value);
+                    }
+                }
+            } catch (Throwable t) {
+                if (!(t instanceof RError)) {
+                    RInternalError.reportErrorAndConsoleLog(t, info.getId());
+                }
+                job.failure.compareAndSet(null, t);
+            } finally {
+                job.remaining.countDown();
+            }
+        }
+
+        private void receiveFunction(Job job) {
+            RList received = (RList) RChannel.importValue(job.exportedFunctions[job.slotOf(this)]);
+            RList args = (RList) received.getDataAt(1);
+            RStringVector names = args.getNames();
+            String[] signatureNames = new String[args.getLength() + 1];
+            Object[] values = new Object[args.getLength()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = args.getDataAt(i);
+                if (names != null && !names.getDataAt(i).isEmpty()) {
+                    signatureNames[i + 1] = names.getDataAt(i);
+                }
+            }
+            currentJob = job;
+            function = (RFunction) received.getDataAt(0);
+            additionalArgs = values;
+            signature = ArgumentsSignature.get(signatureNames);
+        }
+    }
+
+    /**
+     * Makes sure that the pool has at least {@code size} workers. Must be called by the thread of
+     * the owning context, which also creates the {@link ChildContextInfo}s via {@code infoFactory}.
+     */
+    @TruffleBoundary
+    public synchronized void ensureSize(int size, Supplier<ChildContextInfo> infoFactory) {
+        Worker[] current = workers;
+        if (current.length >= size) {
+            return;
+        }
+        Worker[] grown = Arrays.copyOf(current, size);
+        for (int i = current.length; i < size; i++) {
+            grown[i] = new Worker(nextWorkerId++, infoFactory.get());
+        }
+        workers = grown;
+        for (int i = current.length; i < size; i++) {
+            grown[i].start();
+        }
+    }
+
+    public int size() {
+        return workers.length;
+    }
+
+    /**
+     * Applies {@code function} to every element of {@code elements} on at most {@code parallelism}
+     * workers, passing {@code args} as additional (possibly named) arguments. The elements are
+     * processed in chunks of {@code chunkSize}.
+     */
+    @TruffleBoundary
+    public RList apply(RFunction function, RList elements, RList args, int chunkSize, int parallelism) {
+        int length = elements.getLength();
+        int participants = Math.min(parallelism, workers.length);
+        assert chunkSize > 0;
+        if (participants == 0) {
+            throw RError.error(RError.NO_CALLER, RError.Message.GENERIC, "no live worker in the context pool");
+        }
+
+        Object[] exportedFunctions = new Object[participants];
+        for (int i = 0; i < participants; i++) {
+            exportedFunctions[i] = RChannel.exportValue(RDataFactory.createList(new Object[]{function, args}));
+        }
+        Object[] exportedElements = new Object[length];
+        for (int i = 0; i < length; i++) {
+            exportedElements[i] = RChannel.exportValue(elements.getDataAt(i));
+        }
+
+        int chunks = (length + chunkSize - 1) / chunkSize;
+        Job job;
+        // dealing and the removal of dead workers exclude each other, so that no chunk is left on
+        // the deque of a worker that is gone
+        synchronized (this) {
+            Worker[] current = workers;
+            participants = Math.min(participants, current.length);
+            if (participants == 0) {
+                throw RError.error(RError.NO_CALLER, RError.Message.GENERIC, "no live worker in the context pool");
+            }
+            job = new Job(exportedFunctions, exportedElements, Arrays.copyOf(current, participants), chunks);
+            for (int i = 0; i < chunks; i++) {
+                int from = i * chunkSize;
+                current[i % participants].deque.addLast(new Chunk(job, from, Math.min(from + chunkSize, length)));
+            }
+            pendingChunks.addAndGet(chunks);
+        }
+        synchronized (idleLock) {
+            idleLock.notifyAll();
+        }
+
+        try {
+            job.remaining.await();
+        } catch (InterruptedException e) {
+            throw RError.error(RError.NO_CALLER, RError.Message.GENERIC, "interrupted while waiting for the context pool");
+        }
+        Throwable failure = job.failure.get();
+        if (failure != null) {
+            // the message of an RError is null if it has already been printed
+            String message = failure.getMessage() != null ? failure.getMessage() : failure instanceof RError ? "error in user code" : failure.getClass().getSimpleName();
+            throw RError.error(RError.NO_CALLER, RError.Message.GENERIC, "error in a context pool worker: " + message);
+        }
+        Object[] results = job.results;
+        for (int i = 0; i < length; i++) {
+            results[i] = RChannel.importValue(results[i]);
+        }
+        return RDataFactory.createList(results);
+    }
+
+    private Chunk takeChunk(Worker worker) throws InterruptedException {
+        while (true) {
+            Chunk chunk = worker.deque.pollFirst();
+            if (chunk == null) {
+                chunk = steal(worker);
+            }
+            if (chunk != null) {
+                pendingChunks.decrementAndGet();
+                return chunk;
+            }
+            synchronized (idleLock) {
+                if (shutdown) {
+                    return null;
+                }
+                idleLock.wait(pendingChunks.get() > 0 ? IDLE_RECHECK_MILLIS : 0);
+            }
+        }
+    }
+
+    private Chunk steal(Worker thief) {
+        Worker[] current = workers;
+        int start = Arrays.asList(current).indexOf(thief);
+        for (int i = 1; i < current.length; i++) {
+            Worker victim = current[(start + i) % current.length];
+            Chunk chunk = victim.deque.peekLast();
+            if (chunk != null && victim != thief && chunk.job.slotOf(thief) >= 0 && victim.deque.removeLastOccurrence(chunk)) {
+                return chunk;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes a worker whose thread terminated abnormally and fails the chunks queued on it. The
+     * chunk it was running, if any, has already been counted down by {@link Worker#runChunk}.
+     */
+    private void workerDied(Worker worker, Throwable cause) {
+        synchronized (this) {
+            Worker[] current = workers;
+            int index = Arrays.asList(current).indexOf(worker);
+            if (index >= 0) {
+                Worker[] remaining = new Worker[current.length - 1];
+                System.arraycopy(current, 0, remaining, 0, index);
+                System.arraycopy(current, index + 1, remaining, index, remaining.length - index);
+                workers = remaining;
+            }
+        }
+        Chunk chunk;
+        while ((chunk = worker.deque.pollFirst()) != null) {
+            pendingChunks.decrementAndGet();
+            chunk.job.fail(cause);
+        }
+    }
+
+    /**
+     * Stops the workers and closes their contexts, called when the owning context is finalized.
+     */
+    @TruffleBoundary
+    public void shutdown() {
+        Worker[] toJoin;
+        synchronized (this) {
+            toJoin = workers;
+            workers = new Worker[0];
+        }
+        synchronized (idleLock) {
+            shutdown = true;
+            idleLock.notifyAll();
+        }
+        for (Worker worker : toJoin) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RInternalError(e, "error stopping the context pool");
+            }
+        }
+    }
+}
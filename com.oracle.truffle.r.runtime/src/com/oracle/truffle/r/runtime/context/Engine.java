@@ -193,6 +193,12 @@ public interface Engine {
          */
         long[] userSysTimeInNanos();
 
+        /**
+         * Time spent initializing this engine, i.e. loading the base package and evaluating the
+         * profiles, in nanosecs.
+         */
+        long startupTimeInNanos();
+
     }
 
     /**
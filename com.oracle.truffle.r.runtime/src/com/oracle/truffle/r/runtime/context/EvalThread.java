@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -65,7 +65,7 @@ public class EvalThread extends Thread {
         threadCnt.incrementAndGet();
         threadMap.put(info.getId(), this);
         idToMultiSlotTable.put(info.getId(), info.getMultiSlotInd());
-        this.truffleContext = info.createTruffleContext();
+        this.truffleContext = info.getOrCreateTruffleContext();
     }
 
     @Override
@@ -74,7 +74,8 @@ public class EvalThread extends Thread {
         try {
             evalResult = run(truffleContext, info, source);
         } finally {
-            threadMap.remove(info.getId());
+            // the id is re-used when the context comes from a ChildContextPool
+            threadMap.remove(info.getId(), this);
             threadCnt.decrementAndGet();
         }
     }
@@ -92,15 +93,22 @@ public class EvalThread extends Thread {
     }
 
     /**
-     * Convenience method for {@code .fastr.context.eval} in same thread.
+     * Convenience method for {@code .fastr.context.eval} in same thread. If the context belongs to
+     * a {@link ChildContextPool}, it is reset and returned to the pool afterwards, otherwise it is
+     * closed.
      */
     public static RList run(TruffleContext truffleContext, ChildContextInfo info, Source source) {
         RList result = null;
         Object parent = null;
+        ChildContextPool pool = info.pool;
+        boolean reusable = pool != null;
         try {
             parent = truffleContext.enter(null);
             // this is the engine for the new child context
             Engine rEngine = RContext.getEngine();
+            if (pool != null) {
+                pool.beforeEval(info);
+            }
             // Object eval = rEngine.eval(rEngine.parse(source), rEngine.getGlobalFrame());
             Object evalResult = rEngine.parseAndEval(source, rEngine.getGlobalFrame(), false);
             result = RDataFactory.createList(new Object[]{evalResult == null ? RNull.instance : evalResult});
@@ -110,6 +118,7 @@ public class EvalThread extends Thread {
         } catch (ExitException e) {
             // termination, treat this as "success"
             result = RDataFactory.createList(new Object[]{e.getStatus()});
+            reusable = false;
         } catch (RError e) {
             // nothing to do
             result = RDataFactory.createList(new Object[]{RNull.instance});
@@ -117,9 +126,17 @@ public class EvalThread extends Thread {
             // some internal error
             RInternalError.reportErrorAndConsoleLog(t, info.getId());
             result = createErrorResult(t.getClass().getSimpleName());
+            reusable = false;
         } finally {
+            if (reusable) {
+                reusable = pool.reset(info);
+            }
             truffleContext.leave(null, parent);
-            truffleContext.close();
+            if (pool != null) {
+                pool.release(info, reusable);
+            } else {
+                truffleContext.close();
+            }
         }
         return result;
     }
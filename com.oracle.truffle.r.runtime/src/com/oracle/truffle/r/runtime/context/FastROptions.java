@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -123,10 +123,20 @@ public class FastROptions {
     public static final OptionKey<String> AdditionalOptions = new OptionKey<>("");
     @Option(category = OptionCategory.INTERNAL, help = "Enables timeout (in seconds) when receiving messages from a channel") //
     public static final OptionKey<Integer> ChannelReceiveTimeout = new OptionKey<>(0);
+    @Option(category = OptionCategory.EXPERT, help = "Number of messages that can be sent through a channel before the sender blocks until they are received") //
+    public static final OptionKey<Integer> ChannelQueueCapacity = new OptionKey<>(16);
+    @Option(category = OptionCategory.EXPERT, help = "Maximum number of started SHARE_NOTHING child contexts kept for re-use by .fastr.context.spawn and .fastr.context.eval, zero (the default) disables the re-use") //
+    public static final OptionKey<Integer> ChildContextPoolSize = new OptionKey<>(0);
     @Option(category = OptionCategory.EXPERT, help = "Restrict force splitting of call targets") //
     public static final OptionKey<Boolean> RestrictForceSplitting = new OptionKey<>(true);
     @Option(category = OptionCategory.INTERNAL, help = "Turn on explicit GC via the gc built-in. Otherwise calls to gc are ignored.") //
     public static final OptionKey<Boolean> EnableExplicitGC = new OptionKey<>(false);
+    @Option(category = OptionCategory.EXPERT, help = "Number of worker threads used by parallel builtin kernels (matrix multiplication, sorting, ...). Zero means the number of available processors, one disables the parallel kernels.") //
+    public static final OptionKey<Integer> ParallelKernelThreads = new OptionKey<>(0);
+    @Option(category = OptionCategory.EXPERT, help = "Minimal number of multiply-add operations for which the double matrix multiplication runs in parallel.") //
+    public static final OptionKey<Integer> MatMultParallelThreshold = new OptionKey<>(1 << 21);
+    @Option(category = OptionCategory.EXPERT, help = "SVG devices write the drawing commands through to the output file instead of keeping the whole page in memory. svg.string and svg.off then read the SVG code back from the file.") //
+    public static final OptionKey<Boolean> SVGStreaming = new OptionKey<>(false);
 
     // Discontinued since rc12
     // only a warning is printed to use the default logger mechanism
@@ -145,7 +155,8 @@ public class FastROptions {
     /**
      * The presence of the <code>NATIVE_DATA_INSPECTOR</code> variable in the environment activates
      * the native data inspector JMX bean {@link NativeDataInspector} that can be used (e.g. via
-     * VisualVM) to inspect native data mirrors.
+     * VisualVM) to inspect native data mirrors and the amount of vector data copied between Java
+     * and native memory.
      */
     public static final String NATIVE_DATA_INSPECTOR = "NATIVE_DATA_INSPECTOR";
 
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -385,6 +385,14 @@ public final class RContext {
     public final WeakHashMap<TruffleFile, REnvironment> srcfileEnvironments = new WeakHashMap<>();
     public final List<String> libraryPaths = new ArrayList<>(1);
     public final Map<Integer, Thread> threads = new ConcurrentHashMap<>();
+    private ContextWorkerPool workerPool;
+    private ChildContextPool childContextPool;
+
+    /**
+     * The info this context was spawned with, which refers back to this context until it is
+     * disposed.
+     */
+    private ChildContextInfo childContextInfo;
     public final LanguageClosureCache languageClosureCache = new LanguageClosureCache();
     public final Map<String, Source> sourceCache = new ConcurrentHashMap<>();
 
@@ -456,6 +464,8 @@ public final class RContext {
             this.multiSlotIndex = info.getMultiSlotInd();
             this.truffleContext = info.getTruffleContext();
             this.executor = info.executor;
+            info.setContext(this);
+            this.childContextInfo = info;
             initialEnvVars = info.getEnv() == null ? Collections.emptyMap() : info.getEnv();
         }
 
@@ -631,6 +641,52 @@ public final class RContext {
         return new RContext(language, env, instrumenter, isInitial);
     }
 
+    /**
+     * The pool of child contexts used by {@code .fastr.context.pool.lapply}, created on first use.
+     */
+    public synchronized ContextWorkerPool getWorkerPool() {
+        if (workerPool == null) {
+            workerPool = new ContextWorkerPool();
+        }
+        return workerPool;
+    }
+
+    /**
+     * The pool of started {@link ContextKind#SHARE_NOTHING} child contexts, {@code null} if
+     * disabled by the {@link FastROptions#ChildContextPoolSize} option.
+     */
+    public synchronized ChildContextPool getChildContextPool() {
+        if (childContextPool == null) {
+            int size = getNonNegativeIntOption(FastROptions.ChildContextPoolSize);
+            if (size == 0) {
+                return null;
+            }
+            childContextPool = new ChildContextPool(size);
+        }
+        return childContextPool;
+    }
+
+    /**
+     * Called while this context is being closed, but still usable. The child contexts owned by
+     * this context must be closed at this point.
+     */
+    public void finalizeContext() {
+        ContextWorkerPool pool;
+        ChildContextPool contextPool;
+        synchronized (this) {
+            pool = workerPool;
+            contextPool = childContextPool;
+            workerPool = null;
+            childContextPool = null;
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        if (contextPool != null) {
+            contextPool.shutdown();
+        }
+    }
+
     /**
      * Destroy this context.
      */
@@ -644,6 +700,11 @@ public final class RContext {
             if (contextKind == ContextKind.SHARE_PARENT_RW) {
                 parentContext.sharedChild = null;
             }
+            if (childContextInfo != null) {
+                // the info may outlive this context, e.g. in the thread that evaluated it
+                childContextInfo.setContext(null);
+                childContextInfo = null;
+            }
             state = EnumSet.of(State.DISPOSED);
 
             assert !initial || EvalThread.threadCnt.get() == 0 : "Did not close all children contexts";
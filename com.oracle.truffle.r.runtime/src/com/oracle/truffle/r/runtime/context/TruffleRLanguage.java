@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -139,6 +139,11 @@ public final class TruffleRLanguage extends TruffleLanguage<RContext> {
         return FastROptions.getDescriptors();
     }
 
+    @Override
+    protected void finalizeContext(RContext context) {
+        context.finalizeContext();
+    }
+
     @Override
     protected void disposeContext(RContext context) {
         activeContexts--;
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2018, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -22,9 +22,15 @@
  */
 package com.oracle.truffle.r.runtime.data;
 
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.oracle.truffle.api.Assumption;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.nodes.RBaseNode;
 import com.oracle.truffle.r.runtime.nodes.RNode;
@@ -38,10 +44,45 @@ import com.oracle.truffle.r.runtime.nodes.RSyntaxNode;
  * 
  * Closures need to be cached so that we cache the corresponding call-targets and if the expression
  * is evaluated again, we invoke it through the same call-target, which may be compiled by Truffle.
+ *
+ * The cache holds about {@link #MAX_ENTRIES} closures: keys such as the nodes created for language
+ * objects by {@code do.call} or {@code eval(parse(text=...))} are usually unique and would otherwise
+ * accumulate forever. Note that weak keys would not help here as the cached closure references its
+ * key node. Lookups do not lock, a hit only sets the referenced bit of the entry. When a miss makes
+ * the cache exceed its capacity, one thread evicts entries in clock (second chance) order: a
+ * referenced entry loses its bit and survives, an unreferenced one is removed.
+ *
+ * The hit, miss and eviction counters are only updated after {@link #enableStatistics()}. Call
+ * sites that need the closure in compiled code keep an inline cache in front of this one and
+ * report its hits via {@link #recordInlineHit()}.
  */
 public abstract class ClosureCache<K> {
 
-    private ConcurrentHashMap<K, Closure> cache;
+    public static final int MAX_ENTRIES = 256;
+
+    private static final Assumption noStatisticsAssumption = Truffle.getRuntime().createAssumption("no closure cache statistics");
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+    private static final LongAdder inlineHits = new LongAdder();
+
+    private static final class Entry {
+        private final Closure closure;
+        private volatile boolean referenced;
+
+        Entry(Closure closure) {
+            this.closure = closure;
+        }
+    }
+
+    private volatile ConcurrentHashMap<K, Entry> cache;
+
+    /**
+     * The clock hand, only used by the thread holding {@link #evictionLock}.
+     */
+    private Iterator<Map.Entry<K, Entry>> hand;
+    private final ReentrantLock evictionLock = new ReentrantLock();
 
     public Closure getOrCreatePromiseClosure(K key) {
         return getOrCreateClosure(Closure.PROMISE_CLOSURE_WRAPPER_NAME, key);
@@ -58,16 +99,116 @@ public abstract class ClosureCache<K> {
         if (key == null) {
             return null;
         }
-        if (cache == null) {
-            initMap();
+        ConcurrentHashMap<K, Entry> map = cache;
+        if (map == null) {
+            map = initMap();
+        }
+        Entry entry = map.get(key);
+        if (entry != null) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            recordHit();
+            return entry.closure;
+        }
+        recordMiss();
+        entry = map.computeIfAbsent(key, k -> new Entry(Closure.create(name, keyToNode(k))));
+        if (map.size() > MAX_ENTRIES) {
+            evict(map);
         }
-        return cache.computeIfAbsent(key, k -> Closure.create(name, keyToNode(k)));
+        return entry.closure;
     }
 
-    private synchronized void initMap() {
+    private synchronized ConcurrentHashMap<K, Entry> initMap() {
         if (cache == null) {
             cache = new ConcurrentHashMap<>();
         }
+        return cache;
+    }
+
+    private void evict(ConcurrentHashMap<K, Entry> map) {
+        // the thread that already evicts makes room for the others
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // each entry is passed at most twice, the second time without the referenced bit
+            for (int steps = 2 * map.size(); map.size() > MAX_ENTRIES && steps > 0; steps--) {
+                if (hand == null || !hand.hasNext()) {
+                    hand = map.entrySet().iterator();
+                    if (!hand.hasNext()) {
+                        break;
+                    }
+                }
+                Map.Entry<K, Entry> candidate = hand.next();
+                Entry entry = candidate.getValue();
+                if (entry.referenced) {
+                    entry.referenced = false;
+                } else if (map.remove(candidate.getKey(), entry)) {
+                    recordEviction();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Starts counting hits, misses and evictions. This invalidates a global assumption.
+     */
+    public static void enableStatistics() {
+        noStatisticsAssumption.invalidate();
+    }
+
+    public static boolean isStatisticsEnabled() {
+        return !noStatisticsAssumption.isValid();
+    }
+
+    static void recordHit() {
+        if (isStatisticsEnabled()) {
+            hits.increment();
+        }
+    }
+
+    static void recordMiss() {
+        if (isStatisticsEnabled()) {
+            misses.increment();
+        }
+    }
+
+    private static void recordEviction() {
+        if (isStatisticsEnabled()) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Counts a hit of an inline cache, a no-op in compiled code until statistics are enabled.
+     */
+    public static void recordInlineHit() {
+        if (isStatisticsEnabled()) {
+            incrementInlineHits();
+        }
+    }
+
+    @TruffleBoundary
+    private static void incrementInlineHits() {
+        inlineHits.increment();
+    }
+
+    /**
+     * Returns the number of hits, misses and evictions summed over all closure caches and the
+     * number of hits of the inline caches in front of them.
+     */
+    public static long[] getStatistics() {
+        return new long[]{hits.sum(), misses.sum(), evictions.sum(), inlineHits.sum()};
+    }
+
+    public static void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        inlineHits.reset();
     }
 
     public static final class RNodeClosureCache extends ClosureCache<RBaseNode> {
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.data;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.r.runtime.Collections.ElementHash;
+import com.oracle.truffle.r.runtime.Collections.IntElementHash;
+import com.oracle.truffle.r.runtime.data.model.RAbstractVector;
+
+/**
+ * Caches the {@link ElementHash} built over a lookup table (e.g. the {@code table} argument of
+ * {@code match}) on the table vector, so that repeated lookups into the same vector, typically
+ * {@code x %in% reference} in a loop, do not rebuild the hash index every time.
+ *
+ * The cached index must never observe an in-place update of the vector. Only materialized vectors
+ * that are not temporary are cached and the index is dropped by
+ * {@link RAbstractVector#invalidateElementHash()} on the paths that hand out a vector or its data
+ * for an update in place: {@link RAbstractVector#getNonShared()},
+ * {@link RAbstractVector#getDataNonShared()}, {@link RAbstractVector#setData(Object)}, the
+ * replacement of elements (including the {@code [[<-} and {@code [<-} specials), the reuse of a
+ * non-shared argument by {@code VectorReuse}, {@code SET_STRING_ELT} and the vector becoming
+ * temporary again. Vectors with a native mirror may be written by native code, the cache is not
+ * used for them.
+ *
+ * Building the index only pays off if it is used for more than a single lookup, so it is built and
+ * cached only by lookups of vectors with at least {@link #MIN_KEYS_LENGTH} elements. Lookups of a
+ * single element use an index that is already cached, but never build one.
+ */
+public final class ElementHashCache {
+
+    /**
+     * Tables shorter than this are hashed on each use, the cached index would not pay off.
+     */
+    public static final int MIN_CACHED_LENGTH = 1 << 10;
+
+    /**
+     * Lookups of fewer keys than this do not build the index of the table.
+     */
+    public static final int MIN_KEYS_LENGTH = 2;
+
+    private ElementHashCache() {
+        // only static members
+    }
+
+    /**
+     * Returns the cached hash of {@code table} if it is an instance of {@code hashClass}, otherwise
+     * {@code null}.
+     */
+    @TruffleBoundary
+    public static <T extends ElementHash> T get(RAbstractVector table, Class<T> hashClass) {
+        ElementHash hash = table.getCachedElementHash();
+        if (hash == null || hash.getClass() != hashClass || table.getNativeMirror() != null || hash.getLength() != table.getLength()) {
+            return null;
+        }
+        return hashClass.cast(hash);
+    }
+
+    /**
+     * Returns whether the index of {@code table} is kept once built.
+     */
+    @TruffleBoundary
+    public static boolean isCacheable(RAbstractVector table) {
+        // the index of a temporary vector would be dropped as soon as the vector is reused
+        return table.isShareable() && !table.isTemporary() && table.getNativeMirror() == null && table.getLength() >= MIN_CACHED_LENGTH;
+    }
+
+    /**
+     * Caches {@code hash}, which must have been built over the current elements of {@code table},
+     * if the table is {@link #isCacheable(RAbstractVector) cacheable}.
+     */
+    @TruffleBoundary
+    public static void put(RAbstractVector table, ElementHash hash) {
+        if (isCacheable(table)) {
+            table.setCachedElementHash(hash);
+        }
+    }
+
+    /**
+     * Returns the hash of {@code table}, building it if it is not cached. The new hash is cached if
+     * it is going to be used for the lookup of {@code keysLength} elements, see
+     * {@link #MIN_KEYS_LENGTH}.
+     */
+    @TruffleBoundary
+    public static IntElementHash getIntHash(RIntVector table, int keysLength) {
+        IntElementHash hash = get(table, IntElementHash.class);
+        if (hash == null) {
+            hash = new IntElementHash(table.getReadonlyData());
+            if (keysLength >= MIN_KEYS_LENGTH) {
+                put(table, hash);
+            }
+        }
+        return hash;
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2017, 2018, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2017, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -28,9 +28,23 @@ import java.util.WeakHashMap;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.r.runtime.nodes.RNode;
 
+/**
+ * Context wide cache of language closures. The closures are only weakly reachable from the cache,
+ * so that the entries go away together with the language objects that use them. The cache is
+ * accessed from all threads of the context, so it is split into independently locked stripes by
+ * the identity of the expression.
+ */
 public class LanguageClosureCache {
 
-    private final WeakHashMap<RNode, WeakReference<Closure>> cache = new WeakHashMap<>();
+    private static final int STRIPES = 16;
+
+    @SuppressWarnings("unchecked") private final WeakHashMap<RNode, WeakReference<Closure>>[] stripes = new WeakHashMap[STRIPES];
+
+    public LanguageClosureCache() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new WeakHashMap<>();
+        }
+    }
 
     /**
      * @param expr
@@ -43,13 +57,19 @@ public class LanguageClosureCache {
             return null;
         }
 
-        WeakReference<Closure> weakRef = cache.get(expr);
-        Closure result = weakRef != null ? weakRef.get() : null;
-        if (result == null) {
-            result = Closure.createLanguageClosure(expr);
-            cache.put(expr, new WeakReference<>(result));
+        WeakHashMap<RNode, WeakReference<Closure>> cache = stripes[System.identityHashCode(expr) & (STRIPES - 1)];
+        synchronized (cache) {
+            WeakReference<Closure> weakRef = cache.get(expr);
+            Closure result = weakRef != null ? weakRef.get() : null;
+            if (result == null) {
+                ClosureCache.recordMiss();
+                result = Closure.createLanguageClosure(expr);
+                cache.put(expr, new WeakReference<>(result));
+            } else {
+                ClosureCache.recordHit();
+            }
+            return result;
         }
-        return result;
     }
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2017, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2017, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -64,8 +64,13 @@ import java.lang.management.ManagementFactory;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 
 import static com.oracle.truffle.r.runtime.RLogger.LOGGER_RFFI;
@@ -120,20 +125,14 @@ public final class NativeDataAccess {
 
     /**
      * Wraps a handle (number) reserved for a {@link NativeMirror} that escaped to native memory.
-     * Takes care of putting and removing the mapping for that handle from {@link #nativeMirrors}.
+     * Takes care of removing the mapping for that handle from {@link #handles}.
      */
-    private static final class NativeHandleWrapper extends ReleasableWeakReference<RBaseObject> {
+    public static final class NativeHandleWrapper extends ReleasableWeakReference<RBaseObject> {
         private final long id;
 
         private NativeHandleWrapper(long id, RBaseObject referent) {
             super(referent);
             this.id = id;
-            addToMirrors(id);
-        }
-
-        @TruffleBoundary
-        private void addToMirrors(long thisId) {
-            nativeMirrors.put(thisId, this);
         }
 
         public long getId() {
@@ -147,7 +146,7 @@ public final class NativeDataAccess {
                 // anyway
                 nativeMirrorInfo.remove(id);
             }
-            nativeMirrors.remove(id, this);
+            handles.remove(this);
         }
     }
 
@@ -225,7 +224,7 @@ public final class NativeDataAccess {
             assert !(ownerVec instanceof RForeignObjectWrapper);
             delegate = ownerVec;
             if (address != 0) {
-                this.nativeHandle = new NativeHandleWrapper(address, ownerVec);
+                this.nativeHandle = handles.addAddress(address, ownerVec);
                 setDataAddress(address);
             }
         }
@@ -241,15 +240,14 @@ public final class NativeDataAccess {
         @TruffleBoundary
         private void initMirror() {
             assert nativeHandle == null;
-            long id = counter.addAndGet(2);
-            nativeHandle = new NativeHandleWrapper(id, delegate);
+            nativeHandle = handles.add(delegate);
         }
 
         @TruffleBoundary
         private void initMirror(long address) {
             assert nativeHandle == null;
             assert address != 0;
-            this.nativeHandle = new NativeHandleWrapper(address, delegate);
+            this.nativeHandle = handles.addAddress(address, delegate);
             setDataAddress(address);
         }
 
@@ -325,6 +323,29 @@ public final class NativeDataAccess {
             if (vectorLength != 0) {
                 setDataAddress(NativeMemory.allocate(type, elementsCount, source));
                 NativeMemory.copyMemory(source, dataAddress, type, elementsCount);
+                traceCopyToNative(elementsCount * type.getBytes());
+            } else {
+                setExternalDataAddress(getEmptyDataAddress());
+            }
+            this.length = vectorLength;
+
+            // ensure that marker address is not used
+            assert this.length == 0 || dataAddress.getAddress() != getEmptyDataAddress();
+        }
+
+        /**
+         * Converts the logical values directly into the int-sized native representation, there is
+         * no intermediate int array.
+         */
+        @TruffleBoundary
+        void allocateNativeLogical(byte[] source, int vectorLength) {
+            assert getDataAddress() == 0;
+            if (vectorLength != 0) {
+                NativeMemoryWrapper addr = setDataAddress(NativeMemory.allocate(ElementType.INT, source.length, source));
+                for (int i = 0; i < source.length; i++) {
+                    NativeMemory.putInt(addr, i, RRuntime.logical2int(source[i]));
+                }
+                traceCopyToNative((long) source.length * Integer.BYTES);
             } else {
                 setExternalDataAddress(getEmptyDataAddress());
             }
@@ -334,6 +355,17 @@ public final class NativeDataAccess {
             assert this.length == 0 || dataAddress.getAddress() != getEmptyDataAddress();
         }
 
+        @TruffleBoundary
+        void allocateNativeFirst(int vectorLength, long elementsCount, ElementType type) {
+            assert getDataAddress() == 0;
+            if (vectorLength != 0) {
+                setDataAddress(NativeMemory.allocateZeroed(type, elementsCount, "NativeFirst"));
+            } else {
+                setExternalDataAddress(getEmptyDataAddress());
+            }
+            this.length = vectorLength;
+        }
+
         @TruffleBoundary
         void initializeAltrep(RBaseObject altrepVec, long address, int altrepLength) {
             assert altrepVec.isAltRep();
@@ -351,6 +383,7 @@ public final class NativeDataAccess {
             // append C strings termination
             NativeMemory.putByte(dataAddress, bytes.length, (byte) 0);
             this.length = bytes.length + 1;
+            traceCopyToNative(bytes.length);
 
             // ensure that marker address is not used
             assert dataAddress.getAddress() != getEmptyDataAddress();
@@ -396,16 +429,234 @@ public final class NativeDataAccess {
         }
     }
 
-    // The map from handles sent to the native code to the RBaseObjects they represent
-    // The counter is initialized to invalid address and incremented by 2 to always get invalid
-    // address value
-    private static final AtomicLong counter = new AtomicLong(0xdef000000000001L);
-    private static final ConcurrentHashMap<Long, NativeHandleWrapper> nativeMirrors = new ConcurrentHashMap<>(512);
+    /**
+     * The table of handles sent to the native code and the {@link RBaseObject}s they represent.
+     * <p>
+     * A handle encodes the index of its slot and a generation that is incremented whenever the
+     * slot is reused. It is an odd number (i.e., an invalid address) within the
+     * {@link #HANDLE_BASE} range, so it cannot clash with the real addresses of
+     * {@link CustomNativeMirror}s, which are kept in a separate map. Slots live in segments that
+     * are never moved, so lookups need neither locking nor boxing of the handle. Each thread takes
+     * handles from its own block, and the handles of collected objects are returned in blocks by
+     * the {@code ResourcesCleaner} thread, so the shared state is only touched once per block.
+     * <p>
+     * The generation has {@link #GENERATION_BITS} bits and wraps around, so a stale handle is only
+     * recognized as long as its slot was not reused {@code 2^GENERATION_BITS} (524288) times since.
+     * <p>
+     * Public for the unit tests, the runtime only uses a single table.
+     */
+    public static final class HandleTable {
+        private static final long HANDLE_BASE = 0xdef000000000000L;
+        private static final long HANDLE_TAG_MASK = ~((1L << 48) - 1);
+        // the lowest bit is the tag of a table handle, then the index and the generation
+        private static final int INDEX_BITS = 28;
+        private static final int GENERATION_BITS = 48 - INDEX_BITS - 1;
+        private static final long GENERATION_MASK = (1L << GENERATION_BITS) - 1;
+
+        private static final int SEGMENT_BITS = 12;
+        private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+        private static final int BLOCK_SIZE = 64;
+
+        private volatile AtomicReferenceArray<NativeHandleWrapper>[] segments = newSpine(16);
+        private final AtomicInteger nextIndex = new AtomicInteger();
+
+        /**
+         * Blocks of released handles, each already carrying the next generation of its slot.
+         */
+        private final ArrayDeque<long[]> freeBlocks = new ArrayDeque<>();
+        private long[] releasedBlock = new long[BLOCK_SIZE];
+        private int releasedCount;
+
+        private final ThreadLocal<HandleBlock> threadBlock = ThreadLocal.withInitial(HandleBlock::new);
+
+        private final ConcurrentHashMap<Long, NativeHandleWrapper> addressHandles = new ConcurrentHashMap<>();
+
+        // the rest of a block is lost when its thread terminates, which is at most BLOCK_SIZE handles
+        private static final class HandleBlock {
+            private long[] handles = new long[0];
+            private int position;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static AtomicReferenceArray<NativeHandleWrapper>[] newSpine(int length) {
+            return new AtomicReferenceArray[length];
+        }
+
+        private static boolean isTableHandle(long handle) {
+            return (handle & HANDLE_TAG_MASK) == HANDLE_BASE && (handle & 1) == 1;
+        }
+
+        private static int getIndex(long handle) {
+            return (int) ((handle >>> 1) & ((1L << INDEX_BITS) - 1));
+        }
+
+        private static long createHandle(int index, long generation) {
+            return HANDLE_BASE | ((generation & GENERATION_MASK) << (INDEX_BITS + 1)) | ((long) index << 1) | 1;
+        }
+
+        private static long getGeneration(long handle) {
+            return (handle >>> (INDEX_BITS + 1)) & GENERATION_MASK;
+        }
+
+        @TruffleBoundary
+        public NativeHandleWrapper add(RBaseObject referent) {
+            long handle = nextHandle();
+            NativeHandleWrapper wrapper = new NativeHandleWrapper(handle, referent);
+            getSegment(getIndex(handle)).set(getIndex(handle) & (SEGMENT_SIZE - 1), wrapper);
+            return wrapper;
+        }
+
+        @TruffleBoundary
+        NativeHandleWrapper addAddress(long address, RBaseObject referent) {
+            assert !isTableHandle(address);
+            NativeHandleWrapper wrapper = new NativeHandleWrapper(address, referent);
+            addressHandles.put(address, wrapper);
+            return wrapper;
+        }
+
+        public NativeHandleWrapper get(long handle) {
+            if (isTableHandle(handle)) {
+                int index = getIndex(handle);
+                AtomicReferenceArray<NativeHandleWrapper> segment = findSegment(index);
+                if (segment != null) {
+                    NativeHandleWrapper wrapper = segment.get(index & (SEGMENT_SIZE - 1));
+                    // a stale handle of a reused slot has an older generation
+                    return wrapper != null && wrapper.getId() == handle ? wrapper : null;
+                }
+                return null;
+            }
+            return addressHandles.get(handle);
+        }
+
+        public void remove(NativeHandleWrapper wrapper) {
+            long handle = wrapper.getId();
+            if (isTableHandle(handle)) {
+                int index = getIndex(handle);
+                AtomicReferenceArray<NativeHandleWrapper> segment = findSegment(index);
+                if (segment != null && segment.compareAndSet(index & (SEGMENT_SIZE - 1), wrapper, null)) {
+                    release(createHandle(index, getGeneration(handle) + 1));
+                }
+            } else {
+                addressHandles.remove(handle, wrapper);
+            }
+        }
+
+        public int size() {
+            int result = addressHandles.size();
+            for (AtomicReferenceArray<NativeHandleWrapper> segment : segments) {
+                if (segment != null) {
+                    for (int i = 0; i < SEGMENT_SIZE; i++) {
+                        if (segment.get(i) != null) {
+                            result++;
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        public long getAllocatedCount() {
+            return nextIndex.get();
+        }
+
+        private long nextHandle() {
+            HandleBlock block = threadBlock.get();
+            if (block.position == block.handles.length) {
+                block.handles = takeBlock();
+                block.position = 0;
+            }
+            return block.handles[block.position++];
+        }
+
+        private long[] takeBlock() {
+            synchronized (freeBlocks) {
+                long[] free = freeBlocks.poll();
+                if (free != null) {
+                    return free;
+                }
+            }
+            int start = nextIndex.getAndAdd(BLOCK_SIZE);
+            if (start < 0 || start > (1 << INDEX_BITS) - BLOCK_SIZE) {
+                throw RInternalError.shouldNotReachHere("native handle table exhausted");
+            }
+            long[] block = new long[BLOCK_SIZE];
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                block[i] = createHandle(start + i, 0);
+            }
+            ensureSegment(start + BLOCK_SIZE - 1);
+            return block;
+        }
+
+        private void release(long nextHandle) {
+            long[] full = null;
+            synchronized (this) {
+                releasedBlock[releasedCount++] = nextHandle;
+                if (releasedCount == BLOCK_SIZE) {
+                    full = releasedBlock;
+                    releasedBlock = new long[BLOCK_SIZE];
+                    releasedCount = 0;
+                }
+            }
+            if (full != null) {
+                synchronized (freeBlocks) {
+                    freeBlocks.push(full);
+                }
+            }
+        }
+
+        private AtomicReferenceArray<NativeHandleWrapper> getSegment(int index) {
+            return segments[index >>> SEGMENT_BITS];
+        }
+
+        /**
+         * Returns the segment of the slot at {@code index} or {@code null} if the handle was not
+         * allocated by this table.
+         */
+        private AtomicReferenceArray<NativeHandleWrapper> findSegment(int index) {
+            AtomicReferenceArray<NativeHandleWrapper>[] spine = segments;
+            int segment = index >>> SEGMENT_BITS;
+            return segment < spine.length ? spine[segment] : null;
+        }
+
+        private synchronized void ensureSegment(int index) {
+            int segment = index >>> SEGMENT_BITS;
+            AtomicReferenceArray<NativeHandleWrapper>[] spine = segments;
+            if (segment >= spine.length) {
+                spine = Arrays.copyOf(spine, Math.max(spine.length * 2, segment + 1));
+            }
+            if (spine[segment] == null) {
+                spine[segment] = new AtomicReferenceArray<>(SEGMENT_SIZE);
+            }
+            // publish the segment (and a grown spine) before any handle in it is handed out
+            segments = spine;
+        }
+    }
+
+    private static final HandleTable handles = new HandleTable();
 
     // For debugging purposes:
     private static final ConcurrentHashMap<Long, NativeMirror> dataAddressToNativeMirrors = System.getenv(FastROptions.NATIVE_DATA_INSPECTOR) != null ? new ConcurrentHashMap<>(512) : null;
     private static final ConcurrentHashMap<Long, RuntimeException> nativeMirrorInfo = TRACE_MIRROR_ALLOCATION_SITES ? new ConcurrentHashMap<>() : null;
 
+    // Counters of the data copied between Java and native memory, reported by the
+    // NativeDataInspector and only maintained when it is active
+    private static final boolean TRACE_DATA_COPIES = System.getenv(FastROptions.NATIVE_DATA_INSPECTOR) != null;
+    private static final LongAdder bytesCopiedToNative = new LongAdder();
+    private static final LongAdder bytesCopiedFromNative = new LongAdder();
+    private static final LongAdder nativeFirstAllocations = new LongAdder();
+
+    private static void traceCopyToNative(long bytes) {
+        if (TRACE_DATA_COPIES) {
+            bytesCopiedToNative.add(bytes);
+        }
+    }
+
+    private static void traceCopyFromNative(long bytes) {
+        if (TRACE_DATA_COPIES) {
+            bytesCopiedFromNative.add(bytes);
+        }
+    }
+
     public static NativeMirror createNativeMirror(RBaseObject obj) {
         assert obj.getNativeMirror() == null;
         NativeMirror mirror = new NativeMirror(obj, 0);
@@ -491,7 +742,7 @@ public final class NativeDataAccess {
      */
     @TruffleBoundary
     public static Object lookup(long address) {
-        NativeHandleWrapper nativeMirror = nativeMirrors.get(address);
+        NativeHandleWrapper nativeMirror = handles.get(address);
         RBaseObject result = nativeMirror != null ? nativeMirror.get() : null;
         if (result == null) {
             CompilerDirectives.transferToInterpreter();
@@ -504,7 +755,7 @@ public final class NativeDataAccess {
         if (TRACE_MIRROR_ALLOCATION_SITES) {
             printDataAccessErrorLocation(address);
         }
-        throw RInternalError.shouldNotReachHere("unknown native reference " + address + "L / 0x" + Long.toHexString(address) + " (current id count: " + Long.toHexString(counter.get()) + ")");
+        throw RInternalError.shouldNotReachHere("unknown native reference " + address + "L / 0x" + Long.toHexString(address) + " (handles allocated: " + handles.getAllocatedCount() + ")");
     }
 
     private static void printDataAccessErrorLocation(long address) {
@@ -642,6 +893,7 @@ public final class NativeDataAccess {
         assert mirror.getDataAddress() != 0;
         double[] data = new double[(int) mirror.length];
         NativeMemory.copyMemory(mirror.dataAddress, data, ElementType.DOUBLE, data.length);
+        traceCopyFromNative((long) data.length * Double.BYTES);
         return data;
     }
 
@@ -649,6 +901,7 @@ public final class NativeDataAccess {
         assert mirror.getDataAddress() != 0;
         double[] data = new double[(int) (mirror.length << 1)];
         NativeMemory.copyMemory(mirror.dataAddress, data, ElementType.DOUBLE, data.length);
+        traceCopyFromNative((long) data.length * Double.BYTES);
         return data;
     }
 
@@ -656,13 +909,45 @@ public final class NativeDataAccess {
         assert mirror.getDataAddress() != 0;
         int[] data = new int[(int) mirror.length];
         NativeMemory.copyMemory(mirror.dataAddress, data, ElementType.INT, data.length);
+        traceCopyFromNative((long) data.length * Integer.BYTES);
         return data;
     }
 
+    public static int copyDoubleNativeRegion(NativeMirror mirror, int startIndex, int size, double[] buffer) {
+        assert mirror.getDataAddress() != 0;
+        int count = (int) Math.max(0, Math.min(size, mirror.length - startIndex));
+        NativeMemory.copyRegion(mirror.dataAddress, startIndex, buffer, ElementType.DOUBLE, count);
+        traceCopyFromNative((long) count * Double.BYTES);
+        return count;
+    }
+
+    public static int copyIntNativeRegion(NativeMirror mirror, int startIndex, int size, int[] buffer) {
+        assert mirror.getDataAddress() != 0;
+        int count = (int) Math.max(0, Math.min(size, mirror.length - startIndex));
+        NativeMemory.copyRegion(mirror.dataAddress, startIndex, buffer, ElementType.INT, count);
+        traceCopyFromNative((long) count * Integer.BYTES);
+        return count;
+    }
+
+    public static void setDoubleNativeRegion(NativeMirror mirror, int startIndex, int size, double[] buffer) {
+        assert mirror.getDataAddress() != 0;
+        assert startIndex + size <= mirror.length;
+        NativeMemory.copyRegion(buffer, mirror.dataAddress, startIndex, ElementType.DOUBLE, size);
+        traceCopyToNative((long) size * Double.BYTES);
+    }
+
+    public static void setIntNativeRegion(NativeMirror mirror, int startIndex, int size, int[] buffer) {
+        assert mirror.getDataAddress() != 0;
+        assert startIndex + size <= mirror.length;
+        NativeMemory.copyRegion(buffer, mirror.dataAddress, startIndex, ElementType.INT, size);
+        traceCopyToNative((long) size * Integer.BYTES);
+    }
+
     public static byte[] copyByteNativeData(NativeMirror mirror) {
         assert mirror.getDataAddress() != 0;
         byte[] data = new byte[(int) mirror.length];
         NativeMemory.copyMemory(mirror.dataAddress, data, ElementType.BYTE, data.length);
+        traceCopyFromNative(data.length);
         return data;
     }
 
@@ -1194,16 +1479,42 @@ public final class NativeDataAccess {
         assert mirror.dataAddress == null ^ data == null : mirror;
         if (mirror.dataAddress == null) {
             assert mirror.length == 0 && mirror.truelength == 0 : "mirror.length=" + mirror.length + ", mirror.truelength=" + mirror.truelength;
-            int[] intArray = new int[data.length];
-            for (int i = 0; i < data.length; i++) {
-                intArray[i] = RRuntime.logical2int(data[i]);
-            }
             noLogicalNative.invalidate();
-            mirror.allocateNative(intArray, length, data.length, ElementType.INT);
+            mirror.allocateNativeLogical(data, length);
         }
         return mirror.dataAddress.getAddress();
     }
 
+    /**
+     * Allocates the contents of a vector that has no Java array directly in zeroed native memory.
+     * This is used for vectors created by native code, which will most likely access their data
+     * through {@code INTEGER}, {@code LOGICAL} or {@code REAL} anyway. Logical vectors are int
+     * sized in native memory, so they are handed to native code without any conversion.
+     */
+    static void allocateNativeFirstContents(RLogicalVector vector, int length) {
+        noLogicalNative.invalidate();
+        allocateNativeFirstContents(vector.getNativeMirror(), length, ElementType.INT);
+    }
+
+    static void allocateNativeFirstContents(RIntVector vector, int length) {
+        noIntNative.invalidate();
+        allocateNativeFirstContents(vector.getNativeMirror(), length, ElementType.INT);
+    }
+
+    static void allocateNativeFirstContents(RDoubleVector vector, int length) {
+        noDoubleNative.invalidate();
+        allocateNativeFirstContents(vector.getNativeMirror(), length, ElementType.DOUBLE);
+    }
+
+    private static void allocateNativeFirstContents(NativeMirror mirror, int length, ElementType type) {
+        assert mirror != null;
+        assert mirror.dataAddress == null : mirror;
+        mirror.allocateNativeFirst(length, length, type);
+        if (TRACE_DATA_COPIES) {
+            nativeFirstAllocations.increment();
+        }
+    }
+
     static long allocateNativeContents(RIntVector vector, int[] data, int length) {
         NativeMirror mirror = vector.getNativeMirror();
         assert mirror != null;
@@ -1415,6 +1726,14 @@ public final class NativeDataAccess {
         String getAttribute(String idString, String attrName);
 
         String getNativeIdFromAddress(String dataAddressString);
+
+        long getBytesCopiedToNative();
+
+        long getBytesCopiedFromNative();
+
+        long getNativeFirstAllocations();
+
+        void resetCopyCounters();
     }
 
     public static class NativeDataInspector implements NativeDataInspectorMBean {
@@ -1436,7 +1755,7 @@ public final class NativeDataAccess {
 
         @Override
         public int getNativeMirrorsSize() {
-            return NativeDataAccess.nativeMirrors.size();
+            return NativeDataAccess.handles.size();
         }
 
         @Override
@@ -1450,6 +1769,27 @@ public final class NativeDataAccess {
             return String.format("%16x", id);
         }
 
+        @Override
+        public long getBytesCopiedToNative() {
+            return bytesCopiedToNative.sum();
+        }
+
+        @Override
+        public long getBytesCopiedFromNative() {
+            return bytesCopiedFromNative.sum();
+        }
+
+        @Override
+        public long getNativeFirstAllocations() {
+            return nativeFirstAllocations.sum();
+        }
+
+        @Override
+        public void resetCopyCounters() {
+            bytesCopiedToNative.reset();
+            bytesCopiedFromNative.reset();
+            nativeFirstAllocations.reset();
+        }
     }
 
     static void initMBean() {
@@ -98,6 +98,35 @@ public class RAltIntVectorData extends RAltrepNumericVectorData {
         }
     }
 
+    @ExportMessage
+    public static class ReadIntRegion {
+        @Specialization(guards = "!hasEltMethodRegistered(altIntVecData.owner)")
+        public static int doWithDataptr(RAltIntVectorData altIntVecData, int startIdx, int size, int[] buffer,
+                        @Shared("dataptrNode") @Cached AltrepRFFI.DataptrNode dataptrNode,
+                        @Shared("lengthNode") @Cached AltrepRFFI.LengthNode lengthNode) {
+            int count = Math.max(0, Math.min(size, lengthNode.execute(altIntVecData.owner) - startIdx));
+            long dataptrAddr = dataptrNode.execute(altIntVecData.owner, false);
+            NativeMemory.copyRegion(dataptrAddr, startIdx, buffer, ElementType.INT, count);
+            return count;
+        }
+
+        @Specialization(guards = "hasEltMethodRegistered(altIntVecData.owner)")
+        public static int doWithElt(RAltIntVectorData altIntVecData, int startIdx, int size, int[] buffer,
+                        @Shared("lengthNode") @Cached AltrepRFFI.LengthNode lengthNode,
+                        @Shared("getIntAtNode") @Cached GetIntAtNode getIntAtNode,
+                        @Shared("naCheck") @Cached NACheck naCheck) {
+            int count = Math.max(0, Math.min(size, lengthNode.execute(altIntVecData.owner) - startIdx));
+            for (int i = 0; i < count; i++) {
+                buffer[i] = altIntVecData.getIntAt(startIdx + i, getIntAtNode, naCheck);
+            }
+            return count;
+        }
+
+        protected static boolean hasEltMethodRegistered(Object owner) {
+            return AltrepUtilities.hasEltMethodRegistered(owner);
+        }
+    }
+
     @ExportMessage
     public int[] getIntDataCopy(@Cached AltrepDuplicateNode duplicateNode,
                     @Shared("dataptrNode") @Cached AltrepRFFI.DataptrNode dataptrNode,
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2020, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -41,6 +41,7 @@ import com.oracle.truffle.r.runtime.data.VectorDataLibrary.SeqIterator;
 import com.oracle.truffle.r.runtime.data.VectorDataLibrary.RandomAccessIterator;
 import com.oracle.truffle.r.runtime.ffi.AltrepRFFI;
 import com.oracle.truffle.r.runtime.ffi.util.NativeMemory;
+import com.oracle.truffle.r.runtime.ffi.util.NativeMemory.ElementType;
 import com.oracle.truffle.r.runtime.ops.na.NACheck;
 
 @ExportLibrary(VectorDataLibrary.class)
@@ -93,6 +94,35 @@ public class RAltRealVectorData extends RAltrepNumericVectorData {
         }
     }
 
+    @ExportMessage
+    public static class ReadDoubleRegion {
+        @Specialization(guards = "!hasEltMethodRegistered(altRealVecData.owner)")
+        public static int doWithDataptr(RAltRealVectorData altRealVecData, int startIdx, int size, double[] buffer,
+                        @Shared("dataptrNode") @Cached AltrepRFFI.DataptrNode dataptrNode,
+                        @Shared("lengthNode") @Cached AltrepRFFI.LengthNode lengthNode) {
+            int count = Math.max(0, Math.min(size, lengthNode.execute(altRealVecData.owner) - startIdx));
+            long dataptrAddr = dataptrNode.execute(altRealVecData.owner, false);
+            NativeMemory.copyRegion(dataptrAddr, startIdx, buffer, ElementType.DOUBLE, count);
+            return count;
+        }
+
+        @Specialization(guards = "hasEltMethodRegistered(altRealVecData.owner)")
+        public static int doWithElt(RAltRealVectorData altRealVecData, int startIdx, int size, double[] buffer,
+                        @Shared("lengthNode") @Cached AltrepRFFI.LengthNode lengthNode,
+                        @Shared("getDoubleAtNode") @Cached GetDoubleAtNode getDoubleAtNode,
+                        @Shared("naCheck") @Cached NACheck naCheck) {
+            int count = Math.max(0, Math.min(size, lengthNode.execute(altRealVecData.owner) - startIdx));
+            for (int i = 0; i < count; i++) {
+                buffer[i] = altRealVecData.getDoubleAt(startIdx + i, getDoubleAtNode, naCheck);
+            }
+            return count;
+        }
+
+        protected static boolean hasEltMethodRegistered(Object owner) {
+            return AltrepUtilities.hasEltMethodRegistered(owner);
+        }
+    }
+
     @ExportMessage
     public double[] getDoubleDataCopy() {
         throw RInternalError.unimplemented();
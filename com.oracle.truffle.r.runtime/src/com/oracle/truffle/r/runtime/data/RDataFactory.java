@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -693,8 +693,11 @@ public final class RDataFactory {
 
         @TruffleBoundary
         public final REnvironment createNewEnv(String name, boolean hashed, int initialSize) {
-            REnvironment.NewEnv env = new REnvironment.NewEnv(RRuntime.createNonFunctionFrame("<new-env-" + environmentCount.incrementAndGet() + ">"), name);
-            env.setHashed(hashed);
+            MaterializedFrame frame = RRuntime.createNonFunctionFrame("<new-env-" + environmentCount.incrementAndGet() + ">");
+            if (hashed) {
+                return traceDataCreated(new REnvironment.NewEnv(frame, name, initialSize));
+            }
+            REnvironment.NewEnv env = new REnvironment.NewEnv(frame, name);
             env.setInitialSize(initialSize);
             return traceDataCreated(env);
         }
@@ -764,6 +767,10 @@ public final class RDataFactory {
         return traceDataCreated(RIntVector.fromNative(address, length));
     }
 
+    public static RIntVector createIntVectorNativeFirst(int length) {
+        return traceDataCreated(RIntVector.createNativeFirst(length));
+    }
+
     public static RIntVector createIntVector(int length) {
         return createIntVector(length, false);
     }
@@ -800,6 +807,10 @@ public final class RDataFactory {
         return traceDataCreated(RDoubleVector.fromNative(address, length));
     }
 
+    public static RDoubleVector createDoubleVectorNativeFirst(int length) {
+        return traceDataCreated(RDoubleVector.createNativeFirst(length));
+    }
+
     public static RDoubleVector createDoubleVector(int length) {
         return createDoubleVector(length, false);
     }
@@ -941,6 +952,10 @@ public final class RDataFactory {
         return traceDataCreated(RLogicalVector.fromNative(address, length));
     }
 
+    public static RLogicalVector createLogicalVectorNativeFirst(int length) {
+        return traceDataCreated(RLogicalVector.createNativeFirst(length));
+    }
+
     public static RLogicalVector createLogicalVector(int length) {
         return createLogicalVector(length, false);
     }
@@ -1303,8 +1318,11 @@ public final class RDataFactory {
 
     @TruffleBoundary
     public static REnvironment createNewEnv(String name, boolean hashed, int initialSize) {
-        REnvironment.NewEnv env = new REnvironment.NewEnv(RRuntime.createNonFunctionFrame("<new-env-" + environmentCount.incrementAndGet() + ">"), name);
-        env.setHashed(hashed);
+        MaterializedFrame frame = RRuntime.createNonFunctionFrame("<new-env-" + environmentCount.incrementAndGet() + ">");
+        if (hashed) {
+            return traceDataCreated(new REnvironment.NewEnv(frame, name, initialSize));
+        }
+        REnvironment.NewEnv env = new REnvironment.NewEnv(frame, name);
         env.setInitialSize(initialSize);
         return traceDataCreated(env);
     }
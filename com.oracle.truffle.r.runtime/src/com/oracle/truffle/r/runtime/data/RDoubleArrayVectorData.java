@@ -101,6 +101,13 @@ public class RDoubleArrayVectorData implements TruffleObject {
         return Arrays.copyOf(data, data.length);
     }
 
+    @ExportMessage
+    public int readDoubleRegion(int startIndex, int size, double[] buffer) {
+        int count = Math.max(0, Math.min(size, data.length - startIndex));
+        System.arraycopy(data, startIndex, buffer, 0, count);
+        return count;
+    }
+
     // Read access to the elements:
 
     @ExportMessage
@@ -185,6 +192,13 @@ public class RDoubleArrayVectorData implements TruffleObject {
         }
     }
 
+    @ExportMessage
+    public void writeDoubleRegion(int startIndex, int size, double[] buffer, boolean neverSeenNA,
+                    @Shared("setCompleteProfile") @Cached BranchProfile setCompleteProfile) {
+        System.arraycopy(buffer, 0, data, startIndex, size);
+        commitWrites(neverSeenNA, setCompleteProfile);
+    }
+
     @ExportMessage
     public void setDoubleAt(int index, double value, @Shared("setCompleteProfile") @Cached BranchProfile setCompleteProfile) {
         data[index] = value;
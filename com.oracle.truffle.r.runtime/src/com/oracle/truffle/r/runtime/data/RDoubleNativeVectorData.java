@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2019, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2019, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -91,6 +91,11 @@ public class RDoubleNativeVectorData implements TruffleObject {
         return NativeDataAccess.copyDoubleNativeData(vec.getNativeMirror());
     }
 
+    @ExportMessage
+    public int readDoubleRegion(int startIndex, int size, double[] buffer) {
+        return NativeDataAccess.copyDoubleNativeRegion(vec.getNativeMirror(), startIndex, size, buffer);
+    }
+
     // Read access to the elements:
     // TODO: actually use the store in the iterator, which should be just the "address" (Long)
 
@@ -164,6 +169,11 @@ public class RDoubleNativeVectorData implements TruffleObject {
         NativeDataAccess.setData(vec, null, index, value);
     }
 
+    @ExportMessage
+    public void writeDoubleRegion(int startIndex, int size, double[] buffer, @SuppressWarnings("unused") boolean neverSeenNA) {
+        NativeDataAccess.setDoubleNativeRegion(vec.getNativeMirror(), startIndex, size, buffer);
+    }
+
     @ExportMessage
     public void setNextDouble(SeqWriteIterator it, double value) {
         NativeDataAccess.setData(vec, null, it.getIndex(), value);
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2020, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -117,6 +117,17 @@ public class RDoubleSeqVectorData implements RSeq, TruffleObject {
         return getDataAsArray(length);
     }
 
+    @ExportMessage
+    public int readDoubleRegion(int startIndex, int size, double[] buffer) {
+        int count = Math.max(0, Math.min(size, length - startIndex));
+        double startLocal = start;
+        double strideLocal = stride;
+        for (int i = 0; i < count; i++) {
+            buffer[i] = startLocal + strideLocal * (startIndex + i);
+        }
+        return count;
+    }
+
     // Read access to the elements:
 
     @ExportMessage
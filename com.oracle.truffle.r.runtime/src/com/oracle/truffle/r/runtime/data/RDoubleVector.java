@@ -117,6 +117,14 @@ public final class RDoubleVector extends RAbstractNumericVector implements RMate
         return result;
     }
 
+    static RDoubleVector createNativeFirst(int length) {
+        RDoubleVector result = new RDoubleVector();
+        NativeDataAccess.toNative(result);
+        NativeDataAccess.allocateNativeFirstContents(result, length);
+        result.setData(new RDoubleNativeVectorData(result), length);
+        return result;
+    }
+
     @Override
     @Ignore // AbstractContainerLibrary
     public boolean isMaterialized() {
@@ -101,6 +101,13 @@ public class RIntArrayVectorData implements TruffleObject {
         return Arrays.copyOf(data, data.length);
     }
 
+    @ExportMessage
+    public int readIntRegion(int startIndex, int size, int[] buffer) {
+        int count = Math.max(0, Math.min(size, data.length - startIndex));
+        System.arraycopy(data, startIndex, buffer, 0, count);
+        return count;
+    }
+
     // Read access to the elements:
 
     @ExportMessage
@@ -186,6 +193,13 @@ public class RIntArrayVectorData implements TruffleObject {
         }
     }
 
+    @ExportMessage
+    public void writeIntRegion(int startIndex, int size, int[] buffer, boolean neverSeenNA,
+                    @Shared("setCompleteProfile") @Cached BranchProfile setCompleteProfile) {
+        System.arraycopy(buffer, 0, data, startIndex, size);
+        commitWrites(neverSeenNA, setCompleteProfile);
+    }
+
     @ExportMessage
     public void setIntAt(int index, int value, @Shared("setCompleteProfile") @Cached BranchProfile setCompleteProfile) {
         data[index] = value;
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2019, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2019, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -91,6 +91,11 @@ public class RIntNativeVectorData implements TruffleObject {
         return NativeDataAccess.copyIntNativeData(vec.getNativeMirror());
     }
 
+    @ExportMessage
+    public int readIntRegion(int startIndex, int size, int[] buffer) {
+        return NativeDataAccess.copyIntNativeRegion(vec.getNativeMirror(), startIndex, size, buffer);
+    }
+
     // Read access to the elements:
     // TODO: actually use the store in the iterator, which should be just the "address" (Long) or
     // maybe add a specialized field to the iterator
@@ -166,6 +171,11 @@ public class RIntNativeVectorData implements TruffleObject {
         NativeDataAccess.setData(vec, null, index, value);
     }
 
+    @ExportMessage
+    public void writeIntRegion(int startIndex, int size, int[] buffer, @SuppressWarnings("unused") boolean neverSeenNA) {
+        NativeDataAccess.setIntNativeRegion(vec.getNativeMirror(), startIndex, size, buffer);
+    }
+
     @ExportMessage
     public void setNextInt(SeqWriteIterator it, int value) {
         NativeDataAccess.setData(vec, null, it.getIndex(), value);
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2019, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2019, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -142,6 +142,17 @@ public class RIntSeqVectorData implements RSeq, TruffleObject {
         return getDataAsArray(length, naCheck);
     }
 
+    @ExportMessage
+    public int readIntRegion(int startIndex, int size, int[] buffer) {
+        int count = Math.max(0, Math.min(size, length - startIndex));
+        int first = start + stride * startIndex;
+        int strideLocal = stride;
+        for (int i = 0; i < count; i++) {
+            buffer[i] = first + strideLocal * i;
+        }
+        return count;
+    }
+
     // Read access to the elements:
 
     @ExportMessage
@@ -91,6 +91,14 @@ public final class RIntVector extends RAbstractNumericVector {
         return result;
     }
 
+    static RIntVector createNativeFirst(int length) {
+        RIntVector result = new RIntVector();
+        NativeDataAccess.toNative(result);
+        NativeDataAccess.allocateNativeFirstContents(result, length);
+        result.setData(new RIntNativeVectorData(result), length);
+        return result;
+    }
+
     public static RIntVector createSequence(int start, int stride, int length) {
         return new RIntVector(new RIntSeqVectorData(start, stride, length), length);
     }
@@ -102,6 +102,13 @@ class RLogicalArrayVectorData implements TruffleObject {
         return Arrays.copyOf(data, data.length);
     }
 
+    @ExportMessage
+    public int readLogicalRegion(int startIndex, int size, byte[] buffer) {
+        int count = Math.max(0, Math.min(size, data.length - startIndex));
+        System.arraycopy(data, startIndex, buffer, 0, count);
+        return count;
+    }
+
     // Read access to the elements:
 
     @ExportMessage
@@ -188,6 +195,13 @@ class RLogicalArrayVectorData implements TruffleObject {
         }
     }
 
+    @ExportMessage
+    public void writeLogicalRegion(int startIndex, int size, byte[] buffer, boolean neverSeenNA,
+                    @Shared("setCompleteProfile") @Cached BranchProfile setCompleteProfile) {
+        System.arraycopy(buffer, 0, data, startIndex, size);
+        commitWrites(neverSeenNA, setCompleteProfile);
+    }
+
     @ExportMessage
     public void setLogicalAt(int index, byte value, @Shared("setCompleteProfile") @Cached BranchProfile setCompleteProfile) {
         data[index] = value;
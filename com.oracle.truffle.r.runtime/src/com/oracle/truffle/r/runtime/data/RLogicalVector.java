@@ -107,6 +107,14 @@ public final class RLogicalVector extends RAbstractAtomicVector implements RMate
         return result;
     }
 
+    static RLogicalVector createNativeFirst(int length) {
+        RLogicalVector result = new RLogicalVector();
+        NativeDataAccess.toNative(result);
+        NativeDataAccess.allocateNativeFirstContents(result, length);
+        result.setData(new RLogicalNativeVectorData(result), length);
+        return result;
+    }
+
     @ExportMessage
     boolean isNull(
                     @CachedLibrary(limit = DATA_LIB_LIMIT) VectorDataLibrary dataLib,
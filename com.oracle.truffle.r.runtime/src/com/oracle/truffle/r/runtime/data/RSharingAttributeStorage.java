@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2015, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2015, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -94,7 +94,17 @@ public abstract class RSharingAttributeStorage extends RAttributable {
     public final void decRefCount() {
         assert refCount != SHARED_PERMANENT_VAL : "cannot decRefCount of shared permanent value";
         assert refCount > 0 : "cannot decRefCount when refCount <= 0";
-        refCount--;
+        if (--refCount == 0) {
+            becameTemporary();
+        }
+    }
+
+    /**
+     * Invoked when this object becomes temporary again, i.e. when it may be updated in place by the
+     * next operation that consumes it.
+     */
+    protected void becameTemporary() {
+        // nothing to do by default
     }
 
     public final boolean isSharedPermanent() {
@@ -118,6 +128,7 @@ public abstract class RSharingAttributeStorage extends RAttributable {
      */
     public RSharingAttributeStorage makeTemporary() {
         refCount = 0;
+        becameTemporary();
         return this;
     }
 
@@ -98,6 +98,12 @@ import com.oracle.truffle.r.runtime.ops.na.NACheck;
 @DefaultExport(RListArrayDataLibrary.class)
 public abstract class VectorDataLibrary extends Library {
 
+    /**
+     * Number of elements that builtins processing the data in chunks via
+     * {@link #readDoubleRegion(Object, int, int, double[])} and the like should request at once.
+     */
+    public static final int REGION_SIZE = 512;
+
     public static final boolean ENABLE_VERY_SLOW_ASSERTS = "true".equals(System.getenv().get("FASTR_TEST_VERY_SLOW_ASSERTS"));
 
     static final LibraryFactory<VectorDataLibrary> FACTORY = LibraryFactory.resolve(VectorDataLibrary.class);
@@ -455,6 +461,31 @@ public abstract class VectorDataLibrary extends Library {
         return bufferIdx;
     }
 
+    /**
+     * Copies a region of the data into the first elements of the given Java array. This is meant
+     * for builtins that process the data in chunks: implementations backed by an array or native
+     * memory copy the whole region at once and sequences compute it in a simple loop, so that the
+     * caller can run a plain array loop over the buffer instead of dispatching on every element or
+     * materializing the whole vector.
+     *
+     * @param startIndex Starting index of the region.
+     * @param size Size of the required region, the buffer must be at least that long.
+     * @return count of elements that were actually copied, which is less than {@code size} if the
+     *         region reaches past the end of the data.
+     */
+    public int readIntRegion(Object receiver, int startIndex, int size, int[] buffer) {
+        RandomAccessIterator it = randomAccessIterator(receiver);
+        int count = regionSize(receiver, startIndex, size);
+        for (int i = 0; i < count; i++) {
+            buffer[i] = getInt(receiver, it, startIndex + i);
+        }
+        return count;
+    }
+
+    private int regionSize(Object receiver, int startIndex, int size) {
+        return Math.max(0, Math.min(size, getLength(receiver) - startIndex));
+    }
+
     /**
      * Returns the value at given position. See the documentation of {@link #iterator(Object)} for
      * details.
@@ -573,6 +604,19 @@ public abstract class VectorDataLibrary extends Library {
         throw notWriteableError(receiver, "setInt");
     }
 
+    /**
+     * Writes the first {@code size} elements of the given Java array into the data starting at
+     * {@code startIndex}. The counterpart of {@link #readIntRegion}, {@code neverSeenNA} has the
+     * same meaning as in {@link #commitRandomAccessWriteIterator}.
+     */
+    public void writeIntRegion(Object receiver, int startIndex, int size, int[] buffer, boolean neverSeenNA) {
+        RandomAccessWriteIterator it = randomAccessWriteIterator(receiver);
+        for (int i = 0; i < size; i++) {
+            setInt(receiver, it, startIndex + i, buffer[i]);
+        }
+        commitRandomAccessWriteIterator(receiver, it, neverSeenNA);
+    }
+
     // ---------------------------------------------------------------------
     // Methods specific to double data
 
@@ -591,6 +635,18 @@ public abstract class VectorDataLibrary extends Library {
         return getRegion(receiver, startIndex, size, buffer, bufferInterop, RType.Double);
     }
 
+    /**
+     * See {@link #readIntRegion}.
+     */
+    public int readDoubleRegion(Object receiver, int startIndex, int size, double[] buffer) {
+        RandomAccessIterator it = randomAccessIterator(receiver);
+        int count = regionSize(receiver, startIndex, size);
+        for (int i = 0; i < count; i++) {
+            buffer[i] = getDouble(receiver, it, startIndex + i);
+        }
+        return count;
+    }
+
     public double getDoubleAt(Object receiver, @SuppressWarnings("unused") int index) {
         RType type = getType(receiver);
         switch (type) {
@@ -672,6 +728,19 @@ public abstract class VectorDataLibrary extends Library {
         throw notWriteableError(receiver, "setDouble");
     }
 
+    /**
+     * Writes the first {@code size} elements of the given Java array into the data starting at
+     * {@code startIndex}. The counterpart of {@link #readDoubleRegion}, {@code neverSeenNA} has the
+     * same meaning as in {@link #commitRandomAccessWriteIterator}.
+     */
+    public void writeDoubleRegion(Object receiver, int startIndex, int size, double[] buffer, boolean neverSeenNA) {
+        RandomAccessWriteIterator it = randomAccessWriteIterator(receiver);
+        for (int i = 0; i < size; i++) {
+            setDouble(receiver, it, startIndex + i, buffer[i]);
+        }
+        commitRandomAccessWriteIterator(receiver, it, neverSeenNA);
+    }
+
     // ---------------------------------------------------------------------
     // Methods specific to logical data
 
@@ -690,6 +759,18 @@ public abstract class VectorDataLibrary extends Library {
         return getRegion(receiver, startIndex, size, buffer, bufferInterop, RType.Logical);
     }
 
+    /**
+     * See {@link #readIntRegion}.
+     */
+    public int readLogicalRegion(Object receiver, int startIndex, int size, byte[] buffer) {
+        RandomAccessIterator it = randomAccessIterator(receiver);
+        int count = regionSize(receiver, startIndex, size);
+        for (int i = 0; i < count; i++) {
+            buffer[i] = getLogical(receiver, it, startIndex + i);
+        }
+        return count;
+    }
+
     public byte getLogicalAt(Object receiver, @SuppressWarnings("unused") int index) {
         RType type = getType(receiver);
         switch (type) {
@@ -771,6 +852,19 @@ public abstract class VectorDataLibrary extends Library {
         throw notWriteableError(receiver, "setLogical");
     }
 
+    /**
+     * Writes the first {@code size} elements of the given Java array into the data starting at
+     * {@code startIndex}. The counterpart of {@link #readLogicalRegion}, {@code neverSeenNA} has the
+     * same meaning as in {@link #commitRandomAccessWriteIterator}.
+     */
+    public void writeLogicalRegion(Object receiver, int startIndex, int size, byte[] buffer, boolean neverSeenNA) {
+        RandomAccessWriteIterator it = randomAccessWriteIterator(receiver);
+        for (int i = 0; i < size; i++) {
+            setLogical(receiver, it, startIndex + i, buffer[i]);
+        }
+        commitRandomAccessWriteIterator(receiver, it, neverSeenNA);
+    }
+
     // ---------------------------------------------------------------------
     // Methods specific to raw data
 
@@ -1830,6 +1924,18 @@ public abstract class VectorDataLibrary extends Library {
             return delegate.getIntRegion(receiver, startIndex, size, buffer, bufferInterop);
         }
 
+        @Override
+        public int readIntRegion(Object receiver, int startIndex, int size, int[] buffer) {
+            assert startIndex >= 0 && size >= 0 && buffer.length >= size;
+            return delegate.readIntRegion(receiver, startIndex, size, buffer);
+        }
+
+        @Override
+        public void writeIntRegion(Object receiver, int startIndex, int size, int[] buffer, boolean neverSeenNA) {
+            assert startIndex >= 0 && size >= 0 && buffer.length >= size && startIndex + size <= delegate.getLength(receiver);
+            delegate.writeIntRegion(receiver, startIndex, size, buffer, neverSeenNA);
+        }
+
         @Override
         public Object getDataAtAsObject(Object data, int index) {
             return delegate.getDataAtAsObject(data, index);
@@ -1893,6 +1999,18 @@ public abstract class VectorDataLibrary extends Library {
             return delegate.getDoubleRegion(receiver, startIndex, size, buffer, bufferInterop);
         }
 
+        @Override
+        public int readDoubleRegion(Object receiver, int startIndex, int size, double[] buffer) {
+            assert startIndex >= 0 && size >= 0 && buffer.length >= size;
+            return delegate.readDoubleRegion(receiver, startIndex, size, buffer);
+        }
+
+        @Override
+        public void writeDoubleRegion(Object receiver, int startIndex, int size, double[] buffer, boolean neverSeenNA) {
+            assert startIndex >= 0 && size >= 0 && buffer.length >= size && startIndex + size <= delegate.getLength(receiver);
+            delegate.writeDoubleRegion(receiver, startIndex, size, buffer, neverSeenNA);
+        }
+
         @Override
         public double getDoubleAt(Object receiver, int index) {
             return delegate.getDoubleAt(receiver, index);
@@ -1936,6 +2054,18 @@ public abstract class VectorDataLibrary extends Library {
             return delegate.getLogicalRegion(receiver, startIndex, size, buffer, bufferInterop);
         }
 
+        @Override
+        public int readLogicalRegion(Object receiver, int startIndex, int size, byte[] buffer) {
+            assert startIndex >= 0 && size >= 0 && buffer.length >= size;
+            return delegate.readLogicalRegion(receiver, startIndex, size, buffer);
+        }
+
+        @Override
+        public void writeLogicalRegion(Object receiver, int startIndex, int size, byte[] buffer, boolean neverSeenNA) {
+            assert startIndex >= 0 && size >= 0 && buffer.length >= size && startIndex + size <= delegate.getLength(receiver);
+            delegate.writeLogicalRegion(receiver, startIndex, size, buffer, neverSeenNA);
+        }
+
         @Override
         public byte getLogicalAt(Object receiver, int index) {
             return delegate.getLogicalAt(receiver, index);
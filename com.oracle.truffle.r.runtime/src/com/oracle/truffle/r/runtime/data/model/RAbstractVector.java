@@ -37,11 +37,13 @@ import com.oracle.truffle.api.library.ExportMessage.Ignore;
 import com.oracle.truffle.api.object.DynamicObject;
 import com.oracle.truffle.api.object.DynamicObjectLibrary;
 import com.oracle.truffle.api.profiles.ConditionProfile;
+import com.oracle.truffle.r.runtime.Collections.ElementHash;
 import com.oracle.truffle.r.runtime.RError;
 import com.oracle.truffle.r.runtime.RInternalError;
 import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RType;
 import com.oracle.truffle.r.runtime.SuppressFBWarnings;
+import com.oracle.truffle.r.runtime.data.ElementHashCache;
 import com.oracle.truffle.r.runtime.data.InternalDeprecation;
 import com.oracle.truffle.r.runtime.data.MemoryCopyTracer;
 import com.oracle.truffle.r.runtime.data.RAttributable;
@@ -84,10 +86,39 @@ public abstract class RAbstractVector extends RAbstractContainer implements RFFI
      */
     protected static volatile int fence;
 
+    /**
+     * Hash index over the elements, see {@link ElementHashCache}. Dropped by
+     * {@link #invalidateElementHash()} whenever the elements may be updated in place.
+     */
+    private volatile ElementHash elementHash;
+
     protected RAbstractVector() {
     }
 
+    public final ElementHash getCachedElementHash() {
+        return elementHash;
+    }
+
+    public final void setCachedElementHash(ElementHash hash) {
+        this.elementHash = hash;
+    }
+
+    /**
+     * Drops the cached hash index, must be called before the elements are updated in place.
+     */
+    public final void invalidateElementHash() {
+        if (elementHash != null) {
+            elementHash = null;
+        }
+    }
+
+    @Override
+    protected final void becameTemporary() {
+        invalidateElementHash();
+    }
+
     public final void setData(Object data) {
+        invalidateElementHash();
         this.data = data;
         if (data instanceof VectorDataWithOwner) {
             // "setOwner" may be a message in the VectorDataLibrary to make this fast
@@ -209,7 +240,11 @@ public abstract class RAbstractVector extends RAbstractContainer implements RFFI
      * @return vector data
      */
     public final Object getDataNonShared() {
-        return !isShared() ? getReadonlyData() : getDataCopy();
+        if (!isShared()) {
+            invalidateElementHash();
+            return getReadonlyData();
+        }
+        return getDataCopy();
     }
 
     /**
@@ -803,7 +838,12 @@ public abstract class RAbstractVector extends RAbstractContainer implements RFFI
     public final RBaseObject getNonShared() {
         RAbstractVector materialized = materialize();
         assert materialized.isMaterialized();
-        return materialized.getNonSharedSuper();
+        RBaseObject result = materialized.getNonSharedSuper();
+        if (result == materialized) {
+            // the caller is going to update the vector in place
+            materialized.invalidateElementHash();
+        }
+        return result;
     }
 
     private RBaseObject getNonSharedSuper() {
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2017, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2017, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -155,9 +155,21 @@ public final class VectorReuse extends Node {
     public <T extends RAbstractContainer> T getMaterializedDataResult(T vector) {
         RAbstractContainer result = reuse(vector);
         containerLib.materializeData(vector);
+        if (result == vector) {
+            invalidateElementHash(result);
+        }
         return (T) result;
     }
 
+    /**
+     * The elements of a reused vector are going to be updated in place.
+     */
+    private static void invalidateElementHash(RAbstractContainer reused) {
+        if (reused instanceof RAbstractVector) {
+            ((RAbstractVector) reused).invalidateElementHash();
+        }
+    }
+
     /**
      * Should be used in cases where the attributes of the resulting vector will be written.
      */
@@ -193,6 +205,9 @@ public final class VectorReuse extends Node {
                 result = containerLib.materialize(cast(vector));
             }
         }
+        if (result == vector) {
+            invalidateElementHash(result);
+        }
         return (T) result;
     }
 
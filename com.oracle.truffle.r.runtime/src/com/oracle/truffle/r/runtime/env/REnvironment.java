@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -72,6 +72,7 @@ import com.oracle.truffle.r.runtime.env.frame.FrameSlotChangeMonitor;
 import com.oracle.truffle.r.runtime.env.frame.NSBaseMaterializedFrame;
 import com.oracle.truffle.r.runtime.env.frame.REnvEmptyFrameAccess;
 import com.oracle.truffle.r.runtime.env.frame.REnvFrameAccess;
+import com.oracle.truffle.r.runtime.env.frame.REnvHashedFrameAccess;
 import com.oracle.truffle.r.runtime.env.frame.REnvTruffleFrameAccess;
 import com.oracle.truffle.r.runtime.interop.Foreign2R;
 import com.oracle.truffle.r.runtime.interop.R2Foreign;
@@ -271,7 +272,12 @@ public abstract class REnvironment extends RAttributable {
     private static final Empty emptyEnv = new Empty();
 
     private final String name;
-    private final REnvFrameAccess frameAccess;
+    /**
+     * Only changes when the bindings of a {@link REnvHashedFrameAccess} are moved to the frame, see
+     * {@link #getFrame()}. Environments can be reached from several threads (e.g. child contexts
+     * sharing them), the volatile write publishes the frame with the moved bindings.
+     */
+    private volatile REnvFrameAccess frameAccess;
     private boolean locked;
 
     @SuppressWarnings("static-method")
@@ -894,8 +900,18 @@ public abstract class REnvironment extends RAttributable {
         RArguments.setEnvironment(frame, this);
     }
 
+    /**
+     * An environment whose bindings are kept in a {@link REnvHashedFrameAccess} until its frame is
+     * needed.
+     */
+    private REnvironment(String name, MaterializedFrame frame, int initialSize) {
+        this(name, new REnvHashedFrameAccess(frame, initialSize));
+        RArguments.setEnvironment(frame, this);
+    }
+
     public REnvironment getParent() {
-        MaterializedFrame enclosingFrame = RArguments.getEnclosingFrame(getFrame());
+        // the enclosing frame link does not need the bindings in the frame
+        MaterializedFrame enclosingFrame = RArguments.getEnclosingFrame(frameAccess.getFrame());
         return enclosingFrame == null ? emptyEnv : frameToEnvironment(enclosingFrame);
     }
 
@@ -905,10 +921,19 @@ public abstract class REnvironment extends RAttributable {
      */
     public void setParent(REnvironment env) {
         if (getParent() != env) {
-            RArguments.setEnclosingFrame(getFrame(), env.getFrame(), true);
+            RArguments.setEnclosingFrame(frameAccess.getFrame(), env.getFrame(), true);
         }
     }
 
+    /**
+     * Sets the parent of a newly created environment, like
+     * {@link RArguments#initializeEnclosingFrame} on {@link #getFrame()} but without moving the
+     * bindings of a hashed environment to the frame.
+     */
+    public void initializeParent(REnvironment parent) {
+        RArguments.initializeEnclosingFrame(frameAccess.getFrame(), parent.getFrame());
+    }
+
     /**
      * The "simple" name of the environment. This is the value returned by the R
      * {@code environmentName} function.
@@ -957,13 +982,37 @@ public abstract class REnvironment extends RAttributable {
      * there is none in the case of {@link NewEnv} environments.
      */
     public MaterializedFrame getFrame() {
+        if (frameAccess instanceof REnvHashedFrameAccess) {
+            moveBindingsToFrame();
+        }
         return frameAccess.getFrame();
     }
 
     public MaterializedFrame getFrame(ValueProfile frameAccessProfile) {
+        if (frameAccess instanceof REnvHashedFrameAccess) {
+            moveBindingsToFrame();
+        }
         return frameAccessProfile.profile(frameAccess).getFrame();
     }
 
+    /**
+     * Whether the bindings are (still) kept in a {@link REnvHashedFrameAccess}. Nodes with fast
+     * paths that work on the frame should check this first, since {@link #getFrame()} gives up the
+     * hashed storage.
+     */
+    public final boolean hasHashedStorage() {
+        return frameAccess instanceof REnvHashedFrameAccess;
+    }
+
+    @TruffleBoundary
+    private synchronized void moveBindingsToFrame() {
+        REnvFrameAccess current = frameAccess;
+        // another thread may have moved the bindings in the meantime
+        if (current instanceof REnvHashedFrameAccess) {
+            frameAccess = ((REnvHashedFrameAccess) current).toTruffleFrameAccess();
+        }
+    }
+
     public void lock(boolean bindings) {
         locked = true;
         if (bindings) {
@@ -1220,9 +1269,10 @@ public abstract class REnvironment extends RAttributable {
     /**
      * An environment explicitly created with, typically, {@code new.env}, but also used internally.
      * Such environments are always {@link #UNNAMED} but can later be given a name as an attribute.
-     * This is the class used by the {@code new.env} function. We record but do not interpret the
-     * {@code hash} input, as we always use a hashmap, for possible use by the serialization code
-     * (GnuR generates different output format for hash environments).
+     * This is the class used by the {@code new.env} function. The {@code hash} input is recorded for
+     * the serialization code (GnuR generates different output format for hash environments), and
+     * hashed environments keep their bindings in a {@link REnvHashedFrameAccess} until the frame is
+     * needed.
      *
      */
     public static final class NewEnv extends REnvironment {
@@ -1236,6 +1286,15 @@ public abstract class REnvironment extends RAttributable {
             }
         }
 
+        public NewEnv(MaterializedFrame frame, String name, int initialSize) {
+            super(UNNAMED, frame, initialSize);
+            if (name != null) {
+                setAttr(NAME_ATTR_KEY, name);
+            }
+            this.hashed = true;
+            this.initialSize = initialSize;
+        }
+
         public boolean isHashed() {
             return hashed;
         }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -25,13 +25,15 @@ package com.oracle.truffle.r.runtime.env.frame;
 import static com.oracle.truffle.r.runtime.context.FastROptions.SearchPathForcePromises;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
 
 import com.oracle.truffle.api.Assumption;
 import com.oracle.truffle.api.CompilerAsserts;
@@ -184,6 +186,10 @@ public final class FrameSlotChangeMonitor {
      * object. For function environments, one frame descriptor corresponds to many actual
      * environments, while for manually created environment, there is always one frame descriptor
      * for one environment.
+     *
+     * The lookup caches are concurrent collections, so that lookups and name invalidations from
+     * contexts running in parallel do not need to synchronize. The set of sub descriptors is
+     * guarded by its own monitor.
      */
     private static final class FrameDescriptorMetaData {
         private final String name; // name for debug purposes
@@ -195,14 +201,14 @@ public final class FrameSlotChangeMonitor {
          * a binding with one of these names is modified, then the lookups in this frame descriptor
          * and all child frame descriptors need to be checked.
          */
-        private final Set<Object> previousLookups = new HashSet<>();
+        private final Set<Object> previousLookups = ConcurrentHashMap.newKeySet();
         /**
          * A set of all lookups that started in this frame descriptor.
          */
-        private final WeakHashMap<Object, WeakReference<LookupResult>> lookupResults = new WeakHashMap<>(2);
+        private final ConcurrentHashMap<Object, WeakReference<LookupResult>> lookupResults = new ConcurrentHashMap<>(2);
 
-        private WeakReference<FrameDescriptor> enclosingFrameDescriptor = new WeakReference<>(null);
-        private Assumption enclosingFrameDescriptorAssumption = Truffle.getRuntime().createAssumption("enclosing frame descriptor");
+        private volatile WeakReference<FrameDescriptor> enclosingFrameDescriptor = new WeakReference<>(null);
+        private volatile Assumption enclosingFrameDescriptorAssumption = Truffle.getRuntime().createAssumption("enclosing frame descriptor");
         private final Assumption containsNoActiveBindingAssumption = Truffle.getRuntime().createAssumption("contains no active binding");
 
         private FrameDescriptorMetaData(String name, MaterializedFrame singletonFrame) {
@@ -212,16 +218,17 @@ public final class FrameSlotChangeMonitor {
 
         public void updateEnclosingFrameDescriptor(FrameDescriptor newEnclosingDescriptor) {
             CompilerAsserts.neverPartOfCompilation();
-            if (enclosingFrameDescriptorAssumption != null) {
-                enclosingFrameDescriptorAssumption.invalidate();
-            }
+            Assumption oldAssumption = enclosingFrameDescriptorAssumption;
             enclosingFrameDescriptor = new WeakReference<>(newEnclosingDescriptor);
             enclosingFrameDescriptorAssumption = Truffle.getRuntime().createAssumption("enclosing frame descriptor");
+            // invalidate only after publishing the new state, lookups may run concurrently
+            if (oldAssumption != null) {
+                oldAssumption.invalidate();
+            }
         }
 
         public FrameDescriptor getEnclosingFrameDescriptor() {
             CompilerAsserts.neverPartOfCompilation();
-            assert enclosingFrameDescriptorAssumption.isValid();
             return enclosingFrameDescriptor.get();
         }
 
@@ -232,28 +239,108 @@ public final class FrameSlotChangeMonitor {
         public Assumption getContainsNoActiveBindingAssumption() {
             return containsNoActiveBindingAssumption;
         }
+
+        private void addSubDescriptor(FrameDescriptor descriptor) {
+            synchronized (subDescriptors) {
+                subDescriptors.add(descriptor);
+            }
+        }
+
+        private void removeSubDescriptor(FrameDescriptor descriptor) {
+            synchronized (subDescriptors) {
+                subDescriptors.remove(descriptor);
+            }
+        }
+
+        private FrameDescriptor[] getSubDescriptors() {
+            synchronized (subDescriptors) {
+                return subDescriptors.toArray(new FrameDescriptor[0]);
+            }
+        }
     }
 
-    private static final WeakHashMap<FrameDescriptor, FrameDescriptorMetaData> frameDescriptors = new WeakHashMap<>();
+    /**
+     * The meta data registry is split into stripes (selected by the identity hash of the frame
+     * descriptor) that are synchronized individually, so that contexts running in parallel only
+     * contend if they happen to register or query descriptors in the same stripe.
+     */
+    private static final int REGISTRY_STRIPES = 64;
+
+    @SuppressWarnings("unchecked") private static final WeakHashMap<FrameDescriptor, FrameDescriptorMetaData>[] frameDescriptors = new WeakHashMap[REGISTRY_STRIPES];
+
+    static {
+        for (int i = 0; i < REGISTRY_STRIPES; i++) {
+            frameDescriptors[i] = new WeakHashMap<>();
+        }
+    }
+
+    /**
+     * Guards structural changes of the environment hierarchy ({@code attach}, {@code detach} and
+     * {@code parent.env<-}), which are rare. Lookups and name invalidations do not take this lock,
+     * they run optimistically and are repeated under the read lock only if such a change happened
+     * concurrently.
+     */
+    private static final StampedLock hierarchyLock = new StampedLock();
+
+    private static WeakHashMap<FrameDescriptor, FrameDescriptorMetaData> getRegistryStripe(FrameDescriptor descriptor) {
+        return frameDescriptors[System.identityHashCode(descriptor) & (REGISTRY_STRIPES - 1)];
+    }
+
+    private static void register(FrameDescriptor descriptor, FrameDescriptorMetaData metaData) {
+        WeakHashMap<FrameDescriptor, FrameDescriptorMetaData> stripe = getRegistryStripe(descriptor);
+        synchronized (stripe) {
+            stripe.put(descriptor, metaData);
+        }
+    }
 
     /**
      * This function tries to fulfill the lookup for the given name in the given frame based only on
      * the static knowledge about the frame descriptor hierarchy and stable bindings. Returns
      * {@code null} in case this was not possible.
      */
-    public static synchronized LookupResult lookup(Frame frame, Object identifier) {
+    public static LookupResult lookup(Frame frame, Object identifier) {
         CompilerAsserts.neverPartOfCompilation();
+        long stamp = hierarchyLock.tryOptimisticRead();
+        if (stamp != 0) {
+            LookupResult result = lookupImpl(frame, identifier);
+            if (hierarchyLock.validate(stamp)) {
+                return result;
+            }
+            // the hierarchy changed while walking it, the result may be stale
+            if (result != null) {
+                result.invalidate();
+            }
+        }
+        stamp = hierarchyLock.readLock();
+        try {
+            return lookupImpl(frame, identifier);
+        } finally {
+            hierarchyLock.unlockRead(stamp);
+        }
+    }
+
+    private static LookupResult lookupImpl(Frame frame, Object identifier) {
         FrameDescriptorMetaData metaData = getMetaData(frame);
         WeakReference<LookupResult> weakResult = metaData.lookupResults.get(identifier);
         LookupResult result = weakResult == null ? null : weakResult.get();
         if (result != null && result.isValid()) {
             return result;
         }
+        /*
+         * The identifier is recorded in the previous lookups of each visited descriptor before its
+         * slots are inspected, and checked again after the result was published. A concurrent
+         * invalidation (which removes the identifier before it invalidates the published results)
+         * is then either seen by the second check, or it finds and invalidates the result.
+         */
+        ArrayList<FrameDescriptorMetaData> visited = new ArrayList<>(4);
+        LookupResult lookupResult;
         Frame current = frame;
         while (true) {
+            FrameDescriptorMetaData currentMetaData = getMetaData(current);
+            currentMetaData.previousLookups.add(identifier);
+            visited.add(currentMetaData);
             FrameSlot slot = current.getFrameDescriptor().findFrameSlot(identifier);
             if (slot != null) {
-                LookupResult lookupResult;
                 StableValue<Object> stableValue = getFrameSlotInfo(slot).stableValue;
                 // if stableValue.getValue() == null, then this is a frame slot that doesn't have a
                 // value, which can happen, e.g., when package creates a value in its namespace, but
@@ -262,18 +349,14 @@ public final class FrameSlotChangeMonitor {
                     if (stableValue != null) {
                         lookupResult = new StableValueLookupResult(identifier.toString(), stableValue);
                     } else {
-                        FrameDescriptorMetaData currentMetaData = getMetaData(current);
-                        if (currentMetaData.singletonFrame == null) {
+                        MaterializedFrame singletonFrame = currentMetaData.singletonFrame == null ? null : currentMetaData.singletonFrame.get();
+                        if (singletonFrame == null) {
                             // no stable value and no singleton frame
                             return null;
-                        } else {
-                            assert currentMetaData.singletonFrame.get() != null;
-                            lookupResult = new FrameAndSlotLookupResult(identifier.toString(), currentMetaData.singletonFrame.get(), slot);
                         }
+                        lookupResult = new FrameAndSlotLookupResult(identifier.toString(), singletonFrame, slot);
                     }
-                    addPreviousLookups(frame, current, identifier);
-                    metaData.lookupResults.put(identifier, new WeakReference<>(lookupResult));
-                    return lookupResult;
+                    break;
                 }
             }
             Frame next = RArguments.getEnclosingFrame(current);
@@ -294,28 +377,20 @@ public final class FrameSlotChangeMonitor {
                 return null;
             }
             if (next == null) {
-                // leave "current" if we hit the empty env
+                // not frame slot found: missing value
+                lookupResult = new MissingLookupResult(identifier.toString());
                 break;
             }
             current = next;
         }
-        // not frame slot found: missing value
-        addPreviousLookups(frame, current, identifier);
-        LookupResult lookupResult = new MissingLookupResult(identifier.toString());
         metaData.lookupResults.put(identifier, new WeakReference<>(lookupResult));
-        return lookupResult;
-    }
-
-    private static void addPreviousLookups(Frame from, Frame to, Object identifier) {
-        Frame mark = from;
-        while (true) {
-            FrameDescriptorMetaData lookupMetaData = getMetaData(mark);
-            lookupMetaData.previousLookups.add(identifier);
-            if (mark == to) {
-                break;
+        for (FrameDescriptorMetaData lookupMetaData : visited) {
+            if (!lookupMetaData.previousLookups.contains(identifier)) {
+                lookupResult.invalidate();
+                return null;
             }
-            mark = RArguments.getEnclosingFrame(mark);
         }
+        return lookupResult;
     }
 
     private static boolean isEnclosingFrameDescriptor(Frame current, Frame next) {
@@ -325,7 +400,29 @@ public final class FrameSlotChangeMonitor {
         return metaData.getEnclosingFrameDescriptor() == nextDesc;
     }
 
-    private static synchronized void invalidateNames(FrameDescriptorMetaData metaData, Collection<Object> identifiers) {
+    /**
+     * Invalidates the lookups of names that were newly defined outside of a structural change of
+     * the hierarchy. The invalidation is idempotent, so it is simply repeated under the read lock
+     * if the hierarchy changed in the meantime.
+     */
+    private static void invalidateNewNames(FrameDescriptorMetaData metaData, Collection<Object> identifiers) {
+        long stamp = hierarchyLock.tryOptimisticRead();
+        if (stamp != 0) {
+            invalidateNames(metaData, identifiers);
+            if (hierarchyLock.validate(stamp)) {
+                return;
+            }
+        }
+        stamp = hierarchyLock.readLock();
+        try {
+            invalidateNames(metaData, identifiers);
+        } finally {
+            hierarchyLock.unlockRead(stamp);
+        }
+    }
+
+    private static void invalidateNames(FrameDescriptorMetaData metaData, Collection<Object> identifiers) {
+        // the previous lookups need to be removed before the results, see lookupImpl
         if (metaData.previousLookups.removeAll(identifiers)) {
             for (Object identifier : identifiers) {
                 WeakReference<LookupResult> result = metaData.lookupResults.remove(identifier);
@@ -336,7 +433,7 @@ public final class FrameSlotChangeMonitor {
                     }
                 }
             }
-            for (FrameDescriptor descriptor : metaData.subDescriptors) {
+            for (FrameDescriptor descriptor : metaData.getSubDescriptors()) {
                 FrameDescriptorMetaData sub = getMetaData(descriptor);
                 invalidateNames(sub, identifiers);
             }
@@ -350,9 +447,13 @@ public final class FrameSlotChangeMonitor {
         return frame == null ? null : frame instanceof NSBaseMaterializedFrame ? ((NSBaseMaterializedFrame) frame).getMarkerFrameDescriptor() : frame.getFrameDescriptor();
     }
 
-    private static synchronized FrameDescriptorMetaData getMetaData(FrameDescriptor descriptor) {
+    private static FrameDescriptorMetaData getMetaData(FrameDescriptor descriptor) {
         CompilerAsserts.neverPartOfCompilation();
-        FrameDescriptorMetaData result = frameDescriptors.get(descriptor);
+        WeakHashMap<FrameDescriptor, FrameDescriptorMetaData> stripe = getRegistryStripe(descriptor);
+        FrameDescriptorMetaData result;
+        synchronized (stripe) {
+            result = stripe.get(descriptor);
+        }
         assert result != null : "null metadata for " + descriptor;
         return result;
     }
@@ -368,14 +469,14 @@ public final class FrameSlotChangeMonitor {
         return target;
     }
 
-    public static synchronized boolean isEnclosingFrameDescriptor(FrameDescriptor descriptor, Frame newEnclosingFrame) {
+    public static boolean isEnclosingFrameDescriptor(FrameDescriptor descriptor, Frame newEnclosingFrame) {
         CompilerAsserts.neverPartOfCompilation();
         FrameDescriptorMetaData target = getDescriptorMetaData(descriptor);
         FrameDescriptor newEnclosingDescriptor = handleBaseNamespaceEnv(newEnclosingFrame);
         return target.getEnclosingFrameDescriptor() == newEnclosingDescriptor;
     }
 
-    public static synchronized void initializeEnclosingFrame(FrameDescriptor descriptor, Frame newEnclosingFrame) {
+    public static void initializeEnclosingFrame(FrameDescriptor descriptor, Frame newEnclosingFrame) {
         CompilerAsserts.neverPartOfCompilation();
         FrameDescriptorMetaData target = getDescriptorMetaData(descriptor);
 
@@ -383,22 +484,36 @@ public final class FrameSlotChangeMonitor {
 
         // this function can be called multiple times with the same enclosing descriptor
         if (target.getEnclosingFrameDescriptor() != newEnclosingDescriptor) {
-            assert target.getEnclosingFrameDescriptor() == null : "existing enclosing descriptor while initializing " + target.name;
-            assert target.lookupResults.isEmpty() : "existing lookup results while initializing " + target.name;
-
-            target.updateEnclosingFrameDescriptor(newEnclosingDescriptor);
-            if (newEnclosingDescriptor != null) {
-                FrameDescriptorMetaData newEnclosing = getMetaData(newEnclosingDescriptor);
-                newEnclosing.subDescriptors.add(descriptor);
+            /*
+             * The descriptor is new and has no lookups yet, so only concurrent initializations of
+             * the same (shared) descriptor need to be excluded, and structural changes in the
+             * hierarchy have to wait.
+             */
+            long stamp = hierarchyLock.readLock();
+            try {
+                synchronized (target) {
+                    if (target.getEnclosingFrameDescriptor() != newEnclosingDescriptor) {
+                        assert target.getEnclosingFrameDescriptor() == null : "existing enclosing descriptor while initializing " + target.name;
+                        assert target.lookupResults.isEmpty() : "existing lookup results while initializing " + target.name;
+
+                        target.updateEnclosingFrameDescriptor(newEnclosingDescriptor);
+                        if (newEnclosingDescriptor != null) {
+                            FrameDescriptorMetaData newEnclosing = getMetaData(newEnclosingDescriptor);
+                            newEnclosing.addSubDescriptor(descriptor);
+                        }
+                    }
+                }
+            } finally {
+                hierarchyLock.unlockRead(stamp);
             }
         }
     }
 
-    public static synchronized void initializeEnclosingFrame(Frame frame, Frame newEnclosingFrame) {
+    public static void initializeEnclosingFrame(Frame frame, Frame newEnclosingFrame) {
         initializeEnclosingFrame(handleBaseNamespaceEnv(frame), newEnclosingFrame);
     }
 
-    private static synchronized void setEnclosingFrame(FrameDescriptor descriptor, MaterializedFrame newEnclosingFrame, MaterializedFrame oldEnclosingFrame) {
+    private static void setEnclosingFrame(FrameDescriptor descriptor, MaterializedFrame newEnclosingFrame, MaterializedFrame oldEnclosingFrame) {
         CompilerAsserts.neverPartOfCompilation();
         FrameDescriptorMetaData target = getMetaData(descriptor);
         assert target != null : "frame descriptor wasn't registered properly for " + descriptor;
@@ -414,22 +529,29 @@ public final class FrameSlotChangeMonitor {
             assert newEnclosingDescriptor == oldEnclosingDescriptor || oldEnclosingDescriptor == oldEnclosingFrame.getFrameDescriptor() : "mismatch " + oldEnclosingDescriptor + " / " +
                             oldEnclosingFrame.getFrameDescriptor();
             FrameDescriptorMetaData oldEnclosing = getMetaData(oldEnclosingDescriptor);
-            oldEnclosing.subDescriptors.remove(descriptor);
+            oldEnclosing.removeSubDescriptor(descriptor);
         }
         target.updateEnclosingFrameDescriptor(newEnclosingDescriptor);
 
         if (newEnclosingDescriptor != null) {
             FrameDescriptorMetaData newEnclosing = getMetaData(newEnclosingDescriptor);
             assert !newEnclosing.name.equals("global") || !target.name.equals("base");
-            newEnclosing.subDescriptors.add(descriptor);
+            newEnclosing.addSubDescriptor(descriptor);
         }
     }
 
-    public static synchronized void setEnclosingFrame(Frame frame, MaterializedFrame newEnclosingFrame, MaterializedFrame oldEnclosingFrame) {
-        setEnclosingFrame(handleBaseNamespaceEnv(frame), newEnclosingFrame, oldEnclosingFrame);
+    public static void setEnclosingFrame(Frame frame, MaterializedFrame newEnclosingFrame, MaterializedFrame oldEnclosingFrame) {
+        long stamp = hierarchyLock.writeLock();
+        try {
+            setEnclosingFrame(handleBaseNamespaceEnv(frame), newEnclosingFrame, oldEnclosingFrame);
+        } finally {
+            hierarchyLock.unlockWrite(stamp);
+        }
     }
 
     private static void invalidateAllNames(FrameDescriptorMetaData target) {
+        boolean hadPreviousLookups = !target.previousLookups.isEmpty();
+        target.previousLookups.clear();
         for (Map.Entry<Object, WeakReference<LookupResult>> entry : target.lookupResults.entrySet()) {
             LookupResult lookup = entry.getValue().get();
             if (lookup != null) {
@@ -437,51 +559,60 @@ public final class FrameSlotChangeMonitor {
             }
         }
         target.lookupResults.clear();
-        if (!target.previousLookups.isEmpty()) {
-            target.previousLookups.clear();
-            for (FrameDescriptor sub : target.subDescriptors) {
+        if (hadPreviousLookups) {
+            for (FrameDescriptor sub : target.getSubDescriptors()) {
                 invalidateAllNames(getMetaData(sub));
             }
         }
     }
 
-    public static synchronized void detach(Frame frame) {
+    public static void detach(Frame frame) {
         CompilerAsserts.neverPartOfCompilation();
-        FrameDescriptorMetaData position = getMetaData(frame);
-        FrameDescriptor oldEnclosingDescriptor = position.getEnclosingFrameDescriptor();
-        FrameDescriptorMetaData oldEnclosing = getMetaData(oldEnclosingDescriptor);
-        FrameDescriptor newEnclosingDescriptor = oldEnclosing.getEnclosingFrameDescriptor();
-        FrameDescriptorMetaData newEnclosing = getMetaData(newEnclosingDescriptor);
-
-        invalidateNames(oldEnclosing, oldEnclosingDescriptor.getIdentifiers());
-
-        position.updateEnclosingFrameDescriptor(newEnclosingDescriptor);
-        oldEnclosing.updateEnclosingFrameDescriptor(null);
-        oldEnclosing.subDescriptors.remove(frame.getFrameDescriptor());
-        newEnclosing.subDescriptors.remove(oldEnclosingDescriptor);
-        newEnclosing.subDescriptors.add(frame.getFrameDescriptor());
+        long stamp = hierarchyLock.writeLock();
+        try {
+            FrameDescriptorMetaData position = getMetaData(frame);
+            FrameDescriptor oldEnclosingDescriptor = position.getEnclosingFrameDescriptor();
+            FrameDescriptorMetaData oldEnclosing = getMetaData(oldEnclosingDescriptor);
+            FrameDescriptor newEnclosingDescriptor = oldEnclosing.getEnclosingFrameDescriptor();
+            FrameDescriptorMetaData newEnclosing = getMetaData(newEnclosingDescriptor);
+
+            invalidateNames(oldEnclosing, oldEnclosingDescriptor.getIdentifiers());
+
+            position.updateEnclosingFrameDescriptor(newEnclosingDescriptor);
+            oldEnclosing.updateEnclosingFrameDescriptor(null);
+            oldEnclosing.removeSubDescriptor(frame.getFrameDescriptor());
+            newEnclosing.removeSubDescriptor(oldEnclosingDescriptor);
+            newEnclosing.addSubDescriptor(frame.getFrameDescriptor());
+        } finally {
+            hierarchyLock.unlockWrite(stamp);
+        }
     }
 
-    public static synchronized void attach(Frame frame, Frame newEnclosingFrame) {
+    public static void attach(Frame frame, Frame newEnclosingFrame) {
         CompilerAsserts.neverPartOfCompilation();
-        FrameDescriptorMetaData position = getMetaData(frame);
-        FrameDescriptorMetaData newEnclosing = getMetaData(newEnclosingFrame);
-        FrameDescriptor oldEnclosingDescriptor = position.getEnclosingFrameDescriptor();
-        FrameDescriptorMetaData oldEnclosing = getMetaData(oldEnclosingDescriptor);
-
-        invalidateAllNames(newEnclosing);
-        invalidateNames(position, newEnclosingFrame.getFrameDescriptor().getIdentifiers());
-
-        newEnclosing.previousLookups.clear();
-        newEnclosing.previousLookups.addAll(oldEnclosing.previousLookups);
-
-        position.updateEnclosingFrameDescriptor(newEnclosingFrame.getFrameDescriptor());
-        newEnclosing.updateEnclosingFrameDescriptor(oldEnclosingDescriptor);
-        assert frame.getFrameDescriptor() == handleBaseNamespaceEnv(frame);
-        assert !newEnclosing.name.equals("global") || !position.name.equals("base");
-        newEnclosing.subDescriptors.add(frame.getFrameDescriptor());
-        oldEnclosing.subDescriptors.remove(frame.getFrameDescriptor());
-        oldEnclosing.subDescriptors.add(newEnclosingFrame.getFrameDescriptor());
+        long stamp = hierarchyLock.writeLock();
+        try {
+            FrameDescriptorMetaData position = getMetaData(frame);
+            FrameDescriptorMetaData newEnclosing = getMetaData(newEnclosingFrame);
+            FrameDescriptor oldEnclosingDescriptor = position.getEnclosingFrameDescriptor();
+            FrameDescriptorMetaData oldEnclosing = getMetaData(oldEnclosingDescriptor);
+
+            invalidateAllNames(newEnclosing);
+            invalidateNames(position, newEnclosingFrame.getFrameDescriptor().getIdentifiers());
+
+            newEnclosing.previousLookups.clear();
+            newEnclosing.previousLookups.addAll(oldEnclosing.previousLookups);
+
+            position.updateEnclosingFrameDescriptor(newEnclosingFrame.getFrameDescriptor());
+            newEnclosing.updateEnclosingFrameDescriptor(oldEnclosingDescriptor);
+            assert frame.getFrameDescriptor() == handleBaseNamespaceEnv(frame);
+            assert !newEnclosing.name.equals("global") || !position.name.equals("base");
+            newEnclosing.addSubDescriptor(frame.getFrameDescriptor());
+            oldEnclosing.removeSubDescriptor(frame.getFrameDescriptor());
+            oldEnclosing.addSubDescriptor(newEnclosingFrame.getFrameDescriptor());
+        } finally {
+            hierarchyLock.unlockWrite(stamp);
+        }
     }
 
     private static final int MAX_INVALIDATION_COUNT = 2;
@@ -800,7 +931,7 @@ public final class FrameSlotChangeMonitor {
         return findOrAddFrameSlot(fd, (Object) identifier, initialKind);
     }
 
-    private static synchronized FrameSlot findOrAddFrameSlot(FrameDescriptor fd, Object identifier, FrameSlotKind initialKind) {
+    private static FrameSlot findOrAddFrameSlot(FrameDescriptor fd, Object identifier, FrameSlotKind initialKind) {
         CompilerAsserts.neverPartOfCompilation();
         assert identifier instanceof String || identifier instanceof RFrameSlot;
         FrameSlot frameSlot = fd.findFrameSlot(identifier);
@@ -808,9 +939,14 @@ public final class FrameSlotChangeMonitor {
             return frameSlot;
         } else {
             FrameDescriptorMetaData metaData = getMetaData(fd);
-            invalidateNames(metaData, Arrays.asList(identifier));
-            return fd.addFrameSlot(identifier, new FrameSlotInfoImpl(metaData.singletonFrame != null, "global".equals(metaData.name), identifier, metaData.name.startsWith("<new-env-")),
-                            initialKind);
+            FrameSlotInfoImpl info = new FrameSlotInfoImpl(metaData.singletonFrame != null, "global".equals(metaData.name), identifier, metaData.name.startsWith("<new-env-"));
+            // the frame descriptor resolves races between contexts adding the same slot
+            frameSlot = fd.findOrAddFrameSlot(identifier, info, initialKind);
+            if (frameSlot.getInfo() == info) {
+                // the slot has to be visible before the lookups are invalidated, see lookupImpl
+                invalidateNewNames(metaData, Arrays.asList(identifier));
+            }
+            return frameSlot;
         }
     }
 
@@ -973,28 +1109,28 @@ public final class FrameSlotChangeMonitor {
      * Initializes the internal data structures for a newly created frame descriptor that is
      * intended to be used for a non-function frame (and thus will only ever be used for one frame).
      */
-    public static synchronized void initializeNonFunctionFrameDescriptor(String name, MaterializedFrame frame) {
+    public static void initializeNonFunctionFrameDescriptor(String name, MaterializedFrame frame) {
         CompilerAsserts.neverPartOfCompilation();
-        frameDescriptors.put(handleBaseNamespaceEnv(frame), new FrameDescriptorMetaData(name, frame));
+        register(handleBaseNamespaceEnv(frame), new FrameDescriptorMetaData(name, frame));
     }
 
-    public static synchronized FrameDescriptor initializeFunctionFrameDescriptor(String name, FrameDescriptor frameDescriptor) {
+    public static FrameDescriptor initializeFunctionFrameDescriptor(String name, FrameDescriptor frameDescriptor) {
         CompilerAsserts.neverPartOfCompilation();
-        frameDescriptors.put(frameDescriptor, new FrameDescriptorMetaData(name, null));
+        register(frameDescriptor, new FrameDescriptorMetaData(name, null));
         return frameDescriptor;
     }
 
-    public static synchronized Assumption getEnclosingFrameDescriptorAssumption(FrameDescriptor descriptor) {
+    public static Assumption getEnclosingFrameDescriptorAssumption(FrameDescriptor descriptor) {
         CompilerAsserts.neverPartOfCompilation();
-        return frameDescriptors.get(descriptor).getEnclosingFrameDescriptorAssumption();
+        return getMetaData(descriptor).getEnclosingFrameDescriptorAssumption();
     }
 
-    public static synchronized Assumption getContainsNoActiveBindingAssumption(FrameDescriptor descriptor) {
+    public static Assumption getContainsNoActiveBindingAssumption(FrameDescriptor descriptor) {
         CompilerAsserts.neverPartOfCompilation();
-        return frameDescriptors.get(descriptor).getContainsNoActiveBindingAssumption();
+        return getMetaData(descriptor).getContainsNoActiveBindingAssumption();
     }
 
-    public static synchronized StableValue<Object> getStableValueAssumption(FrameDescriptor descriptor, FrameSlot frameSlot, Object value) {
+    public static StableValue<Object> getStableValueAssumption(FrameDescriptor descriptor, FrameSlot frameSlot, Object value) {
         CompilerAsserts.neverPartOfCompilation();
         StableValue<Object> stableValue = getFrameSlotInfo(frameSlot).getStableValue();
         if (stableValue != null) {
@@ -1005,7 +1141,7 @@ public final class FrameSlotChangeMonitor {
         return stableValue;
     }
 
-    public static synchronized MaterializedFrame getSingletonFrame(FrameDescriptor descriptor) {
+    public static MaterializedFrame getSingletonFrame(FrameDescriptor descriptor) {
         WeakReference<MaterializedFrame> singleton = getMetaData(descriptor).singletonFrame;
         return singleton == null ? null : singleton.get();
     }
@@ -1016,6 +1152,13 @@ public final class FrameSlotChangeMonitor {
 
     /*
      * This method should be called for frames of all environments on the search path.
+     *
+     * Unlike the rest of the meta data, multi slots of the search path are still converted and
+     * cleaned under a single lock: the conversion replaces the MultiSlotData of a slot by an extended
+     * copy (and may force promises), so two contexts being created at the same time would lose each
+     * other's replicated values, and a concurrent cleanup could leave values of a finished context in
+     * a copy that is later visible to a context reusing its index. Both only run when a shared child
+     * context is created or finished, never while evaluating.
      */
     public static synchronized void handleAllMultiSlots(Frame frame, int[] indices, boolean replicate) {
         // make a copy avoid potential updates to the array iterated over
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.env.frame;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.frame.FrameSlotKind;
+import com.oracle.truffle.api.frame.MaterializedFrame;
+import com.oracle.truffle.r.runtime.RError;
+import com.oracle.truffle.r.runtime.RInternalError;
+import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RMissing;
+import com.oracle.truffle.r.runtime.data.RStringVector;
+import com.oracle.truffle.r.runtime.env.REnvironment;
+import com.oracle.truffle.r.runtime.env.REnvironment.PutException;
+
+/**
+ * Variant of {@link REnvFrameAccess} for environments created by {@code new.env(hash=TRUE)} that
+ * keeps the bindings in an open-addressing hash map instead of {@link MaterializedFrame} slots.
+ * This avoids creating a frame slot (and the {@link FrameSlotChangeMonitor} bookkeeping) per key
+ * for environments used as large mutable maps.
+ *
+ * The frame is still used for the enclosing frame link, but it holds no bindings. Code that needs
+ * the frame itself (e.g. to evaluate in the environment) gets it through
+ * {@link REnvironment#getFrame()}, which first moves the bindings into frame slots by
+ * {@link #toTruffleFrameAccess()} and from then on uses an {@link REnvTruffleFrameAccess}.
+ *
+ * The bindings are stored in insertion order, so that {@code ls(sorted=FALSE)} lists them in the
+ * same order as for frame based environments. The index table maps a hash to the position of the
+ * binding in {@link #keys}; removed bindings leave a {@code null} key behind that is dropped when
+ * the table is rebuilt.
+ */
+public final class REnvHashedFrameAccess extends REnvFrameAccess {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private final MaterializedFrame frame;
+    private final int initialCapacity;
+
+    /*
+     * The tables are allocated with the first binding, many environments are only created to
+     * evaluate in them and never get a binding before they are moved to the frame.
+     */
+    private String[] keys;
+    private Object[] values;
+    /**
+     * Positions in {@link #keys} plus one, {@code 0} is an empty slot. The length is a power of two
+     * and at least twice the length of {@link #keys}.
+     */
+    private int[] index;
+    /** Number of used positions in {@link #keys}, including removed bindings. */
+    private int used;
+    /** Number of live bindings. */
+    private int size;
+
+    /**
+     * Records which bindings are locked, allocated lazily like in {@link REnvTruffleFrameAccess}.
+     */
+    private Set<String> lockedBindings;
+
+    public REnvHashedFrameAccess(MaterializedFrame frame, int initialSize) {
+        this.frame = frame;
+        int capacity = MIN_CAPACITY;
+        while (capacity < initialSize && capacity < (1 << 29)) {
+            capacity <<= 1;
+        }
+        this.initialCapacity = capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        values = new Object[capacity];
+        index = new int[capacity << 1];
+        used = 0;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the position of {@code key} in {@link #keys} or {@code -1}.
+     */
+    private int find(String key) {
+        if (index == null) {
+            return -1;
+        }
+        int mask = index.length - 1;
+        int i = hash(key) & mask;
+        int entry;
+        while ((entry = index[i]) != 0) {
+            String k = keys[entry - 1];
+            if (k != null && (k == key || k.equals(key))) {
+                return entry - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(String key, Object value) {
+        if (keys == null) {
+            allocate(initialCapacity);
+        } else if (used == keys.length) {
+            // drop removed bindings, grow only if the table is at least half full of live ones
+            rehash(size >= keys.length >> 1 ? keys.length << 1 : keys.length);
+        }
+        int pos = used++;
+        keys[pos] = key;
+        values[pos] = value;
+        size++;
+        addToIndex(key, pos);
+    }
+
+    private void addToIndex(String key, int pos) {
+        int mask = index.length - 1;
+        int i = hash(key) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = pos + 1;
+    }
+
+    private void rehash(int capacity) {
+        String[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldUsed; i++) {
+            String key = oldKeys[i];
+            if (key != null) {
+                keys[used] = key;
+                values[used] = oldValues[i];
+                addToIndex(key, used);
+                used++;
+            }
+        }
+    }
+
+    @Override
+    public MaterializedFrame getFrame() {
+        return frame;
+    }
+
+    @Override
+    public Object get(String key) {
+        CompilerAsserts.neverPartOfCompilation();
+        int pos = find(key);
+        if (pos < 0) {
+            return null;
+        }
+        Object value = values[pos];
+        // special treatment for active binding: call bound function
+        if (ActiveBinding.isActiveBinding(value)) {
+            Object readValue = ((ActiveBinding) value).readValue();
+            // special case: if the active binding returns RMissing, then this should behave
+            // like the variable does not exist.
+            return readValue != RMissing.instance ? readValue : null;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean isActiveBinding(String key) {
+        CompilerAsserts.neverPartOfCompilation();
+        int pos = find(key);
+        return pos >= 0 && ActiveBinding.isActiveBinding(values[pos]);
+    }
+
+    @Override
+    public void put(String key, Object value) throws PutException {
+        CompilerAsserts.neverPartOfCompilation();
+        assert key != null;
+        assert value != null;
+        if (lockedBindings != null && lockedBindings.contains(key)) {
+            throw new PutException(RError.Message.ENV_CHANGE_BINDING, key);
+        }
+        int pos = find(key);
+        if (pos < 0) {
+            insert(key, value);
+        } else if (ActiveBinding.isActiveBinding(values[pos])) {
+            ((ActiveBinding) values[pos]).writeValue(value);
+        } else {
+            values[pos] = value;
+        }
+    }
+
+    @Override
+    public void rm(String key) throws PutException {
+        CompilerAsserts.neverPartOfCompilation();
+        assert key != null;
+        if (lockedBindings != null) {
+            lockedBindings.remove(key);
+        }
+        int pos = find(key);
+        if (pos < 0) {
+            throw new PutException(RError.Message.UNKNOWN_OBJECT, key);
+        }
+        Object value = values[pos];
+        if (ActiveBinding.isActiveBinding(value) && ((ActiveBinding) value).isHidden()) {
+            ((ActiveBinding) value).setInitialized(false);
+            return;
+        }
+        // the index entry stays and is skipped by find until the next rehash
+        keys[pos] = null;
+        values[pos] = null;
+        size--;
+    }
+
+    @Override
+    @TruffleBoundary
+    public RStringVector ls(boolean allNames, Pattern pattern, boolean sorted) {
+        ArrayList<String> names = new ArrayList<>(size);
+        for (int i = 0; i < used; i++) {
+            String key = keys[i];
+            if (key != null && ActiveBinding.isListed(values[i]) && REnvironment.includeName(key, allNames, pattern)) {
+                names.add(key);
+            }
+        }
+        String[] data = names.toArray(new String[names.size()]);
+        if (sorted) {
+            REnvTruffleFrameAccess.sortNames(data);
+        }
+        return RDataFactory.createStringVector(data, RDataFactory.COMPLETE_VECTOR);
+    }
+
+    @Override
+    @TruffleBoundary
+    public boolean bindingIsLocked(String key) {
+        return lockedBindings != null && lockedBindings.contains(key);
+    }
+
+    @Override
+    @TruffleBoundary
+    public void lockBindings() {
+        for (int i = 0; i < used; i++) {
+            if (keys[i] != null) {
+                lockBinding(keys[i]);
+            }
+        }
+    }
+
+    @Override
+    @TruffleBoundary
+    public void lockBinding(String key) {
+        if (lockedBindings == null) {
+            lockedBindings = new HashSet<>();
+        }
+        lockedBindings.add(key);
+    }
+
+    @Override
+    @TruffleBoundary
+    public void unlockBinding(String key) {
+        if (lockedBindings != null) {
+            lockedBindings.remove(key);
+        }
+    }
+
+    /**
+     * Moves the bindings into slots of the frame and returns the frame based access that replaces
+     * this one. This instance must not be used afterwards.
+     */
+    @TruffleBoundary
+    public REnvTruffleFrameAccess toTruffleFrameAccess() {
+        REnvTruffleFrameAccess result = new REnvTruffleFrameAccess(frame);
+        try {
+            for (int i = 0; i < used; i++) {
+                String key = keys[i];
+                if (key == null) {
+                    continue;
+                }
+                Object value = values[i];
+                if (ActiveBinding.isActiveBinding(value)) {
+                    // must not go through put, which would call the binding's function
+                    FrameSlotChangeMonitor.setActiveBinding(frame, FrameSlotChangeMonitor.findOrAddFrameSlot(frame.getFrameDescriptor(), key, FrameSlotKind.Object), (ActiveBinding) value,
+                                    false, null);
+                } else {
+                    result.put(key, value);
+                }
+            }
+        } catch (PutException ex) {
+            // there are no locked bindings yet
+            throw RInternalError.shouldNotReachHere(ex);
+        }
+        result.setLockedBindings(lockedBindings);
+        keys = null;
+        values = null;
+        index = null;
+        used = size = 0;
+        return result;
+    }
+}
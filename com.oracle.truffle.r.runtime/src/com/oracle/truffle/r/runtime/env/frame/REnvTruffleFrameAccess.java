@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2018, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -208,18 +208,25 @@ public final class REnvTruffleFrameAccess extends REnvFrameAccess {
         }
         String[] data = matchedNamesList.toArray(new String[matchedNamesList.size()]);
         if (sorted) {
-            Locale locale = RContext.getInstance().stateRLocale.getLocale(RLocale.COLLATE);
-            Collator collator = locale == Locale.ROOT || locale == null ? null : RLocale.getOrderCollator(locale);
-            Arrays.sort(data, new Comparator<String>() {
-                @Override
-                public int compare(String o1, String o2) {
-                    return RLocale.compare(collator, o1, o2);
-                }
-            });
+            sortNames(data);
         }
         return RDataFactory.createStringVector(data, RDataFactory.COMPLETE_VECTOR);
     }
 
+    /**
+     * Sorts the result of {@link #ls} according to the collation of the current locale.
+     */
+    static void sortNames(String[] data) {
+        Locale locale = RContext.getInstance().stateRLocale.getLocale(RLocale.COLLATE);
+        Collator collator = locale == Locale.ROOT || locale == null ? null : RLocale.getOrderCollator(locale);
+        Arrays.sort(data, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return RLocale.compare(collator, o1, o2);
+            }
+        });
+    }
+
     @Override
     @TruffleBoundary
     public boolean bindingIsLocked(String key) {
@@ -245,6 +252,10 @@ public final class REnvTruffleFrameAccess extends REnvFrameAccess {
         lockedBindings.add(key);
     }
 
+    void setLockedBindings(Set<String> lockedBindings) {
+        this.lockedBindings = lockedBindings;
+    }
+
     @Override
     @TruffleBoundary
     public void unlockBinding(String key) {
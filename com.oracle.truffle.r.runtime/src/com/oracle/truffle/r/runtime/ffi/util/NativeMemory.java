@@ -27,6 +27,8 @@ import java.io.StringWriter;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Map.Entry;
@@ -68,6 +70,10 @@ public abstract class NativeMemory {
             this.bytes = bytes;
             this.offset = offset;
         }
+
+        public int getBytes() {
+            return bytes;
+        }
     }
 
     private static final Unsafe UNSAFE = initUnsafe();
@@ -103,12 +109,57 @@ public abstract class NativeMemory {
         return result;
     }
 
+    /**
+     * Like {@link #allocate(ElementType, long, Object)}, but the memory is filled with zeros.
+     */
+    public static long allocateZeroed(ElementType type, long size, Object debugInfo) {
+        long result = allocate(type, size, debugInfo);
+        UNSAFE.setMemory(result, size * type.bytes, (byte) 0);
+        return result;
+    }
+
     public static void free(long address, Object debugInfo) {
         traceFree(address, debugInfo);
         UNSAFE.freeMemory(address);
         traceFreeDone(address, debugInfo);
     }
 
+    /**
+     * Releases the memory of a direct or memory mapped buffer, e.g. unmaps the file, right away
+     * rather than when the buffer is collected. The buffer and any of its views must not be
+     * accessed afterwards. Does nothing if the JDK does not allow to release the buffer explicitly.
+     */
+    @TruffleBoundary
+    public static void releaseDirectBuffer(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            Method invokeCleaner = getInvokeCleaner();
+            if (invokeCleaner != null) {
+                // JDK 9 and later
+                invokeCleaner.invoke(UNSAFE, buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the buffer is released once it is collected
+        }
+    }
+
+    private static Method getInvokeCleaner() {
+        try {
+            return Unsafe.class.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
     @TruffleBoundary
     public static NativeMemoryWrapper wrapNativeMemory(long address, Object owner) {
         return new FreeingNativeMemoryWrapper(address, owner);
@@ -151,6 +202,26 @@ public abstract class NativeMemory {
         UNSAFE.copyMemory(null, source, destination, elementBase, (long) elementSize * (long) elementsCount);
     }
 
+    /**
+     * Copies {@code elementsCount} elements of the native array at {@code source} starting at
+     * {@code sourceIndex} to the beginning of the Java array {@code destination}.
+     */
+    public static void copyRegion(NativeMemoryWrapper source, long sourceIndex, Object destination, ElementType type, int elementsCount) {
+        copyRegion(source.getAddress(), sourceIndex, destination, type, elementsCount);
+    }
+
+    public static void copyRegion(long source, long sourceIndex, Object destination, ElementType type, int elementsCount) {
+        UNSAFE.copyMemory(null, source + sourceIndex * type.bytes, destination, type.offset, (long) type.bytes * elementsCount);
+    }
+
+    /**
+     * Copies the first {@code elementsCount} elements of the Java array {@code source} to the
+     * native array at {@code destination} starting at {@code destinationIndex}.
+     */
+    public static void copyRegion(Object source, NativeMemoryWrapper destination, long destinationIndex, ElementType type, int elementsCount) {
+        UNSAFE.copyMemory(source, type.offset, null, destination.getAddress() + destinationIndex * type.bytes, (long) type.bytes * elementsCount);
+    }
+
     public static String copyCString(long address, Charset encoding) {
         return copyCString(address, Integer.MAX_VALUE, encoding);
     }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2017, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2017, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -30,6 +30,7 @@ import com.oracle.truffle.r.runtime.nodes.RBaseNodeWithWarnings;
 import com.oracle.truffle.r.runtime.rng.RRNG;
 import com.oracle.truffle.r.runtime.rng.RRNG.NormKind;
 import com.oracle.truffle.r.runtime.rng.RandomNumberGenerator;
+import com.oracle.truffle.r.runtime.rng.UniformBlock;
 
 /**
  * Defines common interface for math functions generating a random scalar value, which is used to
@@ -40,6 +41,19 @@ public class RandomFunctions {
         double execute(double a, double b, double c, RandomNumberProvider rand);
     }
 
+    /**
+     * Implemented by random functions that are known to consume a minimal number of uniform random
+     * numbers per value, which allows the vectorized versions to generate the uniform random numbers
+     * in blocks, see {@link UniformBlock}.
+     */
+    public interface RandFunctionWithBlocks {
+        /**
+         * Returns the number of uniform random numbers that are consumed at least by one value with
+         * the given parameters, or {@code 0} if some values may not consume any.
+         */
+        int minUniformsPerValue(double a, double b, double c, RandomNumberProvider rand);
+    }
+
     public abstract static class RandFunction3_DoubleWithWarnings extends RBaseNodeWithWarnings implements RandFunction3_DoubleBase {
 
     }
@@ -86,6 +100,26 @@ public class RandomFunctions {
             return fromCurrentRNG(RContext.getInstance());
         }
 
+        /**
+         * Returns a provider that generates the uniform random numbers of this provider in blocks,
+         * {@code expected} is the number of uniform random numbers the caller consumes at least.
+         */
+        public RandomNumberProvider withBlock(long expected) {
+            return new RandomNumberProvider(new UniformBlock(generator, expected), normKind);
+        }
+
+        /**
+         * Updates the number of uniform random numbers still consumed at least by the user of a
+         * provider created by {@link #withBlock(long)}.
+         */
+        public void atLeast(long count) {
+            ((UniformBlock) generator).atLeast(count);
+        }
+
+        public NormKind getNormKind() {
+            return normKind;
+        }
+
         public boolean isSame(RandomNumberProvider other) {
             return this.generator == other.generator && this.normKind == other.normKind;
         }
@@ -1,7 +1,7 @@
 /*
  * Copyright (C) 1998 Ross Ihaka
  * Copyright (c) 2000, The R Core Team
- * Copyright (c) 2016, 2019, Oracle and/or its affiliates
+ * Copyright (c) 2016, 2021, Oracle and/or its affiliates
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -28,6 +28,7 @@ import com.oracle.truffle.r.runtime.nmath.MathFunctions.Function2_2;
 import com.oracle.truffle.r.runtime.nmath.RMath;
 import com.oracle.truffle.r.runtime.nmath.RMathError;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandFunction1_Double;
+import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandFunctionWithBlocks;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandomNumberProvider;
 import com.oracle.truffle.r.runtime.nmath.distr.ExpFactory.RExpNodeGen;
 
@@ -65,7 +66,7 @@ public final class Exp {
     }
 
     @GenerateUncached
-    public abstract static class RExp extends RandFunction1_Double {
+    public abstract static class RExp extends RandFunction1_Double implements RandFunctionWithBlocks {
         @Specialization
         public double exec(double scale, RandomNumberProvider rand) {
             if (!Double.isFinite(scale) || scale <= 0.0) {
@@ -74,6 +75,11 @@ public final class Exp {
             return scale * rand.expRand();
         }
 
+        @Override
+        public int minUniformsPerValue(double scale, double b, double c, RandomNumberProvider rand) {
+            return Double.isFinite(scale) && scale > 0.0 ? 1 : 0;
+        }
+
         public static RExp create() {
             return RExpNodeGen.create();
         }
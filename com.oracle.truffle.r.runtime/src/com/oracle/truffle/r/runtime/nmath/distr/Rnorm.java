@@ -27,10 +27,12 @@ import com.oracle.truffle.api.profiles.ConditionProfile;
 import com.oracle.truffle.api.profiles.PrimitiveValueProfile;
 import com.oracle.truffle.r.runtime.nmath.RMathError;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandFunction2_Double;
+import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandFunctionWithBlocks;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandomNumberProvider;
+import com.oracle.truffle.r.runtime.rng.RRNG.NormKind;
 
 @GenerateUncached
-public abstract class Rnorm extends RandFunction2_Double {
+public abstract class Rnorm extends RandFunction2_Double implements RandFunctionWithBlocks {
 
     @Specialization
     public double exec(double muIn, double sigmaIn, RandomNumberProvider rand,
@@ -51,6 +53,15 @@ public abstract class Rnorm extends RandFunction2_Double {
         }
     }
 
+    @Override
+    public int minUniformsPerValue(double mu, double sigma, double c, RandomNumberProvider rand) {
+        if (Double.isNaN(mu) || !Double.isFinite(mu) || !Double.isFinite(sigma) || sigma <= 0.) {
+            return 0;
+        }
+        // the other kinds reject some of the uniform random numbers or keep a second value
+        return rand.getNormKind() == NormKind.INVERSION ? 2 : 0;
+    }
+
     public static Rnorm create() {
         return RnormNodeGen.create();
     }
@@ -32,6 +32,7 @@ import com.oracle.truffle.r.runtime.nmath.MathFunctions.Function3_1;
 import com.oracle.truffle.r.runtime.nmath.MathFunctions.Function3_2;
 import com.oracle.truffle.r.runtime.nmath.RMathError;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandFunction2_Double;
+import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandFunctionWithBlocks;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandomNumberProvider;
 
 public final class Unif {
@@ -40,7 +41,7 @@ public final class Unif {
     }
 
     @GenerateUncached
-    public abstract static class Runif extends RandFunction2_Double {
+    public abstract static class Runif extends RandFunction2_Double implements RandFunctionWithBlocks {
         @Specialization
         public double exec(double minIn, double maxIn, RandomNumberProvider rand,
                         @Cached() BranchProfile errorProfile,
@@ -59,6 +60,11 @@ public final class Unif {
             return min + rand.unifRand() * (max - min);
         }
 
+        @Override
+        public int minUniformsPerValue(double min, double max, double c, RandomNumberProvider rand) {
+            return RRuntime.isFinite(min) && RRuntime.isFinite(max) && max > min ? 1 : 0;
+        }
+
         public static Runif create() {
             return UnifFactory.RunifNodeGen.create();
         }
@@ -14,7 +14,7 @@
  * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
  *
  * Copyright (c) 2014, Purdue University
- * Copyright (c) 2014, 2020, Oracle and/or its affiliates
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates
  *
  * All rights reserved.
  */
@@ -23,7 +23,17 @@ package com.oracle.truffle.r.runtime.nodes;
 import java.util.HashSet;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.r.runtime.Collections.ComplexElementHash;
+import com.oracle.truffle.r.runtime.Collections.DoubleElementHash;
+import com.oracle.truffle.r.runtime.Collections.ElementHash;
+import com.oracle.truffle.r.runtime.Collections.IntElementHash;
+import com.oracle.truffle.r.runtime.Collections.StringElementHash;
 import com.oracle.truffle.r.runtime.RRuntime;
+import com.oracle.truffle.r.runtime.data.RComplexVector;
+import com.oracle.truffle.r.runtime.data.RDoubleVector;
+import com.oracle.truffle.r.runtime.data.RIntVector;
+import com.oracle.truffle.r.runtime.data.RLogicalVector;
+import com.oracle.truffle.r.runtime.data.RStringVector;
 import com.oracle.truffle.r.runtime.data.VectorDataLibrary;
 import com.oracle.truffle.r.runtime.data.model.RAbstractContainer;
 import com.oracle.truffle.r.runtime.data.model.RAbstractListBaseVector;
@@ -31,7 +41,8 @@ import com.oracle.truffle.r.runtime.data.model.RAbstractListBaseVector;
 /**
  * Code sharing vehicle for the slight differences in behavior between {@code duplicated} and
  * {@code anyDuplicated} (both internal and native versions) and whether {@code fromLast} is
- * {@code TRUE/FALSE}.
+ * {@code TRUE/FALSE}. Atomic vectors without {@code incomparables} are analyzed by an
+ * {@link ElementHash}, other vectors element by element using boxed entries.
  */
 public class DuplicationHelper {
     private final RAbstractContainer x;
@@ -55,6 +66,13 @@ public class DuplicationHelper {
         dupVec = justIndex ? null : new byte[x.getLength()];
     }
 
+    private DuplicationHelper(byte[] dupVec, int index) {
+        this.x = null;
+        this.incompContents = null;
+        this.dupVec = dupVec;
+        this.index = index;
+    }
+
     public boolean doIt(int i) {
         DupEntry entry = new DupEntry(x.getDataAtAsObject(i));
         if (incompContents == null || !incompContents.contains(entry)) {
@@ -84,6 +102,12 @@ public class DuplicationHelper {
 
     @TruffleBoundary
     public static DuplicationHelper analyze(RAbstractContainer x, RAbstractContainer incomparables, boolean justIndex, boolean fromLast) {
+        if (incomparables == null) {
+            ElementHash hash = createElementHash(x);
+            if (hash != null) {
+                return analyze(hash, justIndex, fromLast);
+            }
+        }
         DuplicationHelper ds = new DuplicationHelper(x, incomparables, justIndex, fromLast);
         if (fromLast) {
             for (int i = x.getLength() - 2; i >= 0; i--) {
@@ -101,6 +125,40 @@ public class DuplicationHelper {
         return ds;
     }
 
+    private static DuplicationHelper analyze(ElementHash hash, boolean justIndex, boolean fromLast) {
+        if (justIndex) {
+            return new DuplicationHelper(null, hash.firstDuplicate(fromLast) + 1);
+        }
+        int[] first = hash.firstOccurrences(fromLast);
+        byte[] dupVec = new byte[first.length];
+        for (int i = 0; i < first.length; i++) {
+            if (first[i] != i) {
+                dupVec[i] = RRuntime.LOGICAL_TRUE;
+            }
+        }
+        return new DuplicationHelper(dupVec, 0);
+    }
+
+    private static ElementHash createElementHash(RAbstractContainer x) {
+        if (x instanceof RIntVector) {
+            return new IntElementHash(((RIntVector) x).getReadonlyData());
+        } else if (x instanceof RDoubleVector) {
+            return new DoubleElementHash(((RDoubleVector) x).getReadonlyData());
+        } else if (x instanceof RStringVector) {
+            return new StringElementHash(((RStringVector) x).getReadonlyStringData());
+        } else if (x instanceof RComplexVector) {
+            return new ComplexElementHash(((RComplexVector) x).getReadonlyData());
+        } else if (x instanceof RLogicalVector) {
+            byte[] data = ((RLogicalVector) x).getReadonlyData();
+            int[] values = new int[data.length];
+            for (int i = 0; i < data.length; i++) {
+                values[i] = data[i];
+            }
+            return new IntElementHash(values);
+        }
+        return null;
+    }
+
     private static final class DupEntry {
 
         private final Object element;
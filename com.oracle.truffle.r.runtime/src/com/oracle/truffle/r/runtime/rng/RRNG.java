@@ -1,7 +1,7 @@
 /*
  * Copyright (c) 1995-2012, The R Core Team
  * Copyright (c) 2003, The R Foundation
- * Copyright (c) 2014, 2020, Oracle and/or its affiliates
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -44,14 +44,15 @@ import com.oracle.truffle.r.runtime.ffi.BaseRFFI;
 import com.oracle.truffle.r.runtime.nmath.RandomFunctions.RandomNumberProvider;
 import static com.oracle.truffle.r.runtime.rng.RRNG.SampleKind.REJECTION;
 import static com.oracle.truffle.r.runtime.rng.RRNG.SampleKind.ROUNDING;
+import com.oracle.truffle.r.runtime.rng.lecuyer.LecuyerCMRG;
 import com.oracle.truffle.r.runtime.rng.mm.MarsagliaMulticarry;
 import com.oracle.truffle.r.runtime.rng.mt.MersenneTwister;
 import com.oracle.truffle.r.runtime.rng.user.UserRNG;
 
 /**
  * Facade class to the R random number generators, (see src/main/RNG.c in GnuR). The individual
- * generators are implemented in their own class. Currently there are only two implemented, the
- * default, {@link MersenneTwister} and {@link MarsagliaMulticarry}.
+ * generators are implemented in their own class. Currently implemented are the default,
+ * {@link MersenneTwister}, {@link MarsagliaMulticarry}, {@link LecuyerCMRG} and {@link UserRNG}.
  *
  * The fact that the R programmer can set {@code .Random.seed} explicitly, as opposed to the
  * recommended approach of calling {@code set.seed}, is something of a pain as it changes the
@@ -80,7 +81,7 @@ public class RRNG {
         KNUTH_TAOCP(),
         USER_UNIF(UserRNG::new),
         KNUTH_TAOCP2(),
-        LECUYER_CMRG();
+        LECUYER_CMRG(LecuyerCMRG::new);
 
         @CompilationFinal(dimensions = 1) static final Kind[] VALUES = values();
 
@@ -247,6 +248,17 @@ public class RRNG {
             return this.currentSeeds;
         }
 
+        /**
+         * Returns the seeds as observed by R code reading {@value RRNG#RANDOM_SEED}, i.e. brought up
+         * to date with the values generated so far.
+         */
+        public Object getObservableSeeds() {
+            if (currentSeeds != null && currentSeeds == currentGenerator.getSeeds()) {
+                currentGenerator.syncSeeds();
+            }
+            return currentSeeds;
+        }
+
     }
 
     private static ContextStateImpl getContextState() {
@@ -300,11 +312,15 @@ public class RRNG {
         return currentGenerator().genrandDouble();
     }
 
-    private static double ru() {
-        return (Math.floor(U * RRNG.unifRand()) + RRNG.unifRand()) / U;
+    private static double unifRand(RandomNumberProvider rand) {
+        return rand != null ? rand.unifRand() : unifRand();
     }
 
-    private static double unifIndex0(double dn) {
+    private static double ru(RandomNumberProvider rand) {
+        return (Math.floor(U * unifRand(rand)) + unifRand(rand)) / U;
+    }
+
+    private static double unifIndex0(RandomNumberProvider rand, double dn) {
         double cut = MAX_INT;
 
         switch (RRNG.currentKind()) {
@@ -317,7 +333,7 @@ public class RRNG {
                 break;
         }
 
-        double u = dn > cut ? ru() : RRNG.unifRand();
+        double u = dn > cut ? ru(rand) : unifRand(rand);
         return Math.floor(dn * u);
     }
 
@@ -328,7 +344,7 @@ public class RRNG {
         // generate a random non-negative integer < 2 ^ bits in 16 bit chunks
         long v = 0;
         for (int n = 0; n <= bits; n += 16) {
-            double ru = rand != null ? rand.unifRand() : unifRand();
+            double ru = unifRand(rand);
             int v1 = (int) Math.floor(ru * 65536);
             v = 65536 * v + v1;
         }
@@ -343,7 +359,7 @@ public class RRNG {
 
     public static double unifIndex(RandomNumberProvider rand, double dn) {
         if (RRNG.currentSampleKind() == ROUNDING) {
-            return unifIndex0(dn);
+            return unifIndex0(rand, dn);
         }
 
         // rejection sampling from integers below the next larger power of two
@@ -538,8 +554,17 @@ public class RRNG {
      * invoked before any random numbers generation as the user may have directly changed the
      * {@code .Random.seed} variable and the current generator and/or its seed should be updated.
      */
-    @TruffleBoundary
     public static void getRNGState() {
+        ContextStateImpl state = getContextState();
+        if (state.currentSeeds != null && state.currentSeeds == state.currentGenerator.getSeeds()) {
+            // no change of the .Random.seed variable since the last putRNGState
+            return;
+        }
+        getRNGStateSlowPath();
+    }
+
+    @TruffleBoundary
+    private static void getRNGStateSlowPath() {
         Object seedsObj = getDotRandomSeed();
         if (seedsObj == null) {
             randomize(currentKind());
@@ -583,12 +608,22 @@ public class RRNG {
 
     /**
      * Saves the state of RNG into global environment under {@code .Random.seed}. This should be
-     * invoked after any random numbers generation.
+     * invoked after any random numbers generation. The variable refers to the seeds array of the
+     * current generator, so once it is set, there is nothing to do until R code assigns to it or
+     * the generator changes. Generators may bring the seeds up to date only when the variable is
+     * read, see {@link ContextStateImpl#getObservableSeeds()}.
      */
-    @TruffleBoundary
     public static void putRNGState() {
-        int[] seeds = currentGenerator().getSeeds();
-        seeds[0] = currentKind().ordinal() + 100 * currentNormKind().ordinal() + 10000 * currentSampleKind().ordinal();
-        RContext.getInstance().stateRNG.setCurrentSeeds(seeds);
+        ContextStateImpl state = getContextState();
+        int[] seeds = state.currentGenerator.getSeeds();
+        seeds[0] = state.currentGenerator.getKind().ordinal() + 100 * state.currentNormKind.ordinal() + 10000 * state.currentSampleKind.ordinal();
+        if (state.currentSeeds != seeds) {
+            setCurrentSeeds(state, seeds);
+        }
+    }
+
+    @TruffleBoundary
+    private static void setCurrentSeeds(ContextStateImpl state, int[] seeds) {
+        state.setCurrentSeeds(seeds);
     }
 }
@@ -1,7 +1,7 @@
 /*
  * Copyright (c) 1995-2012, The R Core Team
  * Copyright (c) 2003, The R Foundation
- * Copyright (c) 2014, 2018, Oracle and/or its affiliates
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -37,6 +37,25 @@ public interface RandomNumberGenerator {
 
     double genrandDouble();
 
+    /**
+     * Stores {@code len} random doubles into {@code dst} starting at index {@code from}, the values
+     * are the same as if {@link #genrandDouble()} was called {@code len} times.
+     */
+    default void fillUniform(double[] dst, int from, int len) {
+        for (int i = from; i < from + len; i++) {
+            dst[i] = genrandDouble();
+        }
+    }
+
+    /**
+     * Brings the array returned by {@link #getSeeds()} up to date with the values generated so far.
+     * Generators may keep part of their state elsewhere while generating values, which is only
+     * written to the seeds when R code observes {@code .Random.seed}.
+     */
+    default void syncSeeds() {
+        // the seeds are always up to date
+    }
+
     Kind getKind();
 
     /**
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.runtime.rng;
+
+import com.oracle.truffle.r.runtime.RInternalError;
+import com.oracle.truffle.r.runtime.rng.RRNG.Kind;
+
+/**
+ * Hands out the uniform random numbers of another generator, which are generated in blocks via
+ * {@link RandomNumberGenerator#fillUniform(double[], int, int)}. The user of the block tells how
+ * many numbers it is going to consume at least, see {@link #atLeast(long)}, and a block is never
+ * larger than that. The underlying generator therefore never gets ahead of the numbers that are
+ * actually used and the sequence, as well as the state left in {@code .Random.seed}, is the same as
+ * if the numbers were generated one by one.
+ */
+public final class UniformBlock implements RandomNumberGenerator {
+
+    public static final int BLOCK_SIZE = 1024;
+
+    private final RandomNumberGenerator generator;
+    private final double[] block;
+    private int index;
+    private int limit;
+    private long remaining;
+
+    /**
+     * @param expected the number of values the caller will consume at least
+     */
+    public UniformBlock(RandomNumberGenerator generator, long expected) {
+        assert !(generator instanceof UniformBlock);
+        this.generator = generator;
+        this.block = new double[(int) Math.max(1, Math.min(BLOCK_SIZE, expected))];
+        this.remaining = expected;
+    }
+
+    /**
+     * Updates the number of values that the caller is still going to consume at least.
+     */
+    public void atLeast(long count) {
+        remaining = count;
+    }
+
+    @Override
+    public double genrandDouble() {
+        if (index == limit) {
+            int size = (int) Math.max(1, Math.min(block.length, remaining));
+            generator.fillUniform(block, 0, size);
+            index = 0;
+            limit = size;
+        }
+        remaining--;
+        return block[index++];
+    }
+
+    @Override
+    public void init(int seed) {
+        throw RInternalError.shouldNotReachHere("the state of a uniform block cannot be changed");
+    }
+
+    @Override
+    public void fixupSeeds(boolean initial) {
+        throw RInternalError.shouldNotReachHere("the state of a uniform block cannot be changed");
+    }
+
+    @Override
+    public int[] getSeeds() {
+        return generator.getSeeds();
+    }
+
+    @Override
+    public Kind getKind() {
+        return generator.getKind();
+    }
+
+    @Override
+    public int getNSeed() {
+        return generator.getNSeed();
+    }
+
+    @Override
+    public void setISeed(int[] seeds) {
+        throw RInternalError.shouldNotReachHere("the state of a uniform block cannot be changed");
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 1995-2012, The R Core Team
+ * Copyright (c) 2003, The R Foundation
+ * Copyright (c) 2021, Oracle and/or its affiliates
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, a copy is available at
+ * https://www.R-project.org/Licenses/
+ */
+package com.oracle.truffle.r.runtime.rng.lecuyer;
+
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.r.runtime.rng.RNGInitAdapter;
+import com.oracle.truffle.r.runtime.rng.RRNG;
+import com.oracle.truffle.r.runtime.rng.RRNG.Kind;
+
+/**
+ * "L'Ecuyer-CMRG" RNG, the combined multiple recursive generator MRG32k3a. The generator itself is
+ * transcribed from GnuR RNG.c, the stream and sub-stream jumping from rngstream.c of the parallel
+ * package, which uses the same seed layout as {@code .Random.seed}.
+ *
+ * Both components are linear recurrences of order three, so advancing the state by {@code n} steps
+ * is a multiplication with the {@code n}-th power of the one step transition matrix. The jump
+ * matrices for streams ({@code 2^127} steps) and sub-streams ({@code 2^76} steps) are computed once
+ * by repeated squaring rather than hard-coded.
+ */
+public final class LecuyerCMRG extends RNGInitAdapter {
+
+    private static final long M1 = 4294967087L;
+    private static final long M2 = 4294944443L;
+    private static final long A12 = 1403580L;
+    private static final long A13N = 810728L;
+    private static final long A21 = 527612L;
+    private static final long A23N = 1370589L;
+    private static final double NORMC = 2.328306549295727688e-10;
+
+    private static final int NSEED = 6;
+
+    /**
+     * Length of the seed in the {@code .Random.seed} format, i.e. including the generator flag.
+     */
+    public static final int SEED_LENGTH = NSEED + 1;
+
+    public static final int STREAM_LOG2_STEPS = 127;
+    public static final int SUBSTREAM_LOG2_STEPS = 76;
+
+    /* One step transition matrices of the two components. */
+    private static final long[][] A1 = {{0, 1, 0}, {0, 0, 1}, {M1 - A13N, A12, 0}};
+    private static final long[][] A2 = {{0, 1, 0}, {0, 0, 1}, {M2 - A23N, 0, A21}};
+
+    @CompilationFinal(dimensions = 2) private static final long[][] A1_STREAM = powerOfTwo(A1, STREAM_LOG2_STEPS, M1);
+    @CompilationFinal(dimensions = 2) private static final long[][] A2_STREAM = powerOfTwo(A2, STREAM_LOG2_STEPS, M2);
+    @CompilationFinal(dimensions = 2) private static final long[][] A1_SUBSTREAM = powerOfTwo(A1, SUBSTREAM_LOG2_STEPS, M1);
+    @CompilationFinal(dimensions = 2) private static final long[][] A2_SUBSTREAM = powerOfTwo(A2, SUBSTREAM_LOG2_STEPS, M2);
+
+    @Override
+    @TruffleBoundary
+    public void init(int seedParam) {
+        // cf. RNG_Init: the seeds must be valid for the second component as well
+        int seed = seedParam;
+        for (int i = 0; i < NSEED; i++) {
+            seed = (69069 * seed + 1);
+            while (Integer.toUnsignedLong(seed) >= M2) {
+                seed = (69069 * seed + 1);
+            }
+            setISeedItem(i, seed);
+        }
+    }
+
+    @Override
+    @TruffleBoundary
+    public void fixupSeeds(boolean initial) {
+        // first set: not all zero, in [0, m1), second set: not all zero, in [0, m2)
+        if (!isValid(0, M1) || !isValid(3, M2)) {
+            int seed = RRNG.timeToSeed();
+            for (int i = 0; i < 50; i++) {
+                seed = (69069 * seed + 1);
+            }
+            init(seed);
+        }
+    }
+
+    private boolean isValid(int from, long modulus) {
+        boolean notAllZero = false;
+        for (int i = from; i < from + 3; i++) {
+            long value = Integer.toUnsignedLong(getISeedItem(i));
+            if (value >= modulus) {
+                return false;
+            }
+            notAllZero |= value != 0;
+        }
+        return notAllZero;
+    }
+
+    @Override
+    public double genrandDouble() {
+        long p1 = A12 * Integer.toUnsignedLong(getISeedItem(1)) - A13N * Integer.toUnsignedLong(getISeedItem(0));
+        p1 %= M1;
+        if (p1 < 0) {
+            p1 += M1;
+        }
+        setISeedItem(0, getISeedItem(1));
+        setISeedItem(1, getISeedItem(2));
+        setISeedItem(2, (int) p1);
+
+        long p2 = A21 * Integer.toUnsignedLong(getISeedItem(5)) - A23N * Integer.toUnsignedLong(getISeedItem(3));
+        p2 %= M2;
+        if (p2 < 0) {
+            p2 += M2;
+        }
+        setISeedItem(3, getISeedItem(4));
+        setISeedItem(4, getISeedItem(5));
+        setISeedItem(5, (int) p2);
+
+        return ((p1 > p2) ? (p1 - p2) : (p1 - p2 + M1)) * NORMC;
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.LECUYER_CMRG;
+    }
+
+    @Override
+    public int getNSeed() {
+        return NSEED;
+    }
+
+    /**
+     * Returns the seed of the next stream, i.e. {@code seeds} advanced by {@code 2^127} steps. The
+     * arrays are in the {@code .Random.seed} format, the generator flag under index 0 is kept.
+     */
+    public static int[] nextStream(int[] seeds) {
+        return advance(seeds, A1_STREAM, A2_STREAM);
+    }
+
+    /**
+     * Returns the seed of the next sub-stream, i.e. {@code seeds} advanced by {@code 2^76} steps.
+     */
+    public static int[] nextSubStream(int[] seeds) {
+        return advance(seeds, A1_SUBSTREAM, A2_SUBSTREAM);
+    }
+
+    /**
+     * Returns {@code seeds} advanced by {@code 2^log2Steps} steps, computing the jump matrices in
+     * {@code log2Steps} squarings.
+     */
+    @TruffleBoundary
+    public static int[] jump(int[] seeds, int log2Steps) {
+        return advance(seeds, powerOfTwo(A1, log2Steps, M1), powerOfTwo(A2, log2Steps, M2));
+    }
+
+    private static int[] advance(int[] seeds, long[][] a1, long[][] a2) {
+        assert seeds.length >= SEED_LENGTH;
+        int[] result = new int[SEED_LENGTH];
+        result[0] = seeds[0];
+        for (int i = 0; i < 3; i++) {
+            long p1 = 0;
+            long p2 = 0;
+            for (int j = 0; j < 3; j++) {
+                p1 = (p1 + mulMod(a1[i][j], Integer.toUnsignedLong(seeds[j + 1]), M1)) % M1;
+                p2 = (p2 + mulMod(a2[i][j], Integer.toUnsignedLong(seeds[j + 4]), M2)) % M2;
+            }
+            result[i + 1] = (int) p1;
+            result[i + 4] = (int) p2;
+        }
+        return result;
+    }
+
+    private static long[][] powerOfTwo(long[][] a, int log2, long modulus) {
+        long[][] result = a;
+        for (int i = 0; i < log2; i++) {
+            result = multiply(result, result, modulus);
+        }
+        return result;
+    }
+
+    private static long[][] multiply(long[][] a, long[][] b, long modulus) {
+        long[][] result = new long[3][3];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                long sum = 0;
+                for (int k = 0; k < 3; k++) {
+                    sum = (sum + mulMod(a[i][k], b[k][j], modulus)) % modulus;
+                }
+                result[i][j] = sum;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes {@code a * b mod modulus} for operands below {@code 2^32} without overflowing 64
+     * bits, by splitting {@code b} into its upper and lower 16 bits.
+     */
+    private static long mulMod(long a, long b, long modulus) {
+        long high = (a * (b >>> 16)) % modulus;
+        return ((high << 16) % modulus + a * (b & 0xFFFF)) % modulus;
+    }
+}
@@ -1,7 +1,7 @@
 /*
  * Copyright (c) 1995, 1996  Robert Gentleman and Ross Ihaka
  * Copyright (c) 1997-2016,  The R Core Team
- * Copyright (c) 2013, 2018, Oracle and/or its affiliates
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -68,9 +68,11 @@ public final class MersenneTwister extends RNGInitAdapter {
     private static final int TEMPERING_MASK_C = 0xefc60000;
 
     /*
-     * This generator can efficiently generate many random numbers in one go, upon each call to
-     * genrandDouble() we take the next random value from 'buffer'. If the buffer is empty, we fill
-     * it.
+     * This generator can efficiently generate many random numbers in one go: the tempered values of
+     * the whole state vector are kept in 'buffer', so that 'buffer[i]' corresponds to 'mt[i]' and
+     * 'bufferIndex' plays the role of 'mti' in GnuR. When the buffer is exhausted, the next N words
+     * are generated. The position is written to the seeds only when they are observed, see
+     * syncSeeds().
      */
     private static final int BUFFER_SIZE = N;
     private final double[] buffer = new double[BUFFER_SIZE];
@@ -91,9 +93,8 @@ public final class MersenneTwister extends RNGInitAdapter {
 
     @Override
     public void setISeed(int[] seeds) {
-        fixupSeeds(false);
-        // kill the current buffer if the seed changes
-        bufferIndex = BUFFER_SIZE;
+        super.setISeed(seeds);
+        resetBuffer();
     }
 
     /**
@@ -113,7 +114,7 @@ public final class MersenneTwister extends RNGInitAdapter {
             setISeedItem(i, seed);
         }
         fixupSeeds(true);
-        bufferIndex = BUFFER_SIZE;
+        resetBuffer();
     }
 
     @Override
@@ -136,60 +137,87 @@ public final class MersenneTwister extends RNGInitAdapter {
         }
     }
 
+    /**
+     * Continues from the position {@code mti} stored in the seeds: the rest of the current state
+     * vector is tempered into the buffer, or the next N words get generated on the next request.
+     */
+    private void resetBuffer() {
+        int mti = getISeedItem(0);
+        // Note: mti == N + 1 would mean sgenrand(4357) in GnuR, it appears that this never happens
+        if (mti >= N) {
+            bufferIndex = BUFFER_SIZE;
+        } else {
+            temper(mti);
+            bufferIndex = mti;
+        }
+    }
+
+    @Override
+    public void syncSeeds() {
+        setISeedItem(0, bufferIndex);
+    }
+
     /**
      * The actual generating method, essentially transcribed from MT_genrand in GnuR RNG.c.
      */
     @Override
     public double genrandDouble() {
         if (bufferIndex == BUFFER_SIZE) {
-            int localDummy0 = getISeedItem(0);
-            int localMti = localDummy0;
-            // It appears that this never happens
-            // sgenrand(4357);
-            assert localMti != N + 1;
-            int pos = 0;
-            while (true) {
-                int loopCount = Math.min(BUFFER_SIZE - pos, N - localMti);
-                for (int i = 0; i < loopCount; i++) {
-                    int y = getMt(localMti + i);
-                    /* Tempering */
-                    y ^= (y >>> 11);
-                    y ^= (y << 7) & TEMPERING_MASK_B;
-                    y ^= (y << 15) & TEMPERING_MASK_C;
-                    y ^= (y >>> 18);
-                    buffer[pos + i] = ((y + Integer.MIN_VALUE) - (double) Integer.MIN_VALUE) * I2_32M1;
-                }
-                for (int i = 0; i < loopCount; i++) {
-                    buffer[pos + i] = fixup(buffer[pos + i]);
-                }
-                localMti += loopCount;
-                pos += loopCount;
-
-                if (pos == BUFFER_SIZE) {
-                    break;
-                }
-                /* generate N words at one time */
-                int kk;
-                for (kk = 0; kk < N - M; kk++) {
-                    int y2y = (getMt(kk) & UPPERMASK) | (getMt(kk + 1) & LOWERMASK);
-                    setMt(kk, getMt(kk + M) ^ (y2y >>> 1) ^ mag01(y2y & 0x1));
-                }
-                for (; kk < N - 1; kk++) {
-                    int y2y = (getMt(kk) & UPPERMASK) | (getMt(kk + 1) & LOWERMASK);
-                    setMt(kk, getMt(kk + (M - N)) ^ (y2y >>> 1) ^ mag01(y2y & 0x1));
-                }
-                int y2y = (getMt(N - 1) & UPPERMASK) | (getMt(0) & LOWERMASK);
-                setMt(N - 1, getMt(M - 1) ^ (y2y >>> 1) ^ mag01(y2y & 0x1));
-
-                localMti = 0;
-            }
-            localDummy0 = localMti;
-            setISeedItem(0, localDummy0);
-            bufferIndex = 0;
+            generate();
         }
         return buffer[bufferIndex++];
     }
 
+    @Override
+    public void fillUniform(double[] dst, int from, int len) {
+        int pos = from;
+        int end = from + len;
+        while (pos < end) {
+            if (bufferIndex == BUFFER_SIZE) {
+                generate();
+            }
+            int count = Math.min(BUFFER_SIZE - bufferIndex, end - pos);
+            System.arraycopy(buffer, bufferIndex, dst, pos, count);
+            bufferIndex += count;
+            pos += count;
+        }
+    }
+
+    /**
+     * Generates N words at one time and tempers them into the buffer.
+     */
+    private void generate() {
+        int kk;
+        for (kk = 0; kk < N - M; kk++) {
+            int y2y = (getMt(kk) & UPPERMASK) | (getMt(kk + 1) & LOWERMASK);
+            setMt(kk, getMt(kk + M) ^ (y2y >>> 1) ^ mag01(y2y & 0x1));
+        }
+        for (; kk < N - 1; kk++) {
+            int y2y = (getMt(kk) & UPPERMASK) | (getMt(kk + 1) & LOWERMASK);
+            setMt(kk, getMt(kk + (M - N)) ^ (y2y >>> 1) ^ mag01(y2y & 0x1));
+        }
+        int y2y = (getMt(N - 1) & UPPERMASK) | (getMt(0) & LOWERMASK);
+        setMt(N - 1, getMt(M - 1) ^ (y2y >>> 1) ^ mag01(y2y & 0x1));
+
+        temper(0);
+        bufferIndex = 0;
+    }
+
+    private void temper(int from) {
+        for (int i = from; i < N; i++) {
+            int y = getMt(i);
+            /* Tempering */
+            y ^= (y >>> 11);
+            y ^= (y << 7) & TEMPERING_MASK_B;
+            y ^= (y << 15) & TEMPERING_MASK_C;
+            y ^= (y >>> 18);
+            buffer[i] = ((y + Integer.MIN_VALUE) - (double) Integer.MIN_VALUE) * I2_32M1;
+        }
+        for (int i = from; i < N; i++) {
+            buffer[i] = fixup(buffer[i]);
+        }
+    }
+
     private static int mag01(int v) {
         return (v & 1) != 0 ? MATRIXA : 0;
     }
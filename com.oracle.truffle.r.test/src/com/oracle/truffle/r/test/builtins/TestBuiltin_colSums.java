@@ -14,7 +14,7 @@
  * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
  *
  * Copyright (c) 2012-2014, Purdue University
- * Copyright (c) 2013, 2018, Oracle and/or its affiliates
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates
  *
  * All rights reserved.
  */
@@ -103,5 +103,10 @@ public class TestBuiltin_colSums extends TestBase {
 
         // colSums on array have correct values
         assertEval("{ a = colSums(array(1:24,c(2,3,4))); c(a[1,1],a[2,2],a[3,3],a[3,4]) }");
+
+        // columns longer than one region
+        assertEval("colSums(matrix(as.double(1:3000), 1500))");
+        assertEval("{ m <- matrix(as.double(1:3000), 1500); m[1200, 2] <- NA; colSums(m) }");
+        assertEval("{ m <- matrix(1:3000, 1500); m[1200, 1] <- NA; colSums(m, na.rm = TRUE) }");
     }
 }
@@ -14,7 +14,7 @@
  * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
  *
  * Copyright (c) 2012-2014, Purdue University
- * Copyright (c) 2013, 2018, Oracle and/or its affiliates
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates
  *
  * All rights reserved.
  */
@@ -62,4 +62,13 @@ public class TestBuiltin_docall extends TestBase {
         assertEval("do.call('c', list())");
         assertEval("{ f <- function() typeof(sys.call(0)[[1]]); do.call('f', list()); }");
     }
+
+    @Test
+    public void testDoCallClosureCache() {
+        assertEvalFastR("names(.fastr.closurecache.stats())", "c('hits', 'misses', 'evictions', 'inlineHits')");
+        assertEvalFastR("{ .fastr.closurecache.stats(reset = TRUE); f <- function(x) x; g <- function(i) do.call(f, list(call('identity', i))); for (i in 1:300) g(i); .fastr.closurecache.stats()[['evictions']] > 0 }", "TRUE");
+        assertEval("{ f <- function(x) x; g <- function(i) do.call(f, list(call('identity', i))); sum(vapply(1:300, g, 1)) }");
+        assertEvalFastR("{ f <- function(x, y) x + y; a <- 1; b <- 2; .fastr.closurecache.stats(reset = TRUE); for (i in 1:10) do.call(f, list(as.name('a'), as.name('b'))); .fastr.closurecache.stats()[['inlineHits']] > 0 }", "TRUE");
+        assertEval("{ f <- function(x, y) x + y; g <- function(a, b) do.call(f, list(as.name('a'), as.name('b'))); c(g(1, 2), g(3, 4), g(5, 6)) }");
+    }
 }
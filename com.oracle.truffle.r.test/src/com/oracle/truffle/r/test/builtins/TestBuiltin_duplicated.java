@@ -14,7 +14,7 @@
  * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
  *
  * Copyright (c) 2012-2014, Purdue University
- * Copyright (c) 2013, 2018, Oracle and/or its affiliates
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates
  *
  * All rights reserved.
  */
@@ -147,5 +147,10 @@ public class TestBuiltin_duplicated extends TestBase {
 
         assertEval("{ duplicated(list(list(1,\"aaa\"),list(1,\"aaa\"))) }");
 
+        assertEval("{ duplicated(c(NA, NaN, 0, -0, NaN, NA)) }");
+        assertEval("{ duplicated(c('NA', NA, NA, 'NA')) }");
+        assertEval("{ duplicated(c(TRUE, NA, FALSE, NA, TRUE), fromLast=TRUE) }");
+        assertEval("{ x <- c(1:300000, 17L); c(sum(duplicated(x)), which(duplicated(x, fromLast=TRUE)), anyDuplicated(x), anyDuplicated(x, fromLast=TRUE)) }");
+        assertEval("{ x <- as.character(c(1:300000, 5)); c(sum(duplicated(x)), anyDuplicated(x)) }");
     }
 }
@@ -14,7 +14,7 @@
  * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
  *
  * Copyright (c) 2012-2014, Purdue University
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates
  *
  * All rights reserved.
  */
@@ -472,4 +472,50 @@ public class TestBuiltin_match extends TestBase {
         table = String.format("paste('%1$s', seq(from=1, to=10, by=4), '%2$s', sep='')", preffix, suffix);
         assertEval("{ match(" + x + "," + table + ")}");
     }
+
+    @Test
+    public void testMatchHashed() {
+        assertEval("{ match(c(2, NaN, NA, -0, 7), c(NA, 0, NaN, 2)) }");
+        assertEval("{ match(c('NA', NA, 'b'), c(NA, 'b', 'NA')) }");
+        assertEval("{ match(c(1i, NA, complex(real=NaN, imaginary=1)), c(NaN, complex(real=1, imaginary=NA), 1i)) }");
+        assertEval("{ x <- 1:400000 %% 1234L; match(c(5L, 1233L, 1234L, 0L), x) }");
+        assertEval("{ x <- as.character(1:400000); sum(match(x, rev(x))) }");
+    }
+
+    @Test
+    public void testMatchCachedTable() {
+        assertEval("{ t <- as.character(1:5000); r <- sapply(c('17', 'x', '4999'), function(v) match(v, t)); t[17] <- 'y'; c(r, match(c('17', 'y'), t)) }");
+        assertEval("{ s <- as.numeric(1:2000); a <- 5 %in% s; s[5] <- -1; c(a, 5 %in% s, -1 %in% s, c(3, 5, -1) %in% s) }");
+        assertEval("{ s <- c(NA, NaN, 1:2000); c(NA %in% s, NaN %in% s, match(c(NaN, NA, 2000), s)) }");
+        assertEval("{ s <- 1:3000 * 2L; f <- function(v) match(v, s); r <- f(c(4L, 5L)); s[2] <- 5L; c(r, f(c(4L, 5L))) }");
+        assertEval("{ y <- c(3000:1, 3L); x <- c(5L, 2L, 7L, 5L, 4000L); r <- intersect(x, y); y[2] <- 4000L; c(r, intersect(x, y)) }");
+        assertEval("{ f <- function() { s <- as.numeric(1:2000); m <- match(c(7, 9), s); s }; s <- f() + 1; c(match(c(7, 9), s), 2001 %in% s) }");
+        assertEval("{ s <- as.numeric(1:2000); m <- match(c(7, 9), s); s[7] <- -7; c(m, match(c(7, -7, 9), s), 7 %in% s) }");
+        // looking up a table does not make it shared, the update is still done in place
+        assertEvalFastR("{ s <- as.numeric(1:2000); m <- match(c(7, 9), s); id <- .fastr.identity(s); s[1] <- 0; id == .fastr.identity(s) }", "TRUE");
+    }
+
+    @Test
+    public void testMatchCachedTableUpdates() {
+        // the index is built by the first vectorized lookup, each fast path consuming it has to see
+        // the updates done in place by [<-, [[<- and the matrix [<-
+        assertEval("{ s <- as.numeric(1:2000); m <- match(c(7, 9), s); s[[7]] <- -7; c(match(7, s), match(-7, s), 7 %in% s, -7 %in% s) }");
+        assertEval("{ s <- as.character(1:2000); m <- match(c('7', '9'), s); s[[7]] <- 'x'; c('7' %in% s, 'x' %in% s, match(c('7', 'x'), s)) }");
+        assertEval("{ s <- matrix(as.numeric(1:2000), 2); m <- match(c(7, 9), s); s[1, 4] <- -7; c(7 %in% s, -7 %in% s, match(c(7, -7), s)) }");
+        assertEval("{ s <- 1:2000 + 0L; m <- match(c(7L, 9L), s); s[7] <- -7L; c(match(c(7L, -7L), s), 7L %in% s) }");
+        assertEval("{ y <- c(3000:1, 3L); x <- c(5L, 2L, 7L); r <- intersect(x, y); y[[2999]] <- 4000L; c(r, intersect(c(x, 4000L), y)) }");
+        assertEval("{ y <- as.numeric(3000:1); x <- c(5, 2, 7); r <- setdiff(x, y); y[[2996]] <- 0; list(r, setdiff(x, y), setdiff(c(x, 0), y)) }");
+        assertEval("{ y <- as.character(1:2000); x <- c('5', '2', 'a'); r <- setdiff(x, y); y[5] <- 'a'; list(r, setdiff(x, y)) }");
+    }
+
+    @Test
+    public void testMatchNaNaNHashedAndScanned() {
+        // the result must not depend on whether the table has already been hashed
+        assertEval("{ s <- c(NaN, as.numeric(1:2000)); a <- NA_real_ %in% s; m <- match(c(1, 2), s); c(a, NA_real_ %in% s, NaN %in% s) }");
+        assertEval("{ s <- c(NA, as.numeric(1:2000)); a <- NaN %in% s; m <- match(c(1, 2), s); c(a, NaN %in% s, NA_real_ %in% s) }");
+        assertEval("{ s <- c('NA', as.character(1:2000)); a <- NA_character_ %in% s; m <- match(c('1', '2'), s); c(a, NA_character_ %in% s, 'NA' %in% s) }");
+        assertEval("c(NA_real_ %in% NaN, NaN %in% NA_real_, NaN %in% NaN, NA_real_ %in% NA_real_)");
+        assertEval("{ s <- c(NA, NaN, as.numeric(1:2000)); a <- c(match(NaN, s), match(NA_real_, s)); m <- match(c(1, 2), s); c(a, match(NaN, s), match(NA_real_, s)) }");
+        assertEval("{ s <- c(NA, 'NA', as.character(1:2000)); a <- match('NA', s); m <- match(c('1', '2'), s); c(a, match('NA', s), match(NA_character_, s)) }");
+    }
 }
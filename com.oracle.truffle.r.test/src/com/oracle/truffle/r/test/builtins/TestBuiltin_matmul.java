@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2016, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2016, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -53,4 +53,12 @@ public class TestBuiltin_matmul extends TestBase {
         assertEval("numeric() %*% matrix(0, nrow=1, ncol=0)");
         assertEval("numeric() %*% matrix(0, nrow=0, ncol=1)");
     }
+
+    @Test
+    public void testMatmulLarge() {
+        // large enough to use the blocked and possibly the parallel kernel
+        assertEval("{ m <- matrix(seq(0, 1, length.out=300*200), 300); r <- m %*% t(m); c(dim(r), all.equal(r, tcrossprod(m)), all.equal(t(m) %*% m, crossprod(m))) }");
+        assertEval("{ m <- matrix(seq(0, 1, length.out=300*200), 300); m[5, 7] <- NA; m[10, 3] <- NaN; r <- m %*% t(m); c(sum(is.na(r)), sum(is.nan(r)), is.na(r[5, 1]), is.nan(r[10, 1])) }");
+        assertEval("{ m <- matrix(seq(0, 1, length.out=300*200), 300); m[5, 7] <- NA; r <- crossprod(m); c(sum(is.na(r)), which(is.na(r[, 1]))) }");
+    }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2016, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -37,4 +37,18 @@ public class TestBuiltin_newenv extends TestBase {
         assertEval(Output.ContainsReferences, "parent.env(new.env())");
         assertEval(Output.ContainsReferences, "e <- new.env(); e; parent.env(new.env(TRUE, e))");
     }
+
+    @Test
+    public void testHashedEnv() {
+        assertEval("e <- new.env(hash=TRUE); for (i in 1:1000) assign(paste0('k', i), i, envir=e); c(length(ls(e)), get('k500', envir=e), exists('k1001', envir=e, inherits=FALSE))");
+        assertEval("e <- new.env(hash=TRUE); for (i in 1:100) e[[paste0('k', i)]] <- i; rm(list=paste0('k', 1:90), envir=e); for (i in 1:50) e[[paste0('j', i)]] <- i; c(ls(e, sorted=TRUE)[1:5], sum(unlist(mget(ls(e), envir=e))))");
+        assertEval("e <- new.env(hash=TRUE); e$a <- 1; e$b <- 2; lockBinding('a', e); tryCatch(e$a <- 3, error=function(x) cat('error\n')); e$b <- 3; c(e$a, e$b)");
+        assertEval("e <- new.env(hash=TRUE); e$a <- 1; lockEnvironment(e); tryCatch(assign('b', 2, envir=e), error=function(x) cat('error\n')); e$a <- 5; e$a");
+        assertEval("e <- new.env(hash=TRUE); e$x <- 1; e$y <- 2; local({ z <- x + y }, envir=e); c(e$z, sort(ls(e)))");
+        assertEval("e <- new.env(hash=TRUE); e$x <- 10; f <- function() x; environment(f) <- e; e$x <- 20; f()");
+        assertEval("e <- new.env(hash=TRUE); e$x <- 1; makeActiveBinding('y', function() 42, e); c(e$x, e$y, bindingIsActive('y', e))");
+        assertEval("e <- new.env(hash=TRUE); e$x <- 1; e2 <- new.env(parent=e); evalq(x, e2)");
+        assertEval("e <- new.env(hash=TRUE); list2env(list(a=1, b='x', .c=3), envir=e); c(ls(e, sorted=TRUE), ls(e, all.names=TRUE, sorted=TRUE))");
+        assertEval("f <- function(e, v) assign('x', v, envir=e); h <- new.env(hash=TRUE); p <- new.env(hash=FALSE); for (i in 1:5) { f(h, i); f(p, -i) }; c(h$x, p$x, sort(ls(h)))");
+    }
 }
@@ -180,4 +180,23 @@ public class TestBuiltin_order extends TestBase {
         assertEval("order(NULL)");
         assertEval("order(c(NULL, c(1,2,0)))");
     }
+
+    @Test
+    public void testOrderLarge() {
+        // long enough to use the radix sort
+        assertEval("{ x <- rep(c(3L, NA, -1L, 2L, 1e6L), 200); o <- order(x); c(head(o, 5), tail(o, 5)) }");
+        assertEval("{ x <- rep(c(3L, NA, -1L, 2L, 1e6L), 200); o <- order(x, decreasing=TRUE, na.last=FALSE); c(head(o, 5), tail(o, 5)) }");
+        assertEval("{ x <- rep(c(3.5, NA, -1, -0, 0, NaN, Inf, -Inf), 100); o <- order(x); c(head(o, 5), tail(o, 5)) }");
+        assertEval("{ x <- rep(c(3.5, NA, -1, -0, 0, NaN, Inf, -Inf), 100); o <- order(x, decreasing=TRUE, na.last=NA); c(length(o), head(o, 5), tail(o, 5)) }");
+        assertEval("{ x <- rep(c(TRUE, NA, FALSE), 100); o <- order(x); c(head(o, 5), tail(o, 5)) }");
+        assertEval("{ x <- rep(1:3, 100); y <- rep(c(2.5, NA, 1), each=100); o <- order(x, y); c(head(o, 5), tail(o, 5)) }");
+        assertEval("{ x <- rep(1:3, 100); y <- rep(c(TRUE, NA, FALSE), each=100); o <- order(x, y, decreasing=TRUE); c(head(o, 5), tail(o, 5)) }");
+        assertEval("{ x <- rep(c(3L, -1L, 2L, 1e6L), 100); c(head(sort(x), 3), head(sort(x, decreasing=TRUE), 3)) }");
+        assertEval("{ x <- rep(c(3.5, -1, 2, 1e6), 100); c(head(sort(x), 3), head(sort(x, decreasing=TRUE), 3)) }");
+        assertEval("{ x <- rep(c(3.5, -1, 2, 1e6), 100); r <- rank(x); c(head(r, 4)) }");
+        assertEval("{ x <- rep(c('b', 'A', NA, 'a', 'B', 'a b', 'a_b'), 100); o <- order(x); c(head(o, 7), tail(o, 7)) }");
+        assertEval("{ x <- rep(c('b', 'A', NA, 'a', 'B', 'a b', 'a_b'), 100); o <- order(x, decreasing=TRUE, na.last=NA); c(length(o), head(o, 7), tail(o, 7)) }");
+        assertEval("invisible(Sys.setlocale('LC_COLLATE', 'C')); x <- rep(c('b', 'A', 'a', 'B', 'a b', 'a_b'), 100); o <- order(x); c(head(o, 6), tail(o, 6))");
+        assertEval("{ x <- rep(c('b', 'A', 'a', 'B'), 100); head(xtfrm(x), 8) }");
+    }
 }
@@ -14,7 +14,7 @@
  * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
  *
  * Copyright (c) 2014, Purdue University
- * Copyright (c) 2014, 2019, Oracle and/or its affiliates
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates
  *
  * All rights reserved.
  */
@@ -61,7 +61,7 @@ public class TestBuiltin_setseed extends TestBase {
 
     @Test
     public void testsetseed7() {
-        assertEval(Ignored.Unimplemented, "argv <- list(123, 7L, NULL); .Internal(set.seed(argv[[1]], argv[[2]], argv[[3]], NULL))");
+        assertEval("argv <- list(123, 7L, NULL); .Internal(set.seed(argv[[1]], argv[[2]], argv[[3]], NULL))");
     }
 
     @Test
@@ -69,6 +69,16 @@ public class TestBuiltin_setseed extends TestBase {
         assertEval("argv <- list(NULL, NULL, NULL); .Internal(set.seed(argv[[1]], argv[[2]], argv[[3]], NULL))");
     }
 
+    @Test
+    public void testLecuyerCMRG() {
+        assertEval("set.seed(123, kind = \"L'Ecuyer-CMRG\"); .Random.seed; runif(3)");
+        assertEval("RNGkind(\"L'Ecuyer-CMRG\"); set.seed(42); x <- rnorm(5); set.seed(42); identical(x, rnorm(5))");
+        assertEval("set.seed(1, kind = \"L'Ecuyer-CMRG\"); s <- .Random.seed; runif(2); .Random.seed <- s; runif(2)");
+        assertEval("set.seed(123, kind = \"L'Ecuyer-CMRG\"); parallel::nextRNGStream(.Random.seed)");
+        assertEval("set.seed(123, kind = \"L'Ecuyer-CMRG\"); parallel::nextRNGSubStream(.Random.seed)");
+        assertEval("set.seed(123, kind = \"L'Ecuyer-CMRG\"); .Random.seed <- parallel::nextRNGStream(.Random.seed); runif(2)");
+    }
+
     @Test
     public void testArgCasts() {
         assertEval(Output.IgnoreErrorMessage, "set.seed('hello world')");
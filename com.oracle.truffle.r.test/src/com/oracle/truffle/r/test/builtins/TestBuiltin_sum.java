@@ -14,7 +14,7 @@
  * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
  *
  * Copyright (c) 2012-2014, Purdue University
- * Copyright (c) 2013, 2018, Oracle and/or its affiliates
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates
  *
  * All rights reserved.
  */
@@ -209,6 +209,16 @@ public class TestBuiltin_sum extends TestBase {
         assertEval("sum(c(-2147483647L), -1)");
     }
 
+    @Test
+    public void testSumRegions() {
+        assertEval("sum(seq(0.5, 1000, by = 0.5))");
+        assertEval("{ x <- as.double(1:2000); x[1500] <- NA; sum(x) }");
+        assertEval("{ x <- as.double(1:2000); x[700] <- NaN; x[1500] <- NA; c(sum(x), sum(x, na.rm = TRUE)) }");
+        assertEval("sum(c(1, 0/0), na.rm = TRUE)");
+        assertEval("{ x <- as.double(1:2000); x[700] <- NaN; c(sum(x), sum(x, na.rm = TRUE)) }");
+        assertEval("{ x <- seq(0.5, 700, by = 0.5); y <- as.double(1:1400); sum(x * y + 2) }");
+    }
+
     @Test
     public void testSideEffect() {
         assertEval("{ x <- c(1, 2, 3); f <- function() { x[1] <<- 10; 2 }; g <- function(){ x[1] <<- 100; 0 }; sum(x, f(), x, g()) }");
@@ -14,7 +14,7 @@
  * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
  *
  * Copyright (c) 2012-2014, Purdue University
- * Copyright (c) 2013, 2020, Oracle and/or its affiliates
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates
  *
  * All rights reserved.
  */
@@ -208,5 +208,18 @@ public class TestBuiltin_unique extends TestBase {
         assertEval("unique(c(1+1i, NA, NA))");
 
         assertEval("unique(list(list(1), 1, 1L))");
+
+        assertEval("unique(c(NA, NaN, 0, -0, NaN, NA, 1))");
+        assertEval("unique(c('NA', NA, 'a', NA, 'NA'))");
+        assertEval("unique(c(complex(real=NA, imaginary=1), NA, complex(real=NaN, imaginary=0), NaN, 1i, 1i))");
+        assertEval("unique(c(3L, 1L, 3L, 2L, 1L), fromLast=TRUE)");
+        assertEval("unique(c('b', 'a', 'b', 'c'), fromLast=TRUE)");
+        assertEval("unique(c(TRUE, FALSE, TRUE), fromLast=TRUE)");
+        assertEval("unique(c(NA, TRUE, NA, FALSE, TRUE), fromLast=TRUE)");
+        assertEval("unique(as.raw(c(1, 2, 1, 255, 2)), fromLast=TRUE)");
+        assertEval("unique(as.raw(c(1, 2, 1, 255, 2)))");
+        assertEval("{ x <- rep(c(5L, NA, 3L), 200000); unique(x) }");
+        assertEval("{ x <- (1:400000 %% 1000) / 4; c(length(unique(x)), head(unique(x, fromLast=TRUE))) }");
+        assertEval("{ x <- paste0('id', 1:300000 %% 777); c(length(unique(x)), tail(unique(x))) }");
     }
 }
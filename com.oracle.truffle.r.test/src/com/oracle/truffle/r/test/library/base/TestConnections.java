@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -212,6 +212,15 @@ public class TestConnections extends TestRBase {
         String[] endings = new String[]{"", "\\n", "\\r", "\\n\\r", "\\r\\n", "\\n\\n\\r", "\\r\\r\\n"};
         String[] text = new String[]{"", "foo"};
         assertEval(template("readLines(textConnection(\"foo%0%1\"))", endings, text));
+
+        // lines spanning the connection's read buffer, '\r' as the last byte of the buffer
+        assertEval("{ zz <- file('', 'w+b'); writeBin(charToRaw(paste0(strrep('a', 16383), '\\rb\\r\\nc\\rd')), zz); seek(zz, 0); res <- readLines(zz, warn=FALSE); close(zz); nchar(res) }");
+        assertEval("{ zz <- file('', 'w+'); writeLines(c(strrep('x', 40000), 'y', strrep('z', 20000)), zz); seek(zz, 0); res <- readLines(zz); close(zz); nchar(res) }");
+        assertEval("{ zz <- file('', 'w+b'); writeBin(charToRaw('a\\rb\\rc\\r'), zz); seek(zz, 0); res <- c(readLines(zz, 1), readLines(zz, 1), readLines(zz)); close(zz); res }");
+        // CR-LF split by the end of the read buffer, the LF is dropped by the next read
+        assertEval("{ zz <- file('', 'w+b'); writeBin(charToRaw(paste0(strrep('a', 16383), '\\r\\nb\\r\\nc')), zz); seek(zz, 0); res <- c(nchar(readLines(zz, 1)), readLines(zz, warn=FALSE)); close(zz); res }");
+        assertEval("{ zz <- file('', 'w+b'); writeBin(charToRaw(paste0(strrep('a', 16383), '\\r\\nbc')), zz); seek(zz, 0); res <- c(nchar(readLines(zz, 1)), readChar(zz, 2)); close(zz); res }");
+        assertEval("{ zz <- file('', 'w+', encoding = 'UTF-8'); writeLines(c('Hellö', 'abc', rep('Grüße', 5000)), zz); seek(zz, 0); res <- readLines(zz); close(zz); c(length(res), unique(res)) }");
     }
 
     @Test
@@ -275,6 +284,27 @@ public class TestConnections extends TestRBase {
     @Test
     public void testSeek() {
         assertEval("f1 <- file(open='w+b', encoding='UTF-8'); writeBin(charToRaw(\"abcd\"), f1); seek(f1); seek(f1,0); seek(f1)");
+
+        // large files are memory mapped when opened for reading
+        assertEval("{ fn <- tempfile(); writeBin(1:500000, fn); zz <- file(fn, 'rb'); a <- readBin(zz, integer(), 10); seek(zz, 4 * 400000); b <- readBin(zz, integer(), 200000); p <- seek(zz); seek(zz, 8); c <- readBin(zz, integer(), 2); close(zz); unlink(fn); list(a, length(b), b[1], b[100000], p, c) }");
+        assertEval("{ fn <- tempfile(); writeLines(as.character(1:300000), fn); zz <- file(fn, 'r'); a <- readLines(zz, 3); b <- readLines(zz); close(zz); unlink(fn); list(a, length(b), tail(b, 1)) }");
+        assertEval("{ fn <- tempfile(); x <- runif(200000); saveRDS(x, fn, compress=FALSE); y <- readRDS(fn); unlink(fn); identical(x, y) }");
+        // the mapping is released on close, the file can be removed and re-created right away
+        assertEval("{ fn <- tempfile(); writeBin(1:500000, fn); zz <- file(fn, 'rb'); a <- readBin(zz, integer(), 3); close(zz); r <- file.remove(fn); writeBin(3:1, fn); zz <- file(fn, 'rb'); b <- readBin(zz, integer(), 5); close(zz); unlink(fn); list(a, r, b) }");
+    }
+
+    @Test
+    public void testBZip2File() {
+        assertEval("{ fn <- tempfile(); zz <- bzfile(fn, 'w'); writeLines(as.character(1:100000), zz); close(zz); zz <- bzfile(fn, 'r'); res <- readLines(zz); close(zz); unlink(fn); c(length(res), res[c(1, 99999, 100000)]) }");
+        assertEval("{ fn <- tempfile(); zz <- bzfile(fn, 'w'); writeLines('abc', zz); close(zz); zz <- bzfile(fn, 'a'); writeLines('def', zz); close(zz); zz <- bzfile(fn, 'r'); res <- readLines(zz); close(zz); unlink(fn); res }");
+        assertEval("{ fn <- tempfile(); zz <- bzfile(fn, 'wb'); writeBin(1:300000, zz); close(zz); zz <- bzfile(fn, 'rb'); res <- readBin(zz, integer(), 300001); close(zz); unlink(fn); c(length(res), res[300000]) }");
+        assertEval("{ fn <- tempfile(); x <- list(a=1:10, b=letters); save(x, file=fn, compress='bzip2'); rm(x); load(fn); unlink(fn); x }");
+    }
+
+    @Test
+    public void testXZFile() {
+        assertEval("{ fn <- tempfile(); zz <- xzfile(fn, 'w'); writeLines(as.character(1:100000), zz); close(zz); zz <- xzfile(fn, 'r'); res <- readLines(zz); close(zz); unlink(fn); c(length(res), res[c(1, 100000)]) }");
+        assertEval("{ fn <- tempfile(); x <- list(a=1:10, b=letters); saveRDS(x, fn, compress='xz'); y <- readRDS(fn); unlink(fn); identical(x, y) }");
     }
 
     private static final String[] LVAL = arr("T", "F");
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2017, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2017, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -41,4 +41,12 @@ public class TestSharedCluster extends TestBase {
                         "library(parallel); fun <- function(data) { cl <- makeCluster(%0, ifelse(exists('engine', where=R.version),'SHARED','PSOCK')); parLapply(cl, data, function(x) x+1); stopCluster(cl) }; fun(1:100)",
                         "123456789".split("")));
     }
+
+    @Test
+    public void testParLapplyReproducible() {
+        // parLapply splits the work statically, so every element is handled by the same node and
+        // the same L'Ecuyer stream in both runs
+        assertEval(Ignored.Unstable,
+                        "library(parallel); cl <- makeCluster(2, ifelse(exists('engine', where=R.version),'SHARED','PSOCK')); run <- function() { clusterSetRNGStream(cl, 123); unlist(parLapply(cl, 1:20, function(i) { Sys.sleep(runif(1, 0, 0.01)); runif(1) })) }; r1 <- run(); r2 <- run(); stopCluster(cl); identical(r1, r2)");
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.library.fastrGrid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.oracle.truffle.r.library.fastrGrid.device.remote.RemoteDevice;
+import com.oracle.truffle.r.library.fastrGrid.device.remote.RemoteDeviceDataExchange;
+import com.oracle.truffle.r.test.TestBase;
+
+public class RemoteDeviceDataExchangeTests extends TestBase {
+
+    private static RemoteDeviceDataExchange decoder(RemoteDeviceDataExchange encoder) {
+        byte[] data = encoder.resetWrite();
+        return new RemoteDeviceDataExchange(data, data.length);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        RemoteDeviceDataExchange encoder = new RemoteDeviceDataExchange();
+        encoder.writeByte((byte) -3);
+        encoder.writeInt(Integer.MIN_VALUE);
+        encoder.writeVarInt(0);
+        encoder.writeVarInt(127);
+        encoder.writeVarInt(128);
+        encoder.writeVarInt(Integer.MAX_VALUE);
+        encoder.writeDouble(-0.5);
+        encoder.writeDouble(Double.NaN);
+        encoder.writeIntArray(new int[]{1, -1});
+        encoder.writeIntArray(null);
+        encoder.writeByteArray(new byte[]{4, 5});
+        encoder.writeDoubleArray(new double[]{1, 2, 3, 4}, 1, 2);
+        encoder.writeDoubleArray(null);
+        encoder.writeString("sans");
+        encoder.writeString("π ≈ 3.14");
+        encoder.writeString(null);
+
+        RemoteDeviceDataExchange decoder = decoder(encoder);
+        assertTrue(encoder.isEmpty());
+        assertEquals(-3, decoder.readByte());
+        assertEquals(Integer.MIN_VALUE, decoder.readInt());
+        assertEquals(0, decoder.readVarInt());
+        assertEquals(127, decoder.readVarInt());
+        assertEquals(128, decoder.readVarInt());
+        assertEquals(Integer.MAX_VALUE, decoder.readVarInt());
+        assertEquals(-0.5, decoder.readDouble(), 0);
+        assertTrue(Double.isNaN(decoder.readDouble()));
+        assertArrayEquals(new int[]{1, -1}, decoder.readIntArray());
+        assertNull(decoder.readIntArray());
+        assertArrayEquals(new byte[]{4, 5}, decoder.readByteArray());
+        assertArrayEquals(new double[]{2, 3}, decoder.readDoubleArray(), 0);
+        assertNull(decoder.readDoubleArray());
+        assertEquals("sans", decoder.readString());
+        assertEquals("π ≈ 3.14", decoder.readString());
+        assertNull(decoder.readString());
+        assertTrue(decoder.isReadFinished());
+    }
+
+    /**
+     * Encodes a batch the way {@link RemoteDevice} does, commands without a result followed by a
+     * command that returns one, and decodes it the way the server does.
+     */
+    @Test
+    public void testBatchWithResult() {
+        int deviceId = 1;
+        int contextId = 300;
+        RemoteDeviceDataExchange batch = new RemoteDeviceDataExchange();
+        RemoteDeviceDataExchange params = new RemoteDeviceDataExchange();
+        batch.writeByte(RemoteDevice.BATCH);
+
+        params.writeByte(RemoteDevice.RELEASE_DRAWING_CONTEXT);
+        params.writeVarInt(contextId - 1);
+        params.transferTo(batch);
+
+        params.writeByte(RemoteDevice.DRAW_POLY_LINES);
+        params.writeVarInt(deviceId);
+        params.writeVarInt(contextId);
+        params.writeDoubleArray(new double[]{0, 1, 2}, 1, 2);
+        params.writeDoubleArray(new double[]{3, 4, 5}, 1, 2);
+        params.transferTo(batch);
+
+        params.writeByte(RemoteDevice.GET_STRING_WIDTH);
+        params.writeVarInt(deviceId);
+        params.writeVarInt(contextId);
+        params.writeString("label");
+        params.transferTo(batch);
+        assertTrue(params.isEmpty());
+
+        RemoteDeviceDataExchange decoder = decoder(batch);
+        assertEquals(RemoteDevice.BATCH, decoder.readByte());
+
+        assertEquals(RemoteDevice.RELEASE_DRAWING_CONTEXT, decoder.readByte());
+        assertEquals(contextId - 1, decoder.readVarInt());
+
+        assertEquals(RemoteDevice.DRAW_POLY_LINES, decoder.readByte());
+        assertEquals(deviceId, decoder.readVarInt());
+        assertEquals(contextId, decoder.readVarInt());
+        assertArrayEquals(new double[]{1, 2}, decoder.readDoubleArray(), 0);
+        assertArrayEquals(new double[]{4, 5}, decoder.readDoubleArray(), 0);
+        assertFalse(decoder.isReadFinished());
+
+        assertEquals(RemoteDevice.GET_STRING_WIDTH, decoder.readByte());
+        assertEquals(deviceId, decoder.readVarInt());
+        assertEquals(contextId, decoder.readVarInt());
+        assertEquals("label", decoder.readString());
+        assertTrue(decoder.isReadFinished());
+
+        // the result of the last command is the result of the batch
+        RemoteDeviceDataExchange result = new RemoteDeviceDataExchange();
+        result.writeByte(RemoteDevice.STATUS_OK);
+        result.writeDouble(12.5);
+        RemoteDeviceDataExchange resultDecoder = decoder(result);
+        assertEquals(RemoteDevice.STATUS_OK, resultDecoder.readByte());
+        assertEquals(12.5, resultDecoder.readDouble(), 0);
+        assertTrue(resultDecoder.isReadFinished());
+    }
+
+    @Test
+    public void testServerError() {
+        RemoteDeviceDataExchange result = new RemoteDeviceDataExchange();
+        result.writeByte(RemoteDevice.STATUS_SERVER_ERROR);
+        result.writeString("command 2 (opcode 7) of a batch failed");
+        RemoteDeviceDataExchange decoder = decoder(result);
+        assertEquals(RemoteDevice.STATUS_SERVER_ERROR, decoder.readByte());
+        assertEquals("command 2 (opcode 7) of a batch failed", RemoteDevice.readServerError(decoder));
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.library.fastrGrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.oracle.truffle.r.library.fastrGrid.device.DrawingContext;
+import com.oracle.truffle.r.library.fastrGrid.device.GridColor;
+import com.oracle.truffle.r.library.fastrGrid.device.GridDevice.ImageInterpolation;
+import com.oracle.truffle.r.library.fastrGrid.device.SVGDevice;
+import com.oracle.truffle.r.runtime.RError;
+import com.oracle.truffle.r.runtime.context.RContext.ContextKind;
+import com.oracle.truffle.r.test.TestBase;
+import com.oracle.truffle.r.test.generate.FastRContext;
+import com.oracle.truffle.r.test.generate.FastRSession;
+
+public class SVGDeviceTests extends TestBase {
+    private static final int CIRCLES = 200;
+
+    // the streaming mode resolves the file in the current context
+    private static FastRContext context;
+
+    @BeforeClass
+    public static void setupClass() {
+        context = FastRSession.create().createContext(ContextKind.SHARE_PARENT_RW);
+    }
+
+    @AfterClass
+    public static void finishClass() {
+        context.close();
+    }
+
+    @Test
+    public void contentsOfPage() {
+        SVGDevice device = new SVGDevice("unused.svg", 2, 1, false);
+        device.openNewPage();
+        TestDrawingContext ctx = new TestDrawingContext(new GridColor(255, 0, 0, 128));
+        device.drawCircle(ctx, 1, 0.5, 0.1);
+        device.drawPolyLines(ctx, new double[]{-1, 0.5, 7}, new double[]{0, 1, 7}, 0, 2);
+        String contents = device.getContents();
+        assertTrue(contents, contents.contains("viewBox='0 0 145 72'"));
+        assertTrue(contents, contents.contains("<g style='stroke-width:1.0;stroke-linejoin:round;stroke-linecap:round'>"));
+        assertTrue(contents, contents.contains("<circle cx='72' cy='36' r='7' style='stroke:rgb(255,0,0);stroke-opacity:0.502'/>"));
+        assertTrue(contents, contents.contains("<polyline points='-72,72 36,0' style='stroke:rgb(255,0,0);stroke-opacity:0.502'/>"));
+        assertTrue(contents, contents.endsWith("</g></svg>"));
+        // the page is still open
+        device.drawCircle(ctx, 0, 0, 1);
+        assertTrue(device.getContents().contains("<circle cx='0' cy='72' r='72'"));
+    }
+
+    @Test
+    public void streamingPages() throws IOException {
+        Path file = Files.createTempFile("svgdevice", ".svg");
+        try {
+            FastRSession.execInContext(context, () -> {
+                checkStreamingPages(file);
+                return null;
+            });
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void checkStreamingPages(Path file) throws IOException {
+        SVGDevice device = new SVGDevice(file.toString(), 2, 1, true);
+        device.openNewPage();
+        TestDrawingContext ctx = new TestDrawingContext(new GridColor(255, 0, 0, 128));
+        for (int i = 0; i < CIRCLES; i++) {
+            device.drawCircle(ctx, i / 72., 0.5, 0.1);
+        }
+        // the encoded image is longer than the buffer and is written directly
+        int[] pixels = new int[50 * 50];
+        Arrays.fill(pixels, new GridColor(0, 0, 255, 255).getRawValue());
+        device.drawRaster(0, 0, 1, 1, pixels, 50, ImageInterpolation.NEAREST_NEIGHBOR);
+
+        // the buffer was written to the file several times, but the rest is still in memory
+        String written = read(file);
+        assertTrue(written.length() >= SVGDevice.STREAM_BUFFER_SIZE);
+
+        String contents = device.getContents();
+        assertEquals(read(file) + "</g></svg>", contents);
+        assertTrue(written.length() < contents.length() - "</g></svg>".length());
+        assertTrue(contents, contents.startsWith("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"));
+        int last = -1;
+        for (int i = 0; i < CIRCLES; i++) {
+            int index = contents.indexOf("<circle cx='" + i + "' cy='36' r='7'");
+            assertTrue("circle " + i, index > last);
+            last = index;
+        }
+        int imageStart = contents.indexOf("xlink:href='data:image/bmp;base64,");
+        int imageEnd = contents.indexOf("'/>\n", imageStart);
+        assertTrue(imageStart > last && imageEnd - imageStart > SVGDevice.STREAM_BUFFER_SIZE);
+
+        // a new page truncates the file
+        device.openNewPage();
+        device.drawCircle(ctx, 999 / 72., 0.5, 0.1);
+        contents = device.closeAndGetContents();
+        assertEquals(read(file), contents);
+        assertTrue(contents, contents.contains("<circle cx='999' cy='36' r='7'"));
+        assertFalse(contents, contents.contains("<circle cx='0' "));
+        assertFalse(contents, contents.contains("data:image/bmp"));
+        assertTrue(contents, contents.endsWith("</g></svg>"));
+    }
+
+    @Test
+    public void streamingWriteError() throws IOException {
+        Path dir = Files.createTempDirectory("svgdevice");
+        try {
+            FastRSession.execInContext(context, () -> {
+                SVGDevice device = new SVGDevice(dir.resolve("missing").resolve("plot.svg").toString(), 2, 1, true);
+                device.openNewPage();
+                device.drawCircle(new TestDrawingContext(new GridColor(255, 0, 0, 128)), 1, 0.5, 0.1);
+                try {
+                    device.closeAndGetContents();
+                    fail("the file cannot be created");
+                } catch (RError e) {
+                    assertTrue(e.getMessage(), e.getMessage().contains("Cannot write SVG file"));
+                }
+                return null;
+            });
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static final class TestDrawingContext implements DrawingContext {
+        private final GridColor color;
+
+        TestDrawingContext(GridColor color) {
+            this.color = color;
+        }
+
+        @Override
+        public byte[] getLineType() {
+            return GRID_LINE_SOLID;
+        }
+
+        @Override
+        public double getLineWidth() {
+            return 1;
+        }
+
+        @Override
+        public GridLineJoin getLineJoin() {
+            return GridLineJoin.ROUND;
+        }
+
+        @Override
+        public GridLineEnd getLineEnd() {
+            return GridLineEnd.ROUND;
+        }
+
+        @Override
+        public double getLineMitre() {
+            return 10;
+        }
+
+        @Override
+        public GridColor getColor() {
+            return color;
+        }
+
+        @Override
+        public double getFontSize() {
+            return 12;
+        }
+
+        @Override
+        public GridFontStyle getFontStyle() {
+            return GridFontStyle.PLAIN;
+        }
+
+        @Override
+        public String getFontFamily() {
+            return "";
+        }
+
+        @Override
+        public double getLineHeight() {
+            return 1.2;
+        }
+
+        @Override
+        public GridColor getFillColor() {
+            return GridColor.TRANSPARENT;
+        }
+    }
+}
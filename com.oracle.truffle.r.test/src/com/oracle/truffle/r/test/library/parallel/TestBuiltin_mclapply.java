@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2019, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -46,6 +46,22 @@ public class TestBuiltin_mclapply extends TestBase {
         assertEval(Ignored.ImplementationError, "f <- function() { res <- parallel:::mclapply(1:3, function(i) i)}; f() ; f()");
     }
 
+    @Test
+    public void testMCLapplyPool() {
+        assertEval("parallel::mclapply(1:10, function(i) i * 2, mc.cores=3)");
+        assertEval("parallel::mclapply(list(a=1:3, b=4:6, c=7:9), sum, mc.preschedule=FALSE, mc.cores=2)");
+        assertEval("parallel::mclapply(1:5, function(i, k, m) i * k + m, 3, m=100, mc.cores=2)");
+        // the worker contexts are re-used by the second call, which must see its own closure
+        assertEval("f <- function(n) { y <- n; unlist(parallel::mclapply(1:4, function(i) i + y, mc.cores=2)) }; f(10); f(20)");
+    }
+
+    @Test
+    public void testMCLapplyStreams() {
+        // every child gets its own L'Ecuyer-CMRG stream
+        assertEval("RNGkind(\"L'Ecuyer-CMRG\"); set.seed(1); r <- unlist(parallel::mclapply(1:4, function(i) runif(1), mc.cores=2)); length(unique(r))");
+        assertEval("RNGkind(\"L'Ecuyer-CMRG\"); set.seed(1); r <- unlist(parallel::mclapply(1:2, function(i) runif(1), mc.cores=2, mc.preschedule=FALSE)); length(unique(r))");
+    }
+
     @Test
     public void testMCLapplyNested() {
         // race-conditions, easilly reproducible with LLVM
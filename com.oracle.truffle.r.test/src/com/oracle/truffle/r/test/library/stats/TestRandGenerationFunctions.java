@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2014, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2014, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -102,6 +102,21 @@ public class TestRandGenerationFunctions extends TestBase {
         assertEval("for(gen in c(\"Buggy Kinderman-Ramage\", \"Ahrens-Dieter\", \"Box-Muller\", \"Inversion\", \"Kinderman-Ramage\", \"default\")) { print(paste0(gen, \":\")); RNGkind(NULL,gen); set.seed(42); print(rnorm(30)); }");
     }
 
+    @Test
+    public void testBlockGeneration() {
+        // the uniform random numbers are generated in blocks, which must not get ahead of the values
+        assertEval("set.seed(1); x <- runif(2000); y <- runif(1); set.seed(1); identical(c(x, y), runif(2001))");
+        assertEval("set.seed(4); x <- rnorm(1500); set.seed(4); identical(x, vapply(1:1500, function(i) rnorm(1), 0))");
+        assertEval("set.seed(5); x <- rexp(1500, 3); set.seed(5); identical(x, vapply(1:1500, function(i) rexp(1, 3), 0))");
+        assertEval("set.seed(6); rnorm(5, 1, 0); runif(2, 3, 3); rexp(2, 0); runif(1)");
+        assertEval("set.seed(3); sample(100, 10); runif(2)");
+        assertEval("set.seed(3); sample(10, 20, replace = TRUE); sample(10, 5, prob = 1:10); runif(2)");
+        // .Random.seed is brought up to date when it is read
+        assertEval("set.seed(1); runif(3); .Random.seed[1:3]");
+        assertEval("set.seed(1); s <- .Random.seed; x <- runif(700); .Random.seed <- s; identical(x, runif(700))");
+        assertEval("set.seed(2); runif(10); s <- .Random.seed; runif(1); identical(s, .Random.seed)");
+    }
+
     @Test
     public void testDotRandomSeed() {
         assertEval(Output.IgnoreErrorContext, "{ .Random.seed }");
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.library.utils;
+
+import org.junit.Test;
+
+import com.oracle.truffle.r.test.TestBase;
+
+// Checkstyle: stop line length check
+public class TestRprof extends TestBase {
+
+    @Test
+    public void testSampling() {
+        // the profiled code runs until the profile shows a sample of it, the samples are flushed at
+        // every interval
+        assertEvalFastR("f <- function(n) { s <- 0; for (i in seq_len(n)) s <- s + sqrt(i); s }; g <- function(file) { for (j in 1:10000) { f(1e3); if (any(grepl('\"f\" \"g\"', readLines(file), fixed = TRUE))) break } }; " +
+                        "file <- tempfile(); Rprof(file, interval = 0.01); g(file); Rprof(NULL); lines <- readLines(file); unlink(file); c(lines[[1]], any(grepl('\"f\" \"g\"', lines, fixed = TRUE)))",
+                        "c('sample.interval=10000', 'TRUE')");
+        assertEvalFastR("f <- function(n) { s <- 0; for (i in seq_len(n)) s <- s + sqrt(i); s }; g <- function(file) { for (j in 1:10000) { f(1e3); if (length(readLines(file)) > 1L) break } }; " +
+                        "file <- tempfile(); Rprof(file, interval = 0.01, memory.profiling = TRUE); g(file); Rprof(NULL); lines <- readLines(file); unlink(file); c(lines[[1]], length(lines) > 1L, all(grepl('^:[0-9]+:[0-9]+:[0-9]+:[0-9]+:', lines[-1])))",
+                        "c('memory profiling: sample.interval=10000', 'TRUE', 'TRUE')");
+    }
+
+    @Test
+    public void testChildContexts() {
+        // the child context runs until the profile of the parent shows a sample of it
+        assertEvalFastR("child <- function(file) { h <- function(n) { s <- 0; for (i in seq_len(n)) s <- s + sqrt(i); s }; k <- function() { for (j in 1:10000) { h(1e3); if (any(grepl('\"h\" \"k\"', readLines(file), fixed = TRUE))) break } }; k() }; " +
+                        "file <- tempfile(); Rprof(file, interval = 0.01); .fastr.context.eval(paste0('(', paste(deparse(child), collapse = '\\n'), ')(', deparse(file), ')'), 'SHARE_NOTHING'); Rprof(NULL); " +
+                        "lines <- readLines(file); unlink(file); any(grepl('\"h\" \"k\"', lines, fixed = TRUE))",
+                        "TRUE");
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.r.runtime.compress.BZip2InputStream;
+import com.oracle.truffle.r.runtime.compress.BZip2OutputStream;
+import com.oracle.truffle.r.test.TestBase;
+
+public class TestBZip2 extends TestBase {
+
+    // "hello world\n" compressed by bzip2 1.0.8
+    private static final String HELLO_WORLD = "425a68393141592653594eece83600000251800010400006449080200031064c4101a7a9a580bb9431f8bb9229c28482776741b0";
+    // "abc\n" and "def\n" compressed as two separate streams
+    private static final String ABC = "425a6839314159265359ad6755d6000000c100001038002000219a68334d133c5dc914e14242b59d5758";
+    private static final String DEF = "425a68393141592653599fc92484000000c100001007002000219a68334d133c5dc914e142427f249210";
+
+    @Test
+    public void testDecode() throws IOException {
+        Assert.assertEquals("hello world\n", new String(decode(hex(HELLO_WORLD), null, 1), StandardCharsets.US_ASCII));
+        Assert.assertEquals("abc\ndef\n", new String(decode(hex(ABC + DEF), null, 1), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        // the output is identical to that of bzip2
+        Assert.assertArrayEquals(hex(HELLO_WORLD), encode("hello world\n".getBytes(StandardCharsets.US_ASCII), 9));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(42);
+        byte[] noise = new byte[150000];
+        random.nextBytes(noise);
+        byte[] runs = new byte[250000];
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = (byte) ((i / (1 + i % 300)) % 3);
+        }
+        byte[] periodic = new byte[300000];
+        for (int i = 0; i < periodic.length; i++) {
+            periodic[i] = (byte) (i % 2 == 0 ? 'a' : 'b');
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 60000; i++) {
+            text.append(i % 1000).append(i % 7 == 0 ? '\n' : ' ');
+        }
+        byte[][] inputs = {new byte[0], new byte[]{42}, new byte[1000], noise, runs, periodic, text.toString().getBytes(StandardCharsets.US_ASCII)};
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (byte[] input : inputs) {
+                // level 1 gives several blocks per input
+                byte[] compressed = encode(input, 1);
+                Assert.assertArrayEquals(input, decode(compressed, null, 1));
+                Assert.assertArrayEquals(input, decode(compressed, executor, 3));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCorruptData() throws IOException {
+        byte[] compressed = hex(HELLO_WORLD);
+        compressed[compressed.length / 2] ^= 0x10;
+        try {
+            decode(compressed, null, 1);
+            Assert.fail("corrupt data not detected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] encode(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BZip2OutputStream bzip = new BZip2OutputStream(out, level)) {
+            bzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(byte[] data, ExecutorService executor, int parallelism) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new BZip2InputStream(new ByteArrayInputStream(data), executor, parallelism)) {
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] hex(String s) {
+        byte[] result = new byte[s.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+}
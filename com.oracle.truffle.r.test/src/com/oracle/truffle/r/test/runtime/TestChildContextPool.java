@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.runtime;
+
+import static com.oracle.truffle.r.test.generate.FastRSession.GET_CONTEXT;
+
+import org.graalvm.polyglot.Value;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.oracle.truffle.r.runtime.context.ChildContextPool;
+import com.oracle.truffle.r.runtime.context.FastROptions;
+import com.oracle.truffle.r.runtime.context.RContext;
+import com.oracle.truffle.r.runtime.context.RContext.ContextKind;
+import com.oracle.truffle.r.test.TestBase;
+import com.oracle.truffle.r.test.generate.FastRContext;
+import com.oracle.truffle.r.test.generate.FastRSession;
+
+/**
+ * Checks that the contexts re-used by {@code .fastr.context.eval} from the
+ * {@code ChildContextPool} do not leak the state of the previous evaluation and are not reachable
+ * through the ids of their previous uses.
+ */
+public class TestChildContextPool extends TestBase {
+
+    private static FastRContext context;
+    private static RContext rContext;
+
+    @BeforeClass
+    public static void setupClass() {
+        FastRSession session = FastRSession.create();
+        context = session.createContext(ContextKind.SHARE_PARENT_RW);
+        // the pool is disabled by default
+        rContext = context.eval(GET_CONTEXT).asHostObject();
+        rContext.setOption(FastROptions.ChildContextPoolSize, 2);
+    }
+
+    @AfterClass
+    public static void finishClass() {
+        context.close();
+    }
+
+    @Test
+    public void testReset() {
+        String first = "unlist(.fastr.context.eval(rep(\"y <- 42; options(fastr.test.pool = 1); attach(list(z = 1), name = 'pooltest'); y\", 2L), 'SHARE_NOTHING'))";
+        Value result = context.eval(FastRSession.createSource(first, "pool1"));
+        Assert.assertEquals(2, result.getArraySize());
+        Assert.assertEquals(42, result.getArrayElement(0).asDouble(), 0);
+
+        String second = "unlist(.fastr.context.eval(rep(\"c(exists('y'), is.null(getOption('fastr.test.pool')), 'pooltest' %in% search())\", 2L), 'SHARE_NOTHING'))";
+        result = context.eval(FastRSession.createSource(second, "pool2"));
+        Assert.assertEquals(6, result.getArraySize());
+        for (int i = 0; i < 2; i++) {
+            Assert.assertFalse(result.getArrayElement(i * 3).asBoolean());
+            Assert.assertTrue(result.getArrayElement(i * 3 + 1).asBoolean());
+            Assert.assertFalse(result.getArrayElement(i * 3 + 2).asBoolean());
+        }
+    }
+
+    @Test
+    public void testResetSessionState() {
+        String first = "unlist(.fastr.context.eval(rep(\"setwd(tempdir()); Sys.setenv(FASTR_POOL_TEST = 'x'); sink(tempfile()); 1\", 2L), 'SHARE_NOTHING'))";
+        context.eval(FastRSession.createSource(first, "pool3"));
+
+        String second = "unlist(.fastr.context.eval(rep(\"c(normalizePath(getwd()) == normalizePath(tempdir()), Sys.getenv('FASTR_POOL_TEST') != '', sink.number() > 0L)\", 2L), 'SHARE_NOTHING'))";
+        Value result = context.eval(FastRSession.createSource(second, "pool4"));
+        Assert.assertEquals(6, result.getArraySize());
+        for (int i = 0; i < 6; i++) {
+            Assert.assertFalse(result.getArrayElement(i).asBoolean());
+        }
+    }
+
+    @Test
+    public void testFreshIds() {
+        String code = "a <- .fastr.context.spawn(rep('1', 2L), 'SHARE_NOTHING'); .fastr.context.join(a); " +
+                        "b <- .fastr.context.spawn(rep('1', 2L), 'SHARE_NOTHING'); .fastr.context.join(b); length(intersect(a, b))";
+        Value result = context.eval(FastRSession.createSource(code, "pool5"));
+        Assert.assertEquals(0, result.asInt());
+    }
+
+    @Test
+    public void testStatistics() {
+        String code = "unlist(.fastr.context.eval(rep('1', 2L), 'SHARE_NOTHING'))";
+        context.eval(FastRSession.createSource(code, "pool6"));
+        ChildContextPool pool = rContext.getChildContextPool();
+        long started = pool.getStartedContexts();
+        long reused = pool.getReusedContexts();
+        Assert.assertTrue(started > 0);
+        Assert.assertTrue(pool.getStartupTimeInNanos() > 0);
+
+        // both contexts are idle now, the next evaluation does not start any
+        context.eval(FastRSession.createSource(code, "pool7"));
+        Assert.assertEquals(started, pool.getStartedContexts());
+        Assert.assertEquals(reused + 2, pool.getReusedContexts());
+    }
+}
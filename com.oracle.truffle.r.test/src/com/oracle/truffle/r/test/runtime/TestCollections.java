@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2019, 2020, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2019, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -24,6 +24,9 @@ package com.oracle.truffle.r.test.runtime;
 
 import com.oracle.truffle.r.runtime.Collections.ArrayListInt;
 import com.oracle.truffle.r.runtime.Collections.ArrayListObj;
+import com.oracle.truffle.r.runtime.Collections.ElementHash;
+import com.oracle.truffle.r.runtime.Collections.IntElementHash;
+import com.oracle.truffle.r.runtime.Collections.SegmentedIntTable;
 import com.oracle.truffle.r.runtime.ffi.AfterDownCallProfiles;
 import com.oracle.truffle.r.test.TestBase;
 import org.junit.Assert;
@@ -136,4 +139,50 @@ public class TestCollections extends TestBase {
         list.add(33);
         list.get(1);
     }
+
+    @Test
+    public void testElementHashTableSize() {
+        Assert.assertEquals(2, ElementHash.tableSize(0));
+        Assert.assertEquals(8, ElementHash.tableSize(2));
+        Assert.assertEquals(1L << 30, ElementHash.tableSize(500_000_000));
+        // beyond 2^30 slots the size is no longer capped, so the load factor holds
+        for (int count : new int[]{715_827_882, 715_827_883, 1 << 30, Integer.MAX_VALUE}) {
+            long size = ElementHash.tableSize(count);
+            Assert.assertEquals(0, size & (size - 1));
+            Assert.assertTrue(size * 2 >= 3L * count);
+        }
+        Assert.assertEquals(1L << 32, ElementHash.tableSize(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testSegmentedIntTable() {
+        SegmentedIntTable table = new SegmentedIntTable(1L << 10, 4);
+        Assert.assertEquals(64, table.getSegmentCount());
+        for (long slot = 0; slot < table.size(); slot++) {
+            table.set(slot, (int) slot * 3);
+        }
+        for (long slot = 0; slot < table.size(); slot++) {
+            Assert.assertEquals((int) slot * 3, table.get(slot));
+        }
+    }
+
+    @Test
+    public void testSegmentedElementHash() {
+        int[] data = new int[5000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (i * 7919) % 3001;
+        }
+        IntElementHash plain = new IntElementHash(data);
+        // tables of more than 16 slots are segmented
+        IntElementHash segmented = new IntElementHash(data, 4);
+        for (boolean fromLast : new boolean[]{false, true}) {
+            Assert.assertArrayEquals(plain.firstOccurrences(fromLast), segmented.firstOccurrences(fromLast));
+            Assert.assertArrayEquals(plain.uniqueIndexes(fromLast), segmented.uniqueIndexes(fromLast));
+            Assert.assertEquals(plain.firstDuplicate(fromLast), segmented.firstDuplicate(fromLast));
+        }
+        Assert.assertEquals(3001, segmented.uniqueIndexes(false).length);
+        IntElementHash keys = new IntElementHash(new int[]{0, 1, 3000, 3001, -1});
+        Assert.assertArrayEquals(plain.indexOf(keys), segmented.indexOf(keys));
+        Assert.assertEquals(-1, segmented.indexOf(keys, 3));
+    }
 }
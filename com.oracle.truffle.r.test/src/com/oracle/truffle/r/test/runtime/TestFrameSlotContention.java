@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.runtime;
+
+import org.graalvm.polyglot.Value;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.oracle.truffle.r.runtime.context.RContext.ContextKind;
+import com.oracle.truffle.r.test.TestBase;
+import com.oracle.truffle.r.test.generate.FastRContext;
+import com.oracle.truffle.r.test.generate.FastRSession;
+
+/**
+ * Spawns several contexts that define and call closures and create environments in parallel, which
+ * exercises the frame descriptor meta data maintained by {@code FrameSlotChangeMonitor} from many
+ * threads at once.
+ */
+public class TestFrameSlotContention extends TestBase {
+
+    private static final int CONTEXTS = 4;
+
+    private static final String CHILD_CODE = "f <- function(n) { s <- 0; for (i in seq_len(n)) { g <- function(x) x + i; s <- s + g(1) }; s }\n" +
+                    "sum(vapply(1:200, function(j) { h <- local({ k <- j; function() k }); e <- new.env(); assign(paste0('v', j), j, envir = e); f(50) + h() + get(paste0('v', j), envir = e) - j }, 0))";
+
+    // f(50) == 1325 and h() == j for j in 1:200
+    private static final double EXPECTED = 200 * 1325 + 200 * 201 / 2;
+
+    private static FastRContext context;
+
+    @BeforeClass
+    public static void setupClass() {
+        FastRSession session = FastRSession.create();
+        context = session.createContext(ContextKind.SHARE_PARENT_RW);
+    }
+
+    @AfterClass
+    public static void finishClass() {
+        context.close();
+    }
+
+    @Test
+    public void testParallelClosures() {
+        String code = "unlist(.fastr.context.eval(rep(\"" + CHILD_CODE.replace("\"", "\\\"") + "\", " + CONTEXTS + "L), 'SHARE_NOTHING'))";
+        Value result = context.eval(FastRSession.createSource(code, "contention"));
+        Assert.assertEquals(CONTEXTS, result.getArraySize());
+        for (int i = 0; i < CONTEXTS; i++) {
+            Assert.assertEquals(EXPECTED, result.getArrayElement(i).asDouble(), 0);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.runtime;
+
+import static com.oracle.truffle.r.test.generate.FastRSession.GET_CONTEXT;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.oracle.truffle.r.runtime.LazyDBCache.Database;
+import com.oracle.truffle.r.runtime.context.RContext;
+import com.oracle.truffle.r.runtime.context.RContext.ContextKind;
+import com.oracle.truffle.r.test.TestBase;
+import com.oracle.truffle.r.test.generate.FastRContext;
+import com.oracle.truffle.r.test.generate.FastRSession;
+
+public class TestLazyDBCache extends TestBase {
+
+    private static FastRContext context1;
+    private static FastRContext context2;
+    private static RContext rContext1;
+    private static RContext rContext2;
+
+    @BeforeClass
+    public static void setupClass() {
+        FastRSession session = FastRSession.create();
+        context1 = session.createContext(ContextKind.SHARE_PARENT_RW);
+        rContext1 = context1.eval(GET_CONTEXT).asHostObject();
+        context2 = session.createContext(ContextKind.SHARE_PARENT_RW);
+        rContext2 = context2.eval(GET_CONTEXT).asHostObject();
+    }
+
+    @AfterClass
+    public static void finishClass() {
+        context1.close();
+        context2.close();
+    }
+
+    private static Database getDatabase(FastRContext context, RContext rContext, String path) {
+        Database[] result = new Database[1];
+        FastRSession.execInContext(context, () -> {
+            result[0] = rContext.stateLazyDBCache.getDatabase(rContext, path);
+            return null;
+        });
+        return result[0];
+    }
+
+    private static Database revalidate(FastRContext context, RContext rContext, String path) {
+        Database[] result = new Database[1];
+        FastRSession.execInContext(context, () -> {
+            result[0] = rContext.stateLazyDBCache.revalidate(rContext, path);
+            return null;
+        });
+        return result[0];
+    }
+
+    @Test
+    public void testSharedAndInvalidated() throws IOException {
+        Path file = Files.createTempFile("lazydb", ".rdb");
+        try {
+            Files.write(file, new byte[]{1, 2, 3, 4});
+            String path = file.toString();
+
+            Database db1 = getDatabase(context1, rContext1, path);
+            Assert.assertArrayEquals(new byte[]{2, 3}, db1.read(1, 2));
+            Assert.assertSame(db1, getDatabase(context1, rContext1, path));
+            db1.putEntry(0, new byte[]{42});
+
+            // the context validated the database already, it does not check the file again
+            Files.write(file, new byte[]{5, 6, 7, 8, 9});
+            Assert.assertSame(db1, getDatabase(context1, rContext1, path));
+
+            // another context checks the file and reloads it
+            Database db2 = getDatabase(context2, rContext2, path);
+            Assert.assertNotSame(db1, db2);
+            Assert.assertArrayEquals(new byte[]{8, 9}, db2.read(3, 2));
+            Assert.assertNull(db2.getEntry(0));
+
+            // the reloaded database and its entries are shared with the first context
+            Assert.assertSame(db2, getDatabase(context1, rContext1, path));
+            byte[] entry = new byte[]{42};
+            db2.putEntry(0, entry);
+            Assert.assertSame(entry, getDatabase(context2, rContext2, path).getEntry(0));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testRevalidatedOnMiss() throws IOException {
+        Path file = Files.createTempFile("lazydb", ".rdb");
+        try {
+            Files.write(file, new byte[]{1, 2, 3, 4});
+            String path = file.toString();
+
+            Database db1 = getDatabase(context1, rContext1, path);
+            Assert.assertSame(db1, revalidate(context1, rContext1, path));
+
+            // a fetch that misses the entry cache finds the rewritten file
+            Files.write(file, new byte[]{5, 6, 7, 8, 9});
+            Database db2 = revalidate(context1, rContext1, path);
+            Assert.assertNotSame(db1, db2);
+            Assert.assertArrayEquals(new byte[]{5, 6}, db2.read(0, 2));
+            Assert.assertSame(db2, getDatabase(context1, rContext1, path));
+
+            // a file replaced by another one is not read through the old mapping
+            Path replacement = Files.createTempFile("lazydb", ".rdb");
+            Files.write(replacement, new byte[]{10, 11, 12, 13, 14});
+            Files.setLastModifiedTime(replacement, Files.getLastModifiedTime(file));
+            Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+            Database db3 = revalidate(context2, rContext2, path);
+            Assert.assertArrayEquals(new byte[]{10, 11}, db3.read(0, 2));
+            Assert.assertSame(db3, getDatabase(context1, rContext1, path));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
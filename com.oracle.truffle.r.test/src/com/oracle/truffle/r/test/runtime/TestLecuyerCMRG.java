@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.runtime;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.r.runtime.rng.lecuyer.LecuyerCMRG;
+import com.oracle.truffle.r.test.TestBase;
+
+/**
+ * Checks the stream jumping of {@link LecuyerCMRG} against the stepwise generator and the jump
+ * matrices of GnuR's parallel package.
+ */
+public class TestLecuyerCMRG extends TestBase {
+
+    // the seed set by set.seed(123, kind = "L'Ecuyer-CMRG")
+    private static final int[] SEED_123 = {10407, 1806547166, -983674937, 643431772, 1162448557, -959247990, -133913213};
+
+    @Test
+    public void testSetSeed() {
+        LecuyerCMRG rng = new LecuyerCMRG();
+        rng.init(scramble(123));
+        int[] seeds = rng.getSeeds();
+        seeds[0] = SEED_123[0];
+        Assert.assertArrayEquals(SEED_123, Arrays.copyOf(seeds, LecuyerCMRG.SEED_LENGTH));
+        Assert.assertEquals(0.1663742155315906, rng.genrandDouble(), 0);
+    }
+
+    @Test
+    public void testJumpMatrices() {
+        // advancing the unit seed yields the first columns of A1p76/A2p76 and A1p127/A2p127
+        int[] unit = {10407, 1, 0, 0, 1, 0, 0};
+        Assert.assertArrayEquals(new int[]{10407, 82758667, (int) 3672831523L, (int) 3672091415L, 1511326704, (int) 4292754251L, (int) 3859662829L}, LecuyerCMRG.nextSubStream(unit));
+        Assert.assertArrayEquals(new int[]{10407, (int) 2427906178L, 226153695, 1988835001, 1464411153, 32183930, (int) 2824425944L}, LecuyerCMRG.nextStream(unit));
+        Assert.assertArrayEquals(LecuyerCMRG.nextSubStream(SEED_123), LecuyerCMRG.jump(SEED_123, LecuyerCMRG.SUBSTREAM_LOG2_STEPS));
+        Assert.assertArrayEquals(LecuyerCMRG.nextStream(SEED_123), LecuyerCMRG.jump(SEED_123, LecuyerCMRG.STREAM_LOG2_STEPS));
+    }
+
+    @Test
+    public void testJumpMatchesStepping() {
+        LecuyerCMRG rng = new LecuyerCMRG();
+        rng.setISeed(SEED_123.clone());
+        for (int log2 = 0; log2 <= 12; log2++) {
+            int[] expected = LecuyerCMRG.jump(rng.getSeeds(), log2);
+            for (int i = 0; i < (1 << log2); i++) {
+                rng.genrandDouble();
+            }
+            Assert.assertArrayEquals("2^" + log2 + " steps", expected, Arrays.copyOf(rng.getSeeds(), LecuyerCMRG.SEED_LENGTH));
+        }
+    }
+
+    private static int scramble(int seed) {
+        // cf. RRNG.initGenerator
+        int result = seed;
+        for (int i = 0; i < 50; i++) {
+            result = (69069 * result + 1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tukaani.xz.LZMA2InputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+
+import com.oracle.truffle.r.runtime.compress.ParallelLZMA2OutputStream;
+import com.oracle.truffle.r.runtime.compress.ParallelLZMA2OutputStream.Format;
+import com.oracle.truffle.r.test.TestBase;
+
+public class TestParallelLZMA2 extends TestBase {
+
+    @Test
+    public void testRaw() throws IOException {
+        byte[] data = testData();
+        byte[] compressed = compress(data, Format.RAW);
+        try (InputStream in = new LZMA2InputStream(new ByteArrayInputStream(compressed), data.length)) {
+            Assert.assertArrayEquals(data, readAll(in));
+        }
+    }
+
+    @Test
+    public void testXZ() throws IOException {
+        byte[] data = testData();
+        byte[] compressed = compress(data, Format.XZ);
+        try (InputStream in = new XZInputStream(new ByteArrayInputStream(compressed))) {
+            Assert.assertArrayEquals(data, readAll(in));
+        }
+    }
+
+    @Test
+    public void testFlush() throws IOException {
+        byte[] data = testData();
+        int flushed = data.length / 2 + 12345;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (ParallelLZMA2OutputStream lzma = new ParallelLZMA2OutputStream(out, createOptions(), Format.XZ, executor, 3)) {
+            lzma.write(data, 0, flushed);
+            lzma.flush();
+            // everything written before the flush can be decoded, including the partial chunk
+            try (InputStream in = new XZInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+                Assert.assertArrayEquals(Arrays.copyOf(data, flushed), readAll(in));
+            }
+            lzma.write(data, flushed, data.length - flushed);
+        } finally {
+            executor.shutdown();
+        }
+        try (InputStream in = new XZInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            Assert.assertArrayEquals(data, readAll(in));
+        }
+    }
+
+    private static LZMA2Options createOptions() throws IOException {
+        LZMA2Options options = new LZMA2Options();
+        options.setDictSize(LZMA2Options.DICT_SIZE_MIN);
+        return options;
+    }
+
+    private static byte[] testData() {
+        // several chunks of the smallest chunk size
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 5 * 1024 * 1024; i++) {
+            sb.append(i).append(i % 11 == 0 ? '\n' : ',');
+        }
+        return sb.toString().getBytes();
+    }
+
+    private static byte[] compress(byte[] data, Format format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (ParallelLZMA2OutputStream lzma = new ParallelLZMA2OutputStream(out, createOptions(), format, executor, 3)) {
+            // odd sized writes that do not line up with the chunks
+            for (int i = 0; i < data.length; i += 100003) {
+                lzma.write(data, i, Math.min(100003, data.length - i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2017, 2019, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2017, 2021, Oracle and/or its affiliates. All rights reserved.
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
  *
  * This code is free software; you can redistribute it and/or modify it
@@ -31,10 +31,14 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.oracle.truffle.r.runtime.RRuntime;
 import com.oracle.truffle.r.runtime.RSerialize;
 import com.oracle.truffle.r.runtime.context.RContext;
 import com.oracle.truffle.r.runtime.context.RContext.ContextKind;
+import com.oracle.truffle.r.runtime.data.RComplexVector;
 import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RDoubleVector;
+import com.oracle.truffle.r.runtime.data.RIntVector;
 import com.oracle.truffle.r.runtime.data.RStringVector;
 import com.oracle.truffle.r.test.TestBase;
 import com.oracle.truffle.r.test.generate.FastRContext;
@@ -151,4 +155,65 @@ public class TestRSerialize extends TestBase {
             return null;
         });
     }
+
+    // Bulk vector tests, the lengths exceed both the read and the write buffer
+
+    @Test
+    public void testIntVector() {
+        FastRSession.execInContext(context, () -> {
+            int[] data = new int[100003];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = i * 31 - 50000;
+            }
+            data[7] = RRuntime.INT_NA;
+            byte[] serialized = RSerialize.serialize(rContext, RDataFactory.createIntVector(data, false), RSerialize.XDR, RSerialize.DEFAULT_VERSION, null);
+            Object unserialized = RSerialize.unserialize(RDataFactory.createRawVector(serialized));
+
+            Assert.assertTrue(unserialized instanceof RIntVector);
+            Assert.assertArrayEquals(data, ((RIntVector) unserialized).getReadonlyData());
+            Assert.assertFalse(((RIntVector) unserialized).isComplete());
+            return null;
+        });
+    }
+
+    @Test
+    public void testDoubleVector() {
+        FastRSession.execInContext(context, () -> {
+            double[] data = new double[100003];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = i / 7.0;
+            }
+            data[data.length - 1] = RRuntime.DOUBLE_NA;
+            data[data.length - 2] = Double.NaN;
+            byte[] serialized = RSerialize.serialize(rContext, RDataFactory.createDoubleVector(data, false), RSerialize.XDR, RSerialize.DEFAULT_VERSION, null);
+            Object unserialized = RSerialize.unserialize(RDataFactory.createRawVector(serialized));
+
+            Assert.assertTrue(unserialized instanceof RDoubleVector);
+            double[] result = ((RDoubleVector) unserialized).getReadonlyData();
+            Assert.assertEquals(data.length, result.length);
+            for (int i = 0; i < data.length; i++) {
+                Assert.assertEquals(Double.doubleToRawLongBits(data[i]), Double.doubleToRawLongBits(result[i]));
+            }
+            Assert.assertTrue(RRuntime.isNA(result[data.length - 1]));
+            Assert.assertFalse(RRuntime.isNA(result[data.length - 2]));
+            return null;
+        });
+    }
+
+    @Test
+    public void testComplexVector() {
+        FastRSession.execInContext(context, () -> {
+            double[] data = new double[2 * 50001];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = i - 3.5;
+            }
+            byte[] serialized = RSerialize.serialize(rContext, RDataFactory.createComplexVector(data, true), RSerialize.XDR, RSerialize.DEFAULT_VERSION, null);
+            Object unserialized = RSerialize.unserialize(RDataFactory.createRawVector(serialized));
+
+            Assert.assertTrue(unserialized instanceof RComplexVector);
+            Assert.assertArrayEquals(data, ((RComplexVector) unserialized).getReadonlyData(), 0);
+            Assert.assertTrue(((RComplexVector) unserialized).isComplete());
+            return null;
+        });
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.runtime;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.r.runtime.rng.RandomNumberGenerator;
+import com.oracle.truffle.r.runtime.rng.UniformBlock;
+import com.oracle.truffle.r.runtime.rng.lecuyer.LecuyerCMRG;
+import com.oracle.truffle.r.runtime.rng.mt.MersenneTwister;
+import com.oracle.truffle.r.test.TestBase;
+
+/**
+ * Checks that generating uniform random numbers in bulk yields the same sequence and leaves the
+ * generator in the same state as generating them one by one.
+ */
+public class TestUniformBlock extends TestBase {
+
+    @Test
+    public void testFillUniform() {
+        for (RandomNumberGenerator[] rngs : new RandomNumberGenerator[][]{{new MersenneTwister(), new MersenneTwister()}, {new LecuyerCMRG(), new LecuyerCMRG()}}) {
+            rngs[0].init(4357);
+            rngs[1].init(4357);
+            double[] values = new double[2000];
+            // sizes that do not line up with the state vector of Mersenne-Twister
+            for (int len : new int[]{1, 623, 2, 1000, 1500, 0, 17}) {
+                rngs[0].fillUniform(values, 3, len);
+                for (int i = 0; i < len; i++) {
+                    Assert.assertEquals(rngs[1].genrandDouble(), values[3 + i], 0);
+                }
+            }
+            assertSameSeeds(rngs[0], rngs[1]);
+        }
+    }
+
+    @Test
+    public void testBlock() {
+        MersenneTwister rng = new MersenneTwister();
+        rng.init(42);
+        MersenneTwister expected = new MersenneTwister();
+        expected.init(42);
+        int count = 3000;
+        UniformBlock block = new UniformBlock(rng, count);
+        for (int i = 0; i < count; i++) {
+            block.atLeast(count - i);
+            Assert.assertEquals(expected.genrandDouble(), block.genrandDouble(), 0);
+        }
+        // the block did not take more numbers than were used
+        assertSameSeeds(rng, expected);
+    }
+
+    @Test
+    public void testRestoreSeeds() {
+        MersenneTwister rng = new MersenneTwister();
+        rng.init(7);
+        for (int i = 0; i < 100; i++) {
+            rng.genrandDouble();
+        }
+        rng.syncSeeds();
+        int[] seeds = rng.getSeeds().clone();
+        Assert.assertEquals(100, seeds[1]);
+        double[] values = new double[1000];
+        rng.fillUniform(values, 0, values.length);
+        rng.setISeed(seeds.clone());
+        for (double value : values) {
+            Assert.assertEquals(value, rng.genrandDouble(), 0);
+        }
+    }
+
+    private static void assertSameSeeds(RandomNumberGenerator actual, RandomNumberGenerator expected) {
+        actual.syncSeeds();
+        expected.syncSeeds();
+        int length = expected.getNSeed() + 1;
+        // index 0 is the generator flag, which is set when the seeds are stored in .Random.seed
+        Assert.assertArrayEquals(Arrays.copyOfRange(expected.getSeeds(), 1, length), Arrays.copyOfRange(actual.getSeeds(), 1, length));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.runtime.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.oracle.truffle.r.runtime.data.NativeDataAccess.HandleTable;
+import com.oracle.truffle.r.runtime.data.NativeDataAccess.NativeHandleWrapper;
+import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RIntVector;
+
+public class NativeHandleTableTests {
+
+    // the number of handles in a block of released handles
+    private static final int BLOCK_SIZE = 64;
+
+    @Test
+    public void testAddRemove() {
+        HandleTable table = new HandleTable();
+        RIntVector vector = RDataFactory.createIntVector(new int[]{1, 2}, true);
+        NativeHandleWrapper wrapper = table.add(vector);
+        assertSame(wrapper, table.get(wrapper.getId()));
+        assertSame(vector, wrapper.get());
+        assertEquals(1, table.size());
+        table.remove(wrapper);
+        assertNull(table.get(wrapper.getId()));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testSlotReuse() {
+        HandleTable table = new HandleTable();
+        List<RIntVector> vectors = new ArrayList<>();
+        List<NativeHandleWrapper> old = new ArrayList<>();
+        for (int i = 0; i < 2 * BLOCK_SIZE; i++) {
+            RIntVector vector = RDataFactory.createIntVector(new int[]{i}, true);
+            vectors.add(vector);
+            old.add(table.add(vector));
+        }
+        long allocated = table.getAllocatedCount();
+        for (NativeHandleWrapper wrapper : old) {
+            table.remove(wrapper);
+        }
+        assertEquals(0, table.size());
+
+        List<NativeHandleWrapper> reused = new ArrayList<>();
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            reused.add(table.add(vectors.get(i)));
+        }
+        // the slots of the released handles were reused
+        assertEquals(allocated, table.getAllocatedCount());
+        for (NativeHandleWrapper wrapper : reused) {
+            assertSame(wrapper, table.get(wrapper.getId()));
+            for (NativeHandleWrapper stale : old) {
+                assertNotEquals(stale.getId(), wrapper.getId());
+            }
+        }
+
+        // the stale handles are rejected and releasing them again does not free the reused slots
+        for (NativeHandleWrapper stale : old) {
+            assertNull(table.get(stale.getId()));
+            table.remove(stale);
+        }
+        assertEquals(BLOCK_SIZE, table.size());
+    }
+
+    @Test
+    public void testThreads() throws Throwable {
+        HandleTable table = new HandleTable();
+        int threadCount = 8;
+        int handleCount = 10000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long[] allocated = new long[1];
+        CyclicBarrier barrier = new CyclicBarrier(threadCount, () -> {
+            if (allocated[0] == 0) {
+                // all handles of the first round were released, the second round reuses them
+                assertEquals(0, table.size());
+                allocated[0] = table.getAllocatedCount();
+                ids.clear();
+            }
+        });
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int round = 0; round < 2; round++) {
+                        RIntVector[] vectors = new RIntVector[handleCount];
+                        NativeHandleWrapper[] wrappers = new NativeHandleWrapper[handleCount];
+                        for (int i = 0; i < handleCount; i++) {
+                            vectors[i] = RDataFactory.createIntVector(new int[]{i}, true);
+                            wrappers[i] = table.add(vectors[i]);
+                            if (!ids.add(wrappers[i].getId())) {
+                                throw new AssertionError("duplicate handle " + Long.toHexString(wrappers[i].getId()));
+                            }
+                        }
+                        for (int i = 0; i < handleCount; i++) {
+                            assertSame(vectors[i], table.get(wrappers[i].getId()).get());
+                        }
+                        for (int i = 0; i < handleCount; i++) {
+                            table.remove(wrappers[i]);
+                            assertNull(table.get(wrappers[i].getId()));
+                        }
+                        barrier.await();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                    barrier.reset();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        assertEquals(0, table.size());
+        assertEquals(allocated[0], table.getAllocatedCount());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.r.test.runtime.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.oracle.truffle.r.runtime.RRuntime;
+import com.oracle.truffle.r.runtime.data.RDataFactory;
+import com.oracle.truffle.r.runtime.data.RDoubleVector;
+import com.oracle.truffle.r.runtime.data.RIntVector;
+import com.oracle.truffle.r.runtime.data.VectorDataLibrary;
+import com.oracle.truffle.r.test.TestBase;
+
+public class VectorDataRegionTests extends TestBase {
+
+    private static VectorDataLibrary getLibrary() {
+        return VectorDataLibrary.getFactory().getUncached();
+    }
+
+    @Test
+    public void testReadDoubleSequence() {
+        RDoubleVector seq = RDataFactory.createDoubleSequence(1.5, 0.5, 10);
+        double[] buffer = new double[4];
+        assertEquals(4, getLibrary().readDoubleRegion(seq.getData(), 2, 4, buffer));
+        assertArrayEquals(new double[]{2.5, 3, 3.5, 4}, buffer, 0);
+        assertEquals(2, getLibrary().readDoubleRegion(seq.getData(), 8, 4, buffer));
+        assertEquals(5.5, buffer[0], 0);
+        assertEquals(6, buffer[1], 0);
+    }
+
+    @Test
+    public void testReadIntSequence() {
+        RIntVector seq = RDataFactory.createIntSequence(10, -2, 5);
+        int[] buffer = new int[5];
+        assertEquals(3, getLibrary().readIntRegion(seq.getData(), 2, 5, buffer));
+        assertArrayEquals(new int[]{6, 4, 2, 0, 0}, buffer);
+    }
+
+    @Test
+    public void testReadConverted() {
+        RIntVector vec = RDataFactory.createIntVector(new int[]{1, RRuntime.INT_NA, 3}, false);
+        double[] buffer = new double[3];
+        assertEquals(3, getLibrary().readDoubleRegion(vec.getData(), 0, 3, buffer));
+        assertEquals(1, buffer[0], 0);
+        assertTrue(RRuntime.isNA(buffer[1]));
+        assertEquals(3, buffer[2], 0);
+    }
+
+    @Test
+    public void testWriteDoubleArray() {
+        RDoubleVector vec = RDataFactory.createDoubleVector(new double[]{1, 2, 3, 4}, true);
+        getLibrary().writeDoubleRegion(vec.getData(), 1, 2, new double[]{20, 30}, true);
+        assertArrayEquals(new double[]{1, 20, 30, 4}, getLibrary().getDoubleDataCopy(vec.getData()), 0);
+        assertTrue(getLibrary().isComplete(vec.getData()));
+        getLibrary().writeDoubleRegion(vec.getData(), 3, 1, new double[]{RRuntime.DOUBLE_NA}, false);
+        assertFalse(getLibrary().isComplete(vec.getData()));
+    }
+}